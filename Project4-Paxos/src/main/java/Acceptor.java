@@ -1,130 +1,686 @@
 package main.java;
 
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * An acceptor is a type of process that will accept a value that is proposed to them under certain
- * conditions following the Paxos algorithm.
+ * conditions following the Paxos algorithm. The acceptor takes part in a replicated log of Paxos
+ * instances (Multi-Paxos), so it keeps the accepted proposal and value of each log slot separately.
+ * A Prepare message covers the slot it names and every slot after it, which lets a distinguished
+ * proposer run Phase 1 once for all future slots, so the acceptor keeps a single promise rather
+ * than one per slot. Promises and accepted values are recorded in a write-ahead log that is forced
+ * to disk before any response is sent, and the log is replayed when the acceptor starts, so a
+ * restarted acceptor keeps every promise it made. Proposers keep one long-lived connection to the
+ * acceptor and send many requests over it, each framed with a request ID, so requests on the same
+ * connection are handled concurrently and answered in whatever order they finish. Once a value
+ * it accepted is durable, the acceptor pushes it to the learners of its groups. A leader may also
+ * open a fast round (Fast Paxos) over every slot from a given one onward, in which the acceptor
+ * accepts the first value any proposer sends straight to it for each slot. With leader leases on,
+ * every promise also grants its proposer a lease, and no other proposer is promised or accepted
+ * until the lease runs out, so the lease holder can serve reads from its own state. A proposer
+ * with a state machine streams a snapshot of it to the acceptor now and then. Once the whole
+ * snapshot is stored, the acceptor forgets every slot the snapshot covers and rewrites its log
+ * without them, and it hands the snapshot out to proposers that have fallen behind it. An acceptor
+ * belongs to one Paxos group, and a process takes part in several groups through one acceptor per
+ * group, all served by the process's shared {@link Transport}. In Mencius mode, every log slot is
+ * owned by one proposer, and the acceptor accepts the first value the owner sends for a slot under
+ * the owner's initial proposal number without any Prepare round. In EPaxos mode, the acceptor is
+ * one of the replicas of leaderless instances instead, and answers a Pre-Accept with the instances
+ * it knows that interfere with the proposed one.
  */
 public class Acceptor extends Process {
-  private double minProposal;
-  private double acceptedProposal;
-  private char acceptedValue;
+  private Ballot minProposal;
+  private Ballot fastBallot;
+  private int fastFrom;
+  private final long leaseNanos;
+  private Ballot leaseHolder;
+  private long leaseExpiry;
+  private final NavigableMap<Integer, ProposalValuePair> acceptedSlots;
+  private volatile int compactedThrough;
+  private final Path snapshotPath;
+  private final Object snapshotLock;
+  private final WriteAheadLog wal;
+  private final int groupId;
+  private final Transport transport;
+  private final List<ProcessInfo> learners;
+  private final List<Integer> slotOwners;
+  private final ConflictIndex conflicts;
+  private final Function<Message, Message> proposerHandler;
+  private final Map<MessageType, LatencyHistogram> handleTimes;
+  private final Map<MessageType, LatencyHistogram> syncTimes;
+  private final LongAdder rejections;
 
   /**
    * Constructs a new Acceptor object. Each acceptor has a list of proposers they may accept a
-   * value from. This information is found in the given hostsfile.
+   * value from. This information is found in the hostsfile of the given settings.
    *
    * @param id the unique ID of the process
    * @param name the hostname of the process
-   * @param hostsfile the path to the file containing information on all processes
+   * @param config the settings of the process
+   * @param groupId the ID of the Paxos group the acceptor belongs to
+   * @param transport the network layer shared by the groups of the process
    */
-  public Acceptor(int id, String name, String hostsfile) {
+  public Acceptor(int id, String name, Config config, int groupId, Transport transport) {
+    this(id, name, config, groupId, transport, null);
+  }
+
+  /**
+   * Constructs a new Acceptor object that hands reads and commit notices to the given handler, so
+   * a proposer can be reached over its own acceptor's server.
+   *
+   * @param id the unique ID of the process
+   * @param name the hostname of the process
+   * @param config the settings of the process
+   * @param groupId the ID of the Paxos group the acceptor belongs to
+   * @param transport the network layer shared by the groups of the process
+   * @param proposerHandler handles a read, commit notice or instance commit and returns its
+   *                        response, or null if the process is not a proposer
+   */
+  public Acceptor(int id, String name, Config config, int groupId, Transport transport,
+                  Function<Message, Message> proposerHandler) {
     super(id, name);
-    this.minProposal = 0.0;
-    this.acceptedProposal = 0.0;
-    this.acceptedValue = '\u0000';
+    this.minProposal = Ballot.ZERO;
+    this.fastBallot = null;
+    this.fastFrom = 0;
+    this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(config.getLeaseMs());
+    this.leaseHolder = null;
+    this.leaseExpiry = System.nanoTime();
+    this.acceptedSlots = new TreeMap<>();
+    this.compactedThrough = -1;
+    String fileName = Util.groupFileName(name, groupId);
+    this.snapshotPath = Paths.get(config.getDataDir(), fileName + ".snapshot");
+    this.snapshotLock = new Object();
+    this.wal = new WriteAheadLog(Paths.get(config.getDataDir(), fileName + ".wal"), true);
+    this.groupId = groupId;
+    this.transport = transport;
+    this.learners = extractLearners(config.getHostsfile());
+    this.slotOwners = config.isMencius() ? extractSlotOwners(config.getHostsfile()) : List.of();
+    this.conflicts = new ConflictIndex();
+    this.proposerHandler = proposerHandler;
+    this.handleTimes = new EnumMap<>(MessageType.class);
+    this.syncTimes = new EnumMap<>(MessageType.class);
+    String metricsPrefix = "g" + groupId + ".acceptor.";
+    for (MessageType type : List.of(MessageType.PREPARE, MessageType.ACCEPT, MessageType.ANY,
+            MessageType.FAST_ACCEPT, MessageType.PRE_ACCEPT, MessageType.INSTANCE_ACCEPT)) {
+      this.handleTimes.put(type, Metrics.histogram(metricsPrefix + type.getLabel() + ".handle"));
+      this.syncTimes.put(type, Metrics.histogram(metricsPrefix + type.getLabel() + ".sync"));
+    }
+    this.rejections = Metrics.counter(metricsPrefix + "rejected");
+    recover();
+    transport.register(groupId, this::handleMessage);
   }
 
-  @Override
-  public void start() {
-    new Thread(() -> {
-      try (ServerSocket acceptorSocket = new ServerSocket(Util.PORT)) {
-        while (true) {
-          Socket proposerSocket = acceptorSocket.accept();
-          new Thread(() -> handleConnection(proposerSocket)).start();
-        }
-      } catch (IOException e) {
-        throw new RuntimeException("Acceptor error: " + e.getMessage());
-      }
-    }).start();
+  /**
+   * Extracts the learners the acceptor reports to from the given hostsfile. These are the
+   * learners of every group the acceptor takes part in, as an acceptor or as a proposer acting as
+   * its own acceptor.
+   *
+   * @param hostsfile the path to the file containing information on all processes
+   * @return the list of learners
+   * @throws IllegalArgumentException if the hostsfile cannot be read for some reason
+   */
+  private List<ProcessInfo> extractLearners(String hostsfile) throws IllegalArgumentException {
+    try {
+      List<String> lines = Files.readAllLines(Paths.get(hostsfile));
+      Set<String> targetRoles = lines.stream()
+              .filter(line -> line.startsWith(this.info.getName() + ":"))
+              .flatMap(line -> Arrays.stream(line.split(":")[1].split(",")))
+              .filter(role -> role.startsWith("acceptor") || role.startsWith("proposer"))
+              .map(role -> "learner" + role.replaceAll("\\D", ""))
+              .collect(Collectors.toSet());
+
+      return lines.stream()
+              .filter(line -> {
+                String[] parts = line.split(":");
+                if (parts.length < 2) {
+                  return false;
+                }
+                return Arrays.stream(parts[1].split(",")).anyMatch(targetRoles::contains);
+              }).map(line -> {
+                String peerName = line.split(":")[0];
+                int peerId = Util.peerId(peerName);
+                return new ProcessInfo(peerId, peerName);
+              }).toList();
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Acceptor error: Issue with reading hostsfile: " +
+              e.getMessage());
+    }
   }
 
   /**
-   * Handle each connection with a proposer.
+   * Extracts the owners of the log slots in Mencius mode from the given hostsfile. Slot s is owned
+   * by the (s mod P)-th of the P proposers in order of proposer ID.
    *
-   * @param proposerSocket the socket of the proposer
-   * @throws RuntimeException if there are any connection issues
+   * @param hostsfile the path to the file containing information on all processes
+   * @return the process IDs of the proposers in order of proposer ID
+   * @throws IllegalArgumentException if the hostsfile cannot be read for some reason
    */
-  private void handleConnection(Socket proposerSocket) throws RuntimeException {
-    try (
-            DataInputStream in = new DataInputStream(proposerSocket.getInputStream());
-            DataOutputStream out = new DataOutputStream(proposerSocket.getOutputStream())
-    ) {
-      String msg = in.readUTF();
-      String response = handleMessage(msg);
-      out.writeUTF(response);
+  private List<Integer> extractSlotOwners(String hostsfile) throws IllegalArgumentException {
+    try {
+      return Files.readAllLines(Paths.get(hostsfile)).stream()
+              .filter(line -> line.split(":").length >= 2 && line.split(":")[1]
+                      .startsWith("proposer"))
+              .sorted(Comparator.comparingInt(line -> Integer.parseInt(line.split(":")[1]
+                      .split(",")[0].replaceAll("\\D", ""))))
+              .map(line -> Util.peerId(line.split(":")[0]))
+              .toList();
     } catch (IOException e) {
-      throw new RuntimeException("Acceptor error: " + e.getMessage());
+      throw new IllegalArgumentException("Acceptor error: Issue with reading hostsfile: " +
+              e.getMessage());
     }
   }
 
   /**
-   * Process a message received by a proposer and prepares a response.
+   * Restores the promise and accepted values of the acceptor by replaying its write-ahead log. A
+   * snapshot stored after the log was last compacted (from a crash in between) is compacted now.
+   */
+  private void recover() {
+    long count = this.wal.replay(entry -> {
+      if (entry.type() == WriteAheadLog.INSTANCE) {
+        this.conflicts.record(new EpaxosInstance.Id(entry.proposalNum().getProposerId(),
+                entry.slot()), EpaxosInstance.decode(entry.value()));
+        return;
+      }
+      if (entry.proposalNum().compareTo(this.minProposal) > 0) {
+        this.minProposal = entry.proposalNum();
+      }
+      if (entry.type() == WriteAheadLog.ACCEPT) {
+        this.acceptedSlots.put(entry.slot(),
+                new ProposalValuePair(entry.proposalNum(), entry.value()));
+      } else if (entry.type() == WriteAheadLog.COMPACT) {
+        this.compactedThrough = Math.max(this.compactedThrough, entry.slot());
+        this.acceptedSlots.headMap(entry.slot(), true).clear();
+      }
+    });
+
+    int snapshotSlot = readSnapshotSlot();
+    if (snapshotSlot > this.compactedThrough) {
+      compact(snapshotSlot);
+    }
+
+    if (count > 0) {
+      System.err.println("Acceptor " + this.info.getId() + " recovered " + count +
+              " log records, promised proposal number " + this.minProposal);
+
+      // a lease granted before the restart may still be held, so hold off every proposer
+      this.leaseExpiry = System.nanoTime() + this.leaseNanos;
+    }
+  }
+
+  @Override
+  public void start() {
+    this.transport.start();
+  }
+
+  /**
+   * Process a message received by a proposer and prepares a response. The response is only
+   * returned once every log record it depends on is durable. Handling is serialized, but the wait
+   * for the disk is not, so concurrent connections share group commits. The time each message
+   * spends being handled, waiting for the lock included, and the time it waits for the disk are
+   * recorded separately.
    *
    * @param msg the message received by the proposer
    * @return the response to the proposer
    */
-  private String handleMessage(String msg) {
-    String[] msgRec = Util.unpackMsg(msg);
-    int senderId = Integer.parseInt(msgRec[0]);
-    String messageType = msgRec[2];
-    char value = Util.strToChar(msgRec[3]);
-    double proposalNum = Double.parseDouble(msgRec[4]);
-    System.err.println(Util.prepareMsg(senderId, "received", messageType,
-            Util.charToStr(value), proposalNum));
+  private Message handleMessage(Message msg) {
+    EventLog.message(msg, "received");
+    if ((msg.getType() == MessageType.READ || msg.getType() == MessageType.COMMIT
+            || msg.getType() == MessageType.INSTANCE_COMMIT) && this.proposerHandler != null) {
+      return this.proposerHandler.apply(msg);
+    }
+
+    // snapshots are written and read outside the lock, so they never hold up the accept path
+    if (msg.getType() == MessageType.SNAPSHOT) {
+      return handleSnapshot(msg.getSenderId(), msg.getSlot(),
+              SnapshotChunk.decode(msg.getValue()));
+    }
+    if (msg.getType() == MessageType.SNAPSHOT_REQUEST) {
+      return handleSnapshotRequest(SnapshotChunk.decode(msg.getValue()).getOffset());
+    }
+
+    long start = System.nanoTime();
+    Message response;
+    long lsn;
+    synchronized (this) {
+      response = switch (msg.getType()) {
+        case PREPARE -> handlePrepare(msg.getBallot(), msg.getSlot());
+        case ACCEPT -> handleAccept(msg.getSenderId(), msg.getBallot(), msg.getSlot(),
+                msg.getValue());
+        case ANY -> handleAny(msg.getBallot(), msg.getSlot());
+        case FAST_ACCEPT -> handleFastAccept(msg.getSenderId(), msg.getSlot(), msg.getValue());
+        case PRE_ACCEPT -> handlePreAccept(msg.getBallot(), msg.getSlot(),
+                EpaxosInstance.decode(msg.getValue()));
+        case INSTANCE_ACCEPT -> handleInstanceAccept(msg.getBallot(), msg.getSlot(),
+                EpaxosInstance.decode(msg.getValue()));
+        default -> throw new RuntimeException("Acceptor error: Unknown message type received");
+      };
+      lsn = this.wal.lastLsn();
+    }
+
+    long handled = System.nanoTime();
+    this.handleTimes.get(msg.getType()).record(handled - start);
+    this.wal.sync(lsn);
+    this.syncTimes.get(msg.getType()).recordSince(handled);
+    if (response.getType() == MessageType.NACK) {
+      this.rejections.increment();
+    }
+
+    // tell the learners about a value once it is durably accepted
+    if (response.getType() == MessageType.ACCEPT_ACK && msg.getType() != MessageType.ANY) {
+      MessageType type = msg.getType() == MessageType.FAST_ACCEPT ? MessageType.FAST_ACCEPTED
+              : MessageType.ACCEPTED;
+      Message accepted = new Message(type, this.info.getId(), response.getBallot(),
+              msg.getSlot(), response.getValue());
+      for (ProcessInfo learner : this.learners) {
+        this.transport.send(this.groupId, learner, accepted);
+      }
+    }
 
-    return switch (messageType) {
-      case "prepare" -> handlePrepare(proposalNum);
-      case "accept" -> handleAccept(senderId, proposalNum, value);
-      default -> throw new RuntimeException("Acceptor error: Unknown message type received");
-    };
+    return response;
   }
 
   /**
-   * Handles a Prepare message received by a proposer and prepares a response.
+   * Handles a Prepare message received by a proposer and prepares a response. The promise covers
+   * the given slot and every slot after it. The response carries the acceptor's promised proposal
+   * number along with everything it has accepted from the given slot onward. If the acceptor has
+   * compacted the given slot away, the response names the first slot it still holds instead, so
+   * the proposer knows to fetch the snapshot. A proposal number lower than the promised one is
+   * rejected.
    *
    * @param proposalNum the proposal number received from a proposer
+   * @param fromSlot the first log slot the Prepare message covers
    * @return the response to the proposer
    */
-  private String handlePrepare(double proposalNum) {
-    System.out.println("our value: " + this.acceptedValue);
-    if (proposalNum > this.minProposal) {
+  private Message handlePrepare(Ballot proposalNum, int fromSlot) {
+    if (proposalNum.compareTo(this.minProposal) < 0 || isLeasedToOther(proposalNum)) {
+      return reject(fromSlot);
+    }
+    if (proposalNum.compareTo(this.minProposal) > 0) {
       this.minProposal = proposalNum;
+      this.wal.append(WriteAheadLog.PROMISE, proposalNum, fromSlot, Message.NO_VALUE);
     }
+    grantLease(proposalNum);
 
-    String msg = Util.prepareMsg(this.info.getId(), "sent", "prepare_ack",
-            Util.charToStr(this.acceptedValue), this.acceptedProposal);
-    System.err.println(msg);
+    int firstSlot = Math.max(fromSlot, this.compactedThrough + 1);
+    Message msg = new Message(MessageType.PREPARE_ACK, this.info.getId(), this.minProposal,
+            firstSlot, Message.NO_VALUE,
+            new TreeMap<>(this.acceptedSlots.tailMap(firstSlot, true)));
+    EventLog.message(msg, "sent");
 
     return msg;
   }
 
   /**
-   * Handles an Accept message received by a proposer and prepares a response.
+   * Handles an Accept message received by a proposer and prepares a response. A slot that has
+   * been compacted away is already decided, so any value for it is rejected.
    *
    * @param senderId the ID of the proposer sending the Accept message
    * @param proposalNum the proposal number received from a proposer
+   * @param slot the log slot the value is proposed for
+   * @param value the value proposed
+   * @return the response to the proposer
+   */
+  private Message handleAccept(int senderId, Ballot proposalNum, int slot, byte[] value) {
+    if (!this.slotOwners.isEmpty() && proposalNum.getRound() == 0) {
+      return handleOwnerAccept(senderId, proposalNum, slot, value);
+    }
+    if (proposalNum.compareTo(this.minProposal) < 0 || isLeasedToOther(proposalNum)
+            || slot <= this.compactedThrough) {
+      return reject(slot);
+    }
+
+    this.minProposal = proposalNum;
+    this.acceptedSlots.put(slot, new ProposalValuePair(proposalNum, value));
+    this.wal.append(WriteAheadLog.ACCEPT, proposalNum, slot, value);
+
+    // print chosen value
+    EventLog.value(senderId, "chose", proposalNum, slot, value);
+
+    Message msg = new Message(MessageType.ACCEPT_ACK, this.info.getId(), this.minProposal, slot,
+            value);
+    EventLog.message(msg, "sent");
+
+    return msg;
+  }
+
+  /**
+   * Handles a value sent by the owner of a slot in Mencius mode and prepares a response. The
+   * owner's initial proposal number needs no promise, since no other proposer proposes in the
+   * owner's slots. Only the first value for a slot is accepted, and the response carries whichever
+   * value the acceptor holds, so two values can never both be chosen under the same proposal
+   * number. A value from a proposer that does not own the slot is rejected.
+   *
+   * @param senderId the ID of the proposer sending the value
+   * @param proposalNum the initial proposal number of the proposer
+   * @param slot the log slot the value is proposed for
+   * @param value the value proposed
    * @return the response to the proposer
    */
-  private String handleAccept(int senderId, double proposalNum, char value) {
-    if (proposalNum >= this.minProposal) {
+  private Message handleOwnerAccept(int senderId, Ballot proposalNum, int slot, byte[] value) {
+    int owner = this.slotOwners.get(slot % this.slotOwners.size());
+    if (proposalNum.getProposerId() != owner || slot <= this.compactedThrough) {
+      return reject(slot);
+    }
+
+    ProposalValuePair current = this.acceptedSlots.get(slot);
+    if (current == null) {
+      current = new ProposalValuePair(proposalNum, value);
+      this.acceptedSlots.put(slot, current);
+      this.wal.append(WriteAheadLog.ACCEPT, proposalNum, slot, value);
+
+      // print chosen value
+      EventLog.value(senderId, "chose", proposalNum, slot, value);
+    }
+
+    Message msg = new Message(MessageType.ACCEPT_ACK, this.info.getId(),
+            current.getProposalNum(), slot, current.getValue());
+    EventLog.message(msg, "sent");
+
+    return msg;
+  }
+
+  /**
+   * Handles the opening of a fast round by a leader and prepares a response. Until the acceptor
+   * promises a higher proposal number, it accepts values sent straight to it by any proposer for
+   * the given slot and every slot after it, under the leader's proposal number.
+   *
+   * @param proposalNum the proposal number of the fast round
+   * @param fromSlot the first log slot of the fast round
+   * @return the response to the leader
+   */
+  private Message handleAny(Ballot proposalNum, int fromSlot) {
+    if (proposalNum.compareTo(this.minProposal) < 0 || isLeasedToOther(proposalNum)) {
+      return reject(fromSlot);
+    }
+    if (proposalNum.compareTo(this.minProposal) > 0) {
       this.minProposal = proposalNum;
-      this.acceptedProposal = proposalNum;
-      this.acceptedValue = value;
+      this.wal.append(WriteAheadLog.PROMISE, proposalNum, fromSlot, Message.NO_VALUE);
+    }
+    this.fastBallot = proposalNum;
+    this.fastFrom = fromSlot;
+
+    Message msg = new Message(MessageType.ACCEPT_ACK, this.info.getId(), proposalNum, fromSlot,
+            Message.NO_VALUE);
+    EventLog.message(msg, "sent");
+
+    return msg;
+  }
+
+  /**
+   * Handles a value sent straight to the acceptor in a fast round and prepares a response. Only
+   * the first value for a slot is accepted under the fast round's proposal number, and the
+   * response carries whichever value the acceptor accepted, so the proposer can tell whether it
+   * collided with another proposer. The value is rejected if no fast round is open for the slot.
+   *
+   * @param senderId the ID of the proposer sending the value
+   * @param slot the log slot the value is proposed for
+   * @param value the value proposed
+   * @return the response to the proposer
+   */
+  private Message handleFastAccept(int senderId, int slot, byte[] value) {
+    if (this.fastBallot == null || !this.fastBallot.equals(this.minProposal)
+            || slot < this.fastFrom || slot <= this.compactedThrough) {
+      return reject(slot);
+    }
+
+    ProposalValuePair current = this.acceptedSlots.get(slot);
+    if (current == null || current.getProposalNum().compareTo(this.fastBallot) < 0) {
+      current = new ProposalValuePair(this.fastBallot, value);
+      this.acceptedSlots.put(slot, current);
+      this.wal.append(WriteAheadLog.ACCEPT, this.fastBallot, slot, value);
 
       // print chosen value
-      System.err.println(Util.prepareMsg(senderId, "chose", "chose",
-              Util.charToStr(this.acceptedValue), this.acceptedProposal));
+      EventLog.value(senderId, "chose", this.fastBallot, slot, value);
     }
 
-    String msg = Util.prepareMsg(this.info.getId(), "sent", "accept_ack",
-            Util.charToStr(this.acceptedValue), this.acceptedProposal);
-    System.err.println(msg);
+    Message msg = new Message(MessageType.ACCEPT_ACK, this.info.getId(), this.fastBallot, slot,
+            current.getValue());
+    EventLog.message(msg, "sent");
+
+    return msg;
+  }
+
+  /**
+   * Handles a Pre-Accept of an EPaxos instance and prepares a response. The acceptor adds every
+   * instance it knows that interferes with the proposed one to its dependencies, raises its
+   * sequence number above theirs, and records the instance so later ones depend on it.
+   *
+   * @param proposalNum the proposal number of the instance's leader
+   * @param instanceNum the leader's instance number
+   * @param proposed the attributes proposed by the leader
+   * @return the response to the leader, carrying the attributes in the acceptor's view
+   */
+  private Message handlePreAccept(Ballot proposalNum, int instanceNum, EpaxosInstance proposed) {
+    EpaxosInstance.Id id = new EpaxosInstance.Id(proposalNum.getProposerId(), instanceNum);
+    EpaxosInstance attributes = this.conflicts.attributes(id, proposed, false);
+    this.conflicts.record(id, attributes);
+    this.wal.append(WriteAheadLog.INSTANCE, proposalNum, instanceNum, attributes.encode());
+
+    Message msg = new Message(MessageType.PRE_ACCEPT_ACK, this.info.getId(), proposalNum,
+            instanceNum, attributes.encode());
+    EventLog.message(msg, "sent");
+
+    return msg;
+  }
+
+  /**
+   * Handles the final attributes of an EPaxos instance, sent by its leader after the
+   * Pre-Accepts disagreed, and prepares a response.
+   *
+   * @param proposalNum the proposal number of the instance's leader
+   * @param instanceNum the leader's instance number
+   * @param accepted the attributes the leader settled on
+   * @return the response to the leader
+   */
+  private Message handleInstanceAccept(Ballot proposalNum, int instanceNum,
+                                       EpaxosInstance accepted) {
+    EpaxosInstance.Id id = new EpaxosInstance.Id(proposalNum.getProposerId(), instanceNum);
+    this.conflicts.record(id, accepted);
+    this.wal.append(WriteAheadLog.INSTANCE, proposalNum, instanceNum, accepted.encode());
+
+    Message msg = new Message(MessageType.INSTANCE_ACCEPT_ACK, this.info.getId(), proposalNum,
+            instanceNum, accepted.encode());
+    EventLog.message(msg, "sent");
+
+    return msg;
+  }
+
+  /**
+   * Handles a chunk of a snapshot streamed by a proposer and prepares a response. Chunks are
+   * written to a temporary file of the sender's, and once the last one has arrived the file
+   * replaces the stored snapshot and the log is compacted through the slot the snapshot covers. A
+   * snapshot that covers no more than the stored one is dropped.
+   *
+   * @param senderId the ID of the proposer streaming the snapshot
+   * @param slot the last log slot the snapshot covers
+   * @param chunk the chunk
+   * @return the response to the proposer
+   * @throws RuntimeException if the snapshot cannot be written
+   */
+  private Message handleSnapshot(int senderId, int slot, SnapshotChunk chunk)
+          throws RuntimeException {
+    Path temp = this.snapshotPath.resolveSibling(this.snapshotPath.getFileName() + "." +
+            senderId + ".tmp");
+    try {
+      try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE)) {
+        if (chunk.getOffset() == 0) {
+          out.truncate(0);
+        }
+        out.write(ByteBuffer.wrap(chunk.getData()), chunk.getOffset());
+        if (chunk.isLast()) {
+          out.force(false);
+        }
+      }
+
+      if (chunk.isLast()) {
+        synchronized (this.snapshotLock) {
+          if (slot > this.compactedThrough) {
+            Files.move(temp, this.snapshotPath, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            synchronized (this) {
+              compact(slot);
+            }
+          } else {
+            Files.delete(temp);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Acceptor error: Unable to store snapshot: " + e.getMessage());
+    }
+
+    Message msg = new Message(MessageType.SNAPSHOT_ACK, this.info.getId(), Ballot.ZERO, slot,
+            Message.NO_VALUE);
+    EventLog.message(msg, "sent");
+
+    return msg;
+  }
+
+  /**
+   * Handles a proposer's request for a chunk of the stored snapshot and prepares a response
+   * carrying the chunk at the given offset, along with the slot the snapshot covers, so the
+   * proposer can tell if the snapshot was replaced between two of its requests. The request is
+   * rejected if no snapshot is stored.
+   *
+   * @param offset the offset of the chunk in the snapshot
+   * @return the response to the proposer
+   * @throws RuntimeException if the snapshot cannot be read
+   */
+  private Message handleSnapshotRequest(long offset) throws RuntimeException {
+    int slot;
+    ByteBuffer data = ByteBuffer.allocate(SnapshotChunk.MAX_DATA_SIZE);
+    boolean last;
+    synchronized (this.snapshotLock) {
+      slot = this.compactedThrough;
+      if (slot < 0) {
+        Message nack = new Message(MessageType.NACK, this.info.getId(), Ballot.ZERO, slot,
+                Message.NO_VALUE);
+        EventLog.message(nack, "sent");
+        return nack;
+      }
+      try (FileChannel in = FileChannel.open(this.snapshotPath, StandardOpenOption.READ)) {
+        int read = 0;
+        while (data.hasRemaining() && read >= 0) {
+          read = in.read(data, offset + data.position());
+        }
+        last = offset + data.position() >= in.size();
+      } catch (IOException e) {
+        throw new RuntimeException("Acceptor error: Unable to read snapshot: " + e.getMessage());
+      }
+    }
+
+    byte[] bytes = Arrays.copyOf(data.array(), data.position());
+    Message msg = new Message(MessageType.SNAPSHOT, this.info.getId(), Ballot.ZERO, slot,
+            new SnapshotChunk(offset, last, bytes).encode());
+    EventLog.message(msg, "sent");
+
+    return msg;
+  }
+
+  /**
+   * Forgets every slot up to the given one, which a stored snapshot covers, and rewrites the log
+   * with only what is still needed: the slot compacted through, the promise, and the values
+   * accepted in later slots. Only the values of later slots are rewritten, so compacting often
+   * keeps the rewrite short.
+   *
+   * @param throughSlot the last log slot the snapshot covers
+   */
+  private void compact(int throughSlot) {
+    this.compactedThrough = throughSlot;
+    this.acceptedSlots.headMap(throughSlot, true).clear();
+
+    List<WriteAheadLog.Entry> live = new ArrayList<>();
+    live.add(new WriteAheadLog.Entry(WriteAheadLog.COMPACT, Ballot.ZERO, throughSlot,
+            Message.NO_VALUE));
+    live.add(new WriteAheadLog.Entry(WriteAheadLog.PROMISE, this.minProposal, throughSlot + 1,
+            Message.NO_VALUE));
+    this.acceptedSlots.forEach((slot, pair) -> live.add(new WriteAheadLog.Entry(
+            WriteAheadLog.ACCEPT, pair.getProposalNum(), slot, pair.getValue())));
+    this.wal.compact(live);
+
+    System.err.println("Acceptor " + this.info.getId() + " compacted its log through slot " +
+            throughSlot + ", keeping " + this.acceptedSlots.size() + " accepted slots");
+  }
+
+  /**
+   * Reads the last log slot covered by the stored snapshot.
+   *
+   * @return the slot, or -1 if no snapshot is stored
+   * @throws RuntimeException if the snapshot cannot be read
+   */
+  private int readSnapshotSlot() throws RuntimeException {
+    if (!Files.exists(this.snapshotPath)) {
+      return -1;
+    }
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(this.snapshotPath))) {
+      return in.readInt();
+    } catch (IOException e) {
+      throw new RuntimeException("Acceptor error: Unable to read snapshot: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Checks whether a lease the acceptor granted is still running and belongs to a proposer other
+   * than the owner of the given proposal number. The lease holder itself may always move on to a
+   * higher proposal number.
+   *
+   * @param proposalNum the proposal number received from a proposer
+   * @return true if another proposer holds a lease else false
+   */
+  private boolean isLeasedToOther(Ballot proposalNum) {
+    return this.leaseNanos > 0 && System.nanoTime() - this.leaseExpiry < 0
+            && (this.leaseHolder == null
+            || this.leaseHolder.getProposerId() != proposalNum.getProposerId());
+  }
+
+  /**
+   * Grants a lease to the owner of a promised proposal number, or renews it. The lease runs from
+   * the moment the promise is made, which is after the proposer sent its Prepare message, so the
+   * acceptor's lease never ends before the proposer's.
+   *
+   * @param proposalNum the promised proposal number
+   */
+  private void grantLease(Ballot proposalNum) {
+    if (this.leaseNanos > 0) {
+      this.leaseHolder = proposalNum;
+      this.leaseExpiry = System.nanoTime() + this.leaseNanos;
+    }
+  }
+
+  /**
+   * Prepares the rejection of a Prepare or Accept message whose proposal number is lower than the
+   * promised one. The rejection carries the promised proposal number, so the proposer can jump
+   * straight past it.
+   *
+   * @param slot the log slot the rejected message refers to
+   * @return the response to the proposer
+   */
+  private Message reject(int slot) {
+    Message msg = new Message(MessageType.NACK, this.info.getId(), this.minProposal, slot,
+            Message.NO_VALUE);
+    EventLog.message(msg, "sent");
 
     return msg;
   }
@@ -0,0 +1,205 @@
+package main.java;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long-lived connection from a proposer to one acceptor. Every message is framed with a request
+ * ID that the acceptor copies into its response, so many messages can be in flight on the same
+ * TCP stream at once and responses may come back in any order. A reader thread matches each
+ * response to its request. When the connection breaks, every request in flight fails and the
+ * connection is reestablished by the next {@link #connect()}. Failed connection attempts are
+ * retried with an exponential backoff, and requests sent while backing off fail right away. A
+ * request that gets no response within its deadline fails on its own, so an acceptor that is
+ * connected but stuck cannot hold up whoever waits on it.
+ */
+public class AcceptorConnection {
+  private static final int CONNECT_TIMEOUT_MS = 1000;
+  private static final long MIN_RETRY_DELAY_MS = 50;
+  private static final long MAX_RETRY_DELAY_MS = 2000;
+  private static final long REQUEST_TIMEOUT_MS = 5000;
+
+  private final ProcessInfo acceptor;
+  private final Map<Long, CompletableFuture<Message>> pending;
+  private final AtomicLong nextRequestId;
+  private final BufferPool buffers;
+  private SocketChannel channel;
+  private volatile long lastResponseTime;
+  private long retryTime;
+  private long retryDelay;
+
+  /**
+   * Constructs a new AcceptorConnection object. The connection is not opened until
+   * {@link #connect()} is called.
+   *
+   * @param acceptor the acceptor to connect to
+   * @param buffers the pool of buffers to encode and decode frames with
+   */
+  public AcceptorConnection(ProcessInfo acceptor, BufferPool buffers) {
+    this.acceptor = acceptor;
+    this.pending = new ConcurrentHashMap<>();
+    this.nextRequestId = new AtomicLong(0);
+    this.buffers = buffers;
+    this.channel = null;
+    this.lastResponseTime = System.currentTimeMillis();
+    this.retryTime = 0;
+    this.retryDelay = MIN_RETRY_DELAY_MS;
+  }
+
+  /**
+   * Opens the connection if it is not open already and starts the thread reading its responses.
+   *
+   * @throws IOException if the acceptor cannot be reached or the last attempt failed too recently
+   */
+  public synchronized void connect() throws IOException {
+    if (isConnected()) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    if (now < this.retryTime) {
+      throw new IOException("Waiting to reconnect to " + this.acceptor.getName());
+    }
+
+    SocketChannel newChannel = SocketChannel.open();
+    try {
+      newChannel.socket().setTcpNoDelay(true);
+      newChannel.socket().connect(new InetSocketAddress(this.acceptor.getName(), Util.PORT),
+              CONNECT_TIMEOUT_MS);
+    } catch (IOException e) {
+      newChannel.close();
+      this.retryTime = now + this.retryDelay;
+      this.retryDelay = Math.min(this.retryDelay * 2, MAX_RETRY_DELAY_MS);
+      throw e;
+    }
+
+    this.retryDelay = MIN_RETRY_DELAY_MS;
+    this.channel = newChannel;
+    this.lastResponseTime = System.currentTimeMillis();
+    new Thread(() -> readResponses(newChannel)).start();
+  }
+
+  /**
+   * Checks whether the connection is open.
+   *
+   * @return true if the connection is open else false
+   */
+  public synchronized boolean isConnected() {
+    return this.channel != null && this.channel.isOpen();
+  }
+
+  /**
+   * Sends a message to the acceptor, connecting first if needed.
+   *
+   * @param msg the message to send
+   * @return the future of the acceptor's response, which fails if the connection breaks or the
+   *         deadline passes first
+   */
+  public CompletableFuture<Message> send(Message msg) {
+    long requestId = this.nextRequestId.incrementAndGet();
+    CompletableFuture<Message> response = new CompletableFuture<>();
+    this.pending.put(requestId, response);
+    response.orTimeout(REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .whenComplete((ack, error) -> this.pending.remove(requestId, response));
+
+    synchronized (this) {
+      try {
+        connect();
+        MessageCodec.writeFrame(this.channel, requestId, msg, this.buffers);
+      } catch (IOException e) {
+        close(e);
+      }
+    }
+
+    return response;
+  }
+
+  /**
+   * Gets the time the last response was received, or the connection was opened if there has not
+   * been a response since.
+   *
+   * @return the time in milliseconds
+   */
+  public long getLastResponseTime() {
+    return this.lastResponseTime;
+  }
+
+  /**
+   * Gets the acceptor at the other end of the connection.
+   *
+   * @return the acceptor
+   */
+  public ProcessInfo getAcceptor() {
+    return this.acceptor;
+  }
+
+  /**
+   * Closes the connection and fails every request still waiting for a response.
+   *
+   * @param cause the reason the connection is closed
+   */
+  public void close(Throwable cause) {
+    synchronized (this) {
+      if (this.channel != null) {
+        try {
+          this.channel.close();
+        } catch (IOException ignored) {
+          // the connection is being discarded anyway
+        }
+        this.channel = null;
+      }
+    }
+
+    RuntimeException error = new RuntimeException("AcceptorConnection error: Connection to " +
+            this.acceptor.getName() + " closed: " + cause.getMessage());
+    this.pending.keySet().forEach(requestId -> {
+      CompletableFuture<Message> response = this.pending.remove(requestId);
+      if (response != null) {
+        response.completeExceptionally(error);
+      }
+    });
+  }
+
+  /**
+   * Reads responses from the acceptor and completes the request each one belongs to, until the
+   * connection breaks.
+   *
+   * @param readChannel the channel being read
+   */
+  private void readResponses(SocketChannel readChannel) {
+    ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+
+    try {
+      while (true) {
+        ByteBuffer frame = MessageCodec.readFrame(readChannel, lengthBuffer, this.buffers);
+        long requestId = frame.getLong();
+        Message msg;
+        try {
+          msg = MessageCodec.decode(frame);
+        } finally {
+          this.buffers.release(frame);
+        }
+        this.lastResponseTime = System.currentTimeMillis();
+
+        CompletableFuture<Message> response = this.pending.remove(requestId);
+        if (response != null) {
+          response.complete(msg);
+        }
+      }
+    } catch (IOException e) {
+      synchronized (this) {
+        if (this.channel != readChannel) {
+          return; // the connection was already replaced
+        }
+      }
+      close(e);
+    }
+  }
+}
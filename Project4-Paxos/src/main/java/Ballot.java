@@ -0,0 +1,87 @@
+package main.java;
+
+/**
+ * A proposal number, made up of a round and the ID of the proposer that owns it. Ballots are
+ * ordered by round first and proposer ID second, so two proposers never share a ballot.
+ */
+public final class Ballot implements Comparable<Ballot> {
+  public static final Ballot ZERO = new Ballot(0, 0);
+
+  private final int round;
+  private final int proposerId;
+
+  /**
+   * Constructs a new Ballot object.
+   *
+   * @param round the round of the ballot
+   * @param proposerId the ID of the proposer that owns the ballot
+   */
+  public Ballot(int round, int proposerId) {
+    this.round = round;
+    this.proposerId = proposerId;
+  }
+
+  /**
+   * Gets the round of the ballot.
+   *
+   * @return the round
+   */
+  public int getRound() {
+    return this.round;
+  }
+
+  /**
+   * Gets the ID of the proposer that owns the ballot.
+   *
+   * @return the proposer ID
+   */
+  public int getProposerId() {
+    return this.proposerId;
+  }
+
+  /**
+   * Gets the next ballot of the same proposer.
+   *
+   * @return a ballot one round higher
+   */
+  public Ballot next() {
+    return new Ballot(this.round + 1, this.proposerId);
+  }
+
+  /**
+   * Gets the lowest ballot of the same proposer that is higher than both this ballot and the given
+   * one, so a proposer that was rejected can jump straight past the ballot that beat it.
+   *
+   * @param other the ballot to get past
+   * @return a ballot in a round higher than both ballots
+   */
+  public Ballot nextAbove(Ballot other) {
+    return new Ballot(Math.max(this.round, other.round) + 1, this.proposerId);
+  }
+
+  @Override
+  public int compareTo(Ballot other) {
+    if (this.round != other.round) {
+      return Integer.compare(this.round, other.round);
+    }
+    return Integer.compare(this.proposerId, other.proposerId);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof Ballot other)) {
+      return false;
+    }
+    return this.round == other.round && this.proposerId == other.proposerId;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * this.round + this.proposerId;
+  }
+
+  @Override
+  public String toString() {
+    return this.round + "." + this.proposerId;
+  }
+}
@@ -0,0 +1,106 @@
+package main.java;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A batch of client commands decided together in a single log slot. A batch is encoded as the
+ * number of commands followed by the length and bytes of each command. An empty batch is a no-op,
+ * and so is an empty value, which is what a slot holds when nothing has been accepted for it.
+ */
+public final class Batch {
+  public static final Batch NO_OP = new Batch(Collections.emptyList());
+
+  private final List<byte[]> commands;
+
+  /**
+   * Constructs a new Batch object.
+   *
+   * @param commands the commands of the batch, in the order they are applied
+   */
+  public Batch(List<byte[]> commands) {
+    this.commands = commands;
+  }
+
+  /**
+   * Gets the commands of the batch.
+   *
+   * @return the commands, in the order they are applied
+   */
+  public List<byte[]> getCommands() {
+    return this.commands;
+  }
+
+  /**
+   * Gets the number of commands in the batch.
+   *
+   * @return the number of commands
+   */
+  public int size() {
+    return this.commands.size();
+  }
+
+  /**
+   * Encodes the batch into the value of a log slot.
+   *
+   * @return the encoded batch
+   */
+  public byte[] encode() {
+    if (this.commands.isEmpty()) {
+      return new byte[0];
+    }
+
+    int size = 4;
+    for (byte[] command : this.commands) {
+      size += 4 + command.length;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(size).putInt(this.commands.size());
+    for (byte[] command : this.commands) {
+      buffer.putInt(command.length).put(command);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Decodes the value of a log slot into a batch.
+   *
+   * @param value the encoded batch
+   * @return the batch
+   */
+  public static Batch decode(byte[] value) {
+    if (value.length == 0) {
+      return NO_OP;
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(value);
+    int count = buffer.getInt();
+    List<byte[]> commands = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      byte[] command = new byte[buffer.getInt()];
+      buffer.get(command);
+      commands.add(command);
+    }
+    return new Batch(commands);
+  }
+
+  @Override
+  public String toString() {
+    if (this.commands.isEmpty()) {
+      return "n/a";
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (byte[] command : this.commands) {
+      if (!sb.isEmpty()) {
+        sb.append(',');
+      }
+      KvCommand kvCommand = KvCommand.decode(command);
+      sb.append(kvCommand != null ? kvCommand : new String(command, StandardCharsets.UTF_8));
+    }
+    return sb.toString();
+  }
+}
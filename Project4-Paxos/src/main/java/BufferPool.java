@@ -0,0 +1,55 @@
+package main.java;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A pool of equally sized byte buffers, so that encoding and decoding messages does not allocate
+ * a new buffer for every message. A request for more than the pooled size gets a fresh buffer
+ * that is simply dropped when it is released.
+ */
+public class BufferPool {
+  private final int bufferSize;
+  private final Queue<ByteBuffer> buffers;
+
+  /**
+   * Constructs a new BufferPool object.
+   *
+   * @param bufferSize the size of each pooled buffer in bytes
+   */
+  public BufferPool(int bufferSize) {
+    this.bufferSize = bufferSize;
+    this.buffers = new ConcurrentLinkedQueue<>();
+  }
+
+  /**
+   * Takes a cleared buffer of at least the given size out of the pool.
+   *
+   * @param size the minimum size of the buffer in bytes
+   * @return the buffer
+   */
+  public ByteBuffer acquire(int size) {
+    if (size > this.bufferSize) {
+      return ByteBuffer.allocate(size);
+    }
+
+    ByteBuffer buffer = this.buffers.poll();
+    if (buffer == null) {
+      return ByteBuffer.allocate(this.bufferSize);
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer to the pool once it is no longer used.
+   *
+   * @param buffer the buffer
+   */
+  public void release(ByteBuffer buffer) {
+    if (buffer.capacity() == this.bufferSize) {
+      this.buffers.offer(buffer);
+    }
+  }
+}
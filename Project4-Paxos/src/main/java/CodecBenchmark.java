@@ -0,0 +1,224 @@
+package main.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Micro-benchmark comparing the binary {@link MessageCodec} with the string protocol it replaced,
+ * where messages were built by concatenation, sent with writeUTF and parsed back with substring,
+ * split and Double.parseDouble. Each codec encodes and decodes an Accept message and a Prepare
+ * Acknowledgement carrying several accepted entries. Every case is warmed up before it is
+ * measured, and the average time per round trip through the codec is printed.
+ */
+public class CodecBenchmark {
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_ROUNDS = 5;
+  private static final long ROUND_NANOS = 1_000_000_000L;
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args unused
+   */
+  public static void main(String[] args) {
+    Map<Integer, ProposalValuePair> entries = new TreeMap<>();
+    for (int slot = 0; slot < 8; slot++) {
+      entries.put(slot, new ProposalValuePair(new Ballot(3, 1), command((char) ('A' + slot))));
+    }
+    Message accept = new Message(MessageType.ACCEPT, 1, new Ballot(3, 1), 42, command('X'));
+    Message prepareAck = new Message(MessageType.PREPARE_ACK, 2, new Ballot(3, 1), 0,
+            Message.NO_VALUE, entries);
+
+    BufferPool pool = new BufferPool(4096);
+    run("string accept", () -> legacyRoundTrip(accept, 3.1));
+    run("binary accept", () -> binaryRoundTrip(accept, pool));
+    run("string prepare_ack", () -> legacyRoundTrip(prepareAck, 3.1));
+    run("binary prepare_ack", () -> binaryRoundTrip(prepareAck, pool));
+  }
+
+  /**
+   * Encodes a batch holding a single one-character command.
+   *
+   * @param c the command
+   * @return the encoded batch
+   */
+  private static byte[] command(char c) {
+    return new Batch(List.of(String.valueOf(c).getBytes(StandardCharsets.UTF_8))).encode();
+  }
+
+  /**
+   * Warms up and then measures one case of the benchmark and prints its results.
+   *
+   * @param label the name of the case
+   * @param operation one round trip through a codec, returning a value derived from the result
+   */
+  private static void run(String label, LongSupplier operation) {
+    long sink = 0;
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      sink += measureRound(operation)[1];
+    }
+
+    double[] results = new double[MEASURED_ROUNDS];
+    double mean = 0;
+    for (int i = 0; i < MEASURED_ROUNDS; i++) {
+      long[] round = measureRound(operation);
+      results[i] = (double) ROUND_NANOS / round[0];
+      mean += results[i] / MEASURED_ROUNDS;
+      sink += round[1];
+    }
+
+    double variance = 0;
+    for (double result : results) {
+      variance += (result - mean) * (result - mean) / MEASURED_ROUNDS;
+    }
+    System.out.printf("%-20s %9.1f ns/op +- %6.1f (sink %d)%n", label, mean,
+            Math.sqrt(variance), sink & 0xF);
+  }
+
+  /**
+   * Runs an operation repeatedly for one round.
+   *
+   * @param operation the operation
+   * @return the number of operations run and the sum of their results
+   */
+  private static long[] measureRound(LongSupplier operation) {
+    long ops = 0;
+    long sink = 0;
+    long end = System.nanoTime() + ROUND_NANOS;
+    while (System.nanoTime() < end) {
+      for (int i = 0; i < 1000; i++) {
+        sink += operation.getAsLong();
+      }
+      ops += 1000;
+    }
+    return new long[] {ops, sink};
+  }
+
+  /**
+   * Encodes and decodes a message with the binary codec.
+   *
+   * @param msg the message
+   * @param pool the pool of encoding buffers
+   * @return a value derived from the decoded message
+   */
+  private static long binaryRoundTrip(Message msg, BufferPool pool) {
+    ByteBuffer buffer = pool.acquire(MessageCodec.frameSize(msg));
+    MessageCodec.encode(7, msg, buffer);
+    buffer.flip();
+    buffer.getInt();
+    long requestId = buffer.getLong();
+    Message decoded;
+    try {
+      decoded = MessageCodec.decode(buffer);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    pool.release(buffer);
+    return requestId + decoded.getSlot() + decoded.getValue().length + decoded.getEntries().size();
+  }
+
+  /**
+   * Encodes and decodes a message with the replaced string protocol, where proposal numbers were
+   * doubles.
+   *
+   * @param msg the message
+   * @param proposalNum the proposal number of the message and its entries as a double
+   * @return a value derived from the decoded message
+   */
+  private static long legacyRoundTrip(Message msg, double proposalNum) {
+    String value = msg.getType() == MessageType.PREPARE_ACK
+            ? legacyEncodeEntries(msg.getEntries(), proposalNum)
+            : Util.formatValue(msg.getValue());
+    String encoded = "{\"peer_id\":" + msg.getSenderId() + ", \"action\":\"sent" +
+            "\", \"message_type\":\"" + msg.getType().getLabel() + "\", \"message_value\":\"" +
+            value + "\", proposal_number\":" + proposalNum + ", \"slot\":" + msg.getSlot() + "}";
+
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeLong(7);
+      out.writeUTF(encoded);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+      long requestId = in.readLong();
+      String[] msgRec = legacyUnpackMsg(in.readUTF());
+
+      int senderId = Integer.parseInt(msgRec[0]);
+      double decodedProposal = Double.parseDouble(msgRec[4]);
+      int slot = Integer.parseInt(msgRec[5]);
+      int entries = msgRec[2].equals("prepare_ack") ? legacyDecodeEntries(msgRec[3]).size() : 0;
+      return requestId + senderId + (long) decodedProposal + slot + entries;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * The replaced encoding of accepted entries.
+   *
+   * @param entries the accepted value of each slot
+   * @param proposalNum the proposal number of every entry as a double
+   * @return the encoded entries
+   */
+  private static String legacyEncodeEntries(Map<Integer, ProposalValuePair> entries,
+                                            double proposalNum) {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<Integer, ProposalValuePair> entry : entries.entrySet()) {
+      if (!sb.isEmpty()) {
+        sb.append(';');
+      }
+      sb.append(entry.getKey()).append('=').append(proposalNum)
+              .append('/').append(Util.formatValue(entry.getValue().getValue()));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * The replaced decoding of accepted entries.
+   *
+   * @param s the encoded entries
+   * @return the accepted proposal number and value of each slot
+   */
+  private static Map<Integer, Double> legacyDecodeEntries(String s) {
+    Map<Integer, Double> entries = new TreeMap<>();
+    int i = 0;
+    while (i < s.length()) {
+      int eq = s.indexOf('=', i);
+      int slash = s.indexOf('/', eq);
+      entries.put(Integer.parseInt(s.substring(i, eq)),
+              Double.parseDouble(s.substring(eq + 1, slash)) + s.charAt(slash + 1));
+      i = slash + 3;
+    }
+    return entries;
+  }
+
+  /**
+   * The replaced parser of string messages.
+   *
+   * @param msg the string message
+   * @return key components of the string message
+   */
+  private static String[] legacyUnpackMsg(String msg) {
+    String[] parts = msg.substring(1, msg.length() - 1).split(", ");
+    String[] unpackedMsg = new String[parts.length];
+
+    for (int i = 0; i < parts.length; i++) {
+      String value = parts[i].split(":")[1];
+      if (value.startsWith("\"")) {
+        value = value.substring(1, value.length() - 1);
+      }
+      unpackedMsg[i] = value;
+    }
+
+    return unpackedMsg;
+  }
+}
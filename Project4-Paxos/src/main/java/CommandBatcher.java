@@ -0,0 +1,152 @@
+package main.java;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs pending client commands into batches so that many commands share one Accept message and
+ * one log slot. A batch is handed out as soon as it holds the maximum number of commands, or once
+ * the oldest command in it has waited for the linger time, whichever comes first. The batcher
+ * keeps track of the batch sizes it achieves.
+ */
+public class CommandBatcher {
+  private final int maxBatchSize;
+  private final long lingerNanos;
+  private final Deque<byte[]> pending;
+  private long oldestArrival;
+  private long batches;
+  private long commands;
+  private int largestBatch;
+
+  /**
+   * Constructs a new CommandBatcher object.
+   *
+   * @param maxBatchSize the maximum number of commands in a batch
+   * @param lingerMs how long the oldest command waits for more commands to join its batch
+   */
+  public CommandBatcher(int maxBatchSize, long lingerMs) {
+    this.maxBatchSize = maxBatchSize;
+    this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+    this.pending = new ArrayDeque<>();
+    this.batches = 0;
+    this.commands = 0;
+    this.largestBatch = 0;
+  }
+
+  /**
+   * Adds a command to be batched.
+   *
+   * @param command the command
+   */
+  public synchronized void add(byte[] command) {
+    if (this.pending.isEmpty()) {
+      this.oldestArrival = System.nanoTime();
+    }
+    this.pending.addLast(command);
+    notifyAll();
+  }
+
+  /**
+   * Puts the commands of a batch that was not decided back at the front of the queue, so they go
+   * into the next batch ahead of any newer commands.
+   *
+   * @param batch the batch
+   */
+  public synchronized void requeue(Batch batch) {
+    List<byte[]> batchCommands = batch.getCommands();
+    for (int i = batchCommands.size() - 1; i >= 0; i--) {
+      this.pending.addFirst(batchCommands.get(i));
+    }
+    this.oldestArrival = System.nanoTime() - this.lingerNanos;
+    notifyAll();
+  }
+
+  /**
+   * Blocks until a batch is ready and takes it out of the queue.
+   *
+   * @return the next batch
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public synchronized Batch nextBatch() throws InterruptedException {
+    while (true) {
+      if (this.pending.isEmpty()) {
+        wait();
+        continue;
+      }
+
+      long remaining = lingerRemaining();
+      if (remaining <= 0) {
+        return takeBatch();
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+  }
+
+  /**
+   * Takes the next batch out of the queue if one is ready, without waiting.
+   *
+   * @return the next batch, or null if no batch is ready yet
+   */
+  public synchronized Batch pollBatch() {
+    if (this.pending.isEmpty() || lingerRemaining() > 0) {
+      return null;
+    }
+    return takeBatch();
+  }
+
+  /**
+   * Gets how long the pending commands may still wait before they have to go out. A full batch
+   * does not wait at all.
+   *
+   * @return the remaining linger time in nanoseconds, or zero or less if a batch is ready
+   */
+  private long lingerRemaining() {
+    if (this.pending.size() >= this.maxBatchSize) {
+      return 0;
+    }
+    return this.oldestArrival + this.lingerNanos - System.nanoTime();
+  }
+
+  /**
+   * Takes up to the maximum batch size of pending commands out of the queue as a batch.
+   *
+   * @return the batch
+   */
+  private Batch takeBatch() {
+    int size = Math.min(this.pending.size(), this.maxBatchSize);
+    List<byte[]> batchCommands = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      batchCommands.add(this.pending.pollFirst());
+    }
+    // commands left behind have waited at least as long as this batch, so they go out next
+    this.oldestArrival = System.nanoTime() - this.lingerNanos;
+
+    this.batches++;
+    this.commands += size;
+    this.largestBatch = Math.max(this.largestBatch, size);
+    return new Batch(batchCommands);
+  }
+
+  /**
+   * Gets the number of batches handed out so far.
+   *
+   * @return the number of batches
+   */
+  public synchronized long getBatchCount() {
+    return this.batches;
+  }
+
+  /**
+   * Describes the batch sizes achieved so far.
+   *
+   * @return the number of batches, and the average and largest number of commands per batch
+   */
+  public synchronized String report() {
+    double average = this.batches == 0 ? 0 : (double) this.commands / this.batches;
+    return String.format("%d batches, %.1f commands per batch on average, %d at most",
+            this.batches, average, this.largestBatch);
+  }
+}
@@ -0,0 +1,508 @@
+package main.java;
+
+/**
+ * The settings of a process, taken from the command line arguments. Every setting other than the
+ * hostsfile has a default.
+ */
+public class Config {
+  private String hostsfile;
+  private String values;
+  private int delay;
+  private String dataDir;
+  private int batchSize;
+  private long lingerMs;
+  private int window;
+  private String serverModel;
+  private int prepareQuorum;
+  private int acceptQuorum;
+  private long thriftyTimeoutMs;
+  private double hedgePercentile;
+  private boolean fastPaxos;
+  private long leaseMs;
+  private String kvStore;
+  private int snapshotInterval;
+  private int groups;
+  private boolean mencius;
+  private boolean epaxos;
+  private String logFile;
+  private String logLevel;
+  private int logSample;
+  private int metricsPort;
+  private long metricsIntervalMs;
+
+  /**
+   * Constructs a new Config object with the default settings.
+   */
+  public Config() {
+    this.hostsfile = null;
+    this.values = null;
+    this.delay = 0;
+    this.dataDir = ".";
+    this.batchSize = 64;
+    this.lingerMs = 2;
+    this.window = 8;
+    this.serverModel = "nio";
+    this.prepareQuorum = 0;
+    this.acceptQuorum = 0;
+    this.thriftyTimeoutMs = 0;
+    this.hedgePercentile = 0;
+    this.fastPaxos = false;
+    this.leaseMs = 0;
+    this.kvStore = null;
+    this.snapshotInterval = 0;
+    this.groups = 1;
+    this.mencius = false;
+    this.epaxos = false;
+    this.logFile = null;
+    this.logLevel = "debug";
+    this.logSample = 1;
+    this.metricsPort = 0;
+    this.metricsIntervalMs = 0;
+  }
+
+  /**
+   * Gets the path to the file containing information on all processes.
+   *
+   * @return the path to the hostsfile
+   */
+  public String getHostsfile() {
+    return this.hostsfile;
+  }
+
+  /**
+   * Sets the path to the file containing information on all processes.
+   *
+   * @param hostsfile the path to the hostsfile
+   */
+  public void setHostsfile(String hostsfile) {
+    this.hostsfile = hostsfile;
+  }
+
+  /**
+   * Gets the values a proposer proposes, one command per character.
+   *
+   * @return the values, or null if there are none
+   */
+  public String getValues() {
+    return this.values;
+  }
+
+  /**
+   * Sets the values a proposer proposes, one command per character.
+   *
+   * @param values the values
+   */
+  public void setValues(String values) {
+    this.values = values;
+  }
+
+  /**
+   * Gets the time to delay a proposer before it starts proposing.
+   *
+   * @return the delay in seconds
+   */
+  public int getDelay() {
+    return this.delay;
+  }
+
+  /**
+   * Sets the time to delay a proposer before it starts proposing.
+   *
+   * @param delay the delay in seconds
+   */
+  public void setDelay(int delay) {
+    this.delay = delay;
+  }
+
+  /**
+   * Gets the directory holding the write-ahead log of an acceptor.
+   *
+   * @return the data directory
+   */
+  public String getDataDir() {
+    return this.dataDir;
+  }
+
+  /**
+   * Sets the directory holding the write-ahead log of an acceptor.
+   *
+   * @param dataDir the data directory
+   */
+  public void setDataDir(String dataDir) {
+    this.dataDir = dataDir;
+  }
+
+  /**
+   * Gets the maximum number of commands a proposer packs into one log slot.
+   *
+   * @return the maximum batch size
+   */
+  public int getBatchSize() {
+    return this.batchSize;
+  }
+
+  /**
+   * Sets the maximum number of commands a proposer packs into one log slot.
+   *
+   * @param batchSize the maximum batch size
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Gets how long a command waits for more commands to join its batch.
+   *
+   * @return the linger time in milliseconds
+   */
+  public long getLingerMs() {
+    return this.lingerMs;
+  }
+
+  /**
+   * Sets how long a command waits for more commands to join its batch.
+   *
+   * @param lingerMs the linger time in milliseconds
+   */
+  public void setLingerMs(long lingerMs) {
+    this.lingerMs = lingerMs;
+  }
+
+  /**
+   * Gets the number of log slots a leader may have in the Accept phase at once.
+   *
+   * @return the size of the in-flight window
+   */
+  public int getWindow() {
+    return this.window;
+  }
+
+  /**
+   * Sets the number of log slots a leader may have in the Accept phase at once.
+   *
+   * @param window the size of the in-flight window
+   */
+  public void setWindow(int window) {
+    this.window = window;
+  }
+
+  /**
+   * Gets the threading model of the server of an acceptor or learner.
+   *
+   * @return "nio" for a selector-based event loop or "thread" for a thread per connection
+   */
+  public String getServerModel() {
+    return this.serverModel;
+  }
+
+  /**
+   * Sets the threading model of the server of an acceptor or learner.
+   *
+   * @param serverModel "nio" for a selector-based event loop or "thread" for a thread per
+   *                    connection
+   */
+  public void setServerModel(String serverModel) {
+    this.serverModel = serverModel;
+  }
+
+  /**
+   * Gets the number of acceptors that have to promise a proposal number.
+   *
+   * @return the size of the Prepare quorum, or zero for a majority
+   */
+  public int getPrepareQuorum() {
+    return this.prepareQuorum;
+  }
+
+  /**
+   * Sets the number of acceptors that have to promise a proposal number.
+   *
+   * @param prepareQuorum the size of the Prepare quorum, or zero for a majority
+   */
+  public void setPrepareQuorum(int prepareQuorum) {
+    this.prepareQuorum = prepareQuorum;
+  }
+
+  /**
+   * Gets the number of acceptors that have to accept a value for it to be chosen.
+   *
+   * @return the size of the Accept quorum, or zero for a majority
+   */
+  public int getAcceptQuorum() {
+    return this.acceptQuorum;
+  }
+
+  /**
+   * Sets the number of acceptors that have to accept a value for it to be chosen.
+   *
+   * @param acceptQuorum the size of the Accept quorum, or zero for a majority
+   */
+  public void setAcceptQuorum(int acceptQuorum) {
+    this.acceptQuorum = acceptQuorum;
+  }
+
+  /**
+   * Gets how long a proposer in thrifty mode waits for the quorum it sent a message to before it
+   * sends the message to the remaining acceptors as well.
+   *
+   * @return the fallback deadline in milliseconds, or zero if thrifty mode is off
+   */
+  public long getThriftyTimeoutMs() {
+    return this.thriftyTimeoutMs;
+  }
+
+  /**
+   * Sets how long a proposer in thrifty mode waits for the quorum it sent a message to before it
+   * sends the message to the remaining acceptors as well.
+   *
+   * @param thriftyTimeoutMs the fallback deadline in milliseconds, or zero to turn thrifty mode
+   *                         off
+   */
+  public void setThriftyTimeoutMs(long thriftyTimeoutMs) {
+    this.thriftyTimeoutMs = thriftyTimeoutMs;
+  }
+
+  /**
+   * Gets the percentile of recent response times after which a proposer in thrifty mode also
+   * sends a message to one spare acceptor.
+   *
+   * @return the percentile, or zero if hedging is off
+   */
+  public double getHedgePercentile() {
+    return this.hedgePercentile;
+  }
+
+  /**
+   * Sets the percentile of recent response times after which a proposer in thrifty mode also
+   * sends a message to one spare acceptor.
+   *
+   * @param hedgePercentile the percentile, or zero to turn hedging off
+   */
+  public void setHedgePercentile(double hedgePercentile) {
+    this.hedgePercentile = hedgePercentile;
+  }
+
+  /**
+   * Checks whether proposers send their values straight to the acceptors in Fast Paxos rounds.
+   *
+   * @return true if Fast Paxos is on else false
+   */
+  public boolean isFastPaxos() {
+    return this.fastPaxos;
+  }
+
+  /**
+   * Sets whether proposers send their values straight to the acceptors in Fast Paxos rounds.
+   *
+   * @param fastPaxos true to turn Fast Paxos on else false
+   */
+  public void setFastPaxos(boolean fastPaxos) {
+    this.fastPaxos = fastPaxos;
+  }
+
+  /**
+   * Gets how long a lease granted by an acceptor's promise lasts. The leader holding a lease from
+   * a Prepare quorum serves reads from its own state.
+   *
+   * @return the lease duration in milliseconds, or zero if leases are off
+   */
+  public long getLeaseMs() {
+    return this.leaseMs;
+  }
+
+  /**
+   * Sets how long a lease granted by an acceptor's promise lasts. The leader holding a lease from
+   * a Prepare quorum serves reads from its own state.
+   *
+   * @param leaseMs the lease duration in milliseconds, or zero to turn leases off
+   */
+  public void setLeaseMs(long leaseMs) {
+    this.leaseMs = leaseMs;
+  }
+
+  /**
+   * Gets the kind of store behind a proposer's key-value state machine.
+   *
+   * @return "heap" or "offheap", or null if the proposer does not serve the key-value API
+   */
+  public String getKvStore() {
+    return this.kvStore;
+  }
+
+  /**
+   * Sets the kind of store behind a proposer's key-value state machine.
+   *
+   * @param kvStore "heap" or "offheap", or null to not serve the key-value API
+   */
+  public void setKvStore(String kvStore) {
+    this.kvStore = kvStore;
+  }
+
+  /**
+   * Gets how many log slots a proposer applies to its key-value state machine between two
+   * snapshots. Each snapshot lets the acceptors compact their logs.
+   *
+   * @return the number of slots between snapshots, or zero if snapshots are off
+   */
+  public int getSnapshotInterval() {
+    return this.snapshotInterval;
+  }
+
+  /**
+   * Sets how many log slots a proposer applies to its key-value state machine between two
+   * snapshots. Each snapshot lets the acceptors compact their logs.
+   *
+   * @param snapshotInterval the number of slots between snapshots, or zero to turn snapshots off
+   */
+  public void setSnapshotInterval(int snapshotInterval) {
+    this.snapshotInterval = snapshotInterval;
+  }
+
+  /**
+   * Gets the number of independent Paxos groups every process takes part in.
+   *
+   * @return the number of groups
+   */
+  public int getGroups() {
+    return this.groups;
+  }
+
+  /**
+   * Sets the number of independent Paxos groups every process takes part in.
+   *
+   * @param groups the number of groups
+   */
+  public void setGroups(int groups) {
+    this.groups = groups;
+  }
+
+  /**
+   * Checks whether log slots are owned round-robin by the proposers (Mencius), instead of being
+   * proposed by a single leader.
+   *
+   * @return true if Mencius mode is on else false
+   */
+  public boolean isMencius() {
+    return this.mencius;
+  }
+
+  /**
+   * Sets whether log slots are owned round-robin by the proposers (Mencius), instead of being
+   * proposed by a single leader.
+   *
+   * @param mencius true to turn Mencius mode on else false
+   */
+  public void setMencius(boolean mencius) {
+    this.mencius = mencius;
+  }
+
+  /**
+   * Checks whether commands are committed leaderlessly by Egalitarian Paxos (EPaxos), instead of
+   * being decided into log slots.
+   *
+   * @return true if EPaxos mode is on else false
+   */
+  public boolean isEpaxos() {
+    return this.epaxos;
+  }
+
+  /**
+   * Sets whether commands are committed leaderlessly by Egalitarian Paxos (EPaxos), instead of
+   * being decided into log slots.
+   *
+   * @param epaxos true to turn EPaxos mode on else false
+   */
+  public void setEpaxos(boolean epaxos) {
+    this.epaxos = epaxos;
+  }
+
+  /**
+   * Gets the path of the file the event log is written to.
+   *
+   * @return the path, or null if the event log is written to standard error
+   */
+  public String getLogFile() {
+    return this.logFile;
+  }
+
+  /**
+   * Sets the path of the file the event log is written to.
+   *
+   * @param logFile the path, or null to write the event log to standard error
+   */
+  public void setLogFile(String logFile) {
+    this.logFile = logFile;
+  }
+
+  /**
+   * Gets the lowest level of events recorded in the event log ("off"/"info"/"debug").
+   *
+   * @return the log level
+   */
+  public String getLogLevel() {
+    return this.logLevel;
+  }
+
+  /**
+   * Sets the lowest level of events recorded in the event log ("off"/"info"/"debug").
+   *
+   * @param logLevel the log level
+   */
+  public void setLogLevel(String logLevel) {
+    this.logLevel = logLevel;
+  }
+
+  /**
+   * Gets the sampling rate of message and quorum events: one in every so many is recorded.
+   *
+   * @return the sampling rate
+   */
+  public int getLogSample() {
+    return this.logSample;
+  }
+
+  /**
+   * Sets the sampling rate of message and quorum events: one in every so many is recorded.
+   *
+   * @param logSample the sampling rate
+   */
+  public void setLogSample(int logSample) {
+    this.logSample = logSample;
+  }
+
+  /**
+   * Gets the port the metrics are served on over HTTP.
+   *
+   * @return the port, or 0 if the metrics are not served
+   */
+  public int getMetricsPort() {
+    return this.metricsPort;
+  }
+
+  /**
+   * Sets the port the metrics are served on over HTTP.
+   *
+   * @param metricsPort the port, or 0 to not serve the metrics
+   */
+  public void setMetricsPort(int metricsPort) {
+    this.metricsPort = metricsPort;
+  }
+
+  /**
+   * Gets how often the metrics are written to standard error.
+   *
+   * @return the interval in milliseconds, or 0 if the metrics are not written out
+   */
+  public long getMetricsIntervalMs() {
+    return this.metricsIntervalMs;
+  }
+
+  /**
+   * Sets how often the metrics are written to standard error.
+   *
+   * @param metricsIntervalMs the interval in milliseconds, or 0 to not write the metrics out
+   */
+  public void setMetricsIntervalMs(long metricsIntervalMs) {
+    this.metricsIntervalMs = metricsIntervalMs;
+  }
+}
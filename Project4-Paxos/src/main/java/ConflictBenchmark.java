@@ -0,0 +1,88 @@
+package main.java;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Throughput and latency benchmark of the key-value store at several conflict rates, run against
+ * a running cluster so the single-leader path and EPaxos mode can be compared on the same
+ * deployment. Client threads are spread over the given key-value services, and each sends PUTs
+ * one at a time. At a conflict rate of r, a PUT goes to a single key shared by every client with
+ * probability r, and to a key of its own otherwise, so the rate is the share of commands that may
+ * interfere with another client's. A short unmeasured run comes first, so every rate runs warm.
+ */
+public class ConflictBenchmark {
+  private static final int CLIENT_THREADS = 16;
+  private static final int WARMUP_PUTS = 500;
+  private static final int MEASURED_PUTS = 250;
+  private static final double[] CONFLICT_RATES = {0.0, 0.02, 0.1, 0.25, 0.5, 1.0};
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args the key-value services to send commands to, as "host:port" separated by commas
+   *             (defaults to "localhost:8000")
+   * @throws Exception if a service cannot be reached
+   */
+  public static void main(String[] args) throws Exception {
+    String[] services = (args.length > 0 ? args[0] : "localhost:" + Util.KV_PORT).split(",");
+
+    run(services, "warmup", 0.0, WARMUP_PUTS, false);
+    for (double rate : CONFLICT_RATES) {
+      run(services, "run" + rate, rate, MEASURED_PUTS, true);
+    }
+    System.exit(0);
+  }
+
+  /**
+   * Sends PUTs from every client thread at one conflict rate and waits for all of them.
+   *
+   * @param services the key-value services, as "host:port"
+   * @param prefix the prefix of the keys of the run
+   * @param rate the probability of a PUT going to the shared key
+   * @param puts the number of PUTs each client sends
+   * @param report true to print the throughput and latencies of the run else false
+   * @throws InterruptedException if the benchmark is interrupted
+   */
+  private static void run(String[] services, String prefix, double rate, int puts,
+                          boolean report) throws InterruptedException {
+    long[] latencies = new long[CLIENT_THREADS * puts];
+    List<Thread> clients = new ArrayList<>();
+    long start = System.nanoTime();
+
+    for (int t = 0; t < CLIENT_THREADS; t++) {
+      int clientNum = t;
+      String[] service = services[t % services.length].split(":");
+      Thread client = new Thread(() -> {
+        try (KvClient kvClient = new KvClient(service[0], Integer.parseInt(service[1]))) {
+          for (int i = 0; i < puts; i++) {
+            boolean shared = ThreadLocalRandom.current().nextDouble() < rate;
+            String key = shared ? prefix + "-shared" : prefix + "-" + clientNum + "-" + i;
+            long sendTime = System.nanoTime();
+            kvClient.put(key, String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+            latencies[clientNum * puts + i] = System.nanoTime() - sendTime;
+          }
+        } catch (IOException e) {
+          throw new RuntimeException("ConflictBenchmark error: " + e.getMessage());
+        }
+      });
+      client.start();
+      clients.add(client);
+    }
+
+    for (Thread client : clients) {
+      client.join();
+    }
+    long elapsed = System.nanoTime() - start;
+    if (report) {
+      Arrays.sort(latencies);
+      System.out.printf("conflict rate %4.2f %8.0f puts/s p50 %6d us p99 %7d us%n", rate,
+              latencies.length * 1e9 / elapsed, latencies[latencies.length / 2] / 1000,
+              latencies[latencies.length * 99 / 100] / 1000);
+    }
+  }
+}
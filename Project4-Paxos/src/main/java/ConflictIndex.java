@@ -0,0 +1,102 @@
+package main.java;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Tracks which instances interfere with each other in Egalitarian Paxos (EPaxos) mode. Two
+ * instances interfere if any of their commands touch the same key: a key-value command touches
+ * its key, and any other command is a key of its own. Every key-value command also touches its
+ * client's session, so one client's commands are always executed in the order it sent them. Reads
+ * of the same key are treated as interfering too, which keeps the index to one instance per key
+ * and replica: the latest instance of each replica that touched the key, along with the highest
+ * sequence number of the replica's instances that touched it. An instance never gets dependencies
+ * on its own replica's instances from the index, since its leader already knows them all, and
+ * an acceptor that has seen the leader's later instances first would only add needless cycles.
+ */
+public class ConflictIndex {
+  private final Map<String, Map<Integer, Latest>> latest;
+
+  /**
+   * Constructs a new, empty ConflictIndex object.
+   */
+  public ConflictIndex() {
+    this.latest = new HashMap<>();
+  }
+
+  /**
+   * Gets the attributes an instance has in the view of the index: the proposed dependencies along
+   * with every known instance of another replica it interferes with, and a sequence number above
+   * all of theirs. The instance's leader also adds the earlier instances of its own.
+   *
+   * @param id the name of the instance
+   * @param proposed the attributes proposed by the instance's leader
+   * @param leader true if the index is the leader's own view else false
+   * @return the attributes in the view of the index
+   */
+  public EpaxosInstance attributes(EpaxosInstance.Id id, EpaxosInstance proposed,
+                                   boolean leader) {
+    int seq = proposed.getSeq();
+    SortedSet<EpaxosInstance.Id> deps = new TreeSet<>(proposed.getDeps());
+    for (String key : keys(proposed.getValue())) {
+      for (Map.Entry<Integer, Latest> entry : this.latest.getOrDefault(key, Map.of()).entrySet()) {
+        Latest last = entry.getValue();
+        if (entry.getKey() == id.replica() && (!leader || last.instance() >= id.instance())) {
+          continue;
+        }
+        deps.add(new EpaxosInstance.Id(entry.getKey(), last.instance()));
+        seq = Math.max(seq, last.seq() + 1);
+      }
+    }
+    return new EpaxosInstance(proposed.getValue(), seq, deps);
+  }
+
+  /**
+   * Records an instance as the latest of its replica for each key it touches, unless a later
+   * instance of the replica already touched the key.
+   *
+   * @param id the name of the instance
+   * @param instance the attributes of the instance
+   */
+  public void record(EpaxosInstance.Id id, EpaxosInstance instance) {
+    for (String key : keys(instance.getValue())) {
+      this.latest.computeIfAbsent(key, k -> new HashMap<>()).merge(id.replica(),
+              new Latest(id.instance(), instance.getSeq()), (current, added) ->
+                      new Latest(Math.max(current.instance(), added.instance()),
+                              Math.max(current.seq(), added.seq())));
+    }
+  }
+
+  /**
+   * Gets the keys touched by the commands of a batch.
+   *
+   * @param value the encoded batch
+   * @return the keys
+   */
+  private static Set<String> keys(byte[] value) {
+    Set<String> keys = new LinkedHashSet<>();
+    for (byte[] command : Batch.decode(value).getCommands()) {
+      KvCommand kvCommand = KvCommand.decode(command);
+      if (kvCommand == null) {
+        keys.add("value:" + new String(command, StandardCharsets.UTF_8));
+      } else {
+        keys.add("key:" + kvCommand.getKey());
+        keys.add("client:" + kvCommand.getClientId());
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * The latest instance of a replica that touched a key.
+   *
+   * @param instance the instance number of the latest instance
+   * @param seq the highest sequence number of the replica's instances that touched the key
+   */
+  private record Latest(int instance, int seq) {}
+}
@@ -0,0 +1,90 @@
+package main.java;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds one persistent {@link AcceptorConnection} per peer a process sends to, opened for the
+ * peers given up front and for any other peer the first time a message is sent to it. A background
+ * health
+ * checker pings every connection that has been quiet for a while, closes connections whose
+ * acceptor stops answering, and reconnects closed connections so they are ready before the next
+ * message is sent.
+ */
+public class ConnectionPool {
+  private static final long HEALTH_CHECK_INTERVAL_MS = 1000;
+  private static final long HEALTH_CHECK_TIMEOUT_MS = 3000;
+
+  private final BufferPool buffers;
+  private final Map<Integer, AcceptorConnection> connections;
+  private final ScheduledExecutorService healthChecker;
+  private final Message ping;
+
+  /**
+   * Constructs a new ConnectionPool object and starts its health checker.
+   *
+   * @param senderId the ID of the process the connections belong to
+   * @param acceptors the acceptors to keep connections to
+   */
+  public ConnectionPool(int senderId, List<ProcessInfo> acceptors) {
+    this.buffers = new BufferPool(4096);
+    this.connections = new ConcurrentHashMap<>();
+    for (ProcessInfo acceptor : acceptors) {
+      this.connections.put(acceptor.getId(), new AcceptorConnection(acceptor, this.buffers));
+    }
+    this.ping = new Message(MessageType.PING, senderId, Ballot.ZERO, 0, Message.NO_VALUE);
+
+    this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable);
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.healthChecker.scheduleWithFixedDelay(this::checkHealth, HEALTH_CHECK_INTERVAL_MS,
+            HEALTH_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Sends a message to an acceptor over its persistent connection.
+   *
+   * @param acceptor the acceptor to send the message to
+   * @param msg the message to send
+   * @return the future of the acceptor's response
+   */
+  public CompletableFuture<Message> send(ProcessInfo acceptor, Message msg) {
+    return this.connections.computeIfAbsent(acceptor.getId(),
+            id -> new AcceptorConnection(acceptor, this.buffers)).send(msg);
+  }
+
+  /**
+   * Checks the health of every connection. Closed connections are reopened, connections that
+   * have been quiet for a while are pinged, and connections that have not answered within the
+   * timeout are closed.
+   */
+  private void checkHealth() {
+    long now = System.currentTimeMillis();
+
+    for (AcceptorConnection connection : this.connections.values()) {
+      if (!connection.isConnected()) {
+        try {
+          connection.connect();
+        } catch (IOException ignored) {
+          // the connection backs off and is retried on the next check
+        }
+        continue;
+      }
+
+      long quiet = now - connection.getLastResponseTime();
+      if (quiet > HEALTH_CHECK_TIMEOUT_MS) {
+        connection.close(new IOException("No response to health check"));
+      } else if (quiet > HEALTH_CHECK_INTERVAL_MS) {
+        connection.send(this.ping);
+      }
+    }
+  }
+}
@@ -0,0 +1,402 @@
+package main.java;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark suite of the consensus code itself, meant as a baseline to compare every change to
+ * the protocol against. It covers encoding and decoding the main message types, an
+ * {@link Acceptor} handling Prepare and Accept messages from a growing number of threads, and
+ * whole decisions of a key-value PUT by a group of a proposer, three acceptors and a learner
+ * connected by a {@link LoopbackTransport}. Every case runs in a fresh JVM, so the code the JIT
+ * compiled for one case does not slow down the next. A case is warmed up for a few iterations of
+ * fixed length and then measured for a few more, and the mean score and standard deviation over
+ * the measured iterations are printed, as the average time per operation or as the operations per
+ * second of all threads. Acceptors write their logs to a temporary directory, so their scores
+ * include the group-committed fsyncs. The status lines the processes print to standard error are
+ * dropped, which leaves the table alone on standard output.
+ */
+public class ConsensusBenchmark {
+  private static final int WARMUP_ITERATIONS = 3;
+  private static final int MEASURED_ITERATIONS = 5;
+  private static final long ITERATION_MS = 1000;
+  private static final String[] MESSAGE_TYPES = {"accept", "prepare_ack", "pre_accept"};
+  private static final int[] ACCEPTOR_THREADS = {1, 4, 16};
+  private static final int[] CLIENT_THREADS = {1, 16};
+  private static final String GROUP_HOSTS = """
+          peer1:proposer1
+          peer2:acceptor1
+          peer3:acceptor1
+          peer4:acceptor1
+          peer5:learner1
+          """;
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args nothing to run every case, a regular expression to run the cases whose names
+   *             contain a match, or "--fork", a case and a thread count to run one case
+   * @throws Exception if a case cannot be set up
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length == 3 && args[0].equals("--fork")) {
+      run(args[1], Integer.parseInt(args[2]));
+      System.exit(0);
+    }
+
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    Pattern filter = Pattern.compile(args.length > 0 ? args[0] : "");
+    System.out.printf("%-24s %7s %5s %3s %12s    %9s  %s%n", "Benchmark", "Threads", "Mode",
+            "Cnt", "Score", "Error", "Units");
+    for (Map.Entry<String, Integer> entry : cases()) {
+      if (!filter.matcher(entry.getKey()).find()) {
+        continue;
+      }
+      int exitCode = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+              ConsensusBenchmark.class.getName(), "--fork", entry.getKey(),
+              String.valueOf(entry.getValue()))
+              .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+              .redirectError(ProcessBuilder.Redirect.DISCARD)
+              .start().waitFor();
+      if (exitCode != 0) {
+        throw new RuntimeException("ConsensusBenchmark error: Case " + entry.getKey() +
+                " failed, run it alone with --fork " + entry.getKey() + " " + entry.getValue() +
+                " to see why");
+      }
+    }
+  }
+
+  /**
+   * Lists every case of the benchmark with each of its thread counts.
+   *
+   * @return the name and thread count of every case, in the order they are run
+   */
+  private static List<Map.Entry<String, Integer>> cases() {
+    List<Map.Entry<String, Integer>> cases = new ArrayList<>();
+    for (String type : MESSAGE_TYPES) {
+      cases.add(Map.entry("codec.encode." + type, 1));
+      cases.add(Map.entry("codec.decode." + type, 1));
+    }
+    for (int threads : ACCEPTOR_THREADS) {
+      cases.add(Map.entry("acceptor.prepare", threads));
+    }
+    for (int threads : ACCEPTOR_THREADS) {
+      cases.add(Map.entry("acceptor.accept", threads));
+    }
+    for (int threads : CLIENT_THREADS) {
+      cases.add(Map.entry("decision.put", threads));
+    }
+    return cases;
+  }
+
+  /**
+   * Sets up one case, measures it and prints its results.
+   *
+   * @param name the name of the case
+   * @param threads the number of threads running the operation of the case
+   * @throws IOException if the temporary data directory cannot be created
+   */
+  private static void run(String name, int threads) throws IOException {
+    Path dataDir = Files.createTempDirectory("consensus-benchmark");
+    try {
+      Config config = new Config();
+      config.setDataDir(dataDir.toString());
+      config.setLogLevel("off");
+      EventLog.configure(config);
+
+      IntFunction<LongSupplier> workload;
+      if (name.startsWith("codec.")) {
+        workload = codec(name.split("\\.")[1], message(name.split("\\.")[2]));
+      } else if (name.startsWith("acceptor.")) {
+        workload = acceptor(config, name.equals("acceptor.prepare"));
+      } else if (name.equals("decision.put")) {
+        workload = decision(config);
+      } else {
+        throw new IllegalArgumentException("ConsensusBenchmark error: Unknown case " + name);
+      }
+      measure(name, threads, name.startsWith("codec."), workload);
+    } finally {
+      try (Stream<Path> paths = Files.walk(dataDir)) {
+        for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+          Files.deleteIfExists(path);
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the operation of a case on every thread, warms it up and measures it, and prints the
+   * results.
+   *
+   * @param name the name of the case
+   * @param threads the number of threads
+   * @param averageTime true to score the average time per operation, or false to score the
+   *                    operations per second
+   * @param workload gives the operation each thread runs, returning a value derived from its
+   *                 result
+   */
+  private static void measure(String name, int threads, boolean averageTime,
+                              IntFunction<LongSupplier> workload) {
+    // operations taking nanoseconds are counted in chunks, so counting does not dominate them
+    int chunk = averageTime ? 1000 : 1;
+    LongAdder completed = new LongAdder();
+    LongAdder sink = new LongAdder();
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    List<Thread> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      LongSupplier operation = workload.apply(t);
+      Thread worker = new Thread(() -> {
+        long results = 0;
+        try {
+          while (running.get()) {
+            for (int i = 0; i < chunk; i++) {
+              results += operation.getAsLong();
+            }
+            completed.add(chunk);
+          }
+        } catch (RuntimeException e) {
+          failure.compareAndSet(null, e);
+        }
+        sink.add(results);
+      });
+      worker.setDaemon(true);
+      workers.add(worker);
+    }
+
+    workers.forEach(Thread::start);
+    double[] scores = new double[MEASURED_ITERATIONS];
+    long mark = System.nanoTime();
+    completed.reset();
+    for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+      try {
+        Thread.sleep(ITERATION_MS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("ConsensusBenchmark error: Thread interrupted");
+      }
+      long now = System.nanoTime();
+      long ops = Math.max(1, completed.sumThenReset());
+      if (i >= WARMUP_ITERATIONS) {
+        scores[i - WARMUP_ITERATIONS] = averageTime ? (double) (now - mark) * threads / ops
+                : ops * 1e9 / (now - mark);
+      }
+      mark = now;
+    }
+    running.set(false);
+    if (failure.get() != null) {
+      throw new RuntimeException("ConsensusBenchmark error: " + name + " failed: " +
+              failure.get().getMessage());
+    }
+
+    double mean = 0;
+    for (double score : scores) {
+      mean += score / MEASURED_ITERATIONS;
+    }
+    double variance = 0;
+    for (double score : scores) {
+      variance += (score - mean) * (score - mean) / MEASURED_ITERATIONS;
+    }
+    System.out.printf("%-24s %7d %5s %3d %12.1f +- %9.1f  %s%n", name, threads,
+            averageTime ? "avgt" : "thrpt", MEASURED_ITERATIONS, mean, Math.sqrt(variance),
+            averageTime ? "ns/op" : "ops/s");
+  }
+
+  /**
+   * Sets up a codec case, which encodes a message into a frame or decodes it from one.
+   *
+   * @param operation "encode" or "decode"
+   * @param msg the message
+   * @return the workload of the case
+   */
+  private static IntFunction<LongSupplier> codec(String operation, Message msg) {
+    return thread -> {
+      ByteBuffer frame = ByteBuffer.allocate(MessageCodec.frameSize(msg));
+      MessageCodec.encode(7, msg, frame);
+      frame.flip();
+      if (operation.equals("encode")) {
+        return () -> {
+          frame.clear();
+          MessageCodec.encode(7, msg, frame);
+          return frame.position();
+        };
+      }
+      return () -> {
+        frame.position(MessageCodec.LENGTH_SIZE + 8);
+        Message decoded;
+        try {
+          decoded = MessageCodec.decode(frame);
+        } catch (IOException e) {
+          throw new RuntimeException("ConsensusBenchmark error: " + e.getMessage());
+        }
+        return decoded.getSlot() + decoded.getValue().length + decoded.getEntries().size();
+      };
+    };
+  }
+
+  /**
+   * Builds a typical message of a type: an Accept of a batch holding one PUT, a Prepare
+   * Acknowledgement carrying eight accepted slots, or a Pre-Accept of an EPaxos instance with
+   * three dependencies.
+   *
+   * @param type the type of the message
+   * @return the message
+   */
+  private static Message message(String type) {
+    byte[] value = new Batch(List.of(put(1, 1).encode())).encode();
+    return switch (type) {
+      case "accept" -> new Message(MessageType.ACCEPT, 1, new Ballot(3, 1), 42, value);
+      case "prepare_ack" -> {
+        Map<Integer, ProposalValuePair> entries = new TreeMap<>();
+        for (int slot = 0; slot < 8; slot++) {
+          entries.put(slot, new ProposalValuePair(new Ballot(3, 1), value));
+        }
+        yield new Message(MessageType.PREPARE_ACK, 2, new Ballot(3, 1), 0, Message.NO_VALUE,
+                entries);
+      }
+      case "pre_accept" -> {
+        TreeSet<EpaxosInstance.Id> deps = new TreeSet<>();
+        for (int replica = 2; replica <= 4; replica++) {
+          deps.add(new EpaxosInstance.Id(replica, 17));
+        }
+        yield new Message(MessageType.PRE_ACCEPT, 1, new Ballot(0, 1), 42,
+                new EpaxosInstance(value, 18, deps).encode());
+      }
+      default -> throw new IllegalArgumentException("ConsensusBenchmark error: Unknown message " +
+              "type " + type);
+    };
+  }
+
+  /**
+   * Sets up an acceptor case, where every thread plays a proposer handing the acceptor requests
+   * directly, and waits for each response. Prepare messages carry ever higher proposal numbers,
+   * so each is a new promise the acceptor logs, and those that lose the race for the acceptor's
+   * lock to a higher one are rejected. Accept messages carry a new slot each under a proposal
+   * number the acceptor has promised.
+   *
+   * @param config the settings of the process
+   * @param prepare true for Prepare messages, or false for Accept messages
+   * @return the workload of the case
+   * @throws IOException if the hostsfile cannot be written
+   */
+  private static IntFunction<LongSupplier> acceptor(Config config, boolean prepare)
+          throws IOException {
+    config.setHostsfile(writeHostsfile(config, "peer2:acceptor1\n"));
+    LoopbackTransport transport = new LoopbackTransport(new ProcessInfo(2, "peer2"),
+            new ConcurrentHashMap<>(), executor());
+    new Acceptor(2, "peer2", config, 0, transport).start();
+
+    Ballot ballot = new Ballot(1, 1);
+    transport.dispatch(new Message(MessageType.PREPARE, 1, ballot, 0, Message.NO_VALUE));
+    byte[] value = new Batch(List.of(put(1, 1).encode())).encode();
+    AtomicInteger next = new AtomicInteger(2);
+
+    return thread -> () -> {
+      int n = next.getAndIncrement();
+      Message msg = prepare
+              ? new Message(MessageType.PREPARE, 1, new Ballot(n, 1), 0, Message.NO_VALUE)
+              : new Message(MessageType.ACCEPT, 1, ballot, n, value);
+      return transport.dispatch(msg).getSlot();
+    };
+  }
+
+  /**
+   * Sets up a decision case, where every thread is a key-value client sending PUTs one at a time
+   * to the proposer of a group hosted in this JVM, and waits for each to be decided and applied.
+   * The proposer has become the leader before the case starts.
+   *
+   * @param config the settings of the process
+   * @return the workload of the case
+   * @throws IOException if the hostsfile cannot be written
+   */
+  private static IntFunction<LongSupplier> decision(Config config) throws IOException {
+    config.setHostsfile(writeHostsfile(config, GROUP_HOSTS));
+    config.setKvStore("heap");
+    config.setDelay(0);
+    Map<Integer, LoopbackTransport> peers = new ConcurrentHashMap<>();
+    ExecutorService executor = executor();
+
+    Proposer proposer = new Proposer(1, "peer1", config, 0,
+            new LoopbackTransport(new ProcessInfo(1, "peer1"), peers, executor));
+    for (int id = 2; id <= 4; id++) {
+      new Acceptor(id, "peer" + id, config, 0,
+              new LoopbackTransport(new ProcessInfo(id, "peer" + id), peers, executor)).start();
+    }
+    new Learner(5, "peer5", config, 0,
+            new LoopbackTransport(new ProcessInfo(5, "peer5"), peers, executor)).start();
+    Thread leader = new Thread(proposer::start, "proposer");
+    leader.setDaemon(true);
+    leader.start();
+
+    // the first PUT waits for the proposer to become the leader
+    KvCommand first = put(0, 1);
+    proposer.submit(first, first.encode()).join();
+
+    return thread -> {
+      long clientId = thread + 1;
+      AtomicInteger sequence = new AtomicInteger();
+      return () -> {
+        KvCommand command = put(clientId, sequence.incrementAndGet());
+        return proposer.submit(command, command.encode()).join().getStatus();
+      };
+    };
+  }
+
+  /**
+   * Builds a PUT of a client to a key of its own.
+   *
+   * @param clientId the ID of the client
+   * @param sequence the client's sequence number of the command
+   * @return the command
+   */
+  private static KvCommand put(long clientId, long sequence) {
+    return new KvCommand(KvCommand.PUT, clientId, sequence, "key-" + clientId,
+            ("value-" + sequence).getBytes(StandardCharsets.UTF_8), null);
+  }
+
+  /**
+   * Writes a hostsfile into the data directory.
+   *
+   * @param config the settings of the process
+   * @param hosts the contents of the hostsfile
+   * @return the path to the hostsfile
+   * @throws IOException if the hostsfile cannot be written
+   */
+  private static String writeHostsfile(Config config, String hosts) throws IOException {
+    return Files.writeString(Paths.get(config.getDataDir(), "hostsfile.txt"), hosts).toString();
+  }
+
+  /**
+   * Creates the thread pool that handles the requests of the processes of a case.
+   *
+   * @return the thread pool
+   */
+  private static ExecutorService executor() {
+    return Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+}
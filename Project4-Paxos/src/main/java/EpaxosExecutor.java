@@ -0,0 +1,224 @@
+package main.java;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Executes committed instances in Egalitarian Paxos (EPaxos) mode. An instance is executed once
+ * every instance it depends on, directly or not, has been committed. The dependency graph of
+ * those instances is split into strongly connected components with Tarjan's algorithm, and the
+ * components are executed in reverse topological order, so an instance always comes after the
+ * instances it depends on. The search keeps its own stack rather than recursing, so a long chain
+ * of waiting instances cannot overflow the thread's stack, and each pass visits every instance
+ * once, remembering the ones found waiting on an instance that has not been committed. The
+ * instances of one component depend on each other, and are executed in order of sequence number,
+ * then of name. Every replica executes interfering instances in the same order. Executed instances
+ * are forgotten, and each replica's executed instance numbers are kept as a watermark below which
+ * every instance has been executed, along with the ones above it.
+ */
+public class EpaxosExecutor {
+  private static final Comparator<Map.Entry<EpaxosInstance.Id, EpaxosInstance>> EXECUTION_ORDER =
+          Comparator.<Map.Entry<EpaxosInstance.Id, EpaxosInstance>>comparingInt(entry ->
+                  entry.getValue().getSeq()).thenComparing(Map.Entry::getKey);
+
+  private final Map<EpaxosInstance.Id, EpaxosInstance> committed;
+  private final Map<Integer, Integer> executedBelow;
+  private final Set<EpaxosInstance.Id> executedAbove;
+  private final BiConsumer<EpaxosInstance.Id, EpaxosInstance> executor;
+  private final Map<EpaxosInstance.Id, Integer> index;
+  private final Map<EpaxosInstance.Id, Integer> lowLink;
+  private final Deque<EpaxosInstance.Id> stack;
+  private final Set<EpaxosInstance.Id> onStack;
+  private final Set<EpaxosInstance.Id> blocked;
+  private long executedCount;
+
+  /**
+   * Constructs a new EpaxosExecutor object.
+   *
+   * @param executor executes an instance once its turn has come
+   */
+  public EpaxosExecutor(BiConsumer<EpaxosInstance.Id, EpaxosInstance> executor) {
+    this.committed = new TreeMap<>();
+    this.executedBelow = new HashMap<>();
+    this.executedAbove = new HashSet<>();
+    this.executor = executor;
+    this.index = new HashMap<>();
+    this.lowLink = new HashMap<>();
+    this.stack = new ArrayDeque<>();
+    this.onStack = new HashSet<>();
+    this.blocked = new HashSet<>();
+    this.executedCount = 0;
+  }
+
+  /**
+   * Records an instance as committed, unless it has been already.
+   *
+   * @param id the name of the instance
+   * @param instance the committed attributes of the instance
+   */
+  public void commit(EpaxosInstance.Id id, EpaxosInstance instance) {
+    if (!isExecuted(id)) {
+      this.committed.putIfAbsent(id, instance);
+    }
+  }
+
+  /**
+   * Executes every committed instance whose dependencies have all been committed.
+   *
+   * @return the number of instances executed
+   */
+  public int executeReady() {
+    long before = this.executedCount;
+    for (EpaxosInstance.Id id : new ArrayList<>(this.committed.keySet())) {
+      if (this.committed.containsKey(id) && !this.index.containsKey(id)) {
+        strongConnect(id);
+      }
+    }
+    this.index.clear();
+    this.lowLink.clear();
+    this.stack.clear();
+    this.onStack.clear();
+    this.blocked.clear();
+    return (int) (this.executedCount - before);
+  }
+
+  /**
+   * Gets the number of committed instances waiting for a dependency to be committed.
+   *
+   * @return the number of waiting instances
+   */
+  public int getWaiting() {
+    return this.committed.size();
+  }
+
+  /**
+   * Runs Tarjan's algorithm from an instance not visited yet in this pass, executing each strongly
+   * connected component as soon as it is complete. Once an instance turns out to depend on one
+   * that has not been committed, every instance visited but not executed depends on it too, since
+   * each of them can reach an instance on the search path, so they are all remembered as blocked
+   * and the search stops.
+   *
+   * @param root the name of the instance to start from
+   */
+  private void strongConnect(EpaxosInstance.Id root) {
+    Deque<Visit> path = new ArrayDeque<>();
+    path.push(visit(root));
+
+    while (!path.isEmpty()) {
+      Visit current = path.peek();
+      if (current.deps().hasNext()) {
+        EpaxosInstance.Id dep = current.deps().next();
+        if (isExecuted(dep)) {
+          continue;
+        }
+        if (this.blocked.contains(dep) || !this.committed.containsKey(dep)) {
+          this.blocked.addAll(this.onStack);
+          this.stack.clear();
+          this.onStack.clear();
+          return;
+        }
+        if (!this.index.containsKey(dep)) {
+          path.push(visit(dep));
+        } else if (this.onStack.contains(dep)) {
+          int link = Math.min(this.lowLink.get(current.id()), this.index.get(dep));
+          this.lowLink.put(current.id(), link);
+        }
+        continue;
+      }
+
+      // every dependency is done, so hand the low link up and see if the instance roots a component
+      EpaxosInstance.Id id = path.pop().id();
+      if (!path.isEmpty()) {
+        EpaxosInstance.Id parent = path.peek().id();
+        this.lowLink.put(parent, Math.min(this.lowLink.get(parent), this.lowLink.get(id)));
+      }
+      if (this.lowLink.get(id).equals(this.index.get(id))) {
+        executeComponent(id);
+      }
+    }
+  }
+
+  /**
+   * Starts visiting an instance in Tarjan's algorithm.
+   *
+   * @param id the name of the instance
+   * @return the visit, holding the instance's dependencies still to be looked at
+   */
+  private Visit visit(EpaxosInstance.Id id) {
+    int order = this.index.size();
+    this.index.put(id, order);
+    this.lowLink.put(id, order);
+    this.stack.push(id);
+    this.onStack.add(id);
+    return new Visit(id, this.committed.get(id).getDeps().iterator());
+  }
+
+  /**
+   * Executes the component rooted at the given instance, which is every instance above it on the
+   * stack, in order of sequence number, then of name.
+   *
+   * @param root the name of the instance rooting the component
+   */
+  private void executeComponent(EpaxosInstance.Id root) {
+    List<Map.Entry<EpaxosInstance.Id, EpaxosInstance>> component = new ArrayList<>();
+    EpaxosInstance.Id member;
+    do {
+      member = this.stack.pop();
+      this.onStack.remove(member);
+      component.add(Map.entry(member, this.committed.get(member)));
+    } while (!member.equals(root));
+
+    component.sort(EXECUTION_ORDER);
+    for (Map.Entry<EpaxosInstance.Id, EpaxosInstance> entry : component) {
+      this.executor.accept(entry.getKey(), entry.getValue());
+      markExecuted(entry.getKey());
+    }
+  }
+
+  /**
+   * Checks whether an instance has been executed.
+   *
+   * @param id the name of the instance
+   * @return true if the instance has been executed else false
+   */
+  private boolean isExecuted(EpaxosInstance.Id id) {
+    return id.instance() < this.executedBelow.getOrDefault(id.replica(), 0)
+            || this.executedAbove.contains(id);
+  }
+
+  /**
+   * Marks an instance as executed, and moves its replica's watermark past every instance
+   * executed in a row from it.
+   *
+   * @param id the name of the instance
+   */
+  private void markExecuted(EpaxosInstance.Id id) {
+    this.committed.remove(id);
+    this.executedAbove.add(id);
+    this.executedCount++;
+
+    int below = this.executedBelow.getOrDefault(id.replica(), 0);
+    while (this.executedAbove.remove(new EpaxosInstance.Id(id.replica(), below))) {
+      below++;
+    }
+    this.executedBelow.put(id.replica(), below);
+  }
+
+  /**
+   * An instance being visited in Tarjan's algorithm.
+   *
+   * @param id the name of the instance
+   * @param deps the dependencies of the instance still to be looked at
+   */
+  private record Visit(EpaxosInstance.Id id, Iterator<EpaxosInstance.Id> deps) {}
+}
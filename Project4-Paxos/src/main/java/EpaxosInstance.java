@@ -0,0 +1,145 @@
+package main.java;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The attributes of an instance in Egalitarian Paxos (EPaxos) mode, carried in the value of the
+ * instance's messages. Instead of a log slot, every instance is named by the replica that leads it
+ * and the replica's own instance number, and its place in the execution order is given by the
+ * instances it depends on and its sequence number. Any two interfering instances that are both
+ * committed have at least one of them among the other's dependencies.
+ */
+public final class EpaxosInstance {
+  private final byte[] value;
+  private final int seq;
+  private final SortedSet<Id> deps;
+
+  /**
+   * Constructs a new EpaxosInstance object.
+   *
+   * @param value the encoded batch of the instance
+   * @param seq the sequence number, which orders the instances of a dependency cycle
+   * @param deps the instances the instance depends on
+   */
+  public EpaxosInstance(byte[] value, int seq, SortedSet<Id> deps) {
+    this.value = value;
+    this.seq = seq;
+    this.deps = Collections.unmodifiableSortedSet(deps);
+  }
+
+  /**
+   * Gets the encoded batch of the instance.
+   *
+   * @return the encoded batch
+   */
+  public byte[] getValue() {
+    return this.value;
+  }
+
+  /**
+   * Gets the sequence number of the instance.
+   *
+   * @return the sequence number
+   */
+  public int getSeq() {
+    return this.seq;
+  }
+
+  /**
+   * Gets the instances the instance depends on.
+   *
+   * @return the dependencies
+   */
+  public SortedSet<Id> getDeps() {
+    return this.deps;
+  }
+
+  /**
+   * Checks whether another copy of the instance has the same attributes, so that both would be
+   * executed in the same place.
+   *
+   * @param other the other copy
+   * @return true if the sequence numbers and dependencies are equal else false
+   */
+  public boolean sameAttributes(EpaxosInstance other) {
+    return this.seq == other.seq && this.deps.equals(other.deps);
+  }
+
+  /**
+   * Encodes the instance into the value of a message.
+   *
+   * @return the encoded instance
+   */
+  public byte[] encode() {
+    ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + 8 * this.deps.size() + this.value.length)
+            .putInt(this.seq).putInt(this.deps.size());
+    for (Id dep : this.deps) {
+      buffer.putInt(dep.replica()).putInt(dep.instance());
+    }
+    return buffer.put(this.value).array();
+  }
+
+  /**
+   * Decodes the value of a message into an instance.
+   *
+   * @param encoded the encoded instance
+   * @return the instance
+   * @throws IllegalArgumentException if the value is too short to be an instance
+   */
+  public static EpaxosInstance decode(byte[] encoded) throws IllegalArgumentException {
+    ByteBuffer buffer = ByteBuffer.wrap(encoded);
+    if (buffer.remaining() < 8 || buffer.getInt(4) < 0
+            || buffer.remaining() < 8 + 8L * buffer.getInt(4)) {
+      throw new IllegalArgumentException("EpaxosInstance error: Truncated instance");
+    }
+
+    int seq = buffer.getInt();
+    int count = buffer.getInt();
+    SortedSet<Id> deps = new TreeSet<>();
+    for (int i = 0; i < count; i++) {
+      deps.add(new Id(buffer.getInt(), buffer.getInt()));
+    }
+    byte[] value = new byte[buffer.remaining()];
+    buffer.get(value);
+    return new EpaxosInstance(value, seq, deps);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(Batch.decode(this.value).toString());
+    sb.append(" seq=").append(this.seq).append(" deps=");
+    if (this.deps.isEmpty()) {
+      sb.append("n/a");
+    }
+    for (Id dep : this.deps) {
+      if (dep != this.deps.first()) {
+        sb.append(';');
+      }
+      sb.append(dep);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * The name of an instance: the process ID of the replica leading it and the replica's own
+   * instance number.
+   *
+   * @param replica the process ID of the leading replica
+   * @param instance the instance number
+   */
+  public record Id(int replica, int instance) implements Comparable<Id> {
+    @Override
+    public int compareTo(Id other) {
+      int order = Integer.compare(this.replica, other.replica);
+      return order != 0 ? order : Integer.compare(this.instance, other.instance);
+    }
+
+    @Override
+    public String toString() {
+      return this.replica + "." + this.instance;
+    }
+  }
+}
@@ -0,0 +1,393 @@
+package main.java;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * An asynchronous sink for the log events of the consensus hot path: the messages a process sends
+ * and receives, the values it accepts or learns, the quorums its broadcasts reach, and the progress
+ * a proposer reports on every batch or instance it decides. Recording an event only claims a slot
+ * of a preallocated ring buffer and stores references to the event's message, ballot and value in
+ * it, so the threads handling messages neither build strings nor wait on the lock of the output
+ * stream. A background thread drains the ring buffer in order, formats every event as a JSON line,
+ * messages and values in the format of {@link Util#prepareMsg(Message, String)}, quorums in that of
+ * {@link Util#prepareQuorum(int, String, long)} and progress in that of
+ * {@link Util#prepareProgress(int, String, String)}, and writes the lines out in batches, to
+ * standard error or to a file. Events below the log level are not recorded, and message, quorum and progress
+ * events can be sampled, recording one in every so many. A producer that finds the ring buffer full
+ * waits a moment for the drainer, and drops the event if the buffer stays full, so a stalled output
+ * stream never holds up the hot path for long. An event that cannot be formatted or written is
+ * skipped, and the drainer goes on with the next one. Dropped and failed events are counted in the
+ * metrics {@code eventlog.dropped} and {@code eventlog.failed}.
+ */
+public final class EventLog {
+  public static final int OFF = 0;
+  public static final int INFO = 1;
+  public static final int DEBUG = 2;
+
+  private static final int CAPACITY = 1 << 16;
+  private static final int MAX_BATCH_CHARS = 64 * 1024;
+  private static final long IDLE_PARK_NANOS = 100_000;
+  private static final long MAX_IDLE_PARK_NANOS = 1_000_000;
+  private static final long MAX_CLAIM_WAIT_NANOS = 1_000_000;
+  private static final byte MESSAGE = 1;
+  private static final byte VALUE = 2;
+  private static final byte QUORUM = 3;
+  private static final byte PROGRESS = 4;
+
+  private static volatile EventLog instance;
+
+  private final Slot[] slots;
+  private final AtomicLong claimed;
+  private volatile long drained;
+  private volatile long fullSince;
+  private final int level;
+  private final int sampleRate;
+  private final PrintStream out;
+  private final LongAdder dropped;
+  private final LongAdder failed;
+
+  /**
+   * Constructs a new EventLog object and starts its drainer.
+   *
+   * @param out the stream the events are written to
+   * @param level the lowest level of events recorded
+   * @param sampleRate records one in every so many message and quorum events
+   */
+  private EventLog(PrintStream out, int level, int sampleRate) {
+    this.slots = new Slot[CAPACITY];
+    for (int i = 0; i < CAPACITY; i++) {
+      this.slots[i] = new Slot();
+    }
+    this.claimed = new AtomicLong();
+    this.drained = 0;
+    this.fullSince = 0;
+    this.level = level;
+    this.sampleRate = Math.max(1, sampleRate);
+    this.out = out;
+    this.dropped = Metrics.counter("eventlog.dropped");
+    this.failed = Metrics.counter("eventlog.failed");
+
+    Thread drainer = new Thread(this::drain, "event-log");
+    drainer.setDaemon(true);
+    drainer.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+  }
+
+  /**
+   * Sets up the event log of the process from its settings. Events recorded before are still
+   * written out by the previous log.
+   *
+   * @param config the settings of the process
+   * @throws IllegalArgumentException if the log level is unknown or the log file cannot be opened
+   */
+  public static synchronized void configure(Config config) throws IllegalArgumentException {
+    int level = switch (config.getLogLevel()) {
+      case "off" -> OFF;
+      case "info" -> INFO;
+      case "debug" -> DEBUG;
+      default -> throw new IllegalArgumentException("EventLog error: Unknown log level " +
+              config.getLogLevel());
+    };
+
+    PrintStream out = System.err;
+    if (config.getLogFile() != null) {
+      try {
+        OutputStream file = new FileOutputStream(config.getLogFile(), true);
+        out = new PrintStream(file, false, StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("EventLog error: Unable to open log file: " +
+                e.getMessage());
+      }
+    }
+
+    instance = new EventLog(out, level, config.getLogSample());
+  }
+
+  /**
+   * Records a message a process has sent or received.
+   *
+   * @param msg the message
+   * @param action the action of the message ("sent"/"received")
+   */
+  public static void message(Message msg, String action) {
+    EventLog log = get();
+    if (log.level < DEBUG || !log.sampled()) {
+      return;
+    }
+
+    long sequence = log.claim();
+    if (sequence < 0) {
+      return;
+    }
+    Slot slot = log.slots[index(sequence)];
+    slot.kind = MESSAGE;
+    slot.msg = msg;
+    slot.action = action;
+    slot.sequence = sequence;
+  }
+
+  /**
+   * Records a value a process has accepted, chosen or learned for a log slot.
+   *
+   * @param peerId the ID of the process the value is attributed to
+   * @param action the action ("chose"/"learned")
+   * @param proposalNum the proposal number the value was accepted under
+   * @param slotNum the log slot of the value
+   * @param value the encoded batch
+   */
+  public static void value(int peerId, String action, Ballot proposalNum, int slotNum,
+                           byte[] value) {
+    EventLog log = get();
+    if (log.level < INFO) {
+      return;
+    }
+
+    long sequence = log.claim();
+    if (sequence < 0) {
+      return;
+    }
+    Slot slot = log.slots[index(sequence)];
+    slot.kind = VALUE;
+    slot.peerId = peerId;
+    slot.action = action;
+    slot.ballot = proposalNum;
+    slot.slotNum = slotNum;
+    slot.value = value;
+    slot.sequence = sequence;
+  }
+
+  /**
+   * Records the quorum a proposer's broadcast has reached.
+   *
+   * @param proposerId the ID of the proposer
+   * @param phase the name of the phase the broadcast belongs to
+   * @param latencyNanos the time the quorum took, in nanoseconds
+   */
+  public static void quorum(int proposerId, String phase, long latencyNanos) {
+    EventLog log = get();
+    if (log.level < DEBUG || !log.sampled()) {
+      return;
+    }
+
+    long sequence = log.claim();
+    if (sequence < 0) {
+      return;
+    }
+    Slot slot = log.slots[index(sequence)];
+    slot.kind = QUORUM;
+    slot.peerId = proposerId;
+    slot.action = phase;
+    slot.nanos = latencyNanos;
+    slot.sequence = sequence;
+  }
+
+  /**
+   * Records the progress a process reports, e.g. a batch it has decided or a slot it has skipped.
+   * The description is only built by the drainer, so a process that logs at a lower level, or whose
+   * event is not sampled, builds no string at all.
+   *
+   * @param peerId the ID of the process
+   * @param action the action the process reports ("decided"/"committed"/"executed"/...)
+   * @param detail builds the description of the progress
+   */
+  public static void progress(int peerId, String action, Supplier<String> detail) {
+    EventLog log = get();
+    if (log.level < DEBUG || !log.sampled()) {
+      return;
+    }
+
+    long sequence = log.claim();
+    if (sequence < 0) {
+      return;
+    }
+    Slot slot = log.slots[index(sequence)];
+    slot.kind = PROGRESS;
+    slot.peerId = peerId;
+    slot.action = action;
+    slot.detail = detail;
+    slot.sequence = sequence;
+  }
+
+  /**
+   * Gets the event log of the process, writing every event to standard error if it has not been
+   * set up.
+   *
+   * @return the event log
+   */
+  private static EventLog get() {
+    EventLog log = instance;
+    if (log == null) {
+      synchronized (EventLog.class) {
+        if (instance == null) {
+          instance = new EventLog(System.err, DEBUG, 1);
+        }
+        log = instance;
+      }
+    }
+    return log;
+  }
+
+  /**
+   * Gets the index of the slot of a sequence number in the ring buffer.
+   *
+   * @param sequence the sequence number
+   * @return the index
+   */
+  private static int index(long sequence) {
+    return (int) (sequence & (CAPACITY - 1));
+  }
+
+  /**
+   * Decides whether a sampled event is recorded.
+   *
+   * @return true if the event is recorded else false
+   */
+  private boolean sampled() {
+    return this.sampleRate == 1 || ThreadLocalRandom.current().nextInt(this.sampleRate) == 0;
+  }
+
+  /**
+   * Claims the next sequence number, waiting for the drainer to free its slot if the ring buffer
+   * is full. Once the buffer has been full for longer than the maximum wait, events are dropped
+   * without waiting until the drainer frees a slot, so a stalled drainer costs each producer
+   * nothing more. A sequence number is only taken once its slot is free, since the drainer waits
+   * for every number in turn, so a producer that gives up leaves no gap behind.
+   *
+   * @return the sequence number, or -1 if the ring buffer stayed full and the event is dropped
+   */
+  private long claim() {
+    while (true) {
+      long sequence = this.claimed.get();
+      if (sequence - this.drained < CAPACITY) {
+        if (this.claimed.compareAndSet(sequence, sequence + 1)) {
+          if (this.fullSince != 0) {
+            this.fullSince = 0;
+          }
+          return sequence;
+        }
+        continue;
+      }
+
+      long now = System.nanoTime();
+      long since = this.fullSince;
+      if (since == 0) {
+        this.fullSince = now;
+      } else if (now - since > MAX_CLAIM_WAIT_NANOS) {
+        this.dropped.increment();
+        return -1;
+      }
+      LockSupport.parkNanos(IDLE_PARK_NANOS);
+    }
+  }
+
+  /**
+   * Writes out the events in order of sequence number for as long as the process runs. Lines are
+   * gathered while events are waiting, and written out together once none are left or the batch
+   * is full. An event that fails to be formatted is counted and skipped.
+   */
+  private void drain() {
+    StringBuilder batch = new StringBuilder(MAX_BATCH_CHARS);
+    long next = 0;
+    long parkNanos = IDLE_PARK_NANOS;
+    while (true) {
+      Slot slot = this.slots[index(next)];
+      if (slot.sequence != next) {
+        if (!batch.isEmpty()) {
+          write(batch);
+        }
+
+        // back off while the process is idle
+        LockSupport.parkNanos(parkNanos);
+        parkNanos = Math.min(parkNanos * 2, MAX_IDLE_PARK_NANOS);
+        continue;
+      }
+      parkNanos = IDLE_PARK_NANOS;
+
+      try {
+        batch.append(format(slot)).append(System.lineSeparator());
+      } catch (RuntimeException e) {
+        // one malformed event must not stop the drainer, or every producer would end up dropping
+        this.failed.increment();
+      }
+      slot.msg = null;
+      slot.ballot = null;
+      slot.value = null;
+      slot.detail = null;
+      this.drained = ++next;
+      if (batch.length() >= MAX_BATCH_CHARS) {
+        write(batch);
+      }
+    }
+  }
+
+  /**
+   * Writes out a batch of lines and empties it. A batch that fails to be written is counted and
+   * dropped.
+   *
+   * @param batch the lines
+   */
+  private void write(StringBuilder batch) {
+    try {
+      this.out.print(batch);
+      this.out.flush();
+    } catch (RuntimeException e) {
+      this.failed.increment();
+    } finally {
+      batch.setLength(0);
+    }
+  }
+
+  /**
+   * Flushes the output stream, giving the drainer a moment to write out the events recorded
+   * before the process began shutting down.
+   */
+  private void flush() {
+    long deadline = System.nanoTime() + 100 * 1_000_000L;
+    while (this.drained < this.claimed.get() && System.nanoTime() < deadline) {
+      LockSupport.parkNanos(IDLE_PARK_NANOS);
+    }
+    this.out.flush();
+  }
+
+  /**
+   * Formats an event as a line of the log output.
+   *
+   * @param slot the slot holding the event
+   * @return the line
+   */
+  private static String format(Slot slot) {
+    return switch (slot.kind) {
+      case MESSAGE -> Util.prepareMsg(slot.msg, slot.action);
+      case VALUE -> Util.prepareMsg(slot.peerId, slot.action, slot.action,
+              Util.formatValue(slot.value), slot.ballot, slot.slotNum);
+      case PROGRESS -> Util.prepareProgress(slot.peerId, slot.action, slot.detail.get());
+      default -> Util.prepareQuorum(slot.peerId, slot.action, slot.nanos);
+    };
+  }
+
+  /**
+   * A slot of the ring buffer. Its fields are written by the producer that claimed it before the
+   * producer publishes the slot by setting its sequence number, and read by the drainer after.
+   */
+  private static final class Slot {
+    private volatile long sequence = -1;
+    private byte kind;
+    private Message msg;
+    private String action;
+    private int peerId;
+    private Ballot ballot;
+    private int slotNum;
+    private byte[] value;
+    private long nanos;
+    private Supplier<String> detail;
+  }
+}
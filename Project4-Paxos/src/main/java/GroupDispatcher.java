@@ -0,0 +1,52 @@
+package main.java;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Hands the requests a process receives to the handlers of the Paxos groups they belong to. Every
+ * {@link Transport} keeps one, whichever way it carries the requests to the process.
+ */
+public class GroupDispatcher {
+  private final Map<Integer, Function<Message, Message>> handlers;
+
+  /**
+   * Constructs a new GroupDispatcher object without any handlers.
+   */
+  public GroupDispatcher() {
+    this.handlers = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Registers the handler of the requests of a group.
+   *
+   * @param groupId the ID of the group
+   * @param handler handles a request of the group and returns its response
+   * @throws IllegalArgumentException if the group already has a handler
+   */
+  public void register(int groupId, Function<Message, Message> handler)
+          throws IllegalArgumentException {
+    if (this.handlers.putIfAbsent(groupId, handler) != null) {
+      throw new IllegalArgumentException("GroupDispatcher error: Group " + groupId +
+              " is already registered");
+    }
+  }
+
+  /**
+   * Hands a request to the handler of its group, and marks the response as belonging to the same
+   * group.
+   *
+   * @param msg the request
+   * @return the response
+   * @throws RuntimeException if the process does not take part in the request's group
+   */
+  public Message dispatch(Message msg) throws RuntimeException {
+    Function<Message, Message> handler = this.handlers.get(msg.getGroupId());
+    if (handler == null) {
+      throw new RuntimeException("GroupDispatcher error: Group " + msg.getGroupId() +
+              " is not hosted here");
+    }
+    return handler.apply(msg).withGroup(msg.getGroupId());
+  }
+}
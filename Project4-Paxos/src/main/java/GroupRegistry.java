@@ -0,0 +1,107 @@
+package main.java;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hosts every Paxos group a process takes part in. Each group is an independent replicated log
+ * with its own proposer, acceptor or learner in the process, its own files, and its own key-value
+ * state machine, and every group has the same roles as the hostsfile gives the process. The
+ * groups share the process's {@link Transport}, and a proposer process serves one
+ * {@link KvService} that hands each command to the group owning its key. Keys are spread over the
+ * groups by hashing, each group owning an equal range of the hash space.
+ */
+public class GroupRegistry extends Process {
+  private final Transport transport;
+  private final Map<Integer, Process> groups;
+  private final KvService kvService;
+
+  /**
+   * Constructs a new GroupRegistry object, creating the process's member of every group.
+   *
+   * @param id the unique ID of the process
+   * @param name the hostname of the process
+   * @param config the settings of the process
+   * @param role the role of the process in every group ("proposer"/"acceptor"/"learner")
+   * @throws IllegalArgumentException if the role is unknown
+   */
+  public GroupRegistry(int id, String name, Config config, String role)
+          throws IllegalArgumentException {
+    super(id, name);
+    this.transport = new NetworkTransport(this.info, config);
+    this.groups = new TreeMap<>();
+
+    List<Proposer> proposers = new ArrayList<>();
+    for (int groupId = 0; groupId < config.getGroups(); groupId++) {
+      Process member = switch (role) {
+        case "proposer" -> new Proposer(id, name, config, groupId, this.transport);
+        case "acceptor" -> new Acceptor(id, name, config, groupId, this.transport);
+        case "learner" -> new Learner(id, name, config, groupId, this.transport);
+        default -> throw new IllegalArgumentException("GroupRegistry error: Unknown role " +
+                role);
+      };
+      if (member instanceof Proposer proposer) {
+        proposers.add(proposer);
+      }
+      this.groups.put(groupId, member);
+    }
+
+    this.kvService = config.getKvStore() == null || proposers.isEmpty() ? null
+            : new KvService(this.info, config, proposers);
+  }
+
+  /**
+   * Gets the group that owns a command. A key-value command belongs to the group owning its key,
+   * and any other command to the group owning the command as a whole.
+   *
+   * @param command the encoded command
+   * @param groupCount the number of groups
+   * @return the ID of the group
+   */
+  public static int groupOf(byte[] command, int groupCount) {
+    if (groupCount == 1) {
+      return 0;
+    }
+    KvCommand kvCommand = KvCommand.decode(command);
+    int hash = kvCommand == null ? Arrays.hashCode(command) : kvCommand.getKey().hashCode();
+
+    // mix the bits so similar keys land in different ranges
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return (int) (((hash & 0xffffffffL) * groupCount) >>> 32);
+  }
+
+  /**
+   * Gets the process's member of a group.
+   *
+   * @param groupId the ID of the group
+   * @return the proposer, acceptor or learner of the group
+   */
+  public Process getGroup(int groupId) {
+    return this.groups.get(groupId);
+  }
+
+  /**
+   * Starts serving every group, each running on a thread of its own.
+   */
+  @Override
+  public void start() {
+    this.transport.start();
+    if (this.kvService != null) {
+      this.kvService.start();
+    }
+    if (this.groups.size() > 1) {
+      System.err.println("Process " + this.info.getId() + " hosts " + this.groups.size() +
+              " Paxos groups");
+    }
+
+    this.groups.forEach((groupId, member) -> new Thread(member::start, "group-" + groupId)
+            .start());
+  }
+}
@@ -0,0 +1,50 @@
+package main.java;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link KvStore} backed by a concurrent hash map on the heap, so a snapshot can walk the map
+ * while values are written.
+ */
+public class HeapKvStore implements KvStore {
+  private final Map<String, byte[]> entries;
+
+  /**
+   * Constructs a new HeapKvStore object without any keys.
+   */
+  public HeapKvStore() {
+    this.entries = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public byte[] get(String key) {
+    return this.entries.get(key);
+  }
+
+  @Override
+  public void put(String key, byte[] value) {
+    this.entries.put(key, value);
+  }
+
+  @Override
+  public boolean delete(String key) {
+    return this.entries.remove(key) != null;
+  }
+
+  @Override
+  public int size() {
+    return this.entries.size();
+  }
+
+  @Override
+  public void forEach(BiConsumer<String, byte[]> visitor) {
+    this.entries.forEach(visitor);
+  }
+
+  @Override
+  public void clear() {
+    this.entries.clear();
+  }
+}
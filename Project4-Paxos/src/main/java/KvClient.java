@@ -0,0 +1,119 @@
+package main.java;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A client of the replicated key-value store. The client sends one command at a time over a
+ * single connection to a proposer's {@link KvService}, numbering its commands in order, and sends
+ * a command again with the same sequence number until the service answers it with a result.
+ */
+public class KvClient implements AutoCloseable {
+  private final SocketChannel channel;
+  private final long clientId;
+  private final BufferPool buffers;
+  private final ByteBuffer lengthBuffer;
+  private long sequence;
+
+  /**
+   * Constructs a new KvClient object connected to a proposer, under a random client ID.
+   *
+   * @param host the hostname of the proposer
+   * @param port the port of the proposer's key-value service
+   * @throws IOException if the proposer cannot be reached
+   */
+  public KvClient(String host, int port) throws IOException {
+    this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+    this.channel.socket().setTcpNoDelay(true);
+    this.clientId = ThreadLocalRandom.current().nextLong();
+    this.buffers = new BufferPool(4096);
+    this.lengthBuffer = ByteBuffer.allocate(MessageCodec.LENGTH_SIZE);
+    this.sequence = 0;
+  }
+
+  /**
+   * Reads the value of a key.
+   *
+   * @param key the key
+   * @return the result, carrying the value unless the key is absent
+   * @throws IOException if the connection breaks
+   */
+  public KvResult get(String key) throws IOException {
+    return execute(KvCommand.GET, key, Message.NO_VALUE, null);
+  }
+
+  /**
+   * Sets the value of a key.
+   *
+   * @param key the key
+   * @param value the value
+   * @return the result
+   * @throws IOException if the connection breaks
+   */
+  public KvResult put(String key, byte[] value) throws IOException {
+    return execute(KvCommand.PUT, key, value, null);
+  }
+
+  /**
+   * Removes a key.
+   *
+   * @param key the key
+   * @return the result, not found if the key was absent
+   * @throws IOException if the connection breaks
+   */
+  public KvResult delete(String key) throws IOException {
+    return execute(KvCommand.DELETE, key, Message.NO_VALUE, null);
+  }
+
+  /**
+   * Sets the value of a key only if it currently has the expected value.
+   *
+   * @param key the key
+   * @param expected the expected value, or null if the key is expected to be absent
+   * @param value the new value
+   * @return the result, carrying the current value if it did not match
+   * @throws IOException if the connection breaks
+   */
+  public KvResult cas(String key, byte[] expected, byte[] value) throws IOException {
+    return execute(KvCommand.CAS, key, value, expected);
+  }
+
+  /**
+   * Sends a command under the next sequence number until it gets a result.
+   *
+   * @param op the operation
+   * @param key the key
+   * @param value the value to write
+   * @param expected the value a compare-and-set expects
+   * @return the result
+   * @throws IOException if the connection breaks
+   */
+  private KvResult execute(byte op, String key, byte[] value, byte[] expected)
+          throws IOException {
+    this.sequence++;
+    byte[] command = new KvCommand(op, this.clientId, this.sequence, key, value, expected)
+            .encode();
+    Message request = new Message(MessageType.KV_REQUEST, 0, Ballot.ZERO, 0, command);
+
+    while (true) {
+      MessageCodec.writeFrame(this.channel, this.sequence, request, this.buffers);
+      ByteBuffer frame = MessageCodec.readFrame(this.channel, this.lengthBuffer, this.buffers);
+      frame.getLong();
+      Message response = MessageCodec.decode(frame);
+      this.buffers.release(frame);
+
+      KvResult result = KvResult.decode(response.getValue());
+      if (result.getStatus() != KvResult.RETRY) {
+        return result;
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.channel.close();
+  }
+}
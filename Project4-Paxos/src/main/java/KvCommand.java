@@ -0,0 +1,170 @@
+package main.java;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A command of the replicated key-value store, as it travels in a batch through the log. Every
+ * command carries the ID of the client that sent it and the client's sequence number for it, so a
+ * command that is proposed more than once, because the client retried it or a batch was requeued,
+ * is only applied once.
+ */
+public final class KvCommand {
+  public static final byte GET = 1;
+  public static final byte PUT = 2;
+  public static final byte DELETE = 3;
+  public static final byte CAS = 4;
+
+  private final byte op;
+  private final long clientId;
+  private final long sequence;
+  private final String key;
+  private final byte[] value;
+  private final byte[] expected;
+
+  /**
+   * Constructs a new KvCommand object.
+   *
+   * @param op the operation, one of {@link #GET}, {@link #PUT}, {@link #DELETE} or {@link #CAS}
+   * @param clientId the ID of the client sending the command
+   * @param sequence the client's sequence number of the command
+   * @param key the key the command operates on
+   * @param value the value to write, or an empty value if the command does not write one
+   * @param expected the value a compare-and-set expects to find, or null if the key is expected
+   *                 to be absent or the command is not a compare-and-set
+   */
+  public KvCommand(byte op, long clientId, long sequence, String key, byte[] value,
+                   byte[] expected) {
+    this.op = op;
+    this.clientId = clientId;
+    this.sequence = sequence;
+    this.key = key;
+    this.value = value;
+    this.expected = expected;
+  }
+
+  /**
+   * Gets the operation of the command.
+   *
+   * @return the operation
+   */
+  public byte getOp() {
+    return this.op;
+  }
+
+  /**
+   * Gets the ID of the client that sent the command.
+   *
+   * @return the client ID
+   */
+  public long getClientId() {
+    return this.clientId;
+  }
+
+  /**
+   * Gets the client's sequence number of the command.
+   *
+   * @return the sequence number
+   */
+  public long getSequence() {
+    return this.sequence;
+  }
+
+  /**
+   * Gets the key the command operates on.
+   *
+   * @return the key
+   */
+  public String getKey() {
+    return this.key;
+  }
+
+  /**
+   * Gets the value the command writes.
+   *
+   * @return the value, empty if the command does not write one
+   */
+  public byte[] getValue() {
+    return this.value;
+  }
+
+  /**
+   * Gets the value a compare-and-set expects to find.
+   *
+   * @return the expected value, or null if the key is expected to be absent
+   */
+  public byte[] getExpected() {
+    return this.expected;
+  }
+
+  /**
+   * Encodes the command as a command of a batch.
+   *
+   * @return the encoded command
+   */
+  public byte[] encode() {
+    byte[] keyBytes = this.key.getBytes(StandardCharsets.UTF_8);
+    int expectedLength = this.expected == null ? 0 : this.expected.length;
+    ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + 8 + 4 + keyBytes.length + 4 +
+            this.value.length + 4 + expectedLength);
+
+    buffer.put(this.op).putLong(this.clientId).putLong(this.sequence);
+    buffer.putInt(keyBytes.length).put(keyBytes);
+    buffer.putInt(this.value.length).put(this.value);
+    buffer.putInt(this.expected == null ? -1 : expectedLength);
+    if (this.expected != null) {
+      buffer.put(this.expected);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Decodes a command of a batch. Commands that are not key-value commands, such as the single
+   * characters proposed with the -v argument, are not decoded.
+   *
+   * @param command the encoded command
+   * @return the command, or null if it is not a key-value command
+   */
+  public static KvCommand decode(byte[] command) {
+    if (command.length == 0 || command[0] < GET || command[0] > CAS) {
+      return null;
+    }
+
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(command);
+      byte op = buffer.get();
+      long clientId = buffer.getLong();
+      long sequence = buffer.getLong();
+      byte[] key = new byte[buffer.getInt()];
+      buffer.get(key);
+      byte[] value = new byte[buffer.getInt()];
+      buffer.get(value);
+      int expectedLength = buffer.getInt();
+      byte[] expected = null;
+      if (expectedLength >= 0) {
+        expected = new byte[expectedLength];
+        buffer.get(expected);
+      }
+      if (buffer.hasRemaining()) {
+        return null;
+      }
+
+      return new KvCommand(op, clientId, sequence, new String(key, StandardCharsets.UTF_8),
+              value, expected);
+    } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    String name = switch (this.op) {
+      case GET -> "GET";
+      case PUT -> "PUT";
+      case DELETE -> "DELETE";
+      default -> "CAS";
+    };
+    return name + " " + this.key + " (" + this.clientId + "#" + this.sequence + ")";
+  }
+}
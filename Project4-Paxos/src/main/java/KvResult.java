@@ -0,0 +1,72 @@
+package main.java;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The result of applying a {@link KvCommand}, as it is sent back to the client.
+ */
+public final class KvResult {
+  public static final byte OK = 0;
+  public static final byte NOT_FOUND = 1;
+  public static final byte CAS_FAILED = 2;
+  public static final byte RETRY = 3;
+
+  private final byte status;
+  private final byte[] value;
+
+  /**
+   * Constructs a new KvResult object.
+   *
+   * @param status the status, one of {@link #OK}, {@link #NOT_FOUND}, {@link #CAS_FAILED} or
+   *               {@link #RETRY} if the command was not decided in time and has to be sent again
+   * @param value the value read, or an empty value if the command did not read one
+   */
+  public KvResult(byte status, byte[] value) {
+    this.status = status;
+    this.value = value;
+  }
+
+  /**
+   * Gets the status of the result.
+   *
+   * @return the status
+   */
+  public byte getStatus() {
+    return this.status;
+  }
+
+  /**
+   * Gets the value read by the command.
+   *
+   * @return the value, empty if the command did not read one
+   */
+  public byte[] getValue() {
+    return this.value;
+  }
+
+  /**
+   * Encodes the result into the value of a response.
+   *
+   * @return the encoded result
+   */
+  public byte[] encode() {
+    return ByteBuffer.allocate(1 + this.value.length).put(this.status).put(this.value).array();
+  }
+
+  /**
+   * Decodes the value of a response into a result.
+   *
+   * @param encoded the encoded result
+   * @return the result
+   * @throws IllegalArgumentException if the value is empty
+   */
+  public static KvResult decode(byte[] encoded) throws IllegalArgumentException {
+    if (encoded.length == 0) {
+      throw new IllegalArgumentException("KvResult error: Empty result");
+    }
+
+    byte[] value = new byte[encoded.length - 1];
+    System.arraycopy(encoded, 1, value, 0, value.length);
+    return new KvResult(encoded[0], value);
+  }
+}
@@ -0,0 +1,71 @@
+package main.java;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The client-facing API of the replicated key-value store, served by a proposer process. Every
+ * request carries an encoded {@link KvCommand}, which is handed to the proposer of the Paxos group
+ * owning the command's key, added to its pending commands, and answered once the group's state
+ * machine has applied it. No thread waits for the result meanwhile, so the number of commands in
+ * flight is not bounded by the server's threads. A command that is not decided in time is
+ * answered with {@link KvResult#RETRY}, and the client sends it again with the same sequence
+ * number, which the state machine deduplicates.
+ */
+public class KvService {
+  private static final long REQUEST_TIMEOUT_MS = 5000;
+
+  private final ProcessInfo owner;
+  private final List<Proposer> groups;
+  private final MessageServer server;
+
+  /**
+   * Constructs a new KvService object. The service does not listen until it is started.
+   *
+   * @param owner the process serving the API
+   * @param config the settings of the process
+   * @param groups the proposer of each group, indexed by group ID
+   */
+  public KvService(ProcessInfo owner, Config config, List<Proposer> groups) {
+    this.owner = owner;
+    this.groups = groups;
+    this.server = MessageServer.createAsync(config.getServerModel(), owner, Util.KV_PORT,
+            this::handleRequest);
+  }
+
+  /**
+   * Starts listening for clients.
+   */
+  public void start() {
+    this.server.start();
+  }
+
+  /**
+   * Handles the request of a client by proposing its command. The response completes with the
+   * result once the command is applied, or with a retry once the timeout runs out. The command's
+   * own future is shared with any resends of it, so the timeout completes a separate one.
+   *
+   * @param msg the request
+   * @return the future of the response carrying the encoded result
+   * @throws RuntimeException if the request is not a key-value request
+   */
+  private CompletableFuture<Message> handleRequest(Message msg) throws RuntimeException {
+    KvCommand command = msg.getType() == MessageType.KV_REQUEST
+            ? KvCommand.decode(msg.getValue()) : null;
+    if (command == null) {
+      throw new RuntimeException("KvService error: Invalid request received");
+    }
+
+    CompletableFuture<KvResult> result = this.groups.get(GroupRegistry.groupOf(msg.getValue(),
+            this.groups.size())).submit(command, msg.getValue());
+
+    KvResult retry = new KvResult(KvResult.RETRY, Message.NO_VALUE);
+    CompletableFuture<KvResult> response = new CompletableFuture<>();
+    result.whenComplete((applied, error) -> response.complete(error == null ? applied : retry));
+    response.completeOnTimeout(retry, REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+    return response.thenApply(done -> new Message(MessageType.KV_RESPONSE, this.owner.getId(),
+            Ballot.ZERO, msg.getSlot(), done.encode()));
+  }
+}
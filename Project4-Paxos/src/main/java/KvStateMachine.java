@@ -0,0 +1,374 @@
+package main.java;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The replicated key-value state machine. The proposer applies every decided log slot to it in
+ * log order, so every replica that applies the same log ends up with the same store. Commands are
+ * deduplicated by client ID and sequence number: each client's last applied sequence number and
+ * its result are kept, a command that has already been applied is skipped, and a client that
+ * sends a command again gets the result it was applied with. A snapshot of the store and the
+ * sessions can be written out while commands keep being applied: once a snapshot begins, the
+ * first change to each key saves the value the key had before (copy-on-write), and the snapshot
+ * uses that saved value in place of whatever it finds in the store.
+ */
+public class KvStateMachine {
+  // marks a key that was absent before its first change since the snapshot began
+  private static final byte[] ABSENT = new byte[0];
+
+  private final KvStore store;
+  private final Map<Long, Session> sessions;
+  private final Map<Request, CompletableFuture<KvResult>> pending;
+  private Map<String, byte[]> preImages;
+  private long appliedCommands;
+
+  /**
+   * Constructs a new KvStateMachine object on top of the given store.
+   *
+   * @param store the store the commands are applied to
+   */
+  public KvStateMachine(KvStore store) {
+    this.store = store;
+    this.sessions = new HashMap<>();
+    this.pending = new HashMap<>();
+    this.preImages = null;
+    this.appliedCommands = 0;
+  }
+
+  /**
+   * Registers a command a client has sent, before it is proposed. The returned future completes
+   * once the command is applied. A command that has already been applied completes right away
+   * with the result it was applied with, and a command that is already waiting gets the same
+   * future as before.
+   *
+   * @param command the command
+   * @return the future of the command's result
+   */
+  public synchronized CompletableFuture<KvResult> submit(KvCommand command) {
+    Session session = this.sessions.get(command.getClientId());
+    if (session != null && command.getSequence() <= session.sequence()) {
+      // the client has moved past this command, so only its last result is still known
+      return CompletableFuture.completedFuture(command.getSequence() == session.sequence()
+              ? session.result() : new KvResult(KvResult.RETRY, Message.NO_VALUE));
+    }
+
+    return this.pending.computeIfAbsent(
+            new Request(command.getClientId(), command.getSequence()),
+            k -> new CompletableFuture<>());
+  }
+
+  /**
+   * Applies the commands of a decided log slot in order, and completes the futures of those that
+   * are waiting. Commands that are not key-value commands are skipped.
+   *
+   * @param value the value of the log slot, an encoded batch
+   */
+  public void apply(byte[] value) {
+    for (byte[] encoded : Batch.decode(value).getCommands()) {
+      KvCommand command = KvCommand.decode(encoded);
+      if (command == null) {
+        continue;
+      }
+
+      CompletableFuture<KvResult> waiting;
+      KvResult result;
+      synchronized (this) {
+        Session session = this.sessions.get(command.getClientId());
+        if (session != null && command.getSequence() <= session.sequence()) {
+          continue; // a duplicate of a command that has been applied already
+        }
+        result = execute(command);
+        this.sessions.put(command.getClientId(), new Session(command.getSequence(), result));
+        waiting = this.pending.remove(new Request(command.getClientId(), command.getSequence()));
+        this.appliedCommands++;
+      }
+
+      if (waiting != null) {
+        waiting.complete(result);
+      }
+    }
+  }
+
+  /**
+   * Executes a command against the store.
+   *
+   * @param command the command
+   * @return the result of the command
+   */
+  private KvResult execute(KvCommand command) {
+    String key = command.getKey();
+    byte[] current = this.store.get(key);
+
+    return switch (command.getOp()) {
+      case KvCommand.GET -> current == null ? new KvResult(KvResult.NOT_FOUND, Message.NO_VALUE)
+              : new KvResult(KvResult.OK, current);
+      case KvCommand.PUT -> {
+        preserve(key, current);
+        this.store.put(key, command.getValue());
+        yield new KvResult(KvResult.OK, Message.NO_VALUE);
+      }
+      case KvCommand.DELETE -> {
+        preserve(key, current);
+        yield new KvResult(this.store.delete(key) ? KvResult.OK : KvResult.NOT_FOUND,
+                Message.NO_VALUE);
+      }
+      default -> {
+        boolean matches = command.getExpected() == null ? current == null
+                : current != null && Arrays.equals(current, command.getExpected());
+        if (!matches) {
+          yield new KvResult(KvResult.CAS_FAILED,
+                  current == null ? Message.NO_VALUE : current);
+        }
+        preserve(key, current);
+        this.store.put(key, command.getValue());
+        yield new KvResult(KvResult.OK, Message.NO_VALUE);
+      }
+    };
+  }
+
+  /**
+   * Saves the value a key has before its first change since the running snapshot began, so the
+   * snapshot still sees the old value. Does nothing if no snapshot is running.
+   *
+   * @param key the key about to change
+   * @param current the current value of the key, or null if it is absent
+   */
+  private void preserve(String key, byte[] current) {
+    if (this.preImages != null) {
+      this.preImages.putIfAbsent(key, current == null ? ABSENT : current);
+    }
+  }
+
+  /**
+   * Begins a snapshot of the state after every slot up to the given one has been applied. Must be
+   * called by the thread applying the log, right after it applied that slot. The sessions are
+   * copied right away, and the store is read while the snapshot is written out.
+   *
+   * @param slot the last log slot applied
+   * @return the snapshot
+   * @throws IllegalStateException if another snapshot is still running
+   */
+  public synchronized Snapshot beginSnapshot(int slot) throws IllegalStateException {
+    if (this.preImages != null) {
+      throw new IllegalStateException("KvStateMachine error: A snapshot is already running");
+    }
+    this.preImages = new ConcurrentHashMap<>();
+    return new Snapshot(slot, new HashMap<>(this.sessions), this.preImages);
+  }
+
+  /**
+   * Ends the running snapshot, so changes no longer save the old values of keys.
+   */
+  public synchronized void endSnapshot() {
+    this.preImages = null;
+  }
+
+  /**
+   * Replaces the whole state with a snapshot written by {@link Snapshot#writeTo(OutputStream)},
+   * possibly by another replica. Commands waiting for a result that the snapshot already covers
+   * are completed with the result their client's session holds.
+   *
+   * @param in the stream to read the snapshot from
+   * @return the last log slot the snapshot covers
+   * @throws IOException if the snapshot cannot be read
+   */
+  public synchronized int install(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    int slot = data.readInt();
+
+    this.sessions.clear();
+    int sessionCount = data.readInt();
+    for (int i = 0; i < sessionCount; i++) {
+      long clientId = data.readLong();
+      long sequence = data.readLong();
+      byte status = data.readByte();
+      this.sessions.put(clientId, new Session(sequence, new KvResult(status, readBytes(data))));
+    }
+
+    this.store.clear();
+    for (int keyLength = data.readInt(); keyLength >= 0; keyLength = data.readInt()) {
+      byte[] key = new byte[keyLength];
+      data.readFully(key);
+      this.store.put(new String(key, StandardCharsets.UTF_8), readBytes(data));
+    }
+
+    this.pending.entrySet().removeIf(entry -> {
+      Session session = this.sessions.get(entry.getKey().clientId());
+      if (session == null || entry.getKey().sequence() > session.sequence()) {
+        return false;
+      }
+      entry.getValue().complete(entry.getKey().sequence() == session.sequence()
+              ? session.result() : new KvResult(KvResult.RETRY, Message.NO_VALUE));
+      return true;
+    });
+
+    return slot;
+  }
+
+  /**
+   * Reads a length-prefixed array of bytes.
+   *
+   * @param data the stream to read from
+   * @return the bytes
+   * @throws IOException if the stream cannot be read
+   */
+  private static byte[] readBytes(DataInputStream data) throws IOException {
+    byte[] bytes = new byte[data.readInt()];
+    data.readFully(bytes);
+    return bytes;
+  }
+
+  /**
+   * Gets the number of commands applied so far, duplicates not included.
+   *
+   * @return the number of applied commands
+   */
+  public synchronized long getAppliedCommands() {
+    return this.appliedCommands;
+  }
+
+  /**
+   * Gets the number of keys in the store.
+   *
+   * @return the number of keys
+   */
+  public synchronized int size() {
+    return this.store.size();
+  }
+
+  /**
+   * A snapshot of the state machine as it was when the snapshot began. The snapshot is written
+   * out as the last log slot it covers, then every session, then every key and value, ended by a
+   * key length of -1, with every string and value prefixed by its length. A process that only
+   * stores a snapshot can rely on the first four bytes being the slot.
+   */
+  public final class Snapshot {
+    private final int slot;
+    private final Map<Long, Session> sessions;
+    private final Map<String, byte[]> preImages;
+
+    /**
+     * Constructs a new Snapshot object.
+     *
+     * @param slot the last log slot the snapshot covers
+     * @param sessions a copy of the sessions
+     * @param preImages the old values of the keys changed since the snapshot began
+     */
+    private Snapshot(int slot, Map<Long, Session> sessions, Map<String, byte[]> preImages) {
+      this.slot = slot;
+      this.sessions = sessions;
+      this.preImages = preImages;
+    }
+
+    /**
+     * Gets the last log slot the snapshot covers.
+     *
+     * @return the slot
+     */
+    public int getSlot() {
+      return this.slot;
+    }
+
+    /**
+     * Writes the snapshot out. The store is read while commands keep being applied to it, and
+     * every key changed since the snapshot began is written with the value it had before.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+      DataOutputStream data = new DataOutputStream(out);
+      data.writeInt(this.slot);
+      data.writeInt(this.sessions.size());
+      for (Map.Entry<Long, Session> entry : this.sessions.entrySet()) {
+        data.writeLong(entry.getKey());
+        data.writeLong(entry.getValue().sequence());
+        data.writeByte(entry.getValue().result().getStatus());
+        writeBytes(data, entry.getValue().result().getValue());
+      }
+
+      // keys visited in the store, then keys that have been deleted from it since
+      Set<String> written = new HashSet<>();
+      try {
+        store.forEach((key, value) -> {
+          if (written.add(key)) {
+            writeEntry(data, key, this.preImages.getOrDefault(key, value));
+          }
+        });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      for (Map.Entry<String, byte[]> entry : this.preImages.entrySet()) {
+        if (written.add(entry.getKey())) {
+          writeEntry(data, entry.getKey(), entry.getValue());
+        }
+      }
+      data.writeInt(-1);
+      data.flush();
+    }
+
+    /**
+     * Writes a key and its value, unless the key was absent.
+     *
+     * @param data the stream to write to
+     * @param key the key
+     * @param value the value, or {@link #ABSENT} if the key was absent
+     * @throws UncheckedIOException if the entry cannot be written
+     */
+    private void writeEntry(DataOutputStream data, String key, byte[] value)
+            throws UncheckedIOException {
+      if (value == ABSENT) {
+        return;
+      }
+      try {
+        writeBytes(data, key.getBytes(StandardCharsets.UTF_8));
+        writeBytes(data, value);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Writes a length-prefixed array of bytes.
+     *
+     * @param data the stream to write to
+     * @param bytes the bytes
+     * @throws IOException if the stream cannot be written
+     */
+    private static void writeBytes(DataOutputStream data, byte[] bytes) throws IOException {
+      data.writeInt(bytes.length);
+      data.write(bytes);
+    }
+  }
+
+  /**
+   * The last command applied for a client.
+   *
+   * @param sequence the client's sequence number of the command
+   * @param result the result the command was applied with
+   */
+  private record Session(long sequence, KvResult result) {
+  }
+
+  /**
+   * A command waiting to be applied, identified by its client and sequence number.
+   *
+   * @param clientId the ID of the client
+   * @param sequence the client's sequence number of the command
+   */
+  private record Request(long clientId, long sequence) {
+  }
+}
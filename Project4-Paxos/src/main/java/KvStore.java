@@ -0,0 +1,69 @@
+package main.java;
+
+import java.util.function.BiConsumer;
+
+/**
+ * The storage behind the replicated key-value state machine. A store is only changed by the thread
+ * applying the decided log, but a snapshot may read it from another thread at the same time, so
+ * implementations have to allow {@link #forEach(BiConsumer)} to run alongside changes.
+ */
+public interface KvStore {
+  /**
+   * Gets the value of a key.
+   *
+   * @param key the key
+   * @return the value, or null if the key is absent
+   */
+  byte[] get(String key);
+
+  /**
+   * Sets the value of a key.
+   *
+   * @param key the key
+   * @param value the value
+   */
+  void put(String key, byte[] value);
+
+  /**
+   * Removes a key.
+   *
+   * @param key the key
+   * @return true if the key was present else false
+   */
+  boolean delete(String key);
+
+  /**
+   * Gets the number of keys in the store.
+   *
+   * @return the number of keys
+   */
+  int size();
+
+  /**
+   * Visits every key and its value. Keys changed while the visit runs may be visited with their
+   * old or their new value, or not at all.
+   *
+   * @param visitor the visitor of each key and value
+   */
+  void forEach(BiConsumer<String, byte[]> visitor);
+
+  /**
+   * Removes every key.
+   */
+  void clear();
+
+  /**
+   * Creates a store of the given kind.
+   *
+   * @param kind "heap" for a hash map on the heap or "offheap" for values kept off the heap
+   * @return the store
+   * @throws IllegalArgumentException if the kind is unknown
+   */
+  static KvStore create(String kind) throws IllegalArgumentException {
+    return switch (kind) {
+      case "heap" -> new HeapKvStore();
+      case "offheap" -> new OffHeapKvStore();
+      default -> throw new IllegalArgumentException("KvStore error: Unknown store " + kind);
+    };
+  }
+}
@@ -0,0 +1,166 @@
+package main.java;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds with a fixed relative precision, in the manner of an HDR
+ * histogram. Every power of two is split into 16 buckets of equal width, so a recorded value is
+ * off by at most one sixteenth of itself wherever it falls between a nanosecond and the longest
+ * latency a long can hold. Recording a value is a few atomic additions and never allocates or
+ * locks, so it can be done on every message. Percentiles are read from the counts of the buckets
+ * while values are still being recorded, so they may miss the values recorded during the read.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = SUB_BUCKETS * (Long.SIZE - SUB_BUCKET_BITS);
+
+  private final AtomicLongArray counts;
+  private final LongAdder count;
+  private final LongAdder sum;
+  private final AtomicLong max;
+
+  /**
+   * Constructs a new LatencyHistogram object without any values.
+   */
+  public LatencyHistogram() {
+    this.counts = new AtomicLongArray(BUCKETS);
+    this.count = new LongAdder();
+    this.sum = new LongAdder();
+    this.max = new AtomicLong();
+  }
+
+  /**
+   * Records a latency. Negative latencies count as 0.
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    this.counts.incrementAndGet(bucket(value));
+    this.count.increment();
+    this.sum.add(value);
+    if (value > this.max.get()) {
+      this.max.accumulateAndGet(value, Math::max);
+    }
+  }
+
+  /**
+   * Records a latency measured by a client that sends a request every so often, correcting for
+   * coordinated omission. While a request was stalled, the client sent none of the requests it
+   * would otherwise have sent, and each of those would have waited out the rest of the stall. So
+   * a latency longer than the interval is recorded together with one latency shorter by the
+   * interval, one shorter by twice the interval, and so on down to the interval.
+   *
+   * @param nanos the latency in nanoseconds
+   * @param expectedIntervalNanos the time between requests when none stalls, or 0 to record the
+   *                              latency alone
+   */
+  public void recordCorrected(long nanos, long expectedIntervalNanos) {
+    record(nanos);
+    if (expectedIntervalNanos <= 0) {
+      return;
+    }
+    for (long missed = nanos - expectedIntervalNanos; missed >= expectedIntervalNanos;
+         missed -= expectedIntervalNanos) {
+      record(missed);
+    }
+  }
+
+  /**
+   * Records how long has passed since the given time.
+   *
+   * @param startNanos the start time, as given by {@link System#nanoTime()}
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Gets the number of latencies recorded.
+   *
+   * @return the number of latencies
+   */
+  public long getCount() {
+    return this.count.sum();
+  }
+
+  /**
+   * Gets the mean of the latencies recorded.
+   *
+   * @return the mean in nanoseconds, or 0 if there are none
+   */
+  public long getMean() {
+    long count = this.count.sum();
+    return count == 0 ? 0 : this.sum.sum() / count;
+  }
+
+  /**
+   * Gets the longest latency recorded.
+   *
+   * @return the longest latency in nanoseconds, or 0 if there are none
+   */
+  public long getMax() {
+    return this.max.get();
+  }
+
+  /**
+   * Gets a percentile of the latencies recorded. The latency returned is the highest one that
+   * falls into the same bucket as the percentile, capped at the longest latency recorded.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the latency in nanoseconds, or 0 if there are none
+   */
+  public long percentile(double percentile) {
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      total += this.counts.get(i);
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += this.counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestInBucket(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Gets the bucket of a latency. Latencies below 16 ns get a bucket each, and every power of two
+   * above is split into 16 buckets by the four bits after its leading one.
+   *
+   * @param value the latency in nanoseconds
+   * @return the index of the bucket
+   */
+  private static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    return SUB_BUCKETS * (shift + 1) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  /**
+   * Gets the highest latency that falls into a bucket.
+   *
+   * @param bucket the index of the bucket
+   * @return the latency in nanoseconds
+   */
+  private static long highestInBucket(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,93 @@
+package main.java;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps an exponentially weighted moving average of how long each acceptor takes to respond, so
+ * a proposer can prefer the acceptors that have been answering fastest. Acceptors that have not
+ * been measured yet count as the fastest, so every acceptor gets tried. The most recent response
+ * times of all acceptors are also kept together, to tell when a response is later than usual.
+ */
+public class LatencyTracker {
+  private static final double WEIGHT = 0.2;
+  private static final int SAMPLES = 256;
+
+  private final Map<Integer, Double> averages;
+  private final long[] recent;
+  private int sampleCount;
+
+  /**
+   * Constructs a new LatencyTracker object without any measurements.
+   */
+  public LatencyTracker() {
+    this.averages = new ConcurrentHashMap<>();
+    this.recent = new long[SAMPLES];
+    this.sampleCount = 0;
+  }
+
+  /**
+   * Records how long an acceptor took to respond.
+   *
+   * @param acceptorId the ID of the acceptor
+   * @param nanos the time to the response in nanoseconds
+   */
+  public void record(int acceptorId, long nanos) {
+    this.averages.merge(acceptorId, (double) nanos,
+            (average, latest) -> (1 - WEIGHT) * average + WEIGHT * latest);
+    synchronized (this.recent) {
+      this.recent[this.sampleCount % SAMPLES] = nanos;
+      this.sampleCount++;
+    }
+  }
+
+  /**
+   * Records that an acceptor has not responded within the given time, so its average is at least
+   * that long.
+   *
+   * @param acceptorId the ID of the acceptor
+   * @param nanos the time waited in nanoseconds
+   */
+  public void penalize(int acceptorId, long nanos) {
+    this.averages.merge(acceptorId, (double) nanos, Math::max);
+  }
+
+  /**
+   * Gets the acceptors with the lowest average latency. Acceptors with equal averages keep their
+   * order.
+   *
+   * @param acceptors the acceptors to choose from
+   * @param count the number of acceptors to choose
+   * @return the fastest acceptors, fastest first
+   */
+  public List<ProcessInfo> fastest(List<ProcessInfo> acceptors, int count) {
+    List<ProcessInfo> sorted = new ArrayList<>(acceptors);
+    sorted.sort(Comparator.comparingDouble(acceptor -> this.averages.getOrDefault(
+            acceptor.getId(), 0.0)));
+    return sorted.subList(0, Math.min(count, sorted.size()));
+  }
+
+  /**
+   * Gets a percentile of the most recent response times over all acceptors.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the response time in nanoseconds, or -1 if there are no response times yet
+   */
+  public long percentile(double percentile) {
+    long[] sorted;
+    synchronized (this.recent) {
+      sorted = Arrays.copyOf(this.recent, Math.min(this.sampleCount, SAMPLES));
+    }
+    if (sorted.length == 0) {
+      return -1;
+    }
+
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+  }
+}
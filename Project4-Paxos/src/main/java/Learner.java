@@ -0,0 +1,155 @@
+package main.java;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A learner is a type of process that finds out which values have been chosen. Acceptors push
+ * every value they durably accept to the learners of their group, and the learner counts these
+ * notifications per log slot and proposal number. Once an Accept quorum of acceptors has accepted
+ * the same proposal for a slot, its value is chosen and the learner adds it to its copy of the decided
+ * log. In a fast round, acceptors may accept different values under the same proposal, so votes
+ * are counted per value and a value needs a fast quorum. The learner also serves reads of the
+ * decided log, so reads do not load the acceptors. A learner belongs to one Paxos group, and a
+ * process learns for several groups through one learner per group, all served by the process's
+ * shared {@link Transport}.
+ */
+public class Learner extends Process {
+  private final int quorumSize;
+  private final int fastQuorumSize;
+  private final Map<Integer, Map<Vote, Set<Integer>>> votes;
+  private final NavigableMap<Integer, ProposalValuePair> decided;
+  private final Transport transport;
+
+  /**
+   * Constructs a new Learner object. A value is chosen once an Accept quorum of the acceptors of
+   * the learner's group has accepted it, with the quorum sized the same way the proposer sizes
+   * it.
+   *
+   * @param id the unique ID of the process
+   * @param name the hostname of the process
+   * @param config the settings of the process
+   * @param groupId the ID of the Paxos group the learner belongs to
+   * @param transport the network layer shared by the groups of the process
+   */
+  public Learner(int id, String name, Config config, int groupId, Transport transport) {
+    super(id, name);
+    Quorums quorums = Quorums.fromHostsfile(config.getHostsfile(),
+            extractGroup(config.getHostsfile()), config.getPrepareQuorum(),
+            config.getAcceptQuorum(), config.isFastPaxos());
+    this.quorumSize = quorums.getAcceptQuorum();
+    this.fastQuorumSize = quorums.getFastQuorum();
+    this.votes = new HashMap<>();
+    this.decided = new TreeMap<>();
+    this.transport = transport;
+    transport.register(groupId, this::handleMessage);
+  }
+
+  /**
+   * Extracts the group of the learner out of the given hostsfile, which is the proposer ID of the
+   * proposer it learns from.
+   *
+   * @param hostsfile the path to the file containing information on all processes
+   * @return the proposer ID of the learner's proposer
+   * @throws IllegalArgumentException if the hostsfile cannot be read for some reason
+   */
+  private int extractGroup(String hostsfile) throws IllegalArgumentException {
+    try {
+      return Integer.parseInt(Files.readAllLines(Paths.get(hostsfile)).stream()
+              .filter(line -> line.startsWith(this.info.getName() + ":"))
+              .toList().get(0)
+              .split(":")[1]
+              .replaceAll("\\D", ""));
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Learner error: Issue with reading hostsfile: " +
+              e.getMessage());
+    }
+  }
+
+  @Override
+  public void start() {
+    this.transport.start();
+  }
+
+  /**
+   * Process a message received by an acceptor or a reader and prepares a response.
+   *
+   * @param msg the message received
+   * @return the response
+   */
+  private synchronized Message handleMessage(Message msg) {
+    EventLog.message(msg, "received");
+
+    Message response = switch (msg.getType()) {
+      case ACCEPTED -> handleAccepted(msg.getSenderId(), msg.getBallot(), msg.getSlot(),
+              msg.getValue(), this.quorumSize);
+      case FAST_ACCEPTED -> handleAccepted(msg.getSenderId(), msg.getBallot(), msg.getSlot(),
+              msg.getValue(), this.fastQuorumSize);
+      case READ -> handleRead(msg.getSlot());
+      default -> throw new RuntimeException("Learner error: Unknown message type received");
+    };
+    EventLog.message(response, "sent");
+
+    return response;
+  }
+
+  /**
+   * Handles the notification of an acceptor that it has accepted a value. The value is chosen
+   * once a quorum of acceptors has accepted it under the same proposal number.
+   *
+   * @param acceptorId the ID of the acceptor that accepted the value
+   * @param proposalNum the proposal number the value was accepted under
+   * @param slot the log slot the value was accepted for
+   * @param value the value accepted
+   * @param quorum the number of acceptors that make up a quorum for the proposal
+   * @return the response to the acceptor
+   */
+  private Message handleAccepted(int acceptorId, Ballot proposalNum, int slot, byte[] value,
+                                 int quorum) {
+    if (!this.decided.containsKey(slot)) {
+      Set<Integer> acceptors = this.votes.computeIfAbsent(slot, k -> new HashMap<>())
+              .computeIfAbsent(new Vote(proposalNum, ByteBuffer.wrap(value)),
+                      k -> new HashSet<>());
+      acceptors.add(acceptorId);
+
+      if (acceptors.size() >= quorum) {
+        this.decided.put(slot, new ProposalValuePair(proposalNum, value));
+        this.votes.remove(slot);
+
+        // print learned value
+        EventLog.value(this.info.getId(), "learned", proposalNum, slot, value);
+      }
+    }
+
+    return new Message(MessageType.ACCEPTED_ACK, this.info.getId(), proposalNum, slot,
+            Message.NO_VALUE);
+  }
+
+  /**
+   * Handles a read of the decided log.
+   *
+   * @param fromSlot the first log slot to read
+   * @return the response carrying every decided slot from the given slot onward
+   */
+  private Message handleRead(int fromSlot) {
+    return new Message(MessageType.READ_ACK, this.info.getId(), Ballot.ZERO, fromSlot,
+            Message.NO_VALUE, new TreeMap<>(this.decided.tailMap(fromSlot, true)));
+  }
+
+  /**
+   * A proposal number and a value accepted under it, compared by the contents of the value.
+   *
+   * @param proposalNum the proposal number
+   * @param value the value
+   */
+  private record Vote(Ballot proposalNum, ByteBuffer value) {
+  }
+}
@@ -0,0 +1,416 @@
+package main.java;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the key-value store of a running cluster with a stream of commands and measures the
+ * throughput and latency it gets at every load level, so the capacity of a deployment can be read
+ * off a throughput/latency curve. In closed-loop mode, each level is a number of clients, each
+ * sending its next command as soon as the last one is answered. In open-loop mode, each level is
+ * a rate of commands per second, sent on a fixed schedule over a pool of connections no matter
+ * how long the answers take. Commands are PUTs or GETs of random keys.
+ *
+ * <p>Latencies are corrected for coordinated omission. In open-loop mode, a command's latency is
+ * measured from the time the schedule meant to send it, so a command held up behind a stalled one
+ * counts the time it waited. In closed-loop mode there is no schedule, so every latency longer
+ * than the level's median is recorded along with the latencies of the commands the client would
+ * have sent in the meantime, as {@link LatencyHistogram#recordCorrected(long, long)} does. The
+ * uncorrected service latencies are reported as well.
+ */
+public class LoadGenerator {
+  private static final int[] CLOSED_LEVELS = {1, 2, 4, 8, 16, 32, 64};
+  private static final int[] OPEN_LEVELS = {250, 500, 1000, 2000, 4000, 8000};
+  private static final int WARMUP_CLIENTS = 8;
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long RECONNECT_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  /**
+   * Runs the load generator.
+   *
+   * @param args the settings of the run, see the README
+   * @throws IOException if the CSV file cannot be written
+   * @throws InterruptedException if the run is interrupted
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    String[] services = {"localhost:" + Util.KV_PORT};
+    boolean openLoop = false;
+    int[] levels = null;
+    double seconds = 10;
+    double warmupSeconds = 2;
+    int connections = 64;
+    int keys = 1000;
+    double reads = 0;
+    int valueSize = 16;
+    String csvFile = null;
+
+    // Parse command line arguments
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "-s" -> services = argValue(args, ++i, "services").split(",");
+        case "-mode" -> openLoop = switch (argValue(args, ++i, "mode")) {
+          case "open" -> true;
+          case "closed" -> false;
+          default -> throw new IllegalArgumentException("LoadGenerator error: Unknown mode " +
+                  args[i]);
+        };
+        case "-levels" -> levels = Arrays.stream(argValue(args, ++i, "levels").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        case "-duration" -> seconds = Double.parseDouble(argValue(args, ++i, "duration"));
+        case "-warmup" -> warmupSeconds = Double.parseDouble(argValue(args, ++i, "warmup"));
+        case "-connections" -> connections = Integer.parseInt(argValue(args, ++i,
+                "connection count"));
+        case "-keys" -> keys = Integer.parseInt(argValue(args, ++i, "key count"));
+        case "-reads" -> reads = Double.parseDouble(argValue(args, ++i, "read ratio"));
+        case "-value" -> valueSize = Integer.parseInt(argValue(args, ++i, "value size"));
+        case "-csv" -> csvFile = argValue(args, ++i, "CSV file");
+        default -> throw new IllegalArgumentException("LoadGenerator error: Invalid argument " +
+                args[i]);
+      }
+    }
+    if (levels == null) {
+      levels = openLoop ? OPEN_LEVELS : CLOSED_LEVELS;
+    }
+
+    Workload workload = new Workload(services, keys, reads, new byte[valueSize]);
+    long durationNanos = nanos(seconds);
+    runClosed(workload, WARMUP_CLIENTS, nanos(warmupSeconds));
+
+    List<Step> steps = new ArrayList<>();
+    System.out.printf("%-6s %7s %9s %9s %9s %9s %9s %9s %9s %6s %6s%n",
+            openLoop ? "rate" : "client", "ops", "ops/s", "p50 ms", "p99 ms", "p999 ms",
+            "max ms", "svc p50", "svc p99", "errors", "unsent");
+    for (int level : levels) {
+      Step step = openLoop ? runOpen(workload, level, connections, durationNanos)
+              : runClosed(workload, level, durationNanos);
+      steps.add(step);
+      System.out.printf("%-6d %7d %9.0f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f %6d %6d%n", level,
+              step.completed(), step.throughput(),
+              millis(step.latencies().percentile(50)), millis(step.latencies().percentile(99)),
+              millis(step.latencies().percentile(99.9)), millis(step.latencies().getMax()),
+              millis(step.service().percentile(50)), millis(step.service().percentile(99)),
+              step.errors(), step.unsent());
+    }
+
+    if (csvFile != null) {
+      writeCsv(csvFile, openLoop ? "open" : "closed", levels, steps);
+    }
+    System.exit(0);
+  }
+
+  /**
+   * Runs one closed-loop level: every client sends commands one at a time for the given time.
+   * Once the level is over, its latencies are corrected for coordinated omission with the median
+   * latency as the interval a client sends commands at when nothing stalls.
+   *
+   * @param workload the commands to send and where to send them
+   * @param clients the number of clients
+   * @param durationNanos how long to send commands for, in nanoseconds
+   * @return the results of the level
+   * @throws InterruptedException if the run is interrupted
+   */
+  private static Step runClosed(Workload workload, int clients, long durationNanos)
+          throws InterruptedException {
+    LatencyHistogram service = new LatencyHistogram();
+    long[][] latencies = new long[clients][];
+    AtomicLong errors = new AtomicLong();
+    long start = System.nanoTime();
+    long end = start + durationNanos;
+
+    List<Thread> threads = new ArrayList<>();
+    for (int c = 0; c < clients; c++) {
+      int clientNum = c;
+      threads.add(startThread("load-client-" + c, () -> {
+        long[] own = new long[1024];
+        int count = 0;
+        Connection connection = new Connection(workload.service(clientNum), errors);
+        for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+          if (!connection.execute(workload)) {
+            continue;
+          }
+          long latency = System.nanoTime() - now;
+          service.record(latency);
+          if (count == own.length) {
+            own = Arrays.copyOf(own, count * 2);
+          }
+          own[count++] = latency;
+        }
+        connection.close();
+        latencies[clientNum] = Arrays.copyOf(own, count);
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long elapsed = System.nanoTime() - start;
+
+    LatencyHistogram corrected = new LatencyHistogram();
+    long interval = service.percentile(50);
+    for (long[] own : latencies) {
+      for (long latency : own) {
+        corrected.recordCorrected(latency, interval);
+      }
+    }
+    return new Step(service.getCount(), elapsed, corrected, service, errors.get(), 0);
+  }
+
+  /**
+   * Runs one open-loop level: commands are due at a fixed rate for the given time, and each is
+   * sent by the next free connection once it is due. A command's latency counts from when it was
+   * due. Commands still unsent after twice the given time are given up on, which only happens
+   * when the cluster cannot keep up with the rate.
+   *
+   * @param workload the commands to send and where to send them
+   * @param rate the number of commands due per second
+   * @param connections the number of connections to send the commands over
+   * @param durationNanos how long commands are due for, in nanoseconds
+   * @return the results of the level
+   * @throws InterruptedException if the run is interrupted
+   */
+  private static Step runOpen(Workload workload, int rate, int connections, long durationNanos)
+          throws InterruptedException {
+    LatencyHistogram corrected = new LatencyHistogram();
+    LatencyHistogram service = new LatencyHistogram();
+    AtomicLong next = new AtomicLong();
+    AtomicLong errors = new AtomicLong();
+    long total = durationNanos * rate / TimeUnit.SECONDS.toNanos(1);
+    double intervalNanos = (double) TimeUnit.SECONDS.toNanos(1) / rate;
+    long start = System.nanoTime();
+    long giveUp = start + 2 * durationNanos;
+
+    List<Thread> threads = new ArrayList<>();
+    for (int c = 0; c < connections; c++) {
+      int connectionNum = c;
+      threads.add(startThread("load-connection-" + c, () -> {
+        Connection connection = new Connection(workload.service(connectionNum), errors);
+        for (long i = next.getAndIncrement(); i < total; i = next.getAndIncrement()) {
+          long due = start + (long) (i * intervalNanos);
+          for (long now = System.nanoTime(); now < due; now = System.nanoTime()) {
+            LockSupport.parkNanos(Math.min(due - now, MAX_PARK_NANOS));
+          }
+          long sendTime = System.nanoTime();
+          if (sendTime > giveUp) {
+            break;
+          }
+          if (connection.execute(workload)) {
+            long done = System.nanoTime();
+            corrected.record(done - due);
+            service.record(done - sendTime);
+          }
+        }
+        connection.close();
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long elapsed = System.nanoTime() - start;
+
+    long unsent = total - service.getCount() - errors.get();
+    return new Step(service.getCount(), elapsed, corrected, service, errors.get(),
+            Math.max(0, unsent));
+  }
+
+  /**
+   * Writes the results of every level to a CSV file, one row per level.
+   *
+   * @param csvFile the path to the file
+   * @param mode the mode of the run ("open"/"closed")
+   * @param levels the levels of the run
+   * @param steps the results of the levels, in the same order
+   * @throws IOException if the file cannot be written
+   */
+  private static void writeCsv(String csvFile, String mode, int[] levels, List<Step> steps)
+          throws IOException {
+    try (PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(csvFile)))) {
+      out.println("mode,level,ops,ops_per_s,p50_us,p99_us,p999_us,max_us,service_p50_us," +
+              "service_p99_us,errors,unsent");
+      for (int i = 0; i < steps.size(); i++) {
+        Step step = steps.get(i);
+        out.printf("%s,%d,%d,%.1f,%d,%d,%d,%d,%d,%d,%d,%d%n", mode, levels[i], step.completed(),
+                step.throughput(), micros(step.latencies().percentile(50)),
+                micros(step.latencies().percentile(99)),
+                micros(step.latencies().percentile(99.9)), micros(step.latencies().getMax()),
+                micros(step.service().percentile(50)), micros(step.service().percentile(99)),
+                step.errors(), step.unsent());
+      }
+    }
+  }
+
+  /**
+   * Starts a thread.
+   *
+   * @param name the name of the thread
+   * @param task what the thread runs
+   * @return the thread
+   */
+  private static Thread startThread(String name, Runnable task) {
+    Thread thread = new Thread(task, name);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Converts seconds to nanoseconds.
+   *
+   * @param seconds the seconds
+   * @return the nanoseconds
+   */
+  private static long nanos(double seconds) {
+    return (long) (seconds * TimeUnit.SECONDS.toNanos(1));
+  }
+
+  /**
+   * Converts nanoseconds to milliseconds.
+   *
+   * @param nanos the nanoseconds
+   * @return the milliseconds
+   */
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  /**
+   * Converts nanoseconds to whole microseconds.
+   *
+   * @param nanos the nanoseconds
+   * @return the microseconds
+   */
+  private static long micros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+
+  /**
+   * Gets the value of an argument, which follows its flag.
+   *
+   * @param args the command line arguments
+   * @param i the index of the value
+   * @param name the name of the argument
+   * @return the value
+   * @throws IllegalArgumentException if the value is missing
+   */
+  private static String argValue(String[] args, int i, String name)
+          throws IllegalArgumentException {
+    if (i >= args.length) {
+      throw new IllegalArgumentException("LoadGenerator error: Missing " + name + " argument");
+    }
+    return args[i];
+  }
+
+  /**
+   * The commands of a run and the key-value services they go to.
+   *
+   * @param services the key-value services, as "host:port"
+   * @param keys the number of distinct keys
+   * @param reads the share of commands that are GETs rather than PUTs
+   * @param value the value every PUT writes
+   */
+  private record Workload(String[] services, int keys, double reads, byte[] value) {
+    /**
+     * Gets the service a client or connection sends its commands to, spreading them evenly.
+     *
+     * @param num the number of the client or connection
+     * @return the service, as "host:port"
+     */
+    String service(int num) {
+      return this.services[num % this.services.length];
+    }
+  }
+
+  /**
+   * The results of one load level.
+   *
+   * @param completed the number of commands answered
+   * @param elapsedNanos how long the level took, in nanoseconds
+   * @param latencies the latencies corrected for coordinated omission
+   * @param service the latencies from sending each command to its answer
+   * @param errors the number of commands that failed because a connection broke
+   * @param unsent the number of commands given up on before they were sent
+   */
+  private record Step(long completed, long elapsedNanos, LatencyHistogram latencies,
+                      LatencyHistogram service, long errors, long unsent) {
+    /**
+     * Gets the number of commands answered per second.
+     *
+     * @return the throughput
+     */
+    double throughput() {
+      return this.completed * 1e9 / this.elapsedNanos;
+    }
+  }
+
+  /**
+   * A client's connection to a key-value service, opened again whenever it breaks.
+   */
+  private static class Connection {
+    private final String service;
+    private final AtomicLong errors;
+    private KvClient client;
+
+    /**
+     * Constructs a new Connection object, which connects on its first command.
+     *
+     * @param service the key-value service, as "host:port"
+     * @param errors counts the commands that failed
+     */
+    Connection(String service, AtomicLong errors) {
+      this.service = service;
+      this.errors = errors;
+      this.client = null;
+    }
+
+    /**
+     * Sends a random command of the workload and waits for its result.
+     *
+     * @param workload the workload
+     * @return true if the command was answered else false if the connection broke or could not
+     *         be opened
+     */
+    boolean execute(Workload workload) {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      String key = "load-" + random.nextInt(workload.keys());
+      try {
+        if (this.client == null) {
+          String[] hostPort = this.service.split(":");
+          this.client = new KvClient(hostPort[0], Integer.parseInt(hostPort[1]));
+        }
+        if (random.nextDouble() < workload.reads()) {
+          this.client.get(key);
+        } else {
+          this.client.put(key, workload.value());
+        }
+        return true;
+      } catch (IOException e) {
+        // wait a little before connecting again, so a service that is down is not hammered
+        this.errors.incrementAndGet();
+        close();
+        LockSupport.parkNanos(RECONNECT_DELAY_NANOS);
+        return false;
+      }
+    }
+
+    /**
+     * Closes the connection, if it is open.
+     */
+    void close() {
+      if (this.client == null) {
+        return;
+      }
+      try {
+        this.client.close();
+      } catch (IOException e) {
+        // the connection is dropped either way
+      }
+      this.client = null;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package main.java;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * A {@link Transport} that carries messages between processes hosted in the same JVM, so a whole
+ * Paxos group can be run in one process by the benchmarks. Every transport of such a group shares
+ * one map of the transports by process ID and one thread pool. A message is handed to the
+ * handlers of the peer's transport on a thread of the pool, the way a server hands a request to
+ * a worker, so a peer waiting on its disk does not hold up the sender. Messages are passed on as
+ * they are rather than encoded, which leaves the network and the codec out of the measurements.
+ */
+public class LoopbackTransport implements Transport {
+  private final GroupDispatcher dispatcher;
+  private final Map<Integer, LoopbackTransport> peers;
+  private final ExecutorService executor;
+
+  /**
+   * Constructs a new LoopbackTransport object and adds it to the transports of its peers.
+   *
+   * @param owner the process the transport belongs to
+   * @param peers the transports of the processes in the JVM, by process ID
+   * @param executor runs the handlers of every request
+   */
+  public LoopbackTransport(ProcessInfo owner, Map<Integer, LoopbackTransport> peers,
+                           ExecutorService executor) {
+    this.dispatcher = new GroupDispatcher();
+    this.peers = peers;
+    this.executor = executor;
+    peers.put(owner.getId(), this);
+  }
+
+  @Override
+  public void register(int groupId, Function<Message, Message> handler)
+          throws IllegalArgumentException {
+    this.dispatcher.register(groupId, handler);
+  }
+
+  /**
+   * Does nothing, since the transport has nothing to listen on.
+   */
+  @Override
+  public void start() {
+  }
+
+  /**
+   * Sends a message of a group to a peer in the same JVM.
+   *
+   * @param groupId the ID of the group the message belongs to
+   * @param peer the peer to send the message to
+   * @param msg the message to send
+   * @return the future of the peer's response, failed if the peer is not in the JVM
+   */
+  @Override
+  public CompletableFuture<Message> send(int groupId, ProcessInfo peer, Message msg) {
+    LoopbackTransport target = this.peers.get(peer.getId());
+    if (target == null) {
+      return CompletableFuture.failedFuture(new IOException("LoopbackTransport error: Process " +
+              peer.getId() + " is not in this JVM"));
+    }
+
+    Message request = msg.withGroup(groupId);
+    return CompletableFuture.supplyAsync(() -> target.dispatch(request), this.executor);
+  }
+
+  /**
+   * Hands a request straight to the handler of its group, on the calling thread.
+   *
+   * @param msg the request
+   * @return the response
+   * @throws RuntimeException if the process does not take part in the request's group
+   */
+  public Message dispatch(Message msg) throws RuntimeException {
+    return this.dispatcher.dispatch(msg);
+  }
+}
@@ -28,45 +28,59 @@ public class Main {
    *
    * @param args the given arguments that hold the properties of the process
    * @return a new process
-   * @throws IllegalArgumentException if the hostsfile cannot be read for some reason
+   * @throws IllegalArgumentException if the hostsfile cannot be read for some reason or the
+   *                                  arguments combine modes that cannot run together
    */
   private static Process constructProcess(String[] args) throws IllegalArgumentException {
-    String hostsfile = null;
-    char value = '\u0000';
-    int delay = 0;
+    Config config = new Config();
 
     // Parse command line arguments
     for (int i = 0; i < args.length; i++) {
       switch (args[i]) {
-        case "-h" -> {
-          if (i + 1 < args.length) {
-            hostsfile = args[++i];
-          } else {
-            throw new IllegalArgumentException("Main error: Missing hostsfile argument");
-          }
-        }
-        case "-v" -> {
-          if (i + 1 < args.length) {
-            value = args[++i].charAt(0);
-          } else {
-            throw new IllegalArgumentException("Main error: Missing value argument");
-          }
-        }
-        case "-t" -> {
-          if (i + 1 < args.length) {
-            delay = Integer.parseInt(args[++i]);
-          } else {
-            throw new IllegalArgumentException("Main error: Missing delay argument");
-          }
-        }
+        case "-h" -> config.setHostsfile(argValue(args, ++i, "hostsfile"));
+        case "-v" -> config.setValues(argValue(args, ++i, "value"));
+        case "-t" -> config.setDelay(Integer.parseInt(argValue(args, ++i, "delay")));
+        case "-d" -> config.setDataDir(argValue(args, ++i, "data directory"));
+        case "-b" -> config.setBatchSize(Integer.parseInt(argValue(args, ++i, "batch size")));
+        case "-l" -> config.setLingerMs(Long.parseLong(argValue(args, ++i, "linger time")));
+        case "-w" -> config.setWindow(Integer.parseInt(argValue(args, ++i, "window")));
+        case "-s" -> config.setServerModel(argValue(args, ++i, "server model"));
+        case "-q1" -> config.setPrepareQuorum(Integer.parseInt(argValue(args, ++i,
+                "prepare quorum")));
+        case "-q2" -> config.setAcceptQuorum(Integer.parseInt(argValue(args, ++i,
+                "accept quorum")));
+        case "-thrifty" -> config.setThriftyTimeoutMs(Long.parseLong(argValue(args, ++i,
+                "thrifty timeout")));
+        case "-hedge" -> config.setHedgePercentile(Double.parseDouble(argValue(args, ++i,
+                "hedging percentile")));
+        case "-fast" -> config.setFastPaxos(true);
+        case "-lease" -> config.setLeaseMs(Long.parseLong(argValue(args, ++i, "lease time")));
+        case "-kv" -> config.setKvStore(argValue(args, ++i, "key-value store"));
+        case "-snapshot" -> config.setSnapshotInterval(Integer.parseInt(argValue(args, ++i,
+                "snapshot interval")));
+        case "-groups" -> config.setGroups(Integer.parseInt(argValue(args, ++i, "groups")));
+        case "-mencius" -> config.setMencius(true);
+        case "-epaxos" -> config.setEpaxos(true);
+        case "-log" -> config.setLogFile(argValue(args, ++i, "log file"));
+        case "-loglevel" -> config.setLogLevel(argValue(args, ++i, "log level"));
+        case "-logsample" -> config.setLogSample(Integer.parseInt(argValue(args, ++i,
+                "log sampling rate")));
+        case "-metrics" -> config.setMetricsPort(Integer.parseInt(argValue(args, ++i,
+                "metrics port")));
+        case "-metricsinterval" -> config.setMetricsIntervalMs(Long.parseLong(argValue(args,
+                ++i, "metrics interval")));
         default -> throw new IllegalArgumentException("Main error: Invalid argument");
       }
     }
 
     // hostsname can't be null
+    String hostsfile = config.getHostsfile();
     if (hostsfile == null) {
       throw new IllegalArgumentException("Main error: Missing hostsfile argument");
     }
+    checkModes(config);
+    EventLog.configure(config);
+    Metrics.configure(config);
 
     // get hostname and id of process
     String name;
@@ -76,27 +90,69 @@ public class Main {
       throw new RuntimeException("Main error: Unable to determine hostname: " +
               e.getMessage());
     }
-    int id = Character.getNumericValue(name.charAt(name.length() - 1));
+    int id = Util.peerId(name);
 
-    // get the role of process (proposer/acceptor) and return the process
-    switch (getRole(hostsfile, name)) {
+    // get the role of process (proposer/acceptor/learner) and return the process hosting it in
+    // every group
+    String role = getRole(hostsfile, name);
+    switch (role) {
       case "proposer" -> {
-        if (value == '\u0000') {
+        // a proposer serving the key-value API gets its commands from clients instead
+        if ((config.getValues() == null || config.getValues().isEmpty())
+                && config.getKvStore() == null) {
           throw new IllegalArgumentException("Main error: Missing value argument");
         }
-        return new Proposer(id, name, hostsfile, value, delay);
+        return new GroupRegistry(id, name, config, role);
       }
-      case "acceptor" -> {
-        return new Acceptor(id, name, hostsfile);
+      case "acceptor", "learner" -> {
+        return new GroupRegistry(id, name, config, role);
       }
     }
 
     return null;
   }
 
+  /**
+   * Checks that the given settings do not combine modes the proposer cannot run together. Mencius
+   * mode and EPaxos mode each replace the leader with a protocol of their own, so neither can be
+   * combined with the other, with Fast Paxos or with leader leases, and EPaxos mode has no log to
+   * snapshot either.
+   *
+   * @param config the settings of the process
+   * @throws IllegalArgumentException if the settings combine modes that cannot run together
+   */
+  private static void checkModes(Config config) throws IllegalArgumentException {
+    if (config.isEpaxos() && (config.isMencius() || config.isFastPaxos()
+            || config.getLeaseMs() > 0 || config.getSnapshotInterval() > 0)) {
+      throw new IllegalArgumentException("Main error: -epaxos cannot be combined with " +
+              "-mencius, -fast, -lease or -snapshot");
+    }
+    if (config.isMencius() && (config.isFastPaxos() || config.getLeaseMs() > 0)) {
+      throw new IllegalArgumentException("Main error: -mencius cannot be combined with -fast " +
+              "or -lease");
+    }
+  }
+
+  /**
+   * Gets the value of a command line argument.
+   *
+   * @param args the command line arguments
+   * @param i the index of the value
+   * @param name the name of the argument
+   * @return the value of the argument
+   * @throws IllegalArgumentException if the argument has no value
+   */
+  private static String argValue(String[] args, int i, String name)
+          throws IllegalArgumentException {
+    if (i >= args.length) {
+      throw new IllegalArgumentException("Main error: Missing " + name + " argument");
+    }
+    return args[i];
+  }
+
   /**
    * Gets the role of the process from the given hostsfile based on the given hostname of the
-   * process. Process roles are divided into Proposer and Acceptor.
+   * process. Process roles are divided into Proposer, Acceptor and Learner.
    *
    * @param hostsfile the path to the file containing information on the process
    * @param name the hostname of the process
@@ -106,7 +162,7 @@ public class Main {
   private static String getRole(String hostsfile, String name) throws IllegalArgumentException {
     try {
       return Files.readAllLines(Paths.get(hostsfile)).stream()
-              .filter(str -> str.startsWith(name)).toList().get(0)
+              .filter(str -> str.startsWith(name + ":")).toList().get(0)
               .split(":")[1]
               .split(",")[0]
               .replaceAll("\\d", "");
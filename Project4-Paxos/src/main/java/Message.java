@@ -0,0 +1,146 @@
+package main.java;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A message exchanged between processes. A Prepare Acknowledgement additionally carries the
+ * proposal and value the acceptor has accepted for each slot the Prepare covered, and a Read
+ * Acknowledgement carries the decided entries of a learner's log. Every message belongs to one
+ * Paxos group, which is group 0 unless the message is sent on behalf of another group.
+ */
+public final class Message {
+  public static final byte[] NO_VALUE = new byte[0];
+
+  private final MessageType type;
+  private final int groupId;
+  private final int senderId;
+  private final Ballot ballot;
+  private final int slot;
+  private final byte[] value;
+  private final Map<Integer, ProposalValuePair> entries;
+
+  /**
+   * Constructs a new Message object without any accepted entries.
+   *
+   * @param type the type of message
+   * @param senderId the ID of the process sending the message
+   * @param ballot the proposal number of the message
+   * @param slot the log slot the message refers to
+   * @param value the value of the message, an encoded {@link Batch} or empty if it has none
+   */
+  public Message(MessageType type, int senderId, Ballot ballot, int slot, byte[] value) {
+    this(type, senderId, ballot, slot, value, Collections.emptyMap());
+  }
+
+  /**
+   * Constructs a new Message object.
+   *
+   * @param type the type of message
+   * @param senderId the ID of the process sending the message
+   * @param ballot the proposal number of the message
+   * @param slot the log slot the message refers to
+   * @param value the value of the message, an encoded {@link Batch} or empty if it has none
+   * @param entries the accepted proposal and value of each slot, ordered by slot
+   */
+  public Message(MessageType type, int senderId, Ballot ballot, int slot, byte[] value,
+                 Map<Integer, ProposalValuePair> entries) {
+    this(type, 0, senderId, ballot, slot, value, entries);
+  }
+
+  /**
+   * Constructs a new Message object of the given Paxos group.
+   *
+   * @param type the type of message
+   * @param groupId the ID of the Paxos group the message belongs to
+   * @param senderId the ID of the process sending the message
+   * @param ballot the proposal number of the message
+   * @param slot the log slot the message refers to
+   * @param value the value of the message, an encoded {@link Batch} or empty if it has none
+   * @param entries the accepted proposal and value of each slot, ordered by slot
+   */
+  public Message(MessageType type, int groupId, int senderId, Ballot ballot, int slot,
+                 byte[] value, Map<Integer, ProposalValuePair> entries) {
+    this.type = type;
+    this.groupId = groupId;
+    this.senderId = senderId;
+    this.ballot = ballot;
+    this.slot = slot;
+    this.value = value;
+    this.entries = entries;
+  }
+
+  /**
+   * Gets the type of message.
+   *
+   * @return the type of message
+   */
+  public MessageType getType() {
+    return this.type;
+  }
+
+  /**
+   * Gets the ID of the Paxos group the message belongs to.
+   *
+   * @return the ID of the group
+   */
+  public int getGroupId() {
+    return this.groupId;
+  }
+
+  /**
+   * Gets a copy of the message that belongs to the given Paxos group.
+   *
+   * @param groupId the ID of the group
+   * @return the message itself if it already belongs to the group, else the copy
+   */
+  public Message withGroup(int groupId) {
+    return groupId == this.groupId ? this : new Message(this.type, groupId, this.senderId,
+            this.ballot, this.slot, this.value, this.entries);
+  }
+
+  /**
+   * Gets the ID of the process that sent the message.
+   *
+   * @return the ID of the sender
+   */
+  public int getSenderId() {
+    return this.senderId;
+  }
+
+  /**
+   * Gets the proposal number of the message.
+   *
+   * @return the proposal number
+   */
+  public Ballot getBallot() {
+    return this.ballot;
+  }
+
+  /**
+   * Gets the log slot the message refers to.
+   *
+   * @return the log slot
+   */
+  public int getSlot() {
+    return this.slot;
+  }
+
+  /**
+   * Gets the value of the message.
+   *
+   * @return the value, an encoded {@link Batch} or empty if it has none
+   */
+  public byte[] getValue() {
+    return this.value;
+  }
+
+  /**
+   * Gets the accepted proposal and value of each slot carried by the message.
+   *
+   * @return the accepted entries, ordered by slot
+   */
+  public Map<Integer, ProposalValuePair> getEntries() {
+    return this.entries;
+  }
+}
@@ -0,0 +1,242 @@
+package main.java;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Encodes messages into length-prefixed binary frames and decodes them again. A frame is laid out
+ * as follows, with every field up to the value at a fixed offset:
+ *
+ * <pre>
+ * int length | long requestId | byte type | int groupId | int senderId | int round
+ *   | int proposerId | int slot | int valueLength | value | int entryCount
+ *   | entryCount * (int slot | int round | int proposerId | int valueLength | value)
+ * </pre>
+ *
+ * <p>The length counts every byte after itself. Frames are encoded into buffers taken from a
+ * {@link BufferPool} and decoded straight from the buffer, without building any strings.
+ */
+public final class MessageCodec {
+  public static final int LENGTH_SIZE = 4;
+  private static final int HEADER_SIZE = 8 + 1 + 4 + 4 + 4 + 4 + 4 + 4 + 4;
+  private static final int ENTRY_SIZE = 4 + 4 + 4 + 4;
+  private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+  private MessageCodec() {
+  }
+
+  /**
+   * Gets the number of bytes the given message takes up as a frame, length prefix included.
+   *
+   * @param msg the message
+   * @return the size of the frame in bytes
+   */
+  public static int frameSize(Message msg) {
+    int size = LENGTH_SIZE + HEADER_SIZE + msg.getValue().length;
+    for (ProposalValuePair entry : msg.getEntries().values()) {
+      size += ENTRY_SIZE + entry.getValue().length;
+    }
+    return size;
+  }
+
+  /**
+   * Encodes a message as a frame into the given buffer, starting at its current position.
+   *
+   * @param requestId the ID of the request the message belongs to
+   * @param msg the message
+   * @param buffer the buffer, with at least {@link #frameSize(Message)} bytes remaining
+   */
+  public static void encode(long requestId, Message msg, ByteBuffer buffer) {
+    buffer.putInt(frameSize(msg) - LENGTH_SIZE)
+            .putLong(requestId)
+            .put(msg.getType().getCode())
+            .putInt(msg.getGroupId())
+            .putInt(msg.getSenderId())
+            .putInt(msg.getBallot().getRound())
+            .putInt(msg.getBallot().getProposerId())
+            .putInt(msg.getSlot())
+            .putInt(msg.getValue().length)
+            .put(msg.getValue())
+            .putInt(msg.getEntries().size());
+
+    for (Map.Entry<Integer, ProposalValuePair> entry : msg.getEntries().entrySet()) {
+      Ballot proposal = entry.getValue().getProposalNum();
+      buffer.putInt(entry.getKey())
+              .putInt(proposal.getRound())
+              .putInt(proposal.getProposerId())
+              .putInt(entry.getValue().getValue().length)
+              .put(entry.getValue().getValue());
+    }
+  }
+
+  /**
+   * Decodes the message of a frame. The buffer must be positioned right after the request ID, and
+   * its limit must be the end of the frame. Every length in the frame is checked against the
+   * bytes left in it before anything is allocated, so a corrupt frame fails without taking more
+   * memory than the frame itself.
+   *
+   * @param buffer the buffer holding the frame
+   * @return the message
+   * @throws IOException if the frame is truncated, holds an unknown type of message, or a length
+   *                     that does not fit in it
+   */
+  public static Message decode(ByteBuffer buffer) throws IOException {
+    if (buffer.remaining() < HEADER_SIZE - 8) {
+      throw new IOException("MessageCodec error: Truncated frame of " + buffer.remaining() +
+              " bytes");
+    }
+    MessageType type;
+    try {
+      type = MessageType.fromCode(buffer.get());
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage());
+    }
+    int groupId = buffer.getInt();
+    int senderId = buffer.getInt();
+    Ballot ballot = new Ballot(buffer.getInt(), buffer.getInt());
+    int slot = buffer.getInt();
+    byte[] value = getBytes(buffer);
+    int entryCount = getLength(buffer, ENTRY_SIZE, "entry count");
+    if (entryCount == 0) {
+      return new Message(type, groupId, senderId, ballot, slot, value, Collections.emptyMap());
+    }
+
+    Map<Integer, ProposalValuePair> entries = new TreeMap<>();
+    for (int i = 0; i < entryCount; i++) {
+      if (buffer.remaining() < ENTRY_SIZE) {
+        throw new IOException("MessageCodec error: Truncated entry " + i + " of " + entryCount);
+      }
+      int entrySlot = buffer.getInt();
+      Ballot proposal = new Ballot(buffer.getInt(), buffer.getInt());
+      entries.put(entrySlot, new ProposalValuePair(proposal, getBytes(buffer)));
+    }
+    return new Message(type, groupId, senderId, ballot, slot, value, entries);
+  }
+
+  /**
+   * Reads a length-prefixed value from the buffer.
+   *
+   * @param buffer the buffer
+   * @return the value
+   * @throws IOException if the length is negative or longer than the rest of the frame
+   */
+  private static byte[] getBytes(ByteBuffer buffer) throws IOException {
+    int length = getLength(buffer, 1, "value length");
+    if (length == 0) {
+      return Message.NO_VALUE;
+    }
+    byte[] value = new byte[length];
+    buffer.get(value);
+    return value;
+  }
+
+  /**
+   * Reads a count of items from the buffer and checks that that many items of the given size fit
+   * into the rest of the frame.
+   *
+   * @param buffer the buffer
+   * @param itemSize the smallest number of bytes an item takes up
+   * @param name the name of the count, for the error message
+   * @return the count
+   * @throws IOException if the count is missing, negative or too large for the frame
+   */
+  private static int getLength(ByteBuffer buffer, int itemSize, String name) throws IOException {
+    if (buffer.remaining() < 4) {
+      throw new IOException("MessageCodec error: Truncated frame, missing " + name);
+    }
+    int length = buffer.getInt();
+    if (length < 0 || (long) length * itemSize > buffer.remaining()) {
+      throw new IOException("MessageCodec error: Invalid " + name + " " + length + " with " +
+              buffer.remaining() + " bytes left in the frame");
+    }
+    return length;
+  }
+
+  /**
+   * Encodes a message as a frame and writes it to the given channel.
+   *
+   * @param channel the channel to write to
+   * @param requestId the ID of the request the message belongs to
+   * @param msg the message
+   * @param pool the pool to take the encoding buffer from
+   * @throws IOException if the frame cannot be written
+   */
+  public static void writeFrame(WritableByteChannel channel, long requestId, Message msg,
+                                BufferPool pool) throws IOException {
+    ByteBuffer buffer = pool.acquire(frameSize(msg));
+    try {
+      encode(requestId, msg, buffer);
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } finally {
+      pool.release(buffer);
+    }
+  }
+
+  /**
+   * Reads the next frame from the given channel. The returned buffer is positioned at the request
+   * ID and should be released to the pool once the frame has been decoded.
+   *
+   * @param channel the channel to read from
+   * @param lengthBuffer a buffer of at least four bytes to read the length prefix into
+   * @param pool the pool to take the frame buffer from
+   * @return the buffer holding the frame
+   * @throws EOFException if the channel is closed before a whole frame has been read
+   * @throws IOException if the frame cannot be read or is too large
+   */
+  public static ByteBuffer readFrame(ReadableByteChannel channel, ByteBuffer lengthBuffer,
+                                     BufferPool pool) throws IOException {
+    lengthBuffer.clear().limit(LENGTH_SIZE);
+    readFully(channel, lengthBuffer);
+    int length = lengthBuffer.getInt(0);
+    checkFrameLength(length);
+
+    ByteBuffer buffer = pool.acquire(length);
+    buffer.limit(length);
+    try {
+      readFully(channel, buffer);
+    } catch (IOException e) {
+      pool.release(buffer);
+      throw e;
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Checks the length prefix of a frame.
+   *
+   * @param length the length of the frame, not counting the length prefix itself
+   * @throws IOException if the length is too small to hold a message or too large
+   */
+  public static void checkFrameLength(int length) throws IOException {
+    if (length < HEADER_SIZE || length > MAX_FRAME_SIZE) {
+      throw new IOException("MessageCodec error: Invalid frame length " + length);
+    }
+  }
+
+  /**
+   * Reads from the channel until the buffer is full.
+   *
+   * @param channel the channel to read from
+   * @param buffer the buffer to fill
+   * @throws EOFException if the channel is closed before the buffer is full
+   * @throws IOException if the channel cannot be read
+   */
+  private static void readFully(ReadableByteChannel channel, ByteBuffer buffer)
+          throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException("MessageCodec error: Channel closed");
+      }
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package main.java;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Serves the requests of a process. Peers keep one long-lived connection to the server and send
+ * many requests over it, each framed with a request ID. Every response carries the request ID of
+ * the request it answers, so responses on the same connection go back in whatever order they
+ * finish. Pings are answered by the server itself.
+ */
+public interface MessageServer {
+  /**
+   * Starts listening for connections. Requests are served on threads of the server's own.
+   */
+  void start();
+
+  /**
+   * Creates a server of the given threading model.
+   *
+   * @param model "thread" for a thread per connection or "nio" for a selector-based event loop
+   * @param owner the process the server belongs to
+   * @param port the port to listen on
+   * @param handler handles a request and returns its response
+   * @return the server, not started yet
+   * @throws IllegalArgumentException if the model is unknown
+   */
+  static MessageServer create(String model, ProcessInfo owner, int port,
+                              Function<Message, Message> handler)
+          throws IllegalArgumentException {
+    return createAsync(model, owner, port,
+            msg -> CompletableFuture.completedFuture(handler.apply(msg)));
+  }
+
+  /**
+   * Creates a server of the given threading model whose handler answers later, so a request
+   * waiting for its response does not hold a handler thread. The response is written once the
+   * returned future completes, and the connection is closed if it fails.
+   *
+   * @param model "thread" for a thread per connection or "nio" for a selector-based event loop
+   * @param owner the process the server belongs to
+   * @param port the port to listen on
+   * @param handler handles a request and returns the future of its response
+   * @return the server, not started yet
+   * @throws IllegalArgumentException if the model is unknown
+   */
+  static MessageServer createAsync(String model, ProcessInfo owner, int port,
+                                   Function<Message, CompletableFuture<Message>> handler)
+          throws IllegalArgumentException {
+    CompletableFuture<Message> pong = CompletableFuture.completedFuture(
+            new Message(MessageType.PONG, owner.getId(), Ballot.ZERO, 0, Message.NO_VALUE));
+    Function<Message, CompletableFuture<Message>> pingHandler =
+            msg -> msg.getType() == MessageType.PING ? pong : handler.apply(msg);
+
+    return switch (model) {
+      case "thread" -> new ThreadPerConnectionServer(port, pingHandler);
+      case "nio" -> new SelectorServer(port, pingHandler);
+      default -> throw new IllegalArgumentException("MessageServer error: Unknown server model " +
+              model);
+    };
+  }
+}
@@ -0,0 +1,82 @@
+package main.java;
+
+/**
+ * The types of message exchanged between proposers, acceptors and learners. Each type is sent as a single
+ * byte on the wire and has a name used in the log output.
+ */
+public enum MessageType {
+  PREPARE(1, "prepare"),
+  PREPARE_ACK(2, "prepare_ack"),
+  ACCEPT(3, "accept"),
+  ACCEPT_ACK(4, "accept_ack"),
+  PING(5, "ping"),
+  PONG(6, "pong"),
+  ACCEPTED(7, "accepted"),
+  ACCEPTED_ACK(8, "accepted_ack"),
+  READ(9, "read"),
+  READ_ACK(10, "read_ack"),
+  NACK(11, "nack"),
+  ANY(12, "any"),
+  FAST_ACCEPT(13, "fast_accept"),
+  FAST_ACCEPTED(14, "fast_accepted"),
+  KV_REQUEST(15, "kv_request"),
+  KV_RESPONSE(16, "kv_response"),
+  SNAPSHOT(17, "snapshot"),
+  SNAPSHOT_ACK(18, "snapshot_ack"),
+  SNAPSHOT_REQUEST(19, "snapshot_request"),
+  COMMIT(20, "commit"),
+  COMMIT_ACK(21, "commit_ack"),
+  PRE_ACCEPT(22, "pre_accept"),
+  PRE_ACCEPT_ACK(23, "pre_accept_ack"),
+  INSTANCE_ACCEPT(24, "instance_accept"),
+  INSTANCE_ACCEPT_ACK(25, "instance_accept_ack"),
+  INSTANCE_COMMIT(26, "instance_commit");
+
+  private static final MessageType[] BY_CODE = new MessageType[27];
+
+  static {
+    for (MessageType type : values()) {
+      BY_CODE[type.code] = type;
+    }
+  }
+
+  private final byte code;
+  private final String label;
+
+  MessageType(int code, String label) {
+    this.code = (byte) code;
+    this.label = label;
+  }
+
+  /**
+   * Gets the byte the type is sent as.
+   *
+   * @return the code of the type
+   */
+  public byte getCode() {
+    return this.code;
+  }
+
+  /**
+   * Gets the name of the type used in the log output.
+   *
+   * @return the name of the type
+   */
+  public String getLabel() {
+    return this.label;
+  }
+
+  /**
+   * Gets the type sent as the given byte.
+   *
+   * @param code the code of the type
+   * @return the type
+   * @throws IllegalArgumentException if no type is sent as the given byte
+   */
+  public static MessageType fromCode(byte code) throws IllegalArgumentException {
+    if (code <= 0 || code >= BY_CODE.length || BY_CODE[code] == null) {
+      throw new IllegalArgumentException("MessageType error: Unknown message type " + code);
+    }
+    return BY_CODE[code];
+  }
+}
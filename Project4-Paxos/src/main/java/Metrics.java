@@ -0,0 +1,274 @@
+package main.java;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * The latency histograms and counters of a process, by name. Proposers and acceptors look up
+ * their metrics once when they are constructed and record into them on every message, which costs
+ * a few atomic additions. The metrics of every group are kept apart by a prefix of the group ID,
+ * e.g. {@code g0.proposer.prepare.quorum}, and processes sharing a JVM share their metrics. Once
+ * set up, the metrics are published as a JMX bean, and optionally as a JSON document over HTTP
+ * and as a JSON line written to standard error every so often. Histograms are reported by their
+ * count, mean, p50, p99, p999 and maximum in microseconds, and both histograms and counters add
+ * up from the start of the process.
+ */
+public final class Metrics {
+  private static final String PATH = "/metrics";
+  private static final String OBJECT_NAME = "main.java:type=Metrics";
+  private static final double[] PERCENTILES = {50, 99, 99.9};
+  private static final String[] PERCENTILE_NAMES = {"p50", "p99", "p999"};
+
+  private static final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+  private static final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+  private static boolean configured = false;
+
+  /**
+   * Constructs nothing, since the metrics are shared by the whole process.
+   */
+  private Metrics() {
+  }
+
+  /**
+   * Publishes the metrics of the process as its settings ask. Only the first call has an effect.
+   *
+   * @param config the settings of the process
+   * @throws IllegalArgumentException if the HTTP port cannot be bound
+   */
+  public static synchronized void configure(Config config) throws IllegalArgumentException {
+    if (configured) {
+      return;
+    }
+    configured = true;
+
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(),
+              new ObjectName(OBJECT_NAME));
+    } catch (JMException e) {
+      System.err.println("Metrics error: Unable to register the JMX bean: " + e.getMessage());
+    }
+
+    if (config.getMetricsPort() > 0) {
+      serve(config.getMetricsPort());
+    }
+    if (config.getMetricsIntervalMs() > 0) {
+      ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-dump");
+        thread.setDaemon(true);
+        return thread;
+      });
+      dumper.scheduleAtFixedRate(() -> System.err.println(toJson()),
+              config.getMetricsIntervalMs(), config.getMetricsIntervalMs(),
+              TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Gets the latency histogram of the given name, creating it if there is none yet.
+   *
+   * @param name the name of the histogram
+   * @return the histogram
+   */
+  public static LatencyHistogram histogram(String name) {
+    return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+  }
+
+  /**
+   * Gets the counter of the given name, creating it if there is none yet.
+   *
+   * @param name the name of the counter
+   * @return the counter
+   */
+  public static LongAdder counter(String name) {
+    return counters.computeIfAbsent(name, key -> new LongAdder());
+  }
+
+  /**
+   * Formats every metric as a JSON object, with the counters and the histograms each in an object
+   * of their own, by name in alphabetical order. Histograms without any values yet are left out.
+   *
+   * @return the metrics as JSON
+   */
+  public static String toJson() {
+    StringBuilder json = new StringBuilder("{\"counters\": {");
+    String separator = "";
+    for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+      json.append(separator).append('"').append(counter.getKey()).append("\": ")
+              .append(counter.getValue().sum());
+      separator = ", ";
+    }
+
+    json.append("}, \"histograms\": {");
+    separator = "";
+    for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+      LatencyHistogram histogram = entry.getValue();
+      if (histogram.getCount() == 0) {
+        continue;
+      }
+      json.append(separator).append('"').append(entry.getKey()).append("\": {\"count\": ")
+              .append(histogram.getCount()).append(", \"mean_us\": ")
+              .append(micros(histogram.getMean()));
+      for (int i = 0; i < PERCENTILES.length; i++) {
+        json.append(", \"").append(PERCENTILE_NAMES[i]).append("_us\": ")
+                .append(micros(histogram.percentile(PERCENTILES[i])));
+      }
+      json.append(", \"max_us\": ").append(micros(histogram.getMax())).append('}');
+      separator = ", ";
+    }
+
+    return json.append("}}").toString();
+  }
+
+  /**
+   * Serves the metrics as JSON on the given port, on every interface, from a thread of its own.
+   *
+   * @param port the port to serve on
+   * @throws IllegalArgumentException if the port cannot be bound
+   */
+  private static void serve(int port) throws IllegalArgumentException {
+    HttpServer server;
+    try {
+      server = HttpServer.create(new InetSocketAddress(port), 0);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Metrics error: Unable to serve metrics on port " +
+              port + ": " + e.getMessage());
+    }
+
+    server.createContext(PATH, exchange -> {
+      byte[] body = toJson().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.setExecutor(null);
+    server.start();
+  }
+
+  /**
+   * Converts nanoseconds to microseconds, rounded to a tenth.
+   *
+   * @param nanos the nanoseconds
+   * @return the microseconds
+   */
+  private static double micros(long nanos) {
+    return Math.round(nanos / 100.0) / 10.0;
+  }
+
+  /**
+   * The JMX bean of the metrics. Every counter is an attribute of its own, and so is each
+   * statistic of every histogram, e.g. {@code g0.proposer.prepare.quorum.p99_us}. The attributes
+   * are listed anew whenever the bean is asked for them, so histograms show up once they have
+   * values.
+   */
+  private static class Bean implements DynamicMBean {
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+      LongAdder counter = counters.get(attribute);
+      if (counter != null) {
+        return counter.sum();
+      }
+
+      int dot = attribute.lastIndexOf('.');
+      LatencyHistogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+      if (histogram != null) {
+        String statistic = attribute.substring(dot + 1);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+          if (statistic.equals(PERCENTILE_NAMES[i] + "_us")) {
+            return micros(histogram.percentile(PERCENTILES[i]));
+          }
+        }
+        switch (statistic) {
+          case "count" -> {
+            return (double) histogram.getCount();
+          }
+          case "mean_us" -> {
+            return micros(histogram.getMean());
+          }
+          case "max_us" -> {
+            return micros(histogram.getMax());
+          }
+          default -> {
+          }
+        }
+      }
+      throw new AttributeNotFoundException("Metrics error: Unknown metric " + attribute);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+      throw new AttributeNotFoundException("Metrics error: Metrics are read-only");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+      AttributeList list = new AttributeList();
+      for (String attribute : attributes) {
+        try {
+          list.add(new Attribute(attribute, getAttribute(attribute)));
+        } catch (AttributeNotFoundException e) {
+          // unknown attributes are left out of the list
+        }
+      }
+      return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+      return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature)
+            throws ReflectionException {
+      throw new ReflectionException(new NoSuchMethodException(actionName),
+              "Metrics error: Metrics have no operation " + actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+      List<MBeanAttributeInfo> attributes = new ArrayList<>();
+      for (String name : counters.keySet()) {
+        attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), "A counter", true,
+                false, false));
+      }
+      for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+        if (entry.getValue().getCount() == 0) {
+          continue;
+        }
+        List<String> statistics = new ArrayList<>(List.of("count", "mean_us", "max_us"));
+        for (String percentile : PERCENTILE_NAMES) {
+          statistics.add(percentile + "_us");
+        }
+        for (String statistic : statistics) {
+          attributes.add(new MBeanAttributeInfo(entry.getKey() + "." + statistic,
+                  Double.class.getName(), "A latency statistic", true, false, false));
+        }
+      }
+      return new MBeanInfo(Metrics.class.getName(), "The metrics of the process",
+              attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package main.java;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * The network layer shared by every Paxos group a process takes part in. A single
+ * {@link MessageServer} on {@link Util#PORT} hands each request to the handler of the group the
+ * request belongs to, and a single {@link ConnectionPool} carries the messages of every group to
+ * each peer, so hosting more groups adds neither ports nor connections.
+ */
+public class NetworkTransport implements Transport {
+  private final MessageServer server;
+  private final GroupDispatcher dispatcher;
+  private final ConnectionPool connections;
+  private final AtomicBoolean started;
+
+  /**
+   * Constructs a new NetworkTransport object. The transport does not listen until it is started.
+   *
+   * @param owner the process the transport belongs to
+   * @param config the settings of the process
+   */
+  public NetworkTransport(ProcessInfo owner, Config config) {
+    this.dispatcher = new GroupDispatcher();
+    this.server = MessageServer.create(config.getServerModel(), owner, Util.PORT,
+            this.dispatcher::dispatch);
+    this.connections = new ConnectionPool(owner.getId(), List.of());
+    this.started = new AtomicBoolean(false);
+  }
+
+  @Override
+  public void register(int groupId, Function<Message, Message> handler)
+          throws IllegalArgumentException {
+    this.dispatcher.register(groupId, handler);
+  }
+
+  /**
+   * Starts listening for connections, unless the transport has been started already.
+   */
+  @Override
+  public void start() {
+    if (this.started.compareAndSet(false, true)) {
+      this.server.start();
+    }
+  }
+
+  /**
+   * Sends a message of a group to a peer over the peer's shared connection.
+   *
+   * @param groupId the ID of the group the message belongs to
+   * @param peer the peer to send the message to
+   * @param msg the message to send
+   * @return the future of the peer's response
+   */
+  @Override
+  public CompletableFuture<Message> send(int groupId, ProcessInfo peer, Message msg) {
+    return this.connections.send(peer, msg.withGroup(groupId));
+  }
+}
@@ -0,0 +1,137 @@
+package main.java;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link KvStore} that keeps its values off the heap, so a store with many keys does not make
+ * the garbage collector scan every value. Values are appended to direct buffers of 64 MB, each
+ * prefixed with its length, and a hash map on the heap maps every key to the address of its
+ * value. Overwritten and deleted values are not reclaimed; the space they take is reported as
+ * garbage. A value is never moved or overwritten once appended, so a snapshot can read values
+ * while new ones are appended.
+ */
+public class OffHeapKvStore implements KvStore {
+  private static final int SEGMENT_SIZE = 64 << 20;
+
+  private final List<ByteBuffer> segments;
+  private final Map<String, Long> addresses;
+  private int writeOffset;
+  private long garbage;
+
+  /**
+   * Constructs a new OffHeapKvStore object without any keys. Segments are allocated as values are
+   * added.
+   */
+  public OffHeapKvStore() {
+    this.segments = new CopyOnWriteArrayList<>();
+    this.addresses = new ConcurrentHashMap<>();
+    this.writeOffset = 0;
+    this.garbage = 0;
+  }
+
+  @Override
+  public byte[] get(String key) {
+    Long address = this.addresses.get(key);
+    return address == null ? null : read(address);
+  }
+
+  /**
+   * Reads the value at the given address.
+   *
+   * @param address the address of the value
+   * @return the value
+   */
+  private byte[] read(long address) {
+    ByteBuffer segment = this.segments.get((int) (address / SEGMENT_SIZE));
+    int offset = (int) (address % SEGMENT_SIZE);
+    byte[] value = new byte[segment.getInt(offset)];
+    segment.get(offset + 4, value);
+    return value;
+  }
+
+  /**
+   * Sets the value of a key by appending the value to the last segment, or to a new segment if
+   * it does not fit.
+   *
+   * @param key the key
+   * @param value the value
+   * @throws IllegalArgumentException if the value is larger than a segment
+   */
+  @Override
+  public void put(String key, byte[] value) throws IllegalArgumentException {
+    int size = 4 + value.length;
+    if (size > SEGMENT_SIZE) {
+      throw new IllegalArgumentException("OffHeapKvStore error: Value of " + value.length +
+              " bytes is too large");
+    }
+
+    ByteBuffer segment = this.segments.isEmpty() ? null
+            : this.segments.get(this.segments.size() - 1);
+    if (segment == null || segment.capacity() - this.writeOffset < size) {
+      segment = ByteBuffer.allocateDirect(SEGMENT_SIZE);
+      this.segments.add(segment);
+      this.writeOffset = 0;
+    }
+
+    // absolute writes only, so readers on other threads never see the buffer's position move
+    long address = (long) (this.segments.size() - 1) * SEGMENT_SIZE + this.writeOffset;
+    segment.putInt(this.writeOffset, value.length);
+    segment.put(this.writeOffset + 4, value);
+    this.writeOffset += size;
+    release(this.addresses.put(key, address));
+  }
+
+  @Override
+  public boolean delete(String key) {
+    Long address = this.addresses.remove(key);
+    release(address);
+    return address != null;
+  }
+
+  @Override
+  public int size() {
+    return this.addresses.size();
+  }
+
+  @Override
+  public void forEach(BiConsumer<String, byte[]> visitor) {
+    this.addresses.forEach((key, address) -> visitor.accept(key, read(address)));
+  }
+
+  /**
+   * Removes every key and frees every segment.
+   */
+  @Override
+  public void clear() {
+    this.addresses.clear();
+    this.segments.clear();
+    this.writeOffset = 0;
+    this.garbage = 0;
+  }
+
+  /**
+   * Gets the number of bytes taken by values that have been overwritten or deleted.
+   *
+   * @return the garbage in bytes
+   */
+  public long getGarbage() {
+    return this.garbage;
+  }
+
+  /**
+   * Counts the space of a value that is no longer reachable as garbage.
+   *
+   * @param address the address of the value, or null if there was none
+   */
+  private void release(Long address) {
+    if (address != null) {
+      ByteBuffer segment = this.segments.get((int) (address / SEGMENT_SIZE));
+      this.garbage += 4 + segment.getInt((int) (address % SEGMENT_SIZE));
+    }
+  }
+}
@@ -1,19 +1,19 @@
 package main.java;
 
 /**
- * Data class to store a proposal number and character value.
+ * Data class to store a proposal number and the value accepted under it.
  */
 public class ProposalValuePair {
-  private final double proposalNum;
-  private final char value;
+  private final Ballot proposalNum;
+  private final byte[] value;
 
   /**
    * Constructs a new ProposalValuePair object.
    *
    * @param proposalNum the proposal number
-   * @param value the character value
+   * @param value the value, an encoded {@link Batch}
    */
-  public ProposalValuePair(double proposalNum, char value) {
+  public ProposalValuePair(Ballot proposalNum, byte[] value) {
     this.proposalNum = proposalNum;
     this.value = value;
   }
@@ -23,7 +23,7 @@ public class ProposalValuePair {
    *
    * @return the proposal number
    */
-  public double getProposalNum() {
+  public Ballot getProposalNum() {
     return this.proposalNum;
   }
 
@@ -32,7 +32,7 @@ public class ProposalValuePair {
    *
    * @return the value
    */
-  public char getValue() {
+  public byte[] getValue() {
     return this.value;
   }
 }
@@ -1,52 +1,324 @@
 package main.java;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.net.Socket;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Stream;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A proposer is a type of process that will propose some value to the other processes that are
- * its acceptors.
+ * its acceptors. Values are decided into a replicated log of Paxos instances (Multi-Paxos): once
+ * the proposer has become the distinguished proposer by completing Phase 1 for every slot it has
+ * not yet seen chosen, each further value only needs an Accept round in the next free slot. Phase 1
+ * is run again only after an acceptor reports a higher proposal number. Pending commands are
+ * packed into batches by a {@link CommandBatcher}, and each log slot decides a whole batch, so one
+ * Accept round and one log record on every acceptor carry many commands. The leader keeps up to a
+ * window of slots in the Accept phase at once. Their quorums may complete in any order, but slots
+ * are committed strictly in log order. An acceptor rejects a stale proposal number with a NACK
+ * carrying the number it promised, and the proposer's next proposal jumps straight past it after
+ * a randomized exponential backoff, so dueling proposers do not keep preempting each other. In
+ * Fast Paxos mode, the leader opens a fast round instead of proposing new batches itself, and
+ * every proposer sends its batches straight to the acceptors. A batch accepted unchanged by a fast
+ * quorum is chosen in one round trip, and a collision with another proposer falls back to a
+ * classic round that recovers the slot. Every proposer announces the slots it decides to the
+ * others, and one that has decided a slot while a slot before it stays unknown for too long
+ * recovers the unknown slots in a classic round as well. With leader leases on, the promises of
+ * a Prepare quorum also grant the leader a lease, renewed in the background, and the lease holder
+ * serves reads of its committed log without any messaging. With the key-value API on, committed
+ * slots are applied in log order to a {@link KvStateMachine}, whose clients add their commands to
+ * the proposer's pending commands through the process's {@link KvService}. With snapshots on, a
+ * snapshot of the state machine is written out in the background every so many applied slots and
+ * streamed to the acceptors, so they can compact their logs, and a proposer that finds its
+ * acceptors have compacted slots it has not committed installs an acceptor's snapshot before it
+ * proposes again. A proposer drives one Paxos group. When a process hosts several groups, each
+ * group's proposer only gets the commands of the keys its group owns, and a proposer that is not
+ * its group's preferred leader holds off until it has commands of its own, so the groups' leaders
+ * are spread over the proposers. In Mencius mode there is no leader: the log slots are owned
+ * round-robin by the proposers in order of proposer ID, and each proposer decides its own slots
+ * with Accept rounds alone under its initial proposal number, since no other proposer ever proposes
+ * in them. An owner announces each slot it decides to the other proposers, and an owner without
+ * commands of its own fills its slots below the highest slot announced to it with no-ops, so the
+ * others' slots can be committed in order. In EPaxos mode there is no log at all: every proposer
+ * leads instances of its own, each carrying the instances it interferes with as dependencies. An
+ * instance whose Pre-Accept a fast quorum answers with the same dependencies is committed in one
+ * round trip, and one whose answers differ takes a second, Accept round with their union. Committed
+ * instances are executed in dependency order by an {@link EpaxosExecutor}.
  */
 public class Proposer extends Process {
-  private char value;
+  private static final long MIN_BACKOFF_MS = 10;
+  private static final long MAX_BACKOFF_MS = 1000;
+  private static final int MAX_NOTICE_ATTEMPTS = 120;
+  private static final long HOLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final long CLASSIC_FALLBACK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final CommandBatcher batcher;
+  private final NavigableMap<Integer, byte[]> recoveredValues;
+  private final NavigableMap<Integer, byte[]> chosenValues;
+  private final Map<Integer, InFlight> inFlight;
+  private final NavigableMap<Integer, InFlight> lostBatches;
+  private final Map<Integer, InFlight> decided;
+  private final BlockingQueue<InFlight> completions;
+  private final int window;
+  private final long lingerMs;
   private final int delay;
   private final int proposerId;
   private final List<ProcessInfo> acceptors;
-  private final int totalProcesses;
+  private final Quorums quorums;
+  private final int groupId;
+  private final Transport transport;
+  private final boolean preferredLeader;
+  private final LatencyTracker latencies;
+  private final long thriftyTimeoutMs;
+  private final double hedgePercentile;
+  private final ScheduledExecutorService timer;
+  private final AtomicLong thriftyBroadcasts;
+  private final AtomicLong hedges;
+  private final AtomicLong fallbacks;
+  private final boolean fastPaxos;
+  private final Map<Integer, Batch> recoveredBatches;
+  private final Map<byte[], Long> attemptStarts;
+  private final long leaseNanos;
+  private final KvStateMachine stateMachine;
+  private final int snapshotInterval;
+  private final Path snapshotPath;
+  private final ExecutorService snapshotter;
+  private final AtomicBoolean snapshotRunning;
+  private final boolean mencius;
+  private final List<ProcessInfo> proposers;
+  private final Queue<Message> commitNotices;
+  private final boolean epaxos;
+  private final ConflictIndex conflicts;
+  private final EpaxosExecutor executor;
+  private final Map<Integer, Long> instanceStarts;
+  private final String metricsPrefix;
+  private final Map<String, LatencyHistogram> quorumTimes;
+  private final LatencyHistogram prepareFanout;
+  private final LatencyHistogram prepareTime;
+  private final LatencyHistogram acceptFanout;
+  private final LatencyHistogram commitTime;
+  private final LongAdder prepareRounds;
+  private final LongAdder prepareRejections;
+  private final LongAdder acceptRejections;
+  private final LongAdder missedQuorums;
+  private final LongAdder resentNotices;
+  private final LongAdder droppedNotices;
+  private int nextSlot;
+  private int commitIndex;
+  private boolean isLeader;
+  private Ballot highestSeen;
+  private boolean preempted;
+  private long backoffMs;
+  private int roundsSinceDecision;
+  private long backoffSinceDecisionMs;
+  private boolean fastRoundOpen;
+  private long fastDecisions;
+  private long fallbackDecisions;
+  private int holeSlot;
+  private long holeSince;
+  private long classicUntil;
+  private int leaseReadyIndex;
+  private volatile int readableIndex;
+  private Ballot leaseBallot;
+  private long leaseExpiry;
+  private int appliedIndex;
+  private int lastSnapshotSlot;
+  private int highestNoticed;
+  private long skippedSlots;
+  private long fastPathCommits;
+  private long slowPathCommits;
 
   /**
    * Constructs a new Proposer object. Each proposer has a proposer ID (separate from its process
-   * ID), a list of all its acceptors, and the total number of processes in the system. These
-   * details will be extracted from the given hostsfile. Each proposer is also its own acceptor,
-   * thus it will start its own acceptor process running in a separate thread in this constructor.
+   * ID), a list of all its acceptors, and the sizes of its Prepare and Accept quorums over them.
+   * These details will be extracted from the hostsfile of the given settings. Each proposer is also its
+   * own acceptor, thus it will create its own acceptor of the same group in this constructor.
    *
    * @param id the unique ID of the process
    * @param name the hostname of the process
-   * @param hostsfile the path to the file containing information on all processes
-   * @param value the value to propose
-   * @param delay the time to delay the proposer before it starts proposing its value
+   * @param config the settings of the process
+   * @param groupId the ID of the Paxos group the proposer drives
+   * @param transport the network layer shared by the groups of the process
    */
-  public Proposer(int id, String name, String hostsfile, char value, int delay) {
+  public Proposer(int id, String name, Config config, int groupId, Transport transport) {
     super(id, name);
-    this.value = value;
-    this.delay = delay;
+    String hostsfile = config.getHostsfile();
+    this.batcher = new CommandBatcher(config.getBatchSize(), config.getLingerMs());
+    this.recoveredValues = new TreeMap<>();
+    this.chosenValues = new ConcurrentSkipListMap<>();
+    this.inFlight = new TreeMap<>();
+    this.lostBatches = new TreeMap<>();
+    this.decided = new TreeMap<>();
+    this.completions = new LinkedBlockingQueue<>();
+    this.window = config.getWindow();
+    this.lingerMs = Math.max(1, config.getLingerMs());
+    this.delay = config.getDelay();
     this.proposerId = extractProposerId(hostsfile);
     this.acceptors = extractAcceptors(hostsfile);
-    this.totalProcesses = extractTotalProcesses(hostsfile);
+    this.quorums = Quorums.fromHostsfile(hostsfile, this.proposerId, config.getPrepareQuorum(),
+            config.getAcceptQuorum(), config.isFastPaxos() || config.isEpaxos());
+    this.groupId = groupId;
+    this.transport = transport;
+    this.proposers = extractProposers(hostsfile);
+    this.preferredLeader = config.getGroups() == 1
+            || this.proposers.get(groupId % this.proposers.size()).getId() == this.info.getId();
+    this.latencies = new LatencyTracker();
+    this.thriftyTimeoutMs = config.getThriftyTimeoutMs();
+    this.hedgePercentile = config.getHedgePercentile();
+    this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable);
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.thriftyBroadcasts = new AtomicLong();
+    this.hedges = new AtomicLong();
+    this.fallbacks = new AtomicLong();
+    this.fastPaxos = config.isFastPaxos();
+    this.recoveredBatches = new TreeMap<>();
+    this.attemptStarts = new IdentityHashMap<>();
+    this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(config.getLeaseMs());
+    this.stateMachine = config.getKvStore() == null ? null
+            : new KvStateMachine(KvStore.create(config.getKvStore()));
+    this.snapshotInterval = config.getSnapshotInterval();
+    this.snapshotPath = Paths.get(config.getDataDir(),
+            Util.groupFileName(name, groupId) + ".kv.snapshot");
+    this.snapshotter = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable);
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.snapshotRunning = new AtomicBoolean(false);
+    this.mencius = config.isMencius();
+    this.commitNotices = new ConcurrentLinkedQueue<>();
+    this.epaxos = config.isEpaxos();
+    this.conflicts = new ConflictIndex();
+    this.executor = new EpaxosExecutor(this::executeInstance);
+    this.instanceStarts = new HashMap<>();
+    this.metricsPrefix = "g" + groupId + ".proposer.";
+    this.quorumTimes = new ConcurrentHashMap<>();
+    this.prepareFanout = Metrics.histogram(this.metricsPrefix + "prepare.fanout");
+    this.prepareTime = Metrics.histogram(this.metricsPrefix + "prepare.phase");
+    this.acceptFanout = Metrics.histogram(this.metricsPrefix + "accept.fanout");
+    this.commitTime = Metrics.histogram(this.metricsPrefix + "accept.commit");
+    this.prepareRounds = Metrics.counter(this.metricsPrefix + "prepare.rounds");
+    this.prepareRejections = Metrics.counter(this.metricsPrefix + "prepare.rejected");
+    this.acceptRejections = Metrics.counter(this.metricsPrefix + "accept.rejected");
+    this.missedQuorums = Metrics.counter(this.metricsPrefix + "quorums.missed");
+    this.resentNotices = Metrics.counter(this.metricsPrefix + "notices.resent");
+    this.droppedNotices = Metrics.counter(this.metricsPrefix + "notices.dropped");
+    this.nextSlot = 0;
+    this.commitIndex = 0;
+    this.isLeader = false;
+    this.highestSeen = Ballot.ZERO;
+    this.preempted = false;
+    this.backoffMs = MIN_BACKOFF_MS;
+    this.roundsSinceDecision = 0;
+    this.backoffSinceDecisionMs = 0;
+    this.fastRoundOpen = this.fastPaxos;
+    this.fastDecisions = 0;
+    this.fallbackDecisions = 0;
+    this.holeSlot = -1;
+    this.holeSince = 0;
+    this.classicUntil = 0;
+    this.leaseReadyIndex = 0;
+    this.readableIndex = -1;
+    this.leaseBallot = null;
+    this.leaseExpiry = 0;
+    this.appliedIndex = 0;
+    this.lastSnapshotSlot = -1;
+    this.highestNoticed = -1;
+    this.skippedSlots = 0;
+    this.fastPathCommits = 0;
+    this.slowPathCommits = 0;
+
+    // every character of the values is a command of its own, proposed by the group owning it
+    String values = config.getValues() == null ? "" : config.getValues();
+    for (char value : values.toCharArray()) {
+      byte[] command = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+      if (GroupRegistry.groupOf(command, config.getGroups()) == groupId) {
+        this.batcher.add(command);
+      }
+    }
+
+    // create acceptor side of proposer, which hands reads and commit notices to the proposer
+    new Acceptor(id, name, config, groupId, transport, this::handleProposerMessage);
+  }
+
+  /**
+   * Extracts every proposer in the given hostsfile, in ascending order of proposer ID.
+   *
+   * @param hostsfile the path to the file containing information on all processes
+   * @return the proposers
+   * @throws IllegalArgumentException if the hostsfile cannot be read for some reason
+   */
+  private List<ProcessInfo> extractProposers(String hostsfile) throws IllegalArgumentException {
+    try {
+      return Files.readAllLines(Paths.get(hostsfile)).stream()
+              .filter(line -> line.split(":").length >= 2 && line.split(":")[1]
+                      .startsWith("proposer"))
+              .sorted(Comparator.comparingInt(line -> Integer.parseInt(line.split(":")[1]
+                      .split(",")[0].replaceAll("\\D", ""))))
+              .map(line -> {
+                String peerName = line.split(":")[0];
+                int peerId = Util.peerId(peerName);
+                return new ProcessInfo(peerId, peerName);
+              }).toList();
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Proposer error: Issue with reading hostsfile: " +
+              e.getMessage());
+    }
+  }
 
-    // start acceptor side of proposer
-    new Thread(() -> new Acceptor(id, name, hostsfile).start()).start();
+  /**
+   * Registers a key-value command a client has sent and adds it to the pending commands, unless
+   * the state machine already knows its result.
+   *
+   * @param command the command
+   * @param encoded the command as it is proposed
+   * @return the future of the command's result
+   */
+  public CompletableFuture<KvResult> submit(KvCommand command, byte[] encoded) {
+    CompletableFuture<KvResult> result = this.stateMachine.submit(command);
+    if (!result.isDone()) {
+      this.batcher.add(encoded);
+    }
+    return result;
   }
 
   /**
@@ -59,7 +331,7 @@ public class Proposer extends Process {
   private int extractProposerId(String hostsfile) throws IllegalArgumentException {
     try {
       return Integer.parseInt(Files.readAllLines(Paths.get(hostsfile)).stream()
-              .filter(line -> line.startsWith(info.getName())).toList().get(0)
+              .filter(line -> line.startsWith(info.getName() + ":")).toList().get(0)
               .split(":")[1]
               .replaceAll("\\D", ""));
     } catch (IOException e) {
@@ -90,7 +362,7 @@ public class Proposer extends Process {
                 return Arrays.asList(parts[1].split(",")).contains(targetRole);
               }).map(line -> {
                 String peerName = line.split(":")[0];
-                int peerId = Character.getNumericValue(peerName.charAt(peerName.length() - 1));
+                int peerId = Util.peerId(peerName);
                 return new ProcessInfo(peerId, peerName);
               }).toList());
     } catch (IOException e) {
@@ -101,236 +373,1424 @@ public class Proposer extends Process {
     return acceptors;
   }
 
+  @Override
+  public void start() {
+    // delay
+    try {
+      Thread.sleep((1 + this.delay) * 1000L);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Proposer error: Thread interrupted");
+    }
+
+    System.err.println("Proposer " + this.info.getId() + " uses a " + this.quorums);
+    if (this.mencius) {
+      runMencius();
+      return;
+    }
+    if (this.epaxos) {
+      runEpaxos();
+      return;
+    }
+
+    // in a group another proposer prefers to lead, only contend once there is something to propose
+    if (!this.preferredLeader) {
+      System.err.println("Proposer " + this.info.getId() + " waits for commands before leading " +
+              "group " + this.groupId);
+      this.batcher.requeue(nextBatch());
+    }
+    if (this.leaseNanos > 0) {
+      long renewMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(this.leaseNanos) / 4);
+      this.timer.scheduleWithFixedDelay(this::renewLease, renewMs, renewMs,
+              TimeUnit.MILLISECONDS);
+    }
+    Ballot proposalNum = new Ballot(0, this.info.getId());
+
+    // keep filling log slots for as long as the process runs
+    while (true) {
+      handleCompletions(0);
+      handleCommitNotices();
+
+      // while a fast round is open, send new batches straight to the acceptors
+      if (this.fastRoundOpen) {
+        if (holeTimedOut()) {
+          System.err.println("Proposer " + this.info.getId() + " has not learned slot " +
+                  this.commitIndex + ", falling back to a classic round to recover it");
+          this.isLeader = false;
+          this.fastRoundOpen = false;
+          continue;
+        }
+
+        // while slots before ours are unknown, keep handling the notices that fill them
+        Batch batch = this.decided.isEmpty() ? nextBatch() : this.batcher.pollBatch();
+        if (batch == null) {
+          handleCompletions(Math.max(1, this.lingerMs));
+          continue;
+        }
+        this.fastRoundOpen = proposeFast(batch);
+        continue;
+      }
+
+      // become the distinguished proposer with a new proposal once the old one has drained
+      if (!this.isLeader) {
+        if (!this.inFlight.isEmpty()) {
+          handleCompletions(Long.MAX_VALUE);
+          continue;
+        }
+        if (this.preempted) {
+          backOff();
+        }
+        proposalNum = proposalNum.nextAbove(this.highestSeen);
+        this.roundsSinceDecision++;
+        this.isLeader = handlePrepare(proposalNum);
+        if (this.isLeader) {
+          this.backoffMs = MIN_BACKOFF_MS;
+          requeueLostBatches();
+          publishReads();
+        }
+        continue;
+      }
+
+      // wait for room in the window
+      if (this.inFlight.size() >= this.window) {
+        handleCompletions(Long.MAX_VALUE);
+        continue;
+      }
+
+      // pick the value of the next slot: a recovered value, a no-op for a gap, or a new batch
+      int slot = this.nextSlot;
+      Batch batch = null;
+      byte[] value;
+      if (this.recoveredValues.containsKey(slot)) {
+        value = this.recoveredValues.remove(slot);
+        batch = this.recoveredBatches.remove(slot);
+      } else if (!this.recoveredValues.isEmpty()) {
+        value = Batch.NO_OP.encode();
+      } else if (this.fastPaxos && System.nanoTime() >= this.classicUntil) {
+        // every recovered value has been proposed again, so open a fast round after them
+        if (!this.inFlight.isEmpty()) {
+          handleCompletions(Long.MAX_VALUE);
+          continue;
+        }
+        this.fastRoundOpen = openFastRound(proposalNum);
+        continue;
+      } else {
+        batch = nextBatch();
+        if (batch == null) {
+          // no batch is ready yet, so look after the accepts in flight in the meantime
+          handleCompletions(this.lingerMs);
+          continue;
+        }
+        value = batch.encode();
+      }
+
+      // broadcast accept without waiting for it
+      sendAccept(proposalNum, slot, value, batch);
+      this.nextSlot++;
+    }
+  }
+
+  /**
+   * Fills the proposer's own log slots for as long as the process runs, in Mencius mode. The
+   * proposer owns every P-th slot of the log, starting at its position among the P proposers, and
+   * proposes each of them under its initial proposal number without a Prepare round. A slot gets
+   * the next batch of commands, or a no-op if there is none and another proposer has already
+   * decided a later slot, which would otherwise wait on this one to be committed.
+   */
+  private void runMencius() {
+    int owners = this.proposers.size();
+    this.nextSlot = 0;
+    while (this.proposers.get(this.nextSlot).getId() != this.info.getId()) {
+      this.nextSlot++;
+    }
+    Ballot proposalNum = new Ballot(0, this.info.getId());
+    System.err.println("Proposer " + this.info.getId() + " owns every " + owners +
+            ". log slot from slot " + this.nextSlot);
+
+    while (true) {
+      handleCompletions(0);
+      handleCommitNotices();
+
+      // wait for room in the window
+      if (this.inFlight.size() >= this.window) {
+        handleCompletions(Long.MAX_VALUE);
+        continue;
+      }
+
+      // pick the value of the next own slot: a new batch, or a no-op to skip it
+      int slot = this.nextSlot;
+      Batch batch = this.batcher.pollBatch();
+      byte[] value;
+      if (batch != null) {
+        value = batch.encode();
+      } else if (slot < this.highestNoticed) {
+        value = Batch.NO_OP.encode();
+        this.skippedSlots++;
+        long skipped = this.skippedSlots;
+        EventLog.progress(this.info.getId(), "skipped",
+                () -> "slot " + slot + ", " + skipped + " skipped so far");
+      } else {
+        // nothing to propose yet, so look after the accepts in flight in the meantime
+        handleCompletions(this.lingerMs);
+        continue;
+      }
+
+      // broadcast accept without waiting for it
+      sendAccept(proposalNum, slot, value, batch);
+      this.nextSlot += owners;
+    }
+  }
+
   /**
-   * Extracts the total number of processes in the system from the given hostsfile.
+   * Records the slots or instances other proposers have announced as decided, and commits the
+   * slots once every slot before them has been decided as well, or executes the instances whose
+   * turn has come.
+   */
+  private void handleCommitNotices() {
+    Message notice = this.commitNotices.poll();
+    if (notice == null) {
+      return;
+    }
+    while (notice != null && notice.getType() == MessageType.INSTANCE_COMMIT) {
+      EpaxosInstance.Id id = new EpaxosInstance.Id(notice.getBallot().getProposerId(),
+              notice.getSlot());
+      EpaxosInstance instance = EpaxosInstance.decode(notice.getValue());
+      this.conflicts.record(id, instance);
+      this.executor.commit(id, instance);
+      notice = this.commitNotices.poll();
+    }
+    if (this.epaxos) {
+      this.executor.executeReady();
+      return;
+    }
+    while (notice != null) {
+      this.highestNoticed = Math.max(this.highestNoticed, notice.getSlot());
+      if (notice.getSlot() >= this.commitIndex) {
+        this.decided.putIfAbsent(notice.getSlot(), new InFlight(notice.getSlot(),
+                notice.getBallot(), notice.getValue(), null, null));
+      }
+      notice = this.commitNotices.poll();
+    }
+    commitDecided();
+  }
+
+  /**
+   * Checks whether the first slot the proposer has not committed has stayed unknown for too long
+   * while a later slot is decided, in Fast Paxos mode. Such a slot was decided by another proposer
+   * whose notice has not arrived, or by nobody, e.g. because its proposer crashed during a fast
+   * round, and only a classic round can recover it then.
    *
-   * @param hostsfile if the hostsfile cannot be read for some reason
-   * @return the total number of processes in the system
-   * @throws IllegalArgumentException if the hostsfile cannot be read for some reason
+   * @return true if the proposer has waited too long for the slot else false
    */
-  private int extractTotalProcesses(String hostsfile) throws IllegalArgumentException {
-    try (Stream<String> lines = Files.lines(Paths.get(hostsfile))) {
-      return (int) lines.filter(line -> !line.trim().isEmpty()).count();
-    } catch (IOException e) {
-      throw new IllegalArgumentException("Process error: Issue with reading hostsfile: " +
+  private boolean holeTimedOut() {
+    if (this.decided.isEmpty()) {
+      this.holeSlot = -1;
+      return false;
+    }
+    if (this.holeSlot != this.commitIndex) {
+      this.holeSlot = this.commitIndex;
+      this.holeSince = System.nanoTime();
+      return false;
+    }
+    return System.nanoTime() - this.holeSince > HOLE_TIMEOUT_NANOS;
+  }
+
+  /**
+   * Announces a slot the proposer has decided to every other proposer, in Mencius and Fast Paxos
+   * mode. The notices are not waited for, but each is resent until it is acknowledged or the
+   * proposer gives up on it, since a proposer that misses one could never commit that slot or any
+   * slot after it, short of recovering it with a classic round in Fast Paxos mode.
+   *
+   * @param accept the decided accept
+   */
+  private void announceDecision(InFlight accept) {
+    announce(new Message(MessageType.COMMIT, this.info.getId(), accept.proposalNum(),
+            accept.slot(), accept.value()));
+  }
+
+  /**
+   * Sends a notice to every other proposer without waiting for it. Each notice is resent until the
+   * proposer acknowledges it, for a bounded number of attempts.
+   *
+   * @param msg the notice
+   */
+  private void announce(Message msg) {
+    for (ProcessInfo proposer : this.proposers) {
+      if (proposer.getId() != this.info.getId()) {
+        sendNotice(proposer, msg, 1, MIN_BACKOFF_MS);
+      }
+    }
+  }
+
+  /**
+   * Sends a notice to a proposer, and sends it again after a delay if it is not acknowledged,
+   * doubling the delay each time up to the maximum backoff. After the maximum number of attempts,
+   * about two minutes of resending, the proposer is taken to have crashed and the notice is
+   * dropped, so notices for a proposer that is gone for good do not pile up in the timer. A
+   * proposer that gets a notice twice ignores the second one.
+   *
+   * @param proposer the proposer to notify
+   * @param msg the notice
+   * @param attempt the number of times the notice has been sent, this time included
+   * @param retryMs the delay before the notice is sent again
+   */
+  private void sendNotice(ProcessInfo proposer, Message msg, int attempt, long retryMs) {
+    EventLog.message(msg, "sent");
+    this.transport.send(this.groupId, proposer, msg).whenComplete((ack, error) -> {
+      if (error == null && ack.getType() == MessageType.COMMIT_ACK) {
+        return;
+      }
+      if (attempt >= MAX_NOTICE_ATTEMPTS) {
+        this.droppedNotices.increment();
+        return;
+      }
+      this.resentNotices.increment();
+      this.timer.schedule(() -> sendNotice(proposer, msg, attempt + 1,
+              Math.min(retryMs * 2, MAX_BACKOFF_MS)), retryMs, TimeUnit.MILLISECONDS);
+    });
+  }
+
+  /**
+   * Handles a message for the proposer received by its own acceptor: a read of the committed log,
+   * or a slot or instance another proposer announces as decided.
+   *
+   * @param msg the message
+   * @return the response
+   */
+  private Message handleProposerMessage(Message msg) {
+    if (msg.getType() == MessageType.READ) {
+      return handleRead(msg);
+    }
+
+    EventLog.message(msg, "received");
+    this.commitNotices.add(msg);
+    return new Message(MessageType.COMMIT_ACK, this.info.getId(), msg.getBallot(), msg.getSlot(),
+            Message.NO_VALUE);
+  }
+
+  /**
+   * Leads EPaxos instances for as long as the process runs. Every batch of commands becomes an
+   * instance of the proposer's own, numbered in order, and up to a window of instances are in
+   * flight at once.
+   */
+  private void runEpaxos() {
+    Ballot proposalNum = new Ballot(0, this.info.getId());
+    System.err.println("Proposer " + this.info.getId() + " leads EPaxos instances with a fast " +
+            "quorum of " + this.quorums.getFastQuorum());
+
+    while (true) {
+      handleCompletions(0);
+      handleCommitNotices();
+
+      // wait for room in the window, or for the next batch
+      Batch batch = this.inFlight.size() < this.window ? this.batcher.pollBatch() : null;
+      if (batch == null) {
+        handleCompletions(this.lingerMs);
+        continue;
+      }
+
+      // the leader's own view of the interfering instances goes into the Pre-Accept
+      int instanceNum = this.nextSlot++;
+      EpaxosInstance.Id id = new EpaxosInstance.Id(this.info.getId(), instanceNum);
+      EpaxosInstance proposed = this.conflicts.attributes(id,
+              new EpaxosInstance(batch.encode(), 0, new TreeSet<>()), true);
+      this.conflicts.record(id, proposed);
+      this.instanceStarts.put(instanceNum, System.nanoTime());
+      sendInstance(MessageType.PRE_ACCEPT, MessageType.PRE_ACCEPT_ACK,
+              this.quorums.getFastQuorum(), proposalNum, instanceNum, proposed, batch);
+    }
+  }
+
+  /**
+   * Broadcasts a Pre-Accept or Accept of one of the proposer's EPaxos instances without waiting
+   * for its acknowledgements. Like an accept in the log, the instance stays in flight until its
+   * collector completes.
+   *
+   * @param type the type of message
+   * @param ackType the type of acknowledgement expected in response
+   * @param quorumSize the number of acknowledgements that make up a quorum
+   * @param proposalNum the proposal number of the proposer
+   * @param instanceNum the instance number
+   * @param attributes the attributes of the instance
+   * @param batch our batch encoded in the instance
+   */
+  private void sendInstance(MessageType type, MessageType ackType, int quorumSize,
+                            Ballot proposalNum, int instanceNum, EpaxosInstance attributes,
+                            Batch batch) {
+    Message msg = new Message(type, this.info.getId(), proposalNum, instanceNum,
+            attributes.encode());
+    InFlight attempt = new InFlight(instanceNum, proposalNum, msg.getValue(), batch,
+            broadcast(msg, ackType, quorumSize));
+
+    this.inFlight.put(instanceNum, attempt);
+    attempt.collector().getFuture().whenComplete((acks, error) -> this.completions.add(attempt));
+  }
+
+  /**
+   * Handles the acknowledgements of one of the proposer's EPaxos instances. If every acceptor of
+   * the fast quorum answered the Pre-Accept with the same attributes, the instance is committed
+   * with them. Otherwise, the instance takes an Accept round with the union of the dependencies
+   * and the highest sequence number, and is committed once a classic quorum has accepted those.
+   * If either round misses its quorum, the proposer backs off and starts the instance over with a
+   * new Pre-Accept. The instance is not given up, since instances of other proposers may already
+   * depend on it. The new Pre-Accept only waits for a Prepare quorum, so an acceptor that stays
+   * unreachable does not hold the instance up, and always takes the Accept round, since the
+   * answers of fewer acceptors than a fast quorum cannot commit it.
+   *
+   * @param attempt the completed Pre-Accept or Accept
+   */
+  private void completeInstance(InFlight attempt) {
+    this.inFlight.remove(attempt.slot());
+    EpaxosInstance.Id id = new EpaxosInstance.Id(this.info.getId(), attempt.slot());
+    List<Message> acks;
+    try {
+      acks = awaitQuorum("instance", attempt.collector());
+    } catch (RuntimeException e) {
+      EventLog.progress(this.info.getId(), "retried", () -> "instance " + id + ": " +
               e.getMessage());
+      this.missedQuorums.increment();
+      backOff();
+      EpaxosInstance retried = this.conflicts.attributes(id,
+              EpaxosInstance.decode(attempt.value()), true);
+      this.conflicts.record(id, retried);
+      sendInstance(MessageType.PRE_ACCEPT, MessageType.PRE_ACCEPT_ACK,
+              this.quorums.getPrepareQuorum(), attempt.proposalNum(), attempt.slot(), retried,
+              attempt.batch());
+      return;
+    }
+    if (acks.get(0).getType() == MessageType.INSTANCE_ACCEPT_ACK) {
+      commitInstance(id, EpaxosInstance.decode(attempt.value()), false);
+      return;
     }
+
+    List<EpaxosInstance> replies = acks.stream()
+            .map(ack -> EpaxosInstance.decode(ack.getValue())).toList();
+    if (replies.size() >= this.quorums.getFastQuorum()
+            && replies.stream().allMatch(reply -> reply.sameAttributes(replies.get(0)))) {
+      commitInstance(id, replies.get(0), true);
+      return;
+    }
+
+    int seq = 0;
+    SortedSet<EpaxosInstance.Id> deps = new TreeSet<>();
+    for (EpaxosInstance reply : replies) {
+      seq = Math.max(seq, reply.getSeq());
+      deps.addAll(reply.getDeps());
+    }
+    EpaxosInstance merged = new EpaxosInstance(replies.get(0).getValue(), seq, deps);
+    this.conflicts.record(id, merged);
+    sendInstance(MessageType.INSTANCE_ACCEPT, MessageType.INSTANCE_ACCEPT_ACK,
+            this.quorums.getAcceptQuorum(), attempt.proposalNum(), attempt.slot(), merged,
+            attempt.batch());
   }
 
-  @Override
-  public void start() {
-    // delay
+  /**
+   * Commits one of the proposer's EPaxos instances, announces it to every other proposer, and
+   * executes every instance whose turn has come.
+   *
+   * @param id the name of the instance
+   * @param instance the committed attributes of the instance
+   * @param fast true if the instance was committed on the fast path else false
+   */
+  private void commitInstance(EpaxosInstance.Id id, EpaxosInstance instance, boolean fast) {
+    this.backoffMs = MIN_BACKOFF_MS;
+    if (fast) {
+      this.fastPathCommits++;
+    } else {
+      this.slowPathCommits++;
+    }
+    long latencyUs = (System.nanoTime() - this.instanceStarts.remove(id.instance())) / 1000;
+    long fastSoFar = this.fastPathCommits;
+    long slowSoFar = this.slowPathCommits;
+    EventLog.progress(this.info.getId(), "committed", () -> "instance " + id + " on the " +
+            (fast ? "fast" : "slow") + " path in " + latencyUs + " us, " + fastSoFar +
+            " fast and " + slowSoFar + " slow so far");
+
+    announce(new Message(MessageType.INSTANCE_COMMIT, this.info.getId(),
+            new Ballot(0, id.replica()), id.instance(), instance.encode()));
+    this.executor.commit(id, instance);
+    this.executor.executeReady();
+  }
+
+  /**
+   * Executes a committed EPaxos instance whose dependencies have all been executed, applying its
+   * batch to the key-value state machine.
+   *
+   * @param id the name of the instance
+   * @param instance the committed attributes of the instance
+   */
+  private void executeInstance(EpaxosInstance.Id id, EpaxosInstance instance) {
+    EventLog.progress(this.info.getId(), "executed", () -> "instance " + id + ": " + instance);
+    if (this.stateMachine != null) {
+      this.stateMachine.apply(instance.getValue());
+    }
+  }
+
+  /**
+   * Waits for a random time of up to the current backoff before the next Prepare round, and
+   * doubles the backoff for the round after it. Randomizing the wait lets one of several dueling
+   * proposers finish its rounds before the others try again.
+   */
+  private void backOff() {
+    long sleepMs = ThreadLocalRandom.current().nextLong(this.backoffMs + 1);
+    this.backoffMs = Math.min(this.backoffMs * 2, MAX_BACKOFF_MS);
+    this.backoffSinceDecisionMs += sleepMs;
+    this.preempted = false;
+
     try {
-      Thread.sleep((1 + this.delay) * 1000L);
+      Thread.sleep(sleepMs);
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       throw new RuntimeException("Proposer error: Thread interrupted");
     }
+  }
 
-    boolean acceptedProposal = false;
-    double proposalNum = Double.parseDouble("0." + this.info.getId());
+  /**
+   * Records the proposal number of a rejection, so the next proposal gets past it, and ends the
+   * proposer's leadership.
+   *
+   * @param nack the rejection
+   */
+  private void handleNack(Message nack) {
+    if (nack.getBallot().compareTo(this.highestSeen) > 0) {
+      this.highestSeen = nack.getBallot();
+    }
+    this.isLeader = false;
+    this.preempted = true;
+    revokeLease();
+  }
+
+  /**
+   * Gets the next batch of pending commands. The proposer only blocks for a batch when it has no
+   * accepts in flight, since otherwise it has to keep handling their completions.
+   *
+   * @return the next batch, or null if none is ready and accepts are in flight
+   */
+  private Batch nextBatch() {
+    if (!this.inFlight.isEmpty()) {
+      return this.batcher.pollBatch();
+    }
 
-    // if a proposal ever fails, try again with new proposal
-    while(!acceptedProposal) {
-      proposalNum += 1;
+    try {
+      return this.batcher.nextBatch();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Proposer error: Thread interrupted");
+    }
+  }
 
-      // broadcast prepare
-      handlePrepare(proposalNum);
+  /**
+   * Puts our batches that lost their slots back into the batcher, unless the new proposal
+   * recovered them and proposes them again in the same slots, in which case they are still
+   * counted as ours. The oldest batch is requeued last so it ends up at the front of the queue.
+   */
+  private void requeueLostBatches() {
+    // batches recovered by the last proposal but never proposed again lost their slots too
+    this.recoveredBatches.forEach((slot, batch) -> this.lostBatches.putIfAbsent(slot,
+            new InFlight(slot, Ballot.ZERO, batch.encode(), batch, null)));
+    this.recoveredBatches.clear();
 
-      // broadcast accept
-      acceptedProposal = handleAccept(proposalNum);
+    for (Map.Entry<Integer, InFlight> lost : this.lostBatches.descendingMap().entrySet()) {
+      if (Arrays.equals(lost.getValue().value(), this.recoveredValues.get(lost.getKey()))) {
+        this.recoveredBatches.put(lost.getKey(), lost.getValue().batch());
+      } else {
+        this.batcher.requeue(lost.getValue().batch());
+      }
     }
+    this.lostBatches.clear();
   }
 
   /**
-   * Handle the broadcasting and acknowledgement of the Prepare message.
+   * Handle the broadcasting and acknowledgement of the Prepare message. The Prepare message covers
+   * every slot from the first slot not yet committed onward. For each of those slots, the value
+   * accepted under the highest proposal number is kept so it can be proposed again before any new
+   * value. If that proposal was a fast round, the acceptors may have accepted different values
+   * under it, and the one that may have been chosen is kept. If an acceptor of the quorum has
+   * compacted away slots that have not been committed here, the proposer catches up from that
+   * acceptor's snapshot instead and runs Phase 1 again from after it.
    *
    * @param proposalNum the proposal number
+   * @return true if the quorum promised the proposal number else false if it was rejected or the
+   *         proposer had to catch up first
    */
-  private void handlePrepare(double proposalNum) {
-    String msg = Util.prepareMsg(this.info.getId(), "sent", "prepare",
-            "n/a", proposalNum);
-    BlockingQueue<String> msgRec = new LinkedBlockingQueue<>();
-    AtomicInteger ackCount = new AtomicInteger(0);
-    BlockingQueue<ProposalValuePair> acceptedProposalValue = new LinkedBlockingQueue<>();
+  private boolean handlePrepare(Ballot proposalNum) {
+    long sendTime = System.nanoTime();
+    Message msg = new Message(MessageType.PREPARE, this.info.getId(), proposalNum,
+            this.commitIndex, Message.NO_VALUE);
+    this.prepareRounds.increment();
 
-    // execute broadcasting and acknowledgment collection concurrently
-    new Thread(() -> broadcast(msg, msgRec)).start();
-    new Thread(() -> waitForPrepareAck(ackCount, msgRec, acceptedProposalValue)).start();
+    // wait for proposer to receive the quorum of acknowledgements
+    QuorumCollector<Message> collector = broadcast(msg, MessageType.PREPARE_ACK,
+            this.quorums.getPrepareQuorum());
+    this.prepareFanout.recordSince(sendTime);
+    List<Message> acks = awaitQuorumOrStepDown("prepare", collector);
+    if (acks == null) {
+      return false;
+    }
 
-    // wait for proposer to receive the majority of acknowledgements
-    while (true) {
-      if (ackCount.get() >= (this.totalProcesses / 2) + 1) {
-        break;
+    // check for any rejections
+    boolean rejected = false;
+    for (Message ack : acks) {
+      if (ack.getType() == MessageType.NACK) {
+        handleNack(ack);
+        rejected = true;
       }
     }
+    if (rejected) {
+      this.prepareRejections.increment();
+      return false;
+    }
 
-    // if any accepted values returned, replace value with it for highest accepted proposal
-    double highestAcceptedProposal = 0.0;
-    for (ProposalValuePair pair : acceptedProposalValue) {
-      double acceptedProposal = pair.getProposalNum();
-      char acceptedValue = pair.getValue();
+    // an acceptor that only holds slots past the ones asked for has compacted the rest
+    Message furthest = acks.stream().max(Comparator.comparingInt(Message::getSlot)).orElseThrow();
+    if (furthest.getSlot() > this.commitIndex) {
+      catchUp(furthest);
+      return false;
+    }
 
-      if (acceptedValue != '\u0000' && acceptedProposal > highestAcceptedProposal) {
-        this.value = acceptedValue;
-        highestAcceptedProposal = acceptedProposal;
+    // for each slot, keep the accepted values of the highest accepted proposal
+    Map<Integer, List<ProposalValuePair>> highest = new TreeMap<>();
+    for (Message ack : acks) {
+      for (Map.Entry<Integer, ProposalValuePair> entry : ack.getEntries().entrySet()) {
+        List<ProposalValuePair> current = highest.get(entry.getKey());
+        int order = current == null ? 1
+                : entry.getValue().getProposalNum().compareTo(current.get(0).getProposalNum());
+        if (order > 0) {
+          highest.put(entry.getKey(), new ArrayList<>(List.of(entry.getValue())));
+        } else if (order == 0) {
+          current.add(entry.getValue());
+        }
       }
     }
+
+    this.recoveredValues.clear();
+    highest.forEach((slot, pairs) -> this.recoveredValues.put(slot, pickRecoveredValue(pairs)));
+    this.nextSlot = this.commitIndex;
+
+    // reads wait until every recovered value has been committed
+    this.leaseReadyIndex = this.recoveredValues.isEmpty() ? this.commitIndex
+            : Math.max(this.commitIndex, this.recoveredValues.lastKey() + 1);
+    acquireLease(proposalNum, sendTime);
+    this.prepareTime.recordSince(sendTime);
+    return true;
   }
 
   /**
-   * Broadcasts a message to all acceptors. After the message is sent, a response will be expected
-   * from each acceptor. This response is queued to be handled by a different method that will wait
-   * for acknowledgements.
+   * Picks the value to propose again for a slot out of the values the Prepare quorum accepted
+   * under the slot's highest proposal number. After a classic round these are all the same value.
+   * After a fast round with a collision they may differ, and a value may have been chosen only if
+   * every acceptor outside the Prepare quorum accepted it as well. Since any two fast quorums and
+   * a Prepare quorum intersect, at most one value can be that common, and it is the most common
+   * one, so the most common value is always safe to pick.
    *
-   * @param msg the message to broadcast
-   * @param messagesReceived the queue holding the responses
-   * @throws RuntimeException if there are any issues with connecting to any acceptor, sending the
-   *                          message, or receiving it
+   * @param pairs the proposals and values accepted under the highest proposal number
+   * @return the value to propose again
    */
-  private void broadcast(String msg, BlockingQueue<String> messagesReceived)
-          throws RuntimeException {
-    for (ProcessInfo acceptor : this.acceptors) {
-      new Thread(() -> {
-        try (
-                Socket socket = new Socket(acceptor.getName(), Util.PORT);
-                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
-                DataInputStream in = new DataInputStream(socket.getInputStream())
-        ) {
-          // send message
-          System.err.println(msg);
-          out.writeUTF(msg);
-
-          // queue received message
-          messagesReceived.put(in.readUTF());
-        } catch (IOException | InterruptedException e) {
-          throw new RuntimeException("Proposer error: " + e.getMessage());
-        }
-      }).start();
+  private byte[] pickRecoveredValue(List<ProposalValuePair> pairs) {
+    Map<ByteBuffer, Integer> counts = new HashMap<>();
+    byte[] picked = pairs.get(0).getValue();
+    int pickedCount = 0;
+    for (ProposalValuePair pair : pairs) {
+      int count = counts.merge(ByteBuffer.wrap(pair.getValue()), 1, Integer::sum);
+      if (count > pickedCount) {
+        picked = pair.getValue();
+        pickedCount = count;
+      }
     }
+
+    return picked;
   }
 
   /**
-   * Waits for a Prepare Acknowledgement from each acceptor after sending a Prepare broadcast.
+   * Opens a fast round over every slot from the next free one onward, under the proposal number
+   * the Prepare quorum has promised. If the fast quorum is missed, the proposer steps down, and
+   * once it leads again it proposes in classic rounds for a while before it tries another fast
+   * round.
    *
-   * @param ackCount the number of acknowledgements received so far
-   * @param messagesReceived the queue holding the responses from the acceptors
-   * @throws RuntimeException if there are any issues retrieving the response or the response
-   *                          received is invalid
+   * @param proposalNum the proposal number
+   * @return true if a fast quorum opened the round else false if it was rejected or the fast
+   *         quorum was missed
    */
-  private void waitForPrepareAck(AtomicInteger ackCount, BlockingQueue<String> messagesReceived,
-                                 BlockingQueue<ProposalValuePair> acceptedProposalValue)
-          throws RuntimeException {
-    while (ackCount.get() < this.acceptors.size()) {
-      // get received message
-      String[] msgRec;
-      try {
-        msgRec = Util.unpackMsg(messagesReceived.take());
-      } catch (InterruptedException e) {
-        throw new RuntimeException("Proposer error: " + e.getMessage());
+  private boolean openFastRound(Ballot proposalNum) {
+    Message msg = new Message(MessageType.ANY, this.info.getId(), proposalNum, this.nextSlot,
+            Message.NO_VALUE);
+    List<Message> acks = awaitQuorumOrStepDown("any",
+            broadcast(msg, MessageType.ACCEPT_ACK, this.quorums.getFastQuorum()));
+    if (acks == null) {
+      this.classicUntil = System.nanoTime() + CLASSIC_FALLBACK_NANOS;
+      return false;
+    }
+
+    // check for any rejections
+    for (Message ack : acks) {
+      if (ack.getType() == MessageType.NACK) {
+        handleNack(ack);
       }
+    }
+    if (!this.isLeader) {
+      return false;
+    }
 
-      int senderId = Integer.parseInt(msgRec[0]);
-      String messageType = msgRec[2];
-      char acceptedValue = Util.strToChar(msgRec[3]);
-      double acceptedProposal = Double.parseDouble(msgRec[4]);
+    System.err.println("Proposer " + this.info.getId() + " opened fast round " + proposalNum +
+            " from slot " + this.nextSlot);
+    return true;
+  }
 
-      if (!messageType.equals("prepare_ack")) {
-        throw new RuntimeException("Proposer error: Received invalid prepare acknowledgment");
+  /**
+   * Sends a batch straight to the acceptors in the next free slot of the open fast round. The
+   * batch is chosen if a fast quorum accepted it unchanged under the same proposal number. If an
+   * acceptor rejects it because no fast round is open, or has accepted another proposer's value
+   * in the slot, the batch may or may not have been chosen, so it is treated like a batch that
+   * lost its slot, and a classic round recovers the slot before the batch is proposed again. The
+   * same goes for a batch that misses the fast quorum, after which the proposer sticks to classic
+   * rounds for a while. A chosen batch is announced to the other proposers, and only committed
+   * once every slot before it is known.
+   *
+   * @param batch the batch to propose
+   * @return true if the batch was chosen else false if the proposer has to fall back
+   */
+  private boolean proposeFast(Batch batch) {
+    // skip the slots other proposers have announced
+    this.nextSlot = Math.max(this.nextSlot, this.highestNoticed + 1);
+    int slot = this.nextSlot;
+    byte[] value = batch.encode();
+    long start = System.nanoTime();
+    Message msg = new Message(MessageType.FAST_ACCEPT, this.info.getId(), Ballot.ZERO, slot,
+            value);
+    List<Message> acks = awaitQuorumOrStepDown("fast accept",
+            broadcast(msg, MessageType.ACCEPT_ACK, this.quorums.getFastQuorum()));
+    if (acks == null) {
+      for (byte[] command : batch.getCommands()) {
+        this.attemptStarts.putIfAbsent(command, start);
       }
+      this.lostBatches.put(slot, new InFlight(slot, Ballot.ZERO, value, batch, null));
+      this.classicUntil = System.nanoTime() + CLASSIC_FALLBACK_NANOS;
+      return false;
+    }
 
-      // save received minProposal value
-      try {
-        acceptedProposalValue.put(new ProposalValuePair(acceptedProposal, acceptedValue));
-      } catch (InterruptedException e) {
-        throw new RuntimeException("Proposer error: " + e.getMessage());
+    // check for any rejections or collisions
+    Ballot fastBallot = acks.get(0).getBallot();
+    boolean rejected = false;
+    boolean collided = false;
+    for (Message ack : acks) {
+      if (ack.getType() == MessageType.NACK) {
+        handleNack(ack);
+        rejected = true;
+      } else if (!ack.getBallot().equals(fastBallot) || !Arrays.equals(ack.getValue(), value)) {
+        collided = true;
+      }
+    }
+    if (rejected || collided) {
+      boolean collision = collided;
+      EventLog.progress(this.info.getId(), collided ? "collided" : "found no fast round",
+              () -> (collision ? "in slot " : "open for slot ") + slot +
+                      ", falling back to a classic round");
+      for (byte[] command : batch.getCommands()) {
+        this.attemptStarts.putIfAbsent(command, start);
       }
+      this.lostBatches.put(slot, new InFlight(slot, fastBallot, value, batch, null));
+      this.isLeader = false;
+      return false;
+    }
+
+    // slots before this one may have been decided by other proposers, and are committed first
+    InFlight chosen = new InFlight(slot, fastBallot, value, null, null);
+    announceDecision(chosen);
+    EventLog.progress(this.info.getId(), "decided", () -> "a batch of " + batch.size() +
+            " commands, " + this.batcher.report());
+    reportCommitLatency(batch, start);
+    this.nextSlot = slot + 1;
+    this.decided.putIfAbsent(slot, chosen);
+    commitDecided();
 
-      // print received message
-      System.err.println(Util.prepareMsg(senderId, "received", messageType,
-              Util.charToStr(acceptedValue), acceptedProposal));
+    return true;
+  }
 
-      // updated number of acknowledgements received
-      ackCount.getAndIncrement();
+  /**
+   * Prints how long it took to decide one of our batches in Fast Paxos mode, measured from the
+   * first fast attempt of its oldest command. Batches that had to fall back to a classic round
+   * are reported separately from those that were chosen on their first attempt.
+   *
+   * @param batch the decided batch
+   * @param attemptStart when the batch was sent on the fast path, or -1 if it was decided in a
+   *                     classic round
+   */
+  private void reportCommitLatency(Batch batch, long attemptStart) {
+    long start = Long.MAX_VALUE;
+    for (byte[] command : batch.getCommands()) {
+      Long commandStart = this.attemptStarts.remove(command);
+      if (commandStart != null) {
+        start = Math.min(start, commandStart);
+      }
     }
+
+    String path;
+    if (start != Long.MAX_VALUE) {
+      this.fallbackDecisions++;
+      path = "after falling back";
+    } else if (attemptStart >= 0) {
+      this.fastDecisions++;
+      start = attemptStart;
+      path = "on the fast path";
+    } else {
+      return;
+    }
+    String how = path;
+    long latencyUs = (System.nanoTime() - start) / 1000;
+    long fastSoFar = this.fastDecisions;
+    long fallbackSoFar = this.fallbackDecisions;
+    EventLog.progress(this.info.getId(), "committed", () -> "a batch " + how + " in " +
+            latencyUs + " us, " + fastSoFar + " fast and " + fallbackSoFar +
+            " after falling back so far");
   }
 
   /**
-   * Handle the broadcasting and acknowledgement of the Accept message.
+   * Broadcasts an Accept message without waiting for its acknowledgements. The accept stays in
+   * flight until its collector completes, at which point it is handed back to the proposer's
+   * thread through the completion queue.
    *
    * @param proposalNum the proposal number
-   * @return true if value is accepted else false if value is rejected
+   * @param slot the log slot the value is proposed for
+   * @param value the value to propose
+   * @param batch our batch encoded in the value, or null if the value is not one of ours
    */
-  private boolean handleAccept(double proposalNum) {
-    String msg = Util.prepareMsg(this.info.getId(), "sent", "accept",
-            Util.charToStr(this.value), proposalNum);
-    BlockingQueue<String> msgRec = new LinkedBlockingQueue<>();
-    AtomicInteger ackCount = new AtomicInteger(0);
-    BlockingQueue<Double> minProposals = new LinkedBlockingQueue<>();
+  private void sendAccept(Ballot proposalNum, int slot, byte[] value, Batch batch) {
+    long sendTime = System.nanoTime();
+    Message msg = new Message(MessageType.ACCEPT, this.info.getId(), proposalNum, slot, value);
+    InFlight accept = new InFlight(slot, proposalNum, value, batch,
+            broadcast(msg, MessageType.ACCEPT_ACK, this.quorums.getAcceptQuorum()));
+    this.acceptFanout.recordSince(sendTime);
 
-    // execute broadcasting and acknowledgment collection concurrently
-    new Thread(() -> broadcast(msg, msgRec)).start();
-    new Thread(() -> waitForAcceptAck(ackCount, msgRec, minProposals)).start();
+    this.inFlight.put(slot, accept);
+    accept.collector().getFuture().whenComplete((acks, error) -> this.completions.add(accept));
+  }
 
-    // wait for proposer to receive the majority of acknowledgements
-    while (true) {
-      if (ackCount.get() >= (this.totalProcesses / 2) + 1) {
-        break;
+  /**
+   * Handles the accepts that have completed, waiting up to the given time for the first one.
+   *
+   * @param timeoutMs how long to wait for an accept to complete, in milliseconds
+   */
+  private void handleCompletions(long timeoutMs) {
+    try {
+      InFlight accept = this.completions.poll(timeoutMs, TimeUnit.MILLISECONDS);
+      while (accept != null) {
+        if (this.epaxos) {
+          completeInstance(accept);
+        } else {
+          completeAccept(accept);
+        }
+        accept = this.completions.poll();
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Proposer error: Thread interrupted");
     }
+  }
 
-    // check for any rejections
-    for (Double minProp : minProposals) {
-      if (minProp > proposalNum) {
-        return false;
+  /**
+   * Handles the acknowledgements of a completed accept. Accepts may complete in any order, so a
+   * decided slot is only committed once every slot before it has been decided as well. A rejected
+   * accept ends the proposer's leadership. In Mencius mode, an owner whose slot already holds
+   * another value gets that value back instead, and proposes its batch again in a later slot.
+   *
+   * @param accept the completed accept
+   */
+  private void completeAccept(InFlight accept) {
+    this.inFlight.remove(accept.slot());
+    List<Message> acks = awaitQuorumOrStepDown("accept", accept.collector());
+
+    // check for any rejections, a missed quorum counts as one
+    boolean rejected = acks == null;
+    for (Message ack : acks == null ? List.<Message>of() : acks) {
+      if (ack.getType() == MessageType.NACK) {
+        handleNack(ack);
+        rejected = true;
       }
     }
+    if (rejected) {
+      if (acks != null) {
+        this.acceptRejections.increment();
+      }
+      if (accept.batch() != null && this.mencius) {
+        this.batcher.requeue(accept.batch());
+      } else if (accept.batch() != null) {
+        this.lostBatches.put(accept.slot(), accept);
+      }
+      return;
+    }
 
-    return true;
+    // the value the acceptors hold in an owned slot is the one decided
+    if (this.mencius) {
+      byte[] held = acks.get(0).getValue();
+      if (!Arrays.equals(held, accept.value())) {
+        if (accept.batch() != null) {
+          this.batcher.requeue(accept.batch());
+        }
+        accept = new InFlight(accept.slot(), accept.proposalNum(), held, null, null);
+      }
+    }
+    if (this.mencius || this.fastPaxos) {
+      announceDecision(accept);
+    }
+
+    this.decided.putIfAbsent(accept.slot(), accept);
+    commitDecided();
   }
 
   /**
-   * Waits for an Accept Acknowledgement from each acceptor after sending an Accept broadcast.
+   * Commits the decided slots in log order, stopping at the first slot not yet decided, and
+   * applies them to the key-value state machine.
+   */
+  private void commitDecided() {
+    while (this.decided.containsKey(this.commitIndex)) {
+      InFlight next = this.decided.remove(this.commitIndex);
+      this.chosenValues.put(next.slot(), next.value());
+      if (next.collector() != null) {
+        this.commitTime.recordSince(next.collector().getStartTime());
+      }
+      EventLog.value(this.info.getId(), "chose", next.proposalNum(), next.slot(),
+              next.value());
+      if (next.batch() != null) {
+        int size = next.batch().size();
+        EventLog.progress(this.info.getId(), "decided", () -> "a batch of " + size +
+                " commands, " + this.batcher.report());
+        if (this.fastPaxos) {
+          reportCommitLatency(next.batch(), -1);
+        }
+      }
+      if (this.roundsSinceDecision > 0) {
+        int rounds = this.roundsSinceDecision;
+        long backoffMs = this.backoffSinceDecisionMs;
+        EventLog.progress(this.info.getId(), "reached a decision", () -> "after " + rounds +
+                " prepare rounds and " + backoffMs + " ms of backoff");
+        this.roundsSinceDecision = 0;
+        this.backoffSinceDecisionMs = 0;
+      }
+      this.commitIndex++;
+    }
+    applyCommitted();
+    publishReads();
+  }
+
+  /**
+   * Applies every committed slot that has not been applied yet to the key-value state machine,
+   * in log order.
+   */
+  private void applyCommitted() {
+    if (this.stateMachine == null) {
+      return;
+    }
+    while (this.appliedIndex < this.commitIndex) {
+      this.stateMachine.apply(this.chosenValues.get(this.appliedIndex));
+      this.appliedIndex++;
+    }
+
+    // begin the snapshot right after its last slot is applied, then write it in the background
+    if (this.snapshotInterval > 0
+            && this.appliedIndex - 1 - this.lastSnapshotSlot >= this.snapshotInterval
+            && this.snapshotRunning.compareAndSet(false, true)) {
+      KvStateMachine.Snapshot snapshot = this.stateMachine.beginSnapshot(this.appliedIndex - 1);
+      this.lastSnapshotSlot = snapshot.getSlot();
+      this.snapshotter.execute(() -> takeSnapshot(snapshot));
+    }
+  }
+
+  /**
+   * Writes a snapshot of the state machine to disk and streams it to every acceptor, then drops
+   * the committed values the snapshot covers. Runs in the background while the proposer keeps
+   * deciding and applying slots.
+   *
+   * @param snapshot the snapshot
+   */
+  private void takeSnapshot(KvStateMachine.Snapshot snapshot) {
+    long start = System.nanoTime();
+    try {
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(
+              this.snapshotPath))) {
+        snapshot.writeTo(out);
+      } finally {
+        this.stateMachine.endSnapshot();
+      }
+      System.err.println("Proposer " + this.info.getId() + " wrote a snapshot through slot " +
+              snapshot.getSlot() + " of " + Files.size(this.snapshotPath) + " bytes in " +
+              (System.nanoTime() - start) / 1000 + " us");
+
+      streamSnapshot(snapshot.getSlot());
+      this.chosenValues.headMap(snapshot.getSlot(), true).clear();
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Proposer " + this.info.getId() + " failed to take a snapshot: " +
+              e.getMessage());
+    } finally {
+      this.snapshotRunning.set(false);
+    }
+  }
+
+  /**
+   * Streams the snapshot on disk to every acceptor, one chunk at a time. An acceptor that fails
+   * to store it is skipped, and compacts its log with a later snapshot instead.
+   *
+   * @param slot the last log slot the snapshot covers
+   * @throws IOException if the snapshot cannot be read
+   */
+  private void streamSnapshot(int slot) throws IOException {
+    long start = System.nanoTime();
+    int stored = 0;
+    try (FileChannel in = FileChannel.open(this.snapshotPath, StandardOpenOption.READ)) {
+      long size = in.size();
+      for (ProcessInfo acceptor : this.acceptors) {
+        try {
+          long offset = 0;
+          boolean last = false;
+          while (!last) {
+            ByteBuffer data = ByteBuffer.allocate((int) Math.min(SnapshotChunk.MAX_DATA_SIZE,
+                    size - offset));
+            int read = 0;
+            while (data.hasRemaining() && read >= 0) {
+              read = in.read(data, offset + data.position());
+            }
+            last = offset + data.capacity() >= size;
+            Message msg = new Message(MessageType.SNAPSHOT, this.info.getId(), Ballot.ZERO, slot,
+                    new SnapshotChunk(offset, last, data.array()).encode());
+            if (this.transport.send(this.groupId, acceptor, msg).join().getType()
+                    != MessageType.SNAPSHOT_ACK) {
+              throw new CompletionException(new RuntimeException("Proposer error: Received " +
+                      "invalid " + MessageType.SNAPSHOT_ACK.getLabel()));
+            }
+            offset += data.capacity();
+          }
+          stored++;
+        } catch (CompletionException e) {
+          System.err.println("Proposer " + this.info.getId() + " failed to stream its snapshot " +
+                  "to acceptor " + acceptor.getId() + ": " + e.getCause().getMessage());
+        }
+      }
+    }
+
+    System.err.println("Proposer " + this.info.getId() + " streamed its snapshot through slot " +
+            slot + " to " + stored + " of " + this.acceptors.size() + " acceptors in " +
+            (System.nanoTime() - start) / 1000 + " us");
+  }
+
+  /**
+   * Catches up with an acceptor that has compacted away slots the proposer has not committed.
+   * A proposer with a state machine fetches the acceptor's snapshot and installs it, and any
+   * other proposer skips straight past the compacted slots, since it has nothing to apply them
+   * to. If the snapshot cannot be fetched, the proposer backs off and tries again with its next
+   * Prepare round.
    *
-   * @param ackCount the number of acknowledgements received so far
-   * @param messagesReceived the queue holding the responses from the acceptors
-   * @param minProposals the queue that will hold min proposals returned by acceptors
-   * @throws RuntimeException if there are any issues retrieving the response or the response
-   *                          received is invalid
+   * @param ack the acknowledgement of the acceptor, naming the first slot it still holds
    */
-  private void waitForAcceptAck(AtomicInteger ackCount, BlockingQueue<String> messagesReceived,
-                                BlockingQueue<Double> minProposals) {
-    while (ackCount.get() < this.acceptors.size()) {
-      // get received message
-      String[] msgRec;
-      try {
-        msgRec = Util.unpackMsg(messagesReceived.take());
-      } catch (InterruptedException e) {
-        throw new RuntimeException("Proposer error: " + e.getMessage());
+  private void catchUp(Message ack) {
+    int throughSlot = ack.getSlot() - 1;
+    if (this.stateMachine != null) {
+      // a snapshot still being written reads the state the install would replace
+      ProcessInfo source = this.acceptors.stream()
+              .filter(acceptor -> acceptor.getId() == ack.getSenderId()).findFirst()
+              .orElseThrow();
+      Integer installed = this.snapshotRunning.get() ? null : fetchSnapshot(source);
+      if (installed == null) {
+        this.preempted = true;
+        return;
       }
+      throughSlot = installed;
+      this.appliedIndex = throughSlot + 1;
+      this.lastSnapshotSlot = throughSlot;
+    }
 
-      int senderId = Integer.parseInt(msgRec[0]);
-      String messageType = msgRec[2];
-      char acceptedValue = Util.strToChar(msgRec[3]);
-      double minProposal = Double.parseDouble(msgRec[4]);
+    int caughtUp = throughSlot;
+    this.commitIndex = caughtUp + 1;
+    this.chosenValues.headMap(caughtUp, true).clear();
+    this.decided.keySet().removeIf(slot -> slot <= caughtUp);
+    System.err.println("Proposer " + this.info.getId() + " caught up through slot " +
+            caughtUp + " from acceptor " + ack.getSenderId());
+  }
 
-      if (!messageType.equals("accept_ack")) {
-        throw new RuntimeException("Proposer error: Received invalid prepare acknowledgment");
+  /**
+   * Fetches the snapshot stored by an acceptor, one chunk at a time, and installs it into the
+   * state machine.
+   *
+   * @param source the acceptor to fetch the snapshot from
+   * @return the last log slot the snapshot covers, or null if it could not be fetched whole
+   */
+  private Integer fetchSnapshot(ProcessInfo source) {
+    long start = System.nanoTime();
+    Path temp = this.snapshotPath.resolveSibling(this.snapshotPath.getFileName() + ".tmp");
+    int slot = -1;
+    try {
+      try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        long offset = 0;
+        boolean last = false;
+        while (!last) {
+          Message request = new Message(MessageType.SNAPSHOT_REQUEST, this.info.getId(),
+                  Ballot.ZERO, slot, new SnapshotChunk(offset, false, Message.NO_VALUE).encode());
+          Message response = this.transport.send(this.groupId, source, request).join();
+
+          // the acceptor has no snapshot, or replaced it between two chunks
+          if (response.getType() != MessageType.SNAPSHOT
+                  || (slot >= 0 && response.getSlot() != slot)) {
+            return null;
+          }
+          slot = response.getSlot();
+          SnapshotChunk chunk = SnapshotChunk.decode(response.getValue());
+          out.write(ByteBuffer.wrap(chunk.getData()));
+          offset += chunk.getData().length;
+          last = chunk.isLast();
+        }
       }
 
-      // save received minProposal value
-      try {
-        minProposals.put(minProposal);
-      } catch (InterruptedException e) {
-        throw new RuntimeException("Proposer error: " + e.getMessage());
+      try (InputStream in = new BufferedInputStream(Files.newInputStream(temp))) {
+        slot = this.stateMachine.install(in);
       }
+    } catch (IOException | CompletionException e) {
+      System.err.println("Proposer " + this.info.getId() + " failed to fetch a snapshot from " +
+              "acceptor " + source.getId() + ": " + e.getMessage());
+      return null;
+    }
 
-      // print received message
-      System.err.println(Util.prepareMsg(senderId, "received", messageType,
-              Util.charToStr(acceptedValue), minProposal));
+    System.err.println("Proposer " + this.info.getId() + " installed a snapshot through slot " +
+            slot + " of " + this.stateMachine.size() + " keys in " +
+            (System.nanoTime() - start) / 1000 + " us");
+    return slot;
+  }
 
-      // updated number of acknowledgements received
-      ackCount.getAndIncrement();
+  /**
+   * Renews the lease of the current proposal by sending a Prepare message for it again, which the
+   * acceptors answer without writing anything. The Prepare message covers no slots, so the
+   * acknowledgements carry no accepted values. The lease only runs from the moment the message was
+   * sent, and a rejection leaves it to run out.
+   */
+  private void renewLease() {
+    Ballot ballot;
+    synchronized (this) {
+      ballot = this.leaseBallot;
     }
+    if (ballot == null) {
+      return;
+    }
+
+    long sendTime = System.nanoTime();
+    Message msg = new Message(MessageType.PREPARE, this.info.getId(), ballot, Integer.MAX_VALUE,
+            Message.NO_VALUE);
+    broadcast(msg, MessageType.PREPARE_ACK, this.quorums.getPrepareQuorum()).getFuture()
+            .whenComplete((acks, error) -> {
+              if (error == null
+                      && acks.stream().noneMatch(ack -> ack.getType() == MessageType.NACK)) {
+                extendLease(ballot, sendTime);
+              }
+            });
+  }
+
+  /**
+   * Takes the lease granted by a Prepare quorum's promises of a new proposal number.
+   *
+   * @param proposalNum the promised proposal number
+   * @param sendTime when the Prepare message was sent, in nanoseconds
+   */
+  private synchronized void acquireLease(Ballot proposalNum, long sendTime) {
+    if (this.leaseNanos <= 0) {
+      return;
+    }
+    this.leaseBallot = proposalNum;
+    this.leaseExpiry = sendTime;
+    extendLease(proposalNum, sendTime);
+    System.err.println("Proposer " + this.info.getId() + " holds a read lease under " +
+            proposalNum);
+  }
+
+  /**
+   * Extends the lease of the given proposal number, unless the lease has been given up since.
+   * The acceptors started their leases after the Prepare message was sent, so the lease is
+   * counted from the moment it was sent, less a tenth for clocks running at different rates.
+   *
+   * @param proposalNum the promised proposal number
+   * @param sendTime when the Prepare message was sent, in nanoseconds
+   */
+  private synchronized void extendLease(Ballot proposalNum, long sendTime) {
+    if (proposalNum.equals(this.leaseBallot)) {
+      this.leaseExpiry = Math.max(this.leaseExpiry, sendTime + this.leaseNanos * 9 / 10);
+    }
+  }
+
+  /**
+   * Gives up the lease once the proposal number changes, so no read is served from state that
+   * another leader may already have moved past.
+   */
+  private synchronized void revokeLease() {
+    if (this.leaseBallot != null) {
+      System.err.println("Proposer " + this.info.getId() + " gave up its read lease under " +
+              this.leaseBallot);
+    }
+    this.leaseBallot = null;
+    this.readableIndex = -1;
+  }
+
+  /**
+   * Checks whether the proposer holds a lease that has not run out.
+   *
+   * @return true if the proposer holds a lease else false
+   */
+  private synchronized boolean holdsLease() {
+    return this.leaseBallot != null && System.nanoTime() - this.leaseExpiry < 0;
+  }
+
+  /**
+   * Lets reads see every slot committed so far, once the leader has committed every value it
+   * recovered. A leader in Fast Paxos mode never serves reads, since other proposers decide slots
+   * without it.
+   */
+  private void publishReads() {
+    if (this.leaseNanos > 0 && this.isLeader && !this.fastPaxos
+            && this.commitIndex >= this.leaseReadyIndex) {
+      this.readableIndex = this.commitIndex;
+    }
+  }
+
+  /**
+   * Handles a read of the committed log, received by the proposer's own acceptor. The read is
+   * served from the proposer's state only while it holds a lease, since no other proposer can
+   * have a value chosen until the lease runs out. Otherwise the read is rejected, and the reader
+   * has to go to a learner instead.
+   *
+   * @param msg the read
+   * @return the response carrying every committed slot from the given slot onward
+   */
+  private Message handleRead(Message msg) {
+    int readable = this.readableIndex;
+    if (readable < 0 || !holdsLease()) {
+      Message nack = new Message(MessageType.NACK, this.info.getId(), Ballot.ZERO,
+              msg.getSlot(), Message.NO_VALUE);
+      EventLog.message(nack, "sent");
+      return nack;
+    }
+
+    Map<Integer, ProposalValuePair> entries = new TreeMap<>();
+    this.chosenValues.subMap(msg.getSlot(), true, readable, false).forEach((slot, value) ->
+            entries.put(slot, new ProposalValuePair(Ballot.ZERO, value)));
+    Message response = new Message(MessageType.READ_ACK, this.info.getId(), Ballot.ZERO,
+            msg.getSlot(), Message.NO_VALUE, entries);
+    EventLog.message(response, "sent");
+
+    return response;
+  }
+
+  /**
+   * Blocks until the given broadcast has been acknowledged by a quorum of acceptors.
+   *
+   * @param phase the name of the phase the broadcast belongs to
+   * @param collector the collector of the acknowledgements of the broadcast
+   * @return the acknowledgements making up the quorum
+   * @throws RuntimeException if a quorum of acceptors cannot be reached
+   */
+  private List<Message> awaitQuorum(String phase, QuorumCollector<Message> collector)
+          throws RuntimeException {
+    List<Message> acks;
+    try {
+      acks = collector.getFuture().join();
+    } catch (CompletionException e) {
+      throw new RuntimeException("Proposer error: Unable to reach a quorum of acceptors: " +
+              e.getCause().getMessage());
+    }
+
+    long latency = collector.getQuorumLatency();
+    EventLog.quorum(this.info.getId(), phase, latency);
+    this.quorumTimes.computeIfAbsent(phase, key -> Metrics.histogram(this.metricsPrefix +
+            key.replace(' ', '_') + ".quorum")).record(latency);
+    return acks;
+  }
+
+  /**
+   * Blocks until the given broadcast has been acknowledged by a quorum of acceptors, and steps
+   * down from leading if too many acceptors failed to answer for a quorum, e.g. when messages to
+   * two of them were lost. The proposer then backs off and runs Phase 1 again, which recovers
+   * whatever the broadcast got accepted.
+   *
+   * @param phase the name of the phase the broadcast belongs to
+   * @param collector the collector of the acknowledgements of the broadcast
+   * @return the acknowledgements making up the quorum, or null if the quorum was missed
+   */
+  private List<Message> awaitQuorumOrStepDown(String phase, QuorumCollector<Message> collector) {
+    try {
+      return awaitQuorum(phase, collector);
+    } catch (RuntimeException e) {
+      System.err.println("Proposer " + this.info.getId() + " steps down: " + e.getMessage());
+      this.missedQuorums.increment();
+      this.isLeader = false;
+      this.preempted = true;
+      revokeLease();
+      return null;
+    }
+  }
+
+  /**
+   * Broadcasts a message to the acceptors over their persistent connections. Each response is
+   * added to the returned collector as soon as it arrives, which completes the collector's future
+   * once the quorum has responded, so a slow or failed acceptor outside the quorum costs nothing.
+   * In thrifty mode the message only goes to the quorum of acceptors that have been answering
+   * fastest. With hedging, one spare acceptor is added once the quorum takes longer than the
+   * hedging percentile of recent response times, and the rest are added if one of the quorum
+   * fails or the quorum has not answered by the fallback deadline.
+   *
+   * @param msg the message to broadcast
+   * @param ackType the type of acknowledgement expected in response
+   * @param quorumSize the number of acknowledgements that make up a quorum
+   * @return the collector of the acknowledgements
+   */
+  private QuorumCollector<Message> broadcast(Message msg, MessageType ackType, int quorumSize) {
+    QuorumCollector<Message> collector = new QuorumCollector<>(quorumSize, this.acceptors.size());
+    if (this.thriftyTimeoutMs <= 0) {
+      send(this.acceptors, msg, ackType, collector, () -> { });
+      return collector;
+    }
+
+    List<ProcessInfo> ranked = this.latencies.fastest(this.acceptors, this.acceptors.size());
+    List<ProcessInfo> preferred = ranked.subList(0, quorumSize);
+    Queue<ProcessInfo> spares = new ConcurrentLinkedQueue<>(ranked.subList(quorumSize,
+            ranked.size()));
+    Set<Integer> responded = ConcurrentHashMap.newKeySet();
+    AtomicBoolean expanded = new AtomicBoolean(false);
+
+    // expand to the remaining acceptors at most once, if the quorum is still missing
+    Runnable fallback = () -> {
+      if (collector.getFuture().isDone() || !expanded.compareAndSet(false, true)) {
+        return;
+      }
+      for (ProcessInfo acceptor : preferred) {
+        if (!responded.contains(acceptor.getId())) {
+          this.latencies.penalize(acceptor.getId(),
+                  TimeUnit.MILLISECONDS.toNanos(this.thriftyTimeoutMs));
+        }
+      }
+      long fellBack = this.fallbacks.incrementAndGet();
+      long thrifty = this.thriftyBroadcasts.get();
+      EventLog.progress(this.info.getId(), "fell back to all acceptors", () -> "for " +
+              msg.getType().getLabel() + " in slot " + msg.getSlot() + ", " + fellBack + " of " +
+              thrifty + " thrifty broadcasts so far");
+      List<ProcessInfo> others = new ArrayList<>();
+      for (ProcessInfo spare = spares.poll(); spare != null; spare = spares.poll()) {
+        others.add(spare);
+      }
+      send(others, msg, ackType, collector, () -> { });
+    };
+
+    this.thriftyBroadcasts.incrementAndGet();
+    send(preferred, msg, ackType, collector, fallback, responded);
+    List<ScheduledFuture<?>> timers = new ArrayList<>();
+    timers.add(this.timer.schedule(fallback, this.thriftyTimeoutMs,
+            TimeUnit.MILLISECONDS));
+
+    // hedge with one spare acceptor once the quorum is later than usual
+    long hedgeDelay = this.hedgePercentile > 0 ? this.latencies.percentile(this.hedgePercentile)
+            : -1;
+    if (hedgeDelay >= 0 && hedgeDelay < TimeUnit.MILLISECONDS.toNanos(this.thriftyTimeoutMs)) {
+      timers.add(this.timer.schedule(() -> {
+        ProcessInfo spare = collector.getFuture().isDone() ? null : spares.poll();
+        if (spare != null) {
+          this.hedges.incrementAndGet();
+          send(List.of(spare), msg, ackType, collector, fallback);
+        }
+      }, hedgeDelay, TimeUnit.NANOSECONDS));
+    }
+    collector.getFuture().whenComplete((acks, error) -> timers.forEach(
+            timer -> timer.cancel(false)));
+
+    return collector;
+  }
+
+  /**
+   * Sends a message to some of the acceptors and adds their responses to the given collector.
+   *
+   * @param targets the acceptors to send the message to
+   * @param msg the message to send
+   * @param ackType the type of acknowledgement expected in response
+   * @param collector the collector of the acknowledgements
+   * @param onFailure run whenever an acceptor fails to respond
+   */
+  private void send(List<ProcessInfo> targets, Message msg, MessageType ackType,
+                    QuorumCollector<Message> collector, Runnable onFailure) {
+    send(targets, msg, ackType, collector, onFailure, ConcurrentHashMap.newKeySet());
+  }
+
+  /**
+   * Sends a message to some of the acceptors and adds their responses to the given collector. The
+   * latency of every response is recorded for thrifty mode.
+   *
+   * @param targets the acceptors to send the message to
+   * @param msg the message to send
+   * @param ackType the type of acknowledgement expected in response
+   * @param collector the collector of the acknowledgements
+   * @param onFailure run whenever an acceptor fails to respond
+   * @param responded the IDs of the acceptors that have responded, added to as responses arrive
+   */
+  private void send(List<ProcessInfo> targets, Message msg, MessageType ackType,
+                    QuorumCollector<Message> collector, Runnable onFailure,
+                    Set<Integer> responded) {
+    for (ProcessInfo acceptor : targets) {
+      // send message
+      EventLog.message(msg, "sent");
+      long sendTime = System.nanoTime();
+      this.transport.send(this.groupId, acceptor, msg).whenComplete((response, error) -> {
+        if (error != null) {
+          this.latencies.penalize(acceptor.getId(), System.nanoTime() - sendTime);
+          collector.fail(error);
+          onFailure.run();
+          return;
+        }
+        responded.add(acceptor.getId());
+        this.latencies.record(acceptor.getId(), System.nanoTime() - sendTime);
+
+        // collect received message, rejections included
+        if (response.getType() != ackType && response.getType() != MessageType.NACK) {
+          collector.fail(new RuntimeException("Proposer error: Received invalid " +
+                  ackType.getLabel()));
+          onFailure.run();
+          return;
+        }
+
+        // print received message
+        EventLog.message(response, "received");
+        collector.add(response);
+      });
+    }
+  }
+
+  /**
+   * Gets the number of broadcasts sent in thrifty mode.
+   *
+   * @return the number of thrifty broadcasts
+   */
+  public long getThriftyBroadcastCount() {
+    return this.thriftyBroadcasts.get();
+  }
+
+  /**
+   * Gets the number of spare acceptors thrifty broadcasts were hedged with.
+   *
+   * @return the number of hedged sends
+   */
+  public long getHedgeCount() {
+    return this.hedges.get();
+  }
+
+  /**
+   * Gets the number of thrifty broadcasts that had to fall back to every acceptor.
+   *
+   * @return the number of fallbacks
+   */
+  public long getFallbackCount() {
+    return this.fallbacks.get();
+  }
+
+  /**
+   * An Accept message that has been broadcast for a log slot.
+   *
+   * @param slot the log slot
+   * @param proposalNum the proposal number of the Accept message
+   * @param value the proposed value
+   * @param batch our batch encoded in the value, or null if the value is not one of ours
+   * @param collector the collector of the acknowledgements
+   */
+  private record InFlight(int slot, Ballot proposalNum, byte[] value, Batch batch,
+                          QuorumCollector<Message> collector) {
   }
 }
@@ -0,0 +1,108 @@
+package main.java;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Collects the responses to a broadcast until a quorum of them has arrived. The future completes
+ * as soon as the quorum-th response is added, so whoever waits on it is woken up by the response
+ * itself instead of checking a counter over and over. The future completes exceptionally once so
+ * many acceptors have failed that the quorum can no longer be reached.
+ *
+ * @param <T> the type of response
+ */
+public class QuorumCollector<T> {
+  private final int quorumSize;
+  private final int total;
+  private final long startTime;
+  private final List<T> responses;
+  private final CompletableFuture<List<T>> future;
+  private int failures;
+  private long quorumLatency;
+
+  /**
+   * Constructs a new QuorumCollector object. The latency to quorum is measured from the moment
+   * the collector is constructed.
+   *
+   * @param quorumSize the number of responses that make up a quorum
+   * @param total the number of processes the broadcast was sent to
+   */
+  public QuorumCollector(int quorumSize, int total) {
+    this.quorumSize = quorumSize;
+    this.total = total;
+    this.startTime = System.nanoTime();
+    this.responses = new ArrayList<>();
+    this.future = new CompletableFuture<>();
+    this.failures = 0;
+    this.quorumLatency = -1;
+  }
+
+  /**
+   * Adds a response. Responses that arrive after the quorum has been reached are ignored.
+   *
+   * @param response the response
+   */
+  public void add(T response) {
+    List<T> quorum;
+    synchronized (this) {
+      if (this.future.isDone()) {
+        return;
+      }
+      this.responses.add(response);
+      if (this.responses.size() < this.quorumSize) {
+        return;
+      }
+      this.quorumLatency = System.nanoTime() - this.startTime;
+      quorum = List.copyOf(this.responses);
+    }
+
+    this.future.complete(quorum);
+  }
+
+  /**
+   * Records that a process failed to respond.
+   *
+   * @param cause the reason the process failed to respond
+   */
+  public void fail(Throwable cause) {
+    synchronized (this) {
+      if (this.future.isDone()) {
+        return;
+      }
+      this.failures++;
+      if (this.total - this.failures >= this.quorumSize) {
+        return;
+      }
+    }
+
+    this.future.completeExceptionally(cause);
+  }
+
+  /**
+   * Gets the future that completes with the responses making up the quorum.
+   *
+   * @return the future of the quorum
+   */
+  public CompletableFuture<List<T>> getFuture() {
+    return this.future;
+  }
+
+  /**
+   * Gets the time the collector was constructed, which is when its broadcast was sent.
+   *
+   * @return the start time, as given by {@link System#nanoTime()}
+   */
+  public long getStartTime() {
+    return this.startTime;
+  }
+
+  /**
+   * Gets the time it took to reach the quorum.
+   *
+   * @return the latency to quorum in nanoseconds, or -1 if the quorum has not been reached
+   */
+  public synchronized long getQuorumLatency() {
+    return this.quorumLatency;
+  }
+}
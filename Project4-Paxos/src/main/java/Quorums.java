@@ -0,0 +1,151 @@
+package main.java;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The sizes of the Prepare (phase 1) and Accept (phase 2) quorums over a set of acceptors,
+ * following Flexible Paxos. The two quorums do not have to be majorities, they only have to
+ * intersect, that is, together they have to count more than the number of acceptors. This lets a
+ * deployment shrink the Accept quorum used for every value and pay with a larger Prepare quorum,
+ * which is only used when the leader changes. Fast Paxos rounds need a larger fast quorum, so
+ * that any two fast quorums and a Prepare quorum still share an acceptor. When proposers have
+ * different sets of acceptors, one proposer's Prepare quorum has to meet every other proposer's
+ * Accept quorum, so the quorums are sized and checked against every acceptor of any proposer
+ * rather than only a proposer's own. A fast quorum sized that way may outgrow a proposer's own
+ * acceptors, which is only an error when fast rounds are used.
+ */
+public final class Quorums {
+  private final int acceptors;
+  private final int spanned;
+  private final int prepareQuorum;
+  private final int acceptQuorum;
+  private final int fastQuorum;
+
+  /**
+   * Constructs a new Quorums object. A quorum size of zero or less stands for a majority of the
+   * acceptors of all proposers.
+   *
+   * @param acceptors the number of acceptors of the proposer the quorums are drawn from
+   * @param spanned the number of acceptors of all proposers together, at least the proposer's own
+   * @param prepareQuorum the size of the Prepare quorum
+   * @param acceptQuorum the size of the Accept quorum
+   * @param fastRounds true if fast quorums are used, in Fast Paxos or EPaxos mode, else false
+   * @throws IllegalArgumentException if a quorum in use is larger than the proposer's set of
+   *                                  acceptors or a Prepare quorum may miss an Accept quorum
+   */
+  public Quorums(int acceptors, int spanned, int prepareQuorum, int acceptQuorum,
+                 boolean fastRounds) throws IllegalArgumentException {
+    int majority = (spanned / 2) + 1;
+    this.acceptors = acceptors;
+    this.spanned = spanned;
+    this.prepareQuorum = prepareQuorum > 0 ? prepareQuorum : majority;
+    this.acceptQuorum = acceptQuorum > 0 ? acceptQuorum : majority;
+
+    if (this.prepareQuorum > acceptors || this.acceptQuorum > acceptors) {
+      throw new IllegalArgumentException("Quorums error: Quorum larger than the " + acceptors +
+              " acceptors");
+    }
+    if (this.prepareQuorum + this.acceptQuorum <= spanned) {
+      throw new IllegalArgumentException("Quorums error: Prepare quorum of " +
+              this.prepareQuorum + " and accept quorum of " + this.acceptQuorum +
+              " do not intersect over the " + spanned + " acceptors of all proposers");
+    }
+
+    // the smallest fast quorum with prepareQuorum + 2 * fastQuorum > 2 * spanned
+    this.fastQuorum = Math.max(this.acceptQuorum, (2 * spanned - this.prepareQuorum) / 2 + 1);
+    if (fastRounds && this.fastQuorum > acceptors) {
+      throw new IllegalArgumentException("Quorums error: Fast quorum of " + this.fastQuorum +
+              " for a prepare quorum of " + this.prepareQuorum + " over the " + spanned +
+              " acceptors of all proposers is larger than the " + acceptors + " acceptors");
+    }
+  }
+
+  /**
+   * Sizes the quorums of a proposer from the given hostsfile. A proposer's acceptors are the
+   * processes with its acceptor role and the proposer itself.
+   *
+   * @param hostsfile the path to the file containing information on all processes
+   * @param proposerId the proposer ID of the proposer
+   * @param prepareQuorum the size of the Prepare quorum, or zero or less for a majority
+   * @param acceptQuorum the size of the Accept quorum, or zero or less for a majority
+   * @param fastRounds true if fast quorums are used, in Fast Paxos or EPaxos mode, else false
+   * @return the quorums of the proposer
+   * @throws IllegalArgumentException if the hostsfile cannot be read or the quorums are invalid
+   */
+  public static Quorums fromHostsfile(String hostsfile, int proposerId, int prepareQuorum,
+                                      int acceptQuorum, boolean fastRounds)
+          throws IllegalArgumentException {
+    Set<String> own = new HashSet<>();
+    Set<String> all = new HashSet<>();
+    try {
+      for (String line : Files.readAllLines(Paths.get(hostsfile))) {
+        String[] parts = line.split(":");
+        if (parts.length < 2) {
+          continue;
+        }
+        for (String role : parts[1].split(",")) {
+          if (role.startsWith("acceptor") || role.startsWith("proposer")) {
+            all.add(parts[0]);
+            if (role.equals("acceptor" + proposerId) || role.equals("proposer" + proposerId)) {
+              own.add(parts[0]);
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Quorums error: Issue with reading hostsfile: " +
+              e.getMessage());
+    }
+
+    return new Quorums(own.size(), all.size(), prepareQuorum, acceptQuorum, fastRounds);
+  }
+
+  /**
+   * Gets the number of acceptors the quorums are drawn from.
+   *
+   * @return the number of acceptors
+   */
+  public int getAcceptors() {
+    return this.acceptors;
+  }
+
+  /**
+   * Gets the number of acceptors that have to promise a proposal number.
+   *
+   * @return the size of the Prepare quorum
+   */
+  public int getPrepareQuorum() {
+    return this.prepareQuorum;
+  }
+
+  /**
+   * Gets the number of acceptors that have to accept a value for it to be chosen.
+   *
+   * @return the size of the Accept quorum
+   */
+  public int getAcceptQuorum() {
+    return this.acceptQuorum;
+  }
+
+  /**
+   * Gets the number of acceptors that have to accept the same value in a fast round for it to be
+   * chosen.
+   *
+   * @return the size of the fast quorum
+   */
+  public int getFastQuorum() {
+    return this.fastQuorum;
+  }
+
+  @Override
+  public String toString() {
+    String quorums = "prepare quorum " + this.prepareQuorum + "/" + this.acceptors +
+            ", accept quorum " + this.acceptQuorum + "/" + this.acceptors;
+    return this.spanned == this.acceptors ? quorums
+            : quorums + " over the " + this.spanned + " acceptors of all proposers";
+  }
+}
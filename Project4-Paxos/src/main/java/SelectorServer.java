@@ -0,0 +1,279 @@
+package main.java;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * A {@link MessageServer} built on a single selector thread that accepts every connection and
+ * reads every request, whatever the number of connections. Requests are handled on a fixed pool
+ * of handler threads, since handling may block on the disk. A handler that answers later does not
+ * keep its thread while it waits. A handler writes its response
+ * straight to the channel when nothing is queued ahead of it, and otherwise leaves it to the
+ * selector thread to write once the channel can take more.
+ */
+public class SelectorServer implements MessageServer {
+  private static final int HANDLER_THREADS = 16;
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private final int port;
+  private final Function<Message, CompletableFuture<Message>> handler;
+  private final ExecutorService requestHandlers;
+  private final BufferPool buffers;
+  private Selector selector;
+
+  /**
+   * Constructs a new SelectorServer object. The server does not listen until it is started.
+   *
+   * @param port the port to listen on
+   * @param handler handles a request and returns the future of its response
+   */
+  public SelectorServer(int port, Function<Message, CompletableFuture<Message>> handler) {
+    this.port = port;
+    this.handler = handler;
+    this.requestHandlers = Executors.newFixedThreadPool(HANDLER_THREADS);
+    this.buffers = new BufferPool(4096);
+  }
+
+  @Override
+  public void start() {
+    ServerSocketChannel serverChannel;
+    try {
+      this.selector = Selector.open();
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.bind(new InetSocketAddress(this.port));
+      serverChannel.configureBlocking(false);
+      serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e) {
+      throw new RuntimeException("SelectorServer error: " + e.getMessage());
+    }
+
+    new Thread(() -> runEventLoop(serverChannel)).start();
+  }
+
+  /**
+   * Waits for channels to become ready and serves them, for as long as the process runs. A
+   * connection that fails or sends a frame that cannot be decoded is closed without affecting the
+   * others.
+   *
+   * @param serverChannel the channel accepting connections
+   * @throws RuntimeException if the selector fails
+   */
+  private void runEventLoop(ServerSocketChannel serverChannel) throws RuntimeException {
+    try {
+      while (true) {
+        this.selector.select();
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          try {
+            if (key.isAcceptable()) {
+              accept(serverChannel);
+              continue;
+            }
+            if (key.isReadable()) {
+              read(key);
+            }
+            if (key.isValid() && key.isWritable()) {
+              ((Connection) key.attachment()).flush();
+            }
+          } catch (IOException | RuntimeException e) {
+            // a broken connection or a malformed frame only costs this connection
+            if (key.attachment() instanceof Connection connection) {
+              connection.close();
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("SelectorServer error: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Accepts a new connection and registers it for reading.
+   *
+   * @param serverChannel the channel accepting connections
+   * @throws IOException if the connection cannot be set up
+   */
+  private void accept(ServerSocketChannel serverChannel) throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (channel == null) {
+      return;
+    }
+
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+    key.attach(new Connection(channel, key));
+  }
+
+  /**
+   * Reads what has arrived on a connection and hands every complete request to a handler thread.
+   * A partial frame stays in the read buffer until the rest of it arrives.
+   *
+   * @param key the key of the connection
+   * @throws IOException if the connection breaks or sends an invalid frame
+   */
+  private void read(SelectionKey key) throws IOException {
+    Connection connection = (Connection) key.attachment();
+    if (connection.channel.read(connection.in) < 0) {
+      connection.close();
+      return;
+    }
+
+    ByteBuffer in = connection.in;
+    in.flip();
+    int needed = 0;
+    while (in.remaining() >= MessageCodec.LENGTH_SIZE) {
+      int length = in.getInt(in.position());
+      MessageCodec.checkFrameLength(length);
+      if (in.remaining() < MessageCodec.LENGTH_SIZE + length) {
+        needed = MessageCodec.LENGTH_SIZE + length;
+        break;
+      }
+
+      int end = in.position() + MessageCodec.LENGTH_SIZE + length;
+      int limit = in.limit();
+      in.position(in.position() + MessageCodec.LENGTH_SIZE).limit(end);
+      long requestId = in.getLong();
+      Message msg = MessageCodec.decode(in);
+      in.limit(limit).position(end);
+
+      this.requestHandlers.execute(() -> handle(connection, requestId, msg));
+    }
+    in.compact();
+
+    // make room for a frame larger than the buffer
+    if (needed > in.capacity()) {
+      in.flip();
+      connection.in = ByteBuffer.allocate(needed).put(in);
+    }
+  }
+
+  /**
+   * Handles a request on a handler thread, and sends its response once it is ready. The response
+   * is sent from a handler thread too, rather than from whichever thread completed it.
+   *
+   * @param connection the connection the request came in on
+   * @param requestId the ID of the request
+   * @param msg the request
+   */
+  private void handle(Connection connection, long requestId, Message msg) {
+    CompletableFuture<Message> response;
+    try {
+      response = this.handler.apply(msg);
+    } catch (RuntimeException e) {
+      response = CompletableFuture.failedFuture(e);
+    }
+
+    response.whenCompleteAsync((reply, error) -> {
+      if (error != null) {
+        // fail the peer's requests on this connection now rather than after their deadline
+        System.err.println("SelectorServer error: Unable to handle " +
+                msg.getType().getLabel() + ": " + error.getMessage());
+        connection.close();
+        return;
+      }
+      connection.send(requestId, reply);
+    }, this.requestHandlers);
+  }
+
+  /**
+   * A connection served by the selector, with its read buffer and the responses waiting to be
+   * written to it.
+   */
+  private class Connection {
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final Queue<ByteBuffer> out;
+    private ByteBuffer in;
+
+    /**
+     * Constructs a new Connection object.
+     *
+     * @param channel the channel of the connection
+     * @param key the key the channel is registered with
+     */
+    Connection(SocketChannel channel, SelectionKey key) {
+      this.channel = channel;
+      this.key = key;
+      this.out = new ArrayDeque<>();
+      this.in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    }
+
+    /**
+     * Queues a response and writes as much of the queue as the channel takes right away. Whatever
+     * is left is written by the selector thread once the channel can take more.
+     *
+     * @param requestId the ID of the request the response answers
+     * @param response the response
+     */
+    void send(long requestId, Message response) {
+      ByteBuffer buffer = SelectorServer.this.buffers.acquire(MessageCodec.frameSize(response));
+      MessageCodec.encode(requestId, response, buffer);
+      buffer.flip();
+
+      synchronized (this) {
+        this.out.add(buffer);
+        try {
+          flush();
+        } catch (IOException e) {
+          close();
+        }
+      }
+    }
+
+    /**
+     * Writes queued responses until the queue is empty or the channel cannot take more, and
+     * only asks the selector to wait for the channel to become writable in the latter case.
+     *
+     * @throws IOException if the channel cannot be written
+     */
+    synchronized void flush() throws IOException {
+      while (!this.out.isEmpty()) {
+        ByteBuffer buffer = this.out.peek();
+        this.channel.write(buffer);
+        if (buffer.hasRemaining()) {
+          if (!this.key.isValid()) {
+            throw new IOException("SelectorServer error: Connection closed");
+          }
+          this.key.interestOpsOr(SelectionKey.OP_WRITE);
+          SelectorServer.this.selector.wakeup();
+          return;
+        }
+        SelectorServer.this.buffers.release(this.out.poll());
+      }
+
+      if (this.key.isValid()) {
+        this.key.interestOpsAnd(~SelectionKey.OP_WRITE);
+      }
+    }
+
+    /**
+     * Closes the connection. Responses still queued are dropped, and the peer resends their
+     * requests on a new connection.
+     */
+    synchronized void close() {
+      this.key.cancel();
+      this.out.clear();
+      try {
+        this.channel.close();
+      } catch (IOException ignored) {
+        // the connection is being discarded anyway
+      }
+    }
+  }
+}
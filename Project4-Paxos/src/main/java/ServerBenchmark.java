@@ -0,0 +1,121 @@
+package main.java;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput benchmark of the two threading models of {@link MessageServer}. Each model is run
+ * with a handler that answers every Accept right away, and is loaded by a fixed set of client
+ * threads over an increasing number of open connections, with one request in flight on every
+ * connection. Every model and connection count runs in a fresh JVM, so threads left behind by one
+ * run do not slow down the next, and the request throughput and the number of threads the server
+ * started are printed for each.
+ */
+public class ServerBenchmark {
+  private static final int PORT = 7100;
+  private static final int CLIENT_THREADS = 8;
+  private static final long WARMUP_MS = 1000;
+  private static final long MEASURE_MS = 3000;
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args nothing to run every case, or a model and a connection count to run one case
+   * @throws Exception if a server cannot be reached
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length == 2) {
+      run(args[0], Integer.parseInt(args[1]));
+      System.exit(0);
+    }
+
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    for (int connections : new int[] {16, 256, 2048}) {
+      for (String model : new String[] {"thread", "nio"}) {
+        new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ServerBenchmark.class.getName(), model, String.valueOf(connections))
+                .inheritIO().start().waitFor();
+      }
+    }
+  }
+
+  /**
+   * Runs one model with one number of connections and prints its results.
+   *
+   * @param model the threading model of the server
+   * @param connectionCount the number of open connections
+   * @throws Exception if the server cannot be reached
+   */
+  private static void run(String model, int connectionCount) throws Exception {
+    ProcessInfo owner = new ProcessInfo(1, "localhost");
+    Message ack = new Message(MessageType.ACCEPT_ACK, 1, new Ballot(1, 1), 0, Message.NO_VALUE);
+    int threadsBefore = Thread.activeCount();
+    MessageServer.create(model, owner, PORT, msg -> ack).start();
+
+    List<SocketChannel> channels = new ArrayList<>();
+    for (int i = 0; i < connectionCount; i++) {
+      SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", PORT));
+      channel.socket().setTcpNoDelay(true);
+      channels.add(channel);
+    }
+
+    byte[] value = new Batch(List.of("X".getBytes(StandardCharsets.UTF_8))).encode();
+    Message accept = new Message(MessageType.ACCEPT, 2, new Ballot(1, 2), 0, value);
+    AtomicLong completed = new AtomicLong();
+
+    for (int t = 0; t < CLIENT_THREADS; t++) {
+      List<SocketChannel> own = new ArrayList<>();
+      for (int i = t; i < channels.size(); i += CLIENT_THREADS) {
+        own.add(channels.get(i));
+      }
+      Thread client = new Thread(() -> runClient(own, accept, completed));
+      client.setDaemon(true);
+      client.start();
+    }
+
+    Thread.sleep(WARMUP_MS);
+    long start = completed.get();
+    Thread.sleep(MEASURE_MS);
+    long requests = completed.get() - start;
+    int serverThreads = Thread.activeCount() - threadsBefore - CLIENT_THREADS;
+
+    System.out.printf("%-7s %5d connections %10.0f requests/s %6d server threads%n", model,
+            connectionCount, requests * 1000.0 / MEASURE_MS, serverThreads);
+  }
+
+  /**
+   * Sends a request on every one of its connections and then reads every response, over and over
+   * until the JVM exits.
+   *
+   * @param channels the connections of the client
+   * @param request the request to send
+   * @param completed the count of completed requests
+   */
+  private static void runClient(List<SocketChannel> channels, Message request,
+                                AtomicLong completed) {
+    BufferPool pool = new BufferPool(4096);
+    ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+    long requestId = 0;
+
+    try {
+      while (true) {
+        for (SocketChannel channel : channels) {
+          MessageCodec.writeFrame(channel, ++requestId, request, pool);
+        }
+        for (SocketChannel channel : channels) {
+          pool.release(MessageCodec.readFrame(channel, lengthBuffer, pool));
+        }
+        completed.addAndGet(channels.size());
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("ServerBenchmark error: " + e.getMessage());
+    }
+  }
+}
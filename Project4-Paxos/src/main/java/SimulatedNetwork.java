@@ -0,0 +1,435 @@
+package main.java;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-memory network that connects any number of processes hosted in one JVM, driven by a
+ * virtual clock. Every message sent is scheduled for delivery at a virtual time drawn from the
+ * profile of its link: a base latency, a random jitter on top, a chance of being lost and a chance
+ * of being held back so that later messages on the link overtake it. Links are otherwise FIFO,
+ * like the connections of {@link NetworkTransport}, and a process's link to itself is perfect. A
+ * lost request or response fails the request once the link's timeout has passed, the way a closed
+ * connection does. The randomness of every link comes from its own generator seeded by the
+ * network's seed and the link's ends, so the n-th message on a link meets the same fate in every
+ * run with the same seed, however the threads of the processes interleave.
+ *
+ * <p>A single thread runs the network, delivering messages in order of virtual time and handing
+ * each request to its handler on that thread. Before the clock moves forward, the network waits
+ * until every thread of the processes is idle, so the processes have reacted to everything
+ * delivered so far before anything later happens. Only the network's time is virtual: the timers
+ * of the processes themselves, such as the batcher's linger time, still run on real time, and
+ * the clock does not move while they wait.
+ */
+public class SimulatedNetwork {
+  private static final long SETTLE_PARK_NANOS = 20_000;
+  private static final int SETTLE_CHECKS = 3;
+  private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private final long seed;
+  private final Map<Long, Link> links;
+  private final Map<Long, LinkState> linkStates;
+  private final Map<Integer, SimulatedTransport> endpoints;
+  private final PriorityQueue<Event> events;
+  private final ThreadGroup processes;
+  private Link defaultLink;
+  private long now;
+  private long nextSequence;
+  private long delivered;
+  private long dropped;
+  private long reordered;
+
+  /**
+   * The profile of a directed link between two processes.
+   *
+   * @param latencyNanos the base one-way latency, in virtual nanoseconds
+   * @param jitterNanos the most random latency added to the base, in virtual nanoseconds
+   * @param loss the probability of a message being lost
+   * @param reorder the probability of a message being held back by up to three times the highest
+   *                latency of the link, letting later messages overtake it
+   * @param timeoutNanos how long a request waits for a lost message before it fails, in virtual
+   *                     nanoseconds
+   */
+  public record Link(long latencyNanos, long jitterNanos, double loss, double reorder,
+                     long timeoutNanos) {}
+
+  /**
+   * Constructs a new SimulatedNetwork object whose clock starts at zero.
+   *
+   * @param seed the seed of the randomness of every link
+   * @param defaultLink the profile of every link without one of its own
+   */
+  public SimulatedNetwork(long seed, Link defaultLink) {
+    this.seed = seed;
+    this.links = new HashMap<>();
+    this.linkStates = new HashMap<>();
+    this.endpoints = new HashMap<>();
+    this.events = new PriorityQueue<>();
+    this.processes = new ThreadGroup("simulated-processes");
+    this.defaultLink = defaultLink;
+    this.now = 0;
+    this.nextSequence = 0;
+    this.delivered = 0;
+    this.dropped = 0;
+    this.reordered = 0;
+  }
+
+  /**
+   * Creates the transport of a process on the network.
+   *
+   * @param owner the process the transport belongs to
+   * @return the transport
+   * @throws IllegalArgumentException if the process already has a transport on the network
+   */
+  public synchronized SimulatedTransport connect(ProcessInfo owner)
+          throws IllegalArgumentException {
+    SimulatedTransport transport = new SimulatedTransport(owner, this);
+    if (this.endpoints.putIfAbsent(owner.getId(), transport) != null) {
+      throw new IllegalArgumentException("SimulatedNetwork error: Process " + owner.getId() +
+              " is already connected");
+    }
+    return transport;
+  }
+
+  /**
+   * Sets the profile of every link without one of its own, e.g. to heal a partition.
+   *
+   * @param link the profile
+   */
+  public synchronized void setDefaultLink(Link link) {
+    this.defaultLink = link;
+  }
+
+  /**
+   * Sets the profile of the directed link from one process to another, e.g. a loss of 1 to cut
+   * it off.
+   *
+   * @param fromId the ID of the sending process
+   * @param toId the ID of the receiving process
+   * @param link the profile
+   */
+  public synchronized void setLink(int fromId, int toId, Link link) {
+    this.links.put(linkKey(fromId, toId), link);
+  }
+
+  /**
+   * Starts a thread of the processes, which the network waits on before moving its clock.
+   * Threads started by this thread are waited on too.
+   *
+   * @param name the name of the thread
+   * @param task what the thread runs
+   * @return the thread
+   */
+  public Thread startThread(String name, Runnable task) {
+    Thread thread = new Thread(this.processes, task, name);
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Gets the current virtual time.
+   *
+   * @return the virtual time, in nanoseconds since the network was created
+   */
+  public synchronized long now() {
+    return this.now;
+  }
+
+  /**
+   * Gets the number of messages delivered so far.
+   *
+   * @return the number of messages delivered
+   */
+  public synchronized long getDelivered() {
+    return this.delivered;
+  }
+
+  /**
+   * Gets the number of messages lost so far.
+   *
+   * @return the number of messages lost
+   */
+  public synchronized long getDropped() {
+    return this.dropped;
+  }
+
+  /**
+   * Gets the number of messages held back so far.
+   *
+   * @return the number of messages held back
+   */
+  public synchronized long getReordered() {
+    return this.reordered;
+  }
+
+  /**
+   * Runs the network until its clock reaches the given virtual time, or until nothing has
+   * happened for a while. The calling thread waits for the network's own thread meanwhile.
+   *
+   * @param endNanos the virtual time to stop at
+   * @return true if the clock reached the given time, or false if the processes fell silent
+   */
+  public boolean runUntil(long endNanos) {
+    // the network's own thread runs the handlers, so threads they start must be waited on too
+    boolean[] reached = new boolean[1];
+    Thread runner = new Thread(this.processes, () -> reached[0] = loop(endNanos),
+            "simulated-network");
+    runner.start();
+    try {
+      runner.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("SimulatedNetwork error: Thread interrupted");
+    }
+    return reached[0];
+  }
+
+  /**
+   * Delivers messages in order of virtual time until the clock reaches the given time.
+   *
+   * @param endNanos the virtual time to stop at
+   * @return true if the clock reached the given time, or false if the processes fell silent
+   */
+  private boolean loop(long endNanos) {
+    long idleSince = System.nanoTime();
+    while (true) {
+      Event event;
+      synchronized (this) {
+        event = this.events.peek();
+        if (event != null && event.time() <= this.now) {
+          this.events.poll();
+        } else {
+          event = null;
+        }
+      }
+
+      if (event == null) {
+        // let the processes react to everything so far before the clock moves on
+        settle();
+        synchronized (this) {
+          event = this.events.peek();
+          if (event == null) {
+            if (System.nanoTime() - idleSince > IDLE_TIMEOUT_NANOS) {
+              return false;
+            }
+          } else if (event.time() > endNanos) {
+            this.now = endNanos;
+            return true;
+          } else {
+            this.now = event.time();
+          }
+        }
+        if (event == null) {
+          LockSupport.parkNanos(SETTLE_PARK_NANOS);
+        }
+        continue;
+      }
+
+      idleSince = System.nanoTime();
+      event.action().run();
+    }
+  }
+
+  /**
+   * Waits until no thread of the processes but the calling one is running. A thread counts as
+   * idle while it is blocked, waiting or sleeping, and the check is repeated a few times, since a
+   * thread that has just been woken may not be running yet.
+   */
+  private void settle() {
+    int idleChecks = 0;
+    while (idleChecks < SETTLE_CHECKS) {
+      idleChecks = anyRunning() ? 0 : idleChecks + 1;
+      LockSupport.parkNanos(SETTLE_PARK_NANOS);
+    }
+  }
+
+  /**
+   * Checks whether any thread of the processes but the calling one is running.
+   *
+   * @return true if a thread is running else false
+   */
+  private boolean anyRunning() {
+    Thread[] threads = new Thread[this.processes.activeCount() * 2 + 16];
+    int count = this.processes.enumerate(threads);
+    for (int i = 0; i < count; i++) {
+      if (threads[i] != Thread.currentThread()
+              && threads[i].getState() == Thread.State.RUNNABLE) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Sends a request from one process to another, and delivers the response back once the
+   * request has been handled.
+   *
+   * @param fromId the ID of the sending process
+   * @param toId the ID of the receiving process
+   * @param request the request
+   * @return the future of the response
+   */
+  synchronized CompletableFuture<Message> send(int fromId, int toId, Message request) {
+    CompletableFuture<Message> response = new CompletableFuture<>();
+    SimulatedTransport target = this.endpoints.get(toId);
+    long arrival = transit(fromId, toId);
+    if (target == null || arrival < 0) {
+      fail(link(fromId, toId), toId, response);
+      return response;
+    }
+
+    schedule(arrival, () -> {
+      Message reply;
+      try {
+        reply = target.dispatch(request);
+      } catch (RuntimeException e) {
+        synchronized (this) {
+          schedule(this.now + link(toId, fromId).latencyNanos(),
+                  () -> response.completeExceptionally(e));
+        }
+        return;
+      }
+
+      synchronized (this) {
+        this.delivered++;
+        long back = transit(toId, fromId);
+        if (back < 0) {
+          fail(link(toId, fromId), toId, response);
+        } else {
+          schedule(back, () -> {
+            synchronized (this) {
+              this.delivered++;
+            }
+            response.complete(reply);
+          });
+        }
+      }
+    });
+    return response;
+  }
+
+  /**
+   * Fails a request whose request or response was lost, once the timeout of the link the message
+   * was lost on has passed.
+   *
+   * @param link the profile of the link the message was lost on
+   * @param peerId the ID of the process the request was sent to
+   * @param response the future of the response
+   */
+  private void fail(Link link, int peerId, CompletableFuture<Message> response) {
+    this.dropped++;
+    schedule(this.now + link.timeoutNanos(), () -> response.completeExceptionally(
+            new IOException("SimulatedNetwork error: No response from process " + peerId)));
+  }
+
+  /**
+   * Draws the fate of the next message on a link.
+   *
+   * @param fromId the ID of the sending process
+   * @param toId the ID of the receiving process
+   * @return the virtual time the message arrives at, or -1 if it is lost
+   */
+  private long transit(int fromId, int toId) {
+    // a process reaches itself over localhost, which neither delays nor loses anything
+    if (fromId == toId) {
+      return this.now;
+    }
+
+    Link link = link(fromId, toId);
+    LinkState state = this.linkStates.computeIfAbsent(linkKey(fromId, toId),
+            key -> new LinkState(new Random(this.seed * 31 + key)));
+
+    // every message draws the same numbers, so one message's fate never shifts the next one's
+    double lossDraw = state.random.nextDouble();
+    double reorderDraw = state.random.nextDouble();
+    long jitter = (long) (state.random.nextDouble() * link.jitterNanos());
+    long holdBack = (long) (state.random.nextDouble() * 3 * (link.latencyNanos()
+            + link.jitterNanos()));
+    if (lossDraw < link.loss()) {
+      return -1;
+    }
+
+    long arrival = this.now + link.latencyNanos() + jitter;
+    if (reorderDraw < link.reorder()) {
+      this.reordered++;
+      return arrival + holdBack;
+    }
+    arrival = Math.max(arrival, state.lastArrival);
+    state.lastArrival = arrival;
+    return arrival;
+  }
+
+  /**
+   * Gets the profile of a directed link.
+   *
+   * @param fromId the ID of the sending process
+   * @param toId the ID of the receiving process
+   * @return the profile
+   */
+  private Link link(int fromId, int toId) {
+    return this.links.getOrDefault(linkKey(fromId, toId), this.defaultLink);
+  }
+
+  /**
+   * Schedules an action at a virtual time. Actions at the same time run in the order they were
+   * scheduled.
+   *
+   * @param time the virtual time
+   * @param action the action
+   */
+  private void schedule(long time, Runnable action) {
+    this.events.add(new Event(time, this.nextSequence++, action));
+  }
+
+  /**
+   * Gets the key of a directed link.
+   *
+   * @param fromId the ID of the sending process
+   * @param toId the ID of the receiving process
+   * @return the key
+   */
+  private static long linkKey(int fromId, int toId) {
+    return ((long) fromId << 32) | (toId & 0xffffffffL);
+  }
+
+  /**
+   * An action scheduled at a virtual time.
+   *
+   * @param time the virtual time
+   * @param sequence the order the action was scheduled in
+   * @param action the action
+   */
+  private record Event(long time, long sequence, Runnable action) implements Comparable<Event> {
+    @Override
+    public int compareTo(Event other) {
+      int order = Long.compare(this.time, other.time);
+      return order != 0 ? order : Long.compare(this.sequence, other.sequence);
+    }
+  }
+
+  /**
+   * The random generator of a link and the latest arrival of a message on it that was not held
+   * back, which keeps the link FIFO.
+   */
+  private static final class LinkState {
+    private final Random random;
+    private long lastArrival;
+
+    /**
+     * Constructs a new LinkState object.
+     *
+     * @param random the random generator of the link
+     */
+    private LinkState(Random random) {
+      this.random = random;
+      this.lastArrival = 0;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package main.java;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * The {@link Transport} of a process on a {@link SimulatedNetwork}. Messages are passed on as
+ * objects rather than encoded, and each request is handled on the network's own thread at the
+ * virtual time it arrives.
+ */
+public class SimulatedTransport implements Transport {
+  private final ProcessInfo owner;
+  private final SimulatedNetwork network;
+  private final GroupDispatcher dispatcher;
+
+  /**
+   * Constructs a new SimulatedTransport object. Use {@link SimulatedNetwork#connect(ProcessInfo)}
+   * to create one.
+   *
+   * @param owner the process the transport belongs to
+   * @param network the network the transport is on
+   */
+  SimulatedTransport(ProcessInfo owner, SimulatedNetwork network) {
+    this.owner = owner;
+    this.network = network;
+    this.dispatcher = new GroupDispatcher();
+  }
+
+  @Override
+  public void register(int groupId, Function<Message, Message> handler)
+          throws IllegalArgumentException {
+    this.dispatcher.register(groupId, handler);
+  }
+
+  /**
+   * Does nothing, since the network delivers requests as soon as the transport is created.
+   */
+  @Override
+  public void start() {
+  }
+
+  /**
+   * Sends a message of a group to a peer over the simulated network.
+   *
+   * @param groupId the ID of the group the message belongs to
+   * @param peer the peer to send the message to
+   * @param msg the message to send
+   * @return the future of the peer's response, failed if the request or response is lost
+   */
+  @Override
+  public CompletableFuture<Message> send(int groupId, ProcessInfo peer, Message msg) {
+    return this.network.send(this.owner.getId(), peer.getId(), msg.withGroup(groupId));
+  }
+
+  /**
+   * Hands a request that has arrived to the handler of its group.
+   *
+   * @param msg the request
+   * @return the response
+   * @throws RuntimeException if the process does not take part in the request's group
+   */
+  Message dispatch(Message msg) throws RuntimeException {
+    return this.dispatcher.dispatch(msg);
+  }
+}
@@ -0,0 +1,220 @@
+package main.java;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs a whole Paxos cluster in one JVM on a {@link SimulatedNetwork}, so clusters of any size
+ * can be measured without a container per process, and a run can be repeated with the same
+ * seed. The cluster has a proposer serving the key-value store, a learner, and every other
+ * process as an acceptor. Client threads send PUTs to the proposer one at a time for the given
+ * virtual duration, after a tenth of it as warmup, and the throughput and latencies are printed
+ * in virtual time along with what became of the messages.
+ */
+public class Simulation {
+  /**
+   * Runs the simulation.
+   *
+   * @param args the settings of the simulation, see the README
+   * @throws IOException if the data directory cannot be created or removed
+   */
+  public static void main(String[] args) throws IOException {
+    int nodes = 5;
+    long seed = 1;
+    double latencyMs = 1;
+    double jitterMs = 0;
+    double loss = 0;
+    double reorder = 0;
+    double timeoutMs = 3000;
+    int clients = 16;
+    double seconds = 10;
+    Config config = new Config();
+    config.setLogLevel("off");
+
+    // a lingering batcher waits in real time while the clock moves on, so it does not by default
+    config.setLingerMs(0);
+    String parentDir = System.getProperty("java.io.tmpdir");
+
+    // Parse command line arguments
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "-n" -> nodes = Integer.parseInt(argValue(args, ++i, "node count"));
+        case "-seed" -> seed = Long.parseLong(argValue(args, ++i, "seed"));
+        case "-latency" -> latencyMs = Double.parseDouble(argValue(args, ++i, "latency"));
+        case "-jitter" -> jitterMs = Double.parseDouble(argValue(args, ++i, "jitter"));
+        case "-loss" -> loss = Double.parseDouble(argValue(args, ++i, "loss"));
+        case "-reorder" -> reorder = Double.parseDouble(argValue(args, ++i, "reordering"));
+        case "-timeout" -> timeoutMs = Double.parseDouble(argValue(args, ++i, "timeout"));
+        case "-clients" -> clients = Integer.parseInt(argValue(args, ++i, "client count"));
+        case "-duration" -> seconds = Double.parseDouble(argValue(args, ++i, "duration"));
+        case "-d" -> parentDir = argValue(args, ++i, "data directory");
+        case "-b" -> config.setBatchSize(Integer.parseInt(argValue(args, ++i, "batch size")));
+        case "-l" -> config.setLingerMs(Long.parseLong(argValue(args, ++i, "linger time")));
+        case "-w" -> config.setWindow(Integer.parseInt(argValue(args, ++i, "window")));
+        case "-loglevel" -> config.setLogLevel(argValue(args, ++i, "log level"));
+        default -> throw new IllegalArgumentException("Simulation error: Invalid argument " +
+                args[i]);
+      }
+    }
+    if (nodes < 3) {
+      throw new IllegalArgumentException("Simulation error: A cluster needs at least 3 nodes");
+    }
+
+    Path dataDir = Files.createTempDirectory(Paths.get(parentDir), "simulation");
+    try {
+      config.setDataDir(dataDir.toString());
+      config.setHostsfile(writeHostsfile(dataDir, nodes).toString());
+      config.setKvStore("heap");
+      config.setDelay(0);
+      EventLog.configure(config);
+
+      SimulatedNetwork network = new SimulatedNetwork(seed, new SimulatedNetwork.Link(
+              nanos(latencyMs), nanos(jitterMs), loss, reorder, nanos(timeoutMs)));
+      System.out.printf("seed %d, %d nodes (1 proposer, %d acceptors, 1 learner), %d clients%n",
+              seed, nodes, nodes - 2, clients);
+      System.out.printf("latency %.1f ms, jitter %.1f ms, loss %.3f, reorder %.3f%n", latencyMs,
+              jitterMs, loss, reorder);
+      run(network, config, nodes, clients, nanos(seconds * 1000));
+    } finally {
+      try (Stream<Path> paths = Files.walk(dataDir)) {
+        for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+          Files.deleteIfExists(path);
+        }
+      }
+    }
+    System.exit(0);
+  }
+
+  /**
+   * Builds the cluster, runs the clients against it and prints the results.
+   *
+   * @param network the network of the cluster
+   * @param config the settings of every process
+   * @param nodes the number of processes
+   * @param clients the number of client threads
+   * @param durationNanos how long to measure for, in virtual nanoseconds
+   */
+  private static void run(SimulatedNetwork network, Config config, int nodes, int clients,
+                          long durationNanos) {
+    Proposer proposer = new Proposer(1, "peer1", config, 0,
+            network.connect(new ProcessInfo(1, "peer1")));
+    for (int id = 2; id < nodes; id++) {
+      new Acceptor(id, "peer" + id, config, 0,
+              network.connect(new ProcessInfo(id, "peer" + id))).start();
+    }
+    new Learner(nodes, "peer" + nodes, config, 0,
+            network.connect(new ProcessInfo(nodes, "peer" + nodes))).start();
+    network.startThread("proposer", proposer::start);
+
+    List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+    boolean[] measuring = new boolean[1];
+    for (int c = 0; c < clients; c++) {
+      long clientId = c + 1;
+      network.startThread("client-" + clientId, () -> {
+        for (long sequence = 1; ; sequence++) {
+          KvCommand command = new KvCommand(KvCommand.PUT, clientId, sequence, "key-" + clientId,
+                  ("value-" + sequence).getBytes(StandardCharsets.UTF_8), null);
+          long sendTime = network.now();
+          proposer.submit(command, command.encode()).join();
+          synchronized (latencies) {
+            if (measuring[0]) {
+              latencies.add(network.now() - sendTime);
+            }
+          }
+        }
+      });
+    }
+
+    long start = System.nanoTime();
+    boolean reached = network.runUntil(durationNanos / 10);
+    synchronized (latencies) {
+      measuring[0] = true;
+    }
+    long measureStart = network.now();
+    reached = reached && network.runUntil(measureStart + durationNanos);
+    List<Long> measured;
+    synchronized (latencies) {
+      measuring[0] = false;
+      measured = new ArrayList<>(latencies);
+    }
+    if (!reached) {
+      System.out.println("the cluster fell silent at " + network.now() / 1_000_000 +
+              " virtual ms");
+    }
+
+    double virtualSeconds = (network.now() - measureStart) / 1e9;
+    Collections.sort(measured);
+    System.out.printf("%d PUTs decided in %.1f virtual s: %.0f PUTs/s, p50 %.2f ms, p99 %.2f ms%n",
+            measured.size(), virtualSeconds, measured.size() / virtualSeconds,
+            percentile(measured, 50) / 1e6, percentile(measured, 99) / 1e6);
+    System.out.printf("messages %d delivered, %d lost, %d held back; ran in %.1f s real time%n",
+            network.getDelivered(), network.getDropped(), network.getReordered(),
+            (System.nanoTime() - start) / 1e9);
+  }
+
+  /**
+   * Writes the hostsfile of the cluster: peer1 is the proposer, the last peer the learner, and
+   * every peer in between an acceptor.
+   *
+   * @param dataDir the directory to write the hostsfile into
+   * @param nodes the number of processes
+   * @return the path to the hostsfile
+   * @throws IOException if the hostsfile cannot be written
+   */
+  private static Path writeHostsfile(Path dataDir, int nodes) throws IOException {
+    StringBuilder hosts = new StringBuilder("peer1:proposer1\n");
+    for (int id = 2; id < nodes; id++) {
+      hosts.append("peer").append(id).append(":acceptor1\n");
+    }
+    hosts.append("peer").append(nodes).append(":learner1\n");
+    return Files.writeString(dataDir.resolve("hostsfile.txt"), hosts);
+  }
+
+  /**
+   * Gets a percentile of sorted latencies.
+   *
+   * @param sorted the latencies in ascending order
+   * @param percentile the percentile
+   * @return the latency, or 0 if there are none
+   */
+  private static long percentile(List<Long> sorted, int percentile) {
+    return sorted.isEmpty() ? 0 : sorted.get(Math.min(sorted.size() - 1,
+            sorted.size() * percentile / 100));
+  }
+
+  /**
+   * Converts milliseconds to nanoseconds.
+   *
+   * @param ms the milliseconds
+   * @return the nanoseconds
+   */
+  private static long nanos(double ms) {
+    return (long) (ms * TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  /**
+   * Gets the value of an argument, which follows its flag.
+   *
+   * @param args the command line arguments
+   * @param i the index of the value
+   * @param name the name of the argument
+   * @return the value
+   * @throws IllegalArgumentException if the value is missing
+   */
+  private static String argValue(String[] args, int i, String name)
+          throws IllegalArgumentException {
+    if (i >= args.length) {
+      throw new IllegalArgumentException("Simulation error: Missing " + name + " argument");
+    }
+    return args[i];
+  }
+}
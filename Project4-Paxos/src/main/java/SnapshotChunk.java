@@ -0,0 +1,88 @@
+package main.java;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A piece of a snapshot as it is streamed between processes, carried in the value of a
+ * {@link MessageType#SNAPSHOT} message. A snapshot is sent as a sequence of chunks of at most
+ * {@link #MAX_DATA_SIZE} bytes, each naming its offset in the snapshot, so neither side has to
+ * hold a whole snapshot in memory. A {@link MessageType#SNAPSHOT_REQUEST} carries an empty chunk
+ * naming the offset to read from.
+ */
+public final class SnapshotChunk {
+  public static final int MAX_DATA_SIZE = 64 * 1024;
+
+  private final long offset;
+  private final boolean last;
+  private final byte[] data;
+
+  /**
+   * Constructs a new SnapshotChunk object.
+   *
+   * @param offset the offset of the chunk in the snapshot
+   * @param last true if the chunk ends the snapshot else false
+   * @param data the bytes of the snapshot at the offset
+   */
+  public SnapshotChunk(long offset, boolean last, byte[] data) {
+    this.offset = offset;
+    this.last = last;
+    this.data = data;
+  }
+
+  /**
+   * Gets the offset of the chunk in the snapshot.
+   *
+   * @return the offset
+   */
+  public long getOffset() {
+    return this.offset;
+  }
+
+  /**
+   * Checks whether the chunk ends the snapshot.
+   *
+   * @return true if the chunk ends the snapshot else false
+   */
+  public boolean isLast() {
+    return this.last;
+  }
+
+  /**
+   * Gets the bytes of the snapshot carried by the chunk.
+   *
+   * @return the bytes
+   */
+  public byte[] getData() {
+    return this.data;
+  }
+
+  /**
+   * Encodes the chunk into the value of a message.
+   *
+   * @return the encoded chunk
+   */
+  public byte[] encode() {
+    return ByteBuffer.allocate(8 + 1 + this.data.length).putLong(this.offset)
+            .put((byte) (this.last ? 1 : 0)).put(this.data).array();
+  }
+
+  /**
+   * Decodes the value of a message into a chunk.
+   *
+   * @param encoded the encoded chunk
+   * @return the chunk
+   * @throws IllegalArgumentException if the value is too short to be a chunk
+   */
+  public static SnapshotChunk decode(byte[] encoded) throws IllegalArgumentException {
+    if (encoded.length < 8 + 1) {
+      throw new IllegalArgumentException("SnapshotChunk error: Truncated chunk");
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(encoded);
+    long offset = buffer.getLong();
+    boolean last = buffer.get() != 0;
+    byte[] data = new byte[buffer.remaining()];
+    buffer.get(data);
+    return new SnapshotChunk(offset, last, data);
+  }
+}
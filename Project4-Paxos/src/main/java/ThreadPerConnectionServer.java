@@ -0,0 +1,129 @@
+package main.java;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * A {@link MessageServer} that starts a thread for every connection, which blocks reading
+ * requests off it. Every request is then handled on a thread of its own, so a slow request does
+ * not hold up the ones behind it.
+ */
+public class ThreadPerConnectionServer implements MessageServer {
+  private final int port;
+  private final Function<Message, CompletableFuture<Message>> handler;
+  private final ExecutorService requestHandlers;
+  private final BufferPool buffers;
+
+  /**
+   * Constructs a new ThreadPerConnectionServer object. The server does not listen until it is
+   * started.
+   *
+   * @param port the port to listen on
+   * @param handler handles a request and returns the future of its response
+   */
+  public ThreadPerConnectionServer(int port,
+                                   Function<Message, CompletableFuture<Message>> handler) {
+    this.port = port;
+    this.handler = handler;
+    this.requestHandlers = Executors.newCachedThreadPool();
+    this.buffers = new BufferPool(4096);
+  }
+
+  @Override
+  public void start() {
+    ServerSocketChannel serverChannel;
+    try {
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.bind(new InetSocketAddress(this.port));
+    } catch (IOException e) {
+      throw new RuntimeException("ThreadPerConnectionServer error: " + e.getMessage());
+    }
+
+    new Thread(() -> {
+      try (serverChannel) {
+        while (true) {
+          SocketChannel peerChannel = serverChannel.accept();
+          new Thread(() -> handleConnection(peerChannel)).start();
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("ThreadPerConnectionServer error: " + e.getMessage());
+      }
+    }).start();
+  }
+
+  /**
+   * Handle each connection with a peer. Requests are read off the connection until the peer
+   * closes it, or until the connection breaks or carries a malformed frame, which closes it.
+   *
+   * @param peerChannel the channel of the peer
+   */
+  private void handleConnection(SocketChannel peerChannel) {
+    ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+
+    try (peerChannel) {
+      peerChannel.socket().setTcpNoDelay(true);
+      while (true) {
+        ByteBuffer frame = MessageCodec.readFrame(peerChannel, lengthBuffer, this.buffers);
+        long requestId = frame.getLong();
+        Message msg = MessageCodec.decode(frame);
+        this.buffers.release(frame);
+
+        this.requestHandlers.execute(() -> handle(peerChannel, requestId, msg));
+      }
+    } catch (EOFException | ClosedChannelException e) {
+      // the peer closed the connection, or a request it sent could not be handled
+    } catch (IOException e) {
+      // a broken connection or a malformed frame only costs this connection
+      System.err.println("ThreadPerConnectionServer error: Dropping connection: " +
+              e.getMessage());
+    }
+  }
+
+  /**
+   * Handles a request on a thread of its own, and writes its response once it is ready. The
+   * response is written from a handler thread too, rather than from whichever thread completed it,
+   * since the write blocks until the peer takes it.
+   *
+   * @param peerChannel the channel of the peer
+   * @param requestId the ID of the request
+   * @param msg the request
+   */
+  private void handle(SocketChannel peerChannel, long requestId, Message msg) {
+    CompletableFuture<Message> response;
+    try {
+      response = this.handler.apply(msg);
+    } catch (RuntimeException e) {
+      response = CompletableFuture.failedFuture(e);
+    }
+
+    response.whenCompleteAsync((reply, error) -> {
+      if (error != null) {
+        // fail the peer's requests on this connection now rather than after their deadline
+        System.err.println("ThreadPerConnectionServer error: Unable to handle " +
+                msg.getType().getLabel() + ": " + error.getMessage());
+        try {
+          peerChannel.close();
+        } catch (IOException ignored) {
+          // the connection is being discarded anyway
+        }
+        return;
+      }
+      synchronized (peerChannel) {
+        try {
+          MessageCodec.writeFrame(peerChannel, requestId, reply, this.buffers);
+        } catch (IOException ignored) {
+          // the peer is gone and will resend on a new connection
+        }
+      }
+    }, this.requestHandlers);
+  }
+}
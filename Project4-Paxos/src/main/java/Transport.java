@@ -0,0 +1,37 @@
+package main.java;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * The layer every process sends and receives its messages through, shared by every Paxos group
+ * the process takes part in. Requests a process receives are handed to the handler registered for
+ * their group, and every message sent gets a future of the peer's response. The processes run
+ * the same over the network ({@link NetworkTransport}), between processes hosted in the same JVM
+ * ({@link LoopbackTransport}), or over a simulated network ({@link SimulatedTransport}).
+ */
+public interface Transport {
+  /**
+   * Registers the handler of the requests of a group.
+   *
+   * @param groupId the ID of the group
+   * @param handler handles a request of the group and returns its response
+   * @throws IllegalArgumentException if the group already has a handler
+   */
+  void register(int groupId, Function<Message, Message> handler) throws IllegalArgumentException;
+
+  /**
+   * Starts receiving requests, unless the transport has been started already.
+   */
+  void start();
+
+  /**
+   * Sends a message of a group to a peer.
+   *
+   * @param groupId the ID of the group the message belongs to
+   * @param peer the peer to send the message to
+   * @param msg the message to send
+   * @return the future of the peer's response
+   */
+  CompletableFuture<Message> send(int groupId, ProcessInfo peer, Message msg);
+}
@@ -1,66 +1,146 @@
 package main.java;
 
+import java.util.Map;
+
 /**
  * Utility class to make life easier.
  */
 class Util {
   protected static final int PORT = 7000; // universal port number
+  protected static final int KV_PORT = 8000; // port of the key-value service of a proposer
+
+  /**
+   * Gets the name the files of a process are kept under for one of its Paxos groups. Group 0
+   * keeps the plain hostname, so a process in a single group keeps the same files as before.
+   *
+   * @param name the hostname of the process
+   * @param groupId the ID of the group
+   * @return the name of the group's files
+   */
+  protected static String groupFileName(String name, int groupId) {
+    return groupId == 0 ? name : name + ".g" + groupId;
+  }
+
+  /**
+   * Gets the ID of a process from its hostname, which is the number the hostname ends with (e.g.
+   * 12 for "peer12").
+   *
+   * @param name the hostname of the process
+   * @return the ID of the process, or -1 if the hostname does not end with a number
+   */
+  protected static int peerId(String name) {
+    int start = name.length();
+    while (start > 0 && Character.isDigit(name.charAt(start - 1))) {
+      start--;
+    }
+    return start == name.length() ? -1 : Integer.parseInt(name.substring(start));
+  }
 
   /**
-   * Prepare a message in a specific format regarding the information passed in.
+   * Prepare a message in a specific format regarding the information passed in. This format is
+   * only used for the log output, messages are sent over the network with {@link MessageCodec}.
    *
    * @param senderId the ID of the process who sent the message
-   * @param action the action of the message ("sent"/"received"/"chose")
-   * @param messageType the type of message ("prepare"/"prepare_ack"/"accept"/"accept_ack"/"chose")
-   * @param messageValue the value of the message ("X"/"Y")
+   * @param action the action of the message ("sent"/"received"/"chose"/"learned")
+   * @param messageType the type of message ("prepare"/"prepare_ack"/"accept"/"accept_ack"/"chose"/
+   *                    "learned")
+   * @param messageValue the value of the message ("X"/"X,Y")
    * @param proposalNum the proposal number
+   * @param slot the log slot the message refers to
    * @return the message in a string format
    */
   protected static String prepareMsg(int senderId, String action, String messageType,
-                                     String messageValue, double proposalNum) {
+                                     String messageValue, Ballot proposalNum, int slot) {
     return "{\"peer_id\":" + senderId + ", \"action\":\"" + action +
             "\", \"message_type\":\"" + messageType + "\", \"message_value\":\"" + messageValue +
-            "\", proposal_number\":" + proposalNum + "}";
+            "\", \"proposal_number\":" + proposalNum + ", \"slot\":" + slot + "}";
   }
 
   /**
-   * Unpacks a string message and separates the components into an array of strings.
+   * Prepare the quorum a proposer's broadcast has reached in a specific format for the log output,
+   * in the manner of {@link #prepareMsg(int, String, String, String, Ballot, int)}.
    *
-   * @param msg the string message
-   * @return key components of the string message
+   * @param proposerId the ID of the proposer
+   * @param phase the name of the phase the broadcast belongs to
+   * @param latencyNanos the time the quorum took, in nanoseconds
+   * @return the quorum in a string format
    */
-  protected static String[] unpackMsg(String msg) {
-    String[] parts = msg.substring(1, msg.length() - 1).split(", ");
-    String[] unpackedMsg = new String[parts.length];
+  protected static String prepareQuorum(int proposerId, String phase, long latencyNanos) {
+    return "{\"peer_id\":" + proposerId + ", \"action\":\"reached\", \"quorum\":\"" + phase +
+            "\", \"latency_us\":" + latencyNanos / 1000 + "}";
+  }
 
-    for (int i = 0; i < parts.length; i++) {
-      String value = parts[i].split(":")[1];
-      if (value.startsWith("\"")) {
-        value = value.substring(1, value.length() - 1);
-      }
-      unpackedMsg[i] = value;
-    }
+  /**
+   * Prepare the progress a process reports in a specific format for the log output, in the manner
+   * of {@link #prepareMsg(int, String, String, String, Ballot, int)}.
+   *
+   * @param peerId the ID of the process
+   * @param action the action the process reports ("decided"/"committed"/"executed"/...)
+   * @param detail the description of the progress
+   * @return the progress in a string format
+   */
+  protected static String prepareProgress(int peerId, String action, String detail) {
+    return "{\"peer_id\":" + peerId + ", \"action\":\"" + action + "\", \"detail\":\"" + detail +
+            "\"}";
+  }
 
-    return unpackedMsg;
+  /**
+   * Prepare a message in a specific format for the log output. The value of a Prepare
+   * Acknowledgement or a Read Acknowledgement is shown as the entries it carries, and the value of
+   * a snapshot message as its size, since it carries a piece of a snapshot rather than a batch. The
+   * value of an EPaxos instance message is shown with the instance's attributes.
+   *
+   * @param msg the message
+   * @param action the action of the message ("sent"/"received")
+   * @return the message in a string format
+   */
+  protected static String prepareMsg(Message msg, String action) {
+    boolean hasEntries = msg.getType() == MessageType.PREPARE_ACK
+            || msg.getType() == MessageType.READ_ACK;
+    boolean isSnapshot = msg.getType() == MessageType.SNAPSHOT
+            || msg.getType() == MessageType.SNAPSHOT_ACK
+            || msg.getType() == MessageType.SNAPSHOT_REQUEST;
+    boolean isInstance = msg.getType().getCode() >= MessageType.PRE_ACCEPT.getCode()
+            && msg.getType().getCode() <= MessageType.INSTANCE_COMMIT.getCode();
+    String value = hasEntries ? formatEntries(msg.getEntries())
+            : isSnapshot ? msg.getValue().length + " bytes"
+            : isInstance ? EpaxosInstance.decode(msg.getValue()).toString()
+            : formatValue(msg.getValue());
+    return prepareMsg(msg.getSenderId(), action, msg.getType().getLabel(), value,
+            msg.getBallot(), msg.getSlot());
   }
 
   /**
-   * Converts a character type into a string type.
+   * Formats the accepted proposals of several log slots for the log output, in the form
+   * "slot=proposal/value;slot=proposal/value".
    *
-   * @param c the character to convert to a string
-   * @return the string version of the character
+   * @param entries the accepted proposal and value of each slot
+   * @return the formatted entries, or "n/a" if there are none
    */
-  protected static String charToStr(char c) {
-    return (c == '\u0000') ? "n/a" : c + "";
+  protected static String formatEntries(Map<Integer, ProposalValuePair> entries) {
+    if (entries.isEmpty()) {
+      return "n/a";
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<Integer, ProposalValuePair> entry : entries.entrySet()) {
+      if (!sb.isEmpty()) {
+        sb.append(';');
+      }
+      sb.append(entry.getKey()).append('=').append(entry.getValue().getProposalNum())
+              .append('/').append(formatValue(entry.getValue().getValue()));
+    }
+
+    return sb.toString();
   }
 
   /**
-   * Converts a string type into a character type.
+   * Formats the value of a log slot for the log output, as the commands of its batch.
    *
-   * @param s the string to convert to a character
-   * @return the character version of the string
+   * @param value the encoded batch
+   * @return the commands separated by commas, or "n/a" if there are none
    */
-  protected static char strToChar(String s) {
-    return (s.equals("n/a")) ? '\u0000' : s.charAt(0);
+  protected static String formatValue(byte[] value) {
+    return Batch.decode(value).toString();
   }
 }
@@ -0,0 +1,77 @@
+package main.java;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Throughput benchmark of the write-ahead log. Several threads each append and sync records the
+ * way the acceptor does for every request, first with an fsync per request and then with group
+ * commit, and the throughput and number of fsyncs of both are printed.
+ */
+public class WalBenchmark {
+  /**
+   * Runs the benchmark.
+   *
+   * @param args optionally the number of threads and the number of requests per thread
+   * @throws IOException if the temporary log files cannot be created or removed
+   */
+  public static void main(String[] args) throws IOException {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+    int requests = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+    byte[] value = new Batch(List.of("X".getBytes(StandardCharsets.UTF_8))).encode();
+
+    System.out.println("threads=" + threads + ", requests per thread=" + requests);
+    run("fsync-per-request", false, threads, requests, value);
+    run("group-commit", true, threads, requests, value);
+  }
+
+  /**
+   * Runs one configuration of the benchmark and prints its results.
+   *
+   * @param label the name of the configuration
+   * @param groupCommit whether the log uses group commit
+   * @param threads the number of concurrent threads
+   * @param requests the number of requests per thread
+   * @param value the value accepted by every request
+   * @throws IOException if the temporary log file cannot be created or removed
+   */
+  private static void run(String label, boolean groupCommit, int threads, int requests,
+                          byte[] value) throws IOException {
+    Path path = Files.createTempFile("wal-benchmark", ".wal");
+
+    try (WriteAheadLog wal = new WriteAheadLog(path, groupCommit)) {
+      List<Thread> workers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int slotBase = t * requests;
+        workers.add(new Thread(() -> {
+          for (int i = 0; i < requests; i++) {
+            long lsn = wal.append(WriteAheadLog.ACCEPT, new Ballot(1, 1), slotBase + i, value);
+            wal.sync(lsn);
+          }
+        }));
+      }
+
+      long start = System.nanoTime();
+      workers.forEach(Thread::start);
+      for (Thread worker : workers) {
+        try {
+          worker.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException("WalBenchmark error: Thread interrupted");
+        }
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      long total = (long) threads * requests;
+      System.out.printf("%-18s %10.0f requests/s %8d fsyncs %8.1f requests/fsync%n", label,
+              total / seconds, wal.getSyncCount(), (double) total / wal.getSyncCount());
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+}
@@ -0,0 +1,362 @@
+package main.java;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead log that makes the state of an acceptor durable. Records are appended to an
+ * in-memory buffer and are only durable once {@link #sync(long)} returns for them. With group
+ * commit enabled, a thread that calls sync while another thread is already writing to disk waits
+ * for that write and then flushes everything appended in the meantime with a single fsync, so
+ * concurrent requests share the cost of one fsync. Without group commit, each sync writes and
+ * fsyncs on its own. Once a prefix of the log is covered by a snapshot, the log can be rewritten
+ * with only the records that are still needed, see {@link #compact(List)}.
+ */
+public class WriteAheadLog implements AutoCloseable {
+  protected static final byte PROMISE = 'P';
+  protected static final byte ACCEPT = 'A';
+  protected static final byte COMPACT = 'C';
+  protected static final byte INSTANCE = 'I';
+  private static final int HEADER_SIZE = 1 + 4 + 4 + 4 + 4; // type, ballot, slot, value length
+  private static final int CRC_SIZE = 8;
+  private static final int MAX_VALUE_SIZE = 16 * 1024 * 1024;
+
+  private final Path path;
+  private FileChannel channel;
+  private final boolean groupCommit;
+  private ByteBuffer buffer;
+  private ByteBuffer spare;
+  private long appendedLsn;
+  private long durableLsn;
+  private boolean flushing;
+  private long syncCount;
+
+  /**
+   * A record replayed from the log.
+   *
+   * @param type the type of record ({@link #PROMISE}, {@link #ACCEPT},
+   *             {@link #COMPACT} or {@link #INSTANCE})
+   * @param proposalNum the proposal number promised or accepted
+   * @param slot the log slot of an accepted value, the last slot covered by a snapshot, or the
+   *             instance number of an EPaxos instance
+   * @param value the accepted value, or the attributes of an EPaxos instance
+   */
+  public record Entry(byte type, Ballot proposalNum, int slot, byte[] value) {}
+
+  /**
+   * Handles each record replayed from the log.
+   */
+  public interface Replayer {
+    /**
+     * Applies a replayed record.
+     *
+     * @param entry the record
+     */
+    void replay(Entry entry);
+  }
+
+  /**
+   * Constructs a new WriteAheadLog object, creating the file at the given path if it does not
+   * exist yet.
+   *
+   * @param path the path to the log file
+   * @param groupCommit true to share fsyncs between concurrent syncs else false to fsync per sync
+   * @throws IllegalArgumentException if the log file cannot be opened
+   */
+  public WriteAheadLog(Path path, boolean groupCommit) throws IllegalArgumentException {
+    this.path = path;
+    try {
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+              StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("WriteAheadLog error: Unable to open log: " +
+              e.getMessage());
+    }
+    this.groupCommit = groupCommit;
+    this.buffer = ByteBuffer.allocate(64 * 1024);
+    this.spare = ByteBuffer.allocate(64 * 1024);
+    this.appendedLsn = 0;
+    this.durableLsn = 0;
+    this.flushing = false;
+    this.syncCount = 0;
+  }
+
+  /**
+   * Replays every complete record in the log, in the order they were appended. A partially
+   * written or corrupted record at the end of the log (from a crash in the middle of a write) is
+   * discarded along with everything after it, and new records are appended from that point.
+   *
+   * @param replayer the handler for each record
+   * @return the number of records replayed
+   * @throws RuntimeException if the log cannot be read
+   */
+  public synchronized long replay(Replayer replayer) throws RuntimeException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    CRC32 crc = new CRC32();
+    long position = 0;
+    long count = 0;
+
+    try {
+      this.channel.position(0);
+      while (true) {
+        header.clear();
+        if (!readFully(header)) {
+          break;
+        }
+
+        header.flip();
+        byte type = header.get();
+        Ballot proposalNum = new Ballot(header.getInt(), header.getInt());
+        int slot = header.getInt();
+        int valueLength = header.getInt();
+        if (valueLength < 0 || valueLength > MAX_VALUE_SIZE) {
+          break;
+        }
+
+        ByteBuffer rest = ByteBuffer.allocate(valueLength + CRC_SIZE);
+        if (!readFully(rest)) {
+          break;
+        }
+        rest.flip();
+        byte[] value = valueLength == 0 ? Message.NO_VALUE : new byte[valueLength];
+        rest.get(value);
+
+        crc.reset();
+        crc.update(header.array(), 0, HEADER_SIZE);
+        crc.update(value);
+        if (rest.getLong() != crc.getValue()) {
+          break;
+        }
+
+        replayer.replay(new Entry(type, proposalNum, slot, value));
+        position += HEADER_SIZE + valueLength + CRC_SIZE;
+        count++;
+      }
+
+      this.channel.truncate(position);
+      this.channel.position(position);
+    } catch (IOException e) {
+      throw new RuntimeException("WriteAheadLog error: " + e.getMessage());
+    }
+
+    return count;
+  }
+
+  /**
+   * Reads from the log until the buffer is full.
+   *
+   * @param buffer the buffer to fill
+   * @return true if the buffer was filled else false if the end of the log was reached first
+   * @throws IOException if the log cannot be read
+   */
+  private boolean readFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (this.channel.read(buffer) <= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Appends a record to the log. The record is not durable until {@link #sync(long)} has been
+   * called with the returned sequence number.
+   *
+   * @param type the type of record ({@link #PROMISE}, {@link #ACCEPT},
+   *             {@link #COMPACT} or {@link #INSTANCE})
+   * @param proposalNum the proposal number promised or accepted
+   * @param slot the log slot of an accepted value
+   * @param value the accepted value
+   * @return the sequence number of the record
+   */
+  public synchronized long append(byte type, Ballot proposalNum, int slot, byte[] value) {
+    this.buffer = encode(this.buffer, new Entry(type, proposalNum, slot, value));
+    return ++this.appendedLsn;
+  }
+
+  /**
+   * Encodes a record at the end of a buffer, growing the buffer if the record does not fit.
+   *
+   * @param buffer the buffer
+   * @param entry the record
+   * @return the buffer holding the record, a larger copy if the given one was too small
+   */
+  private static ByteBuffer encode(ByteBuffer buffer, Entry entry) {
+    byte[] value = entry.value();
+    int size = HEADER_SIZE + value.length + CRC_SIZE;
+    if (buffer.remaining() < size) {
+      ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2,
+              buffer.position() + size));
+      buffer.flip();
+      larger.put(buffer);
+      buffer = larger;
+    }
+
+    int start = buffer.position();
+    buffer.put(entry.type()).putInt(entry.proposalNum().getRound())
+            .putInt(entry.proposalNum().getProposerId()).putInt(entry.slot())
+            .putInt(value.length).put(value);
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), start, HEADER_SIZE + value.length);
+    buffer.putLong(crc.getValue());
+    return buffer;
+  }
+
+  /**
+   * Replaces the whole log with the given records. The records are written to a new file that is
+   * forced to disk and then renamed over the log, so a crash leaves either the old or the new log
+   * behind. Records appended but not yet written are dropped, so the given records must cover
+   * everything still needed from them, and every sequence number handed out so far becomes
+   * durable.
+   *
+   * @param live the records to keep, in the order they should be replayed
+   * @throws RuntimeException if the new log cannot be written
+   */
+  public synchronized void compact(List<Entry> live) throws RuntimeException {
+    // the thread writing to disk uses the channel without holding the lock
+    while (this.flushing) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("WriteAheadLog error: Thread interrupted");
+      }
+    }
+
+    ByteBuffer records = ByteBuffer.allocate(64 * 1024);
+    for (Entry entry : live) {
+      records = encode(records, entry);
+    }
+    records.flip();
+
+    Path temp = this.path.resolveSibling(this.path.getFileName() + ".compact");
+    try {
+      try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        while (records.hasRemaining()) {
+          out.write(records);
+        }
+        out.force(false);
+      }
+      Files.move(temp, this.path, StandardCopyOption.ATOMIC_MOVE,
+              StandardCopyOption.REPLACE_EXISTING);
+
+      this.channel.close();
+      this.channel = FileChannel.open(this.path, StandardOpenOption.READ,
+              StandardOpenOption.WRITE);
+      this.channel.position(this.channel.size());
+    } catch (IOException e) {
+      throw new RuntimeException("WriteAheadLog error: Unable to compact log: " + e.getMessage());
+    }
+
+    this.buffer.clear();
+    this.durableLsn = this.appendedLsn;
+    this.syncCount++;
+    notifyAll();
+  }
+
+  /**
+   * Gets the sequence number of the last record appended.
+   *
+   * @return the sequence number of the last record appended
+   */
+  public synchronized long lastLsn() {
+    return this.appendedLsn;
+  }
+
+  /**
+   * Gets the number of fsyncs performed so far.
+   *
+   * @return the number of fsyncs performed
+   */
+  public synchronized long getSyncCount() {
+    return this.syncCount;
+  }
+
+  /**
+   * Blocks until every record up to the given sequence number is durable on disk.
+   *
+   * @param lsn the sequence number to wait for
+   * @throws RuntimeException if the log cannot be written
+   */
+  public void sync(long lsn) throws RuntimeException {
+    if (!this.groupCommit) {
+      synchronized (this) {
+        if (this.durableLsn < lsn) {
+          flush(this.buffer, this.appendedLsn);
+        }
+      }
+      return;
+    }
+
+    ByteBuffer pending;
+    long flushLsn;
+    synchronized (this) {
+      // wait for the thread currently writing, its fsync may already cover this record
+      while (this.flushing && this.durableLsn < lsn) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException("WriteAheadLog error: Thread interrupted");
+        }
+      }
+      if (this.durableLsn >= lsn) {
+        return;
+      }
+
+      // become the thread that writes everything appended so far
+      this.flushing = true;
+      pending = this.buffer;
+      flushLsn = this.appendedLsn;
+      this.buffer = this.spare;
+    }
+
+    try {
+      flush(pending, flushLsn);
+    } finally {
+      synchronized (this) {
+        this.spare = pending;
+        this.flushing = false;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Writes the given buffer to the end of the log and forces it to disk.
+   *
+   * @param pending the buffer holding the records to write
+   * @param flushLsn the sequence number of the last record in the buffer
+   * @throws RuntimeException if the log cannot be written
+   */
+  private void flush(ByteBuffer pending, long flushLsn) throws RuntimeException {
+    try {
+      pending.flip();
+      while (pending.hasRemaining()) {
+        this.channel.write(pending);
+      }
+      pending.clear();
+      this.channel.force(false);
+    } catch (IOException e) {
+      throw new RuntimeException("WriteAheadLog error: " + e.getMessage());
+    }
+
+    synchronized (this) {
+      this.durableLsn = Math.max(this.durableLsn, flushLsn);
+      this.syncCount++;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.channel.close();
+  }
+}
@@ -1,10 +1,6 @@
 package main.java;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -17,46 +13,32 @@ import java.util.Map;
  * where their place is in the ring. It will inform each peer from the ring that need to update
  * their predecessor and successor. It doesn't monitor the peers. A client can interact with the
  * boostrap server to store and retrieve objects in the ring. When receiving such a request, the
- * boostrap server will forward the request to the first peer in the ring.
+ * boostrap server will forward the request to the first peer in the ring. Messages go through a
+ * {@link Transport}, so the server runs as well in a process of its own as on a
+ * {@link SimulatedNetwork}.
  */
 public final class BootstrapServer {
   private final List<String> ring;
+  private final Transport transport;
   private int joinUpdateCount = 0;
 
   /**
    * Constructs a new BootstrapServer object. A bootstrap server has a list of peers in a sorted
    * ring.
+   *
+   * @param transport the transport carrying the messages of the server
    */
-  public BootstrapServer() {
+  public BootstrapServer(Transport transport) {
     this.ring = new ArrayList<>();
+    this.transport = transport;
   }
 
   /**
-   * Starts the bootstrap server, which listens for incoming connections from peers.
+   * Starts the bootstrap server, which listens for incoming messages from peers and clients.
    */
   public void start() {
-    try (ServerSocket serverSocket = new ServerSocket(Utils.PORT)) {
-      while (true) {
-        Socket socket = serverSocket.accept();
-        new Thread(() -> handleConnection(socket)).start();
-      }
-    } catch (IOException e) {
-      throw new RuntimeException("Boostrap error: " + e.getMessage());
-    }
-  }
-
-  /**
-   * Handles each connection. It reads the message and leaves it to another helper method to handle
-   * it.
-   *
-   * @param socket the socket
-   */
-  private void handleConnection(Socket socket) {
-    try (
-            DataInputStream in = new DataInputStream(socket.getInputStream());
-    ) {
-      String msg = in.readUTF();
-      handleMessage(msg);
+    try {
+      this.transport.listen(this::handleMessage);
     } catch (IOException e) {
       throw new RuntimeException("Boostrap error: " + e.getMessage());
     }
@@ -135,14 +117,7 @@ public final class BootstrapServer {
       put("new_id", pred_id);
     }});
 
-    try (
-            Socket peerSocket = new Socket(peerId, Utils.PORT);
-            DataOutputStream out = new DataOutputStream(peerSocket.getOutputStream())
-    ) {
-      out.writeUTF(msg);
-    } catch (IOException e) {
-      throw new RuntimeException("Boostrap error: " + e.getMessage());
-    }
+    send(peerId, msg);
 
     return pred_id;
   }
@@ -166,14 +141,7 @@ public final class BootstrapServer {
       put("new_id", succ_id);
     }});
 
-    try (
-            Socket peerSocket = new Socket(peerId, Utils.PORT);
-            DataOutputStream out = new DataOutputStream(peerSocket.getOutputStream())
-    ) {
-      out.writeUTF(msg);
-    } catch (IOException e) {
-      throw new RuntimeException("Boostrap error: " + e.getMessage());
-    }
+    send(peerId, msg);
 
     return succ_id;
   }
@@ -198,17 +166,10 @@ public final class BootstrapServer {
     System.err.println("[" + String.join(" ", this.ring) + "]");
 
     for (String peer : this.ring) {
-      try (
-              Socket peerSocket = new Socket(peer, Utils.PORT);
-              DataOutputStream out = new DataOutputStream(peerSocket.getOutputStream())
-      ){
-        String msg = Utils.prepareMsg(new LinkedHashMap<>() {{
-          put("operation_type", "NEW_PEER_JOINED");
-        }});
-        out.writeUTF(msg);
-      } catch (IOException e) {
-        throw new RuntimeException("Boostrap error: " + e.getMessage());
-      }
+      String msg = Utils.prepareMsg(new LinkedHashMap<>() {{
+        put("operation_type", "NEW_PEER_JOINED");
+      }});
+      send(peer, msg);
     }
   }
 
@@ -219,14 +180,7 @@ public final class BootstrapServer {
    * @param msg the message received from the client to be forwarded to the first peer
    */
   private void handleClientRequest(String msg) {
-    try (
-            Socket peerSocket = new Socket(this.ring.get(0), Utils.PORT);
-            DataOutputStream out = new DataOutputStream(peerSocket.getOutputStream())
-    ) {
-      out.writeUTF(msg);
-    } catch (IOException e) {
-      throw new RuntimeException("Boostrap error: " + e.getMessage());
-    }
+    send(this.ring.get(0), msg);
   }
 
   /**
@@ -237,11 +191,18 @@ public final class BootstrapServer {
    * @param clientId the ID of the client to whom the message should be forwarded
    */
   private void handleReportToClient(String msg, String clientId) {
-    try (
-            Socket clientSocket = new Socket(Utils.extractHostname(clientId), Utils.PORT);
-            DataOutputStream out = new DataOutputStream(clientSocket.getOutputStream())
-    ) {
-      out.writeUTF(msg);
+    send(Utils.extractHostname(clientId), msg);
+  }
+
+  /**
+   * Sends a message to a peer or client.
+   *
+   * @param hostname the hostname of the peer or client
+   * @param msg the message
+   */
+  private void send(String hostname, String msg) {
+    try {
+      this.transport.send(hostname, msg);
     } catch (IOException e) {
       throw new RuntimeException("Boostrap error: " + e.getMessage());
     }
@@ -253,7 +214,7 @@ public final class BootstrapServer {
    * @param args command line arguments (not used)
    */
   public static void main(String[] args) {
-    BootstrapServer bootstrapServer = new BootstrapServer();
+    BootstrapServer bootstrapServer = new BootstrapServer(new SocketTransport(Utils.PORT));
     bootstrapServer.start();
   }
 }
@@ -1,12 +1,8 @@
 package main.java;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.UnknownHostException;
 import java.nio.file.Files;
 import java.util.ArrayList;
@@ -19,7 +15,8 @@ import java.util.stream.IntStream;
 /**
  * A client stores and retrieves objects from the DHT. It can only communicate with the bootstrap
  * server. The bootstrap server will let the client know when the object is successfully stored or
- * retrieved.
+ * retrieved. Messages go through a {@link Transport}, so a client runs as well in a process of its
+ * own as on a {@link SimulatedNetwork}.
  */
 public final class Client {
   private final String clientId;
@@ -27,6 +24,7 @@ public final class Client {
   private final int delay;
   private final int objectId;
   private final Action action;
+  private final Transport transport;
   private int requestId = 0;
 
   /**
@@ -37,14 +35,16 @@ public final class Client {
    * @param delay the number of seconds to wait before starting the client
    * @param objectId the ID of the object to be stored or retrieved
    * @param action the action to be performed (STORE or RETRIEVE)
+   * @param transport the transport carrying the messages of the client
    */
   public Client(String clientId, String bootstrapServerName, int delay, int objectId,
-                String action) {
+                String action, Transport transport) {
     this.clientId = clientId;
     this.bootstrapServerName = bootstrapServerName;
     this.delay = delay;
     this.objectId = objectId;
     this.action = Action.valueOf(action);
+    this.transport = transport;
   }
 
   /**
@@ -76,7 +76,8 @@ public final class Client {
   }
 
   /**
-   * Starts the client process.
+   * Starts the client process. The client listens before it sends its request, so it does not
+   * miss the answer.
    */
   public void start() {
     try {
@@ -85,16 +86,13 @@ public final class Client {
       throw new RuntimeException("Peer error: " + e.getMessage());
     }
 
-    sendRequest();
-
-    try (ServerSocket socket = new ServerSocket(Utils.PORT)) {
-      while (true) {
-        Socket bootstrapSocket = socket.accept();
-        new Thread(() -> handleConnection(bootstrapSocket)).start();
-      }
+    try {
+      this.transport.listen(this::handleMessage);
     } catch (IOException e) {
-      throw new RuntimeException("Acceptor error: " + e.getMessage());
+      throw new RuntimeException("Client error: " + e.getMessage());
     }
+
+    sendRequest();
   }
 
   /**
@@ -109,28 +107,8 @@ public final class Client {
       put("client_id", clientId);
     }});
 
-    try (
-            Socket bootstrapSocket = new Socket(this.bootstrapServerName, Utils.PORT);
-            DataOutputStream out = new DataOutputStream(bootstrapSocket.getOutputStream())
-    ) {
-      out.writeUTF(msg);
-    } catch (IOException e) {
-      throw new RuntimeException("Client error: " + e.getMessage());
-    }
-  }
-
-  /**
-   * Handles each connection with the bootstrap server. It reads the message from the bootstrap
-   * server and leaves it to another helper method to handle the message.
-   *
-   * @param bootstrapSocket the socket of the bootstrap server
-   */
-  private void handleConnection(Socket bootstrapSocket) {
-    try (
-            DataInputStream in = new DataInputStream(bootstrapSocket.getInputStream());
-    ) {
-      String msg = in.readUTF();
-      handleMessage(msg);
+    try {
+      this.transport.send(this.bootstrapServerName, msg);
     } catch (IOException e) {
       throw new RuntimeException("Client error: " + e.getMessage());
     }
@@ -250,7 +228,8 @@ public final class Client {
       default -> throw new IllegalArgumentException("Client error: Invalid testcase");
     }
 
-    return new Client(clientId, bootstrapServerName, delay, objectId, action);
+    return new Client(clientId, bootstrapServerName, delay, objectId, action,
+            new SocketTransport(Utils.PORT));
   }
 
   /**
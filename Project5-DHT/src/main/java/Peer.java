@@ -2,14 +2,10 @@ package main.java;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.UnknownHostException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -23,13 +19,16 @@ import java.util.Map;
  * tell each peer their place in the ring. As new peers join, the boostrap server may inform the
  * peers to update their predecessor and successor. Peers may get a request to store or retrieve
  * an object in or from the object file. If the object to be stored or retrieved does not belong
- * to the peer, the peer will forward the request to its successor in the ring.
+ * to the peer, the peer will forward the request to its successor in the ring. Messages go
+ * through a {@link Transport}, so a peer runs as well in a process of its own as on a
+ * {@link SimulatedNetwork}.
  */
 public final class Peer {
   private final String peerId;
   private final String bootstrapServerName;
   private final String objFilePath;
   private final int delay;
+  private final Transport transport;
   private String predecessorId;
   private String successorId;
 
@@ -40,18 +39,22 @@ public final class Peer {
    * @param bootstrapServerName the hostname of the bootstrap server
    * @param objFilePath path to a file containing the object store of the peer
    * @param delay the number of seconds to wait before joining after startup
+   * @param transport the transport carrying the messages of the peer
    */
-  public Peer(String peerId, String bootstrapServerName, String objFilePath, int delay) {
+  public Peer(String peerId, String bootstrapServerName, String objFilePath, int delay,
+              Transport transport) {
     this.peerId = peerId;
     this.bootstrapServerName = bootstrapServerName;
     this.objFilePath = objFilePath;
     this.delay = delay;
+    this.transport = transport;
     this.predecessorId = null;
     this.successorId = null;
   }
 
   /**
-   * Starts the peer process.
+   * Starts the peer process. The peer listens before it joins, so it does not miss the bootstrap
+   * server's answer.
    */
   public void start() {
     try {
@@ -60,51 +63,24 @@ public final class Peer {
       throw new RuntimeException("Peer error: " + e.getMessage());
     }
 
-    joinRing();
-
-    try (ServerSocket socket = new ServerSocket(Utils.PORT)) {
-      while (true) {
-        Socket bootstrapSocket = socket.accept();
-        new Thread(() -> handleConnection(bootstrapSocket)).start();
-      }
+    try {
+      this.transport.listen(this::handleMessage);
     } catch (IOException e) {
-      throw new RuntimeException("Acceptor error: " + e.getMessage());
+      throw new RuntimeException("Peer error: " + e.getMessage());
     }
+
+    joinRing();
   }
 
   /**
    * Contacts the bootstrap server to join the ring.
    */
   private void joinRing() {
-    try (
-            Socket bootstrapSocket = new Socket(bootstrapServerName, Utils.PORT);
-            DataOutputStream out = new DataOutputStream(bootstrapSocket.getOutputStream());
-    ) {
-      String msg = Utils.prepareMsg(new LinkedHashMap<>() {{
-        put("peer_id", peerId);
-        put("operation_type", "JOIN");
-      }});
-      out.writeUTF(msg);
-    } catch (Exception e) {
-      throw new RuntimeException("Peer error: " + e.getMessage());
-    }
-  }
-
-  /**
-   * Handles each connection with the bootstrap server. It reads the message from the bootstrap
-   * server and leaves it to another helper method to handle the message.
-   *
-   * @param bootstrapSocket the socket of the bootstrap server
-   */
-  private void handleConnection(Socket bootstrapSocket) {
-    try (
-            DataInputStream in = new DataInputStream(bootstrapSocket.getInputStream());
-    ) {
-      String msg = in.readUTF();
-      handleMessage(msg);
-    } catch (IOException e) {
-      throw new RuntimeException("Peer error: " + e.getMessage());
-    }
+    String msg = Utils.prepareMsg(new LinkedHashMap<>() {{
+      put("peer_id", peerId);
+      put("operation_type", "JOIN");
+    }});
+    send(bootstrapServerName, msg);
   }
 
   /**
@@ -138,14 +114,7 @@ public final class Peer {
       put("operation_type", "PRED_ASSIGNED");
     }});
 
-    try (
-            Socket bootstrapSocket = new Socket(this.bootstrapServerName, Utils.PORT);
-            DataOutputStream out = new DataOutputStream(bootstrapSocket.getOutputStream())
-    ) {
-      out.writeUTF(newMsg);
-    } catch (IOException e) {
-      throw new RuntimeException("Peer error: " + e.getMessage());
-    }
+    send(this.bootstrapServerName, newMsg);
   }
 
   /**
@@ -162,14 +131,7 @@ public final class Peer {
       put("operation_type", "SUCC_ASSIGNED");
     }});
 
-    try (
-            Socket bootstrapSocket = new Socket(this.bootstrapServerName, Utils.PORT);
-            DataOutputStream out = new DataOutputStream(bootstrapSocket.getOutputStream())
-    ) {
-      out.writeUTF(newMsg);
-    } catch (IOException e) {
-      throw new RuntimeException("Peer error: " + e.getMessage());
-    }
+    send(this.bootstrapServerName, newMsg);
   }
 
   /**
@@ -220,20 +182,13 @@ public final class Peer {
     System.err.println(objFileContent.toString().trim());
 
     // send message to bootstrap server
-    try (
-            Socket bootstrapSocket = new Socket(this.bootstrapServerName, Utils.PORT);
-            DataOutputStream out = new DataOutputStream(bootstrapSocket.getOutputStream())
-    ) {
-      String newMsg = Utils.prepareMsg(new LinkedHashMap<>() {{
-        put("operation_type", "OBJ_STORED");
-        put("object_id", objId);
-        put("client_id", clientId);
-        put("peer_id", peerId);
-      }});
-      out.writeUTF(newMsg);
-    } catch (IOException e) {
-      throw new RuntimeException("Peer error: " + e.getMessage());
-    }
+    String newMsg = Utils.prepareMsg(new LinkedHashMap<>() {{
+      put("operation_type", "OBJ_STORED");
+      put("object_id", objId);
+      put("client_id", clientId);
+      put("peer_id", peerId);
+    }});
+    send(this.bootstrapServerName, newMsg);
   }
 
   /**
@@ -263,9 +218,6 @@ public final class Peer {
               .map(line -> line[1]).toList();
 
       // send message to bootstrap server
-      Socket bootstrapSocket = new Socket(this.bootstrapServerName, Utils.PORT);
-      DataOutputStream out = new DataOutputStream(bootstrapSocket.getOutputStream());
-
       String newMsg;
       if (objList.isEmpty()) {
         newMsg = Utils.prepareMsg(new LinkedHashMap<>() {{
@@ -282,9 +234,7 @@ public final class Peer {
         }});
       }
 
-      out.writeUTF(newMsg);
-      out.close();
-      bootstrapSocket.close();
+      send(this.bootstrapServerName, newMsg);
     } catch (IOException e) {
       throw new RuntimeException("Peer error: " + e.getMessage());
     }
@@ -308,20 +258,27 @@ public final class Peer {
     boolean objIdLargerThanRing = atStartOfRing && objIdLargerThanPredecessorId;
 
     if (objIdLargerThanPeerId && !objIdLargerThanRing) {
-      try (
-              Socket succSocket = new Socket(this.successorId, Utils.PORT);
-              DataOutputStream out = new DataOutputStream(succSocket.getOutputStream())
-      ) {
-        out.writeUTF(msg);
-        return true;
-      } catch (IOException e) {
-        throw new RuntimeException("Peer error: " + e.getMessage());
-      }
+      send(this.successorId, msg);
+      return true;
     }
 
     return false;
   }
 
+  /**
+   * Sends a message to another process.
+   *
+   * @param hostname the hostname of the process
+   * @param msg the message
+   */
+  private void send(String hostname, String msg) {
+    try {
+      this.transport.send(hostname, msg);
+    } catch (IOException e) {
+      throw new RuntimeException("Peer error: " + e.getMessage());
+    }
+  }
+
   /**
    * Main method to start the peer process.
    *
@@ -378,6 +335,7 @@ public final class Peer {
       throw new RuntimeException("Peer error: Unable to determine hostname: " + e.getMessage());
     }
 
-    return new Peer(peerId, bootstrapServerName, objFilePath, delay);
+    return new Peer(peerId, bootstrapServerName, objFilePath, delay,
+            new SocketTransport(Utils.PORT));
   }
 }
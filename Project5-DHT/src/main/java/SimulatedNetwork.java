@@ -0,0 +1,311 @@
+package main.java;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory network that connects the bootstrap server, peers and clients of a DHT hosted in
+ * one JVM, driven by a virtual clock. Every message sent is scheduled for delivery at a virtual
+ * time drawn from the profile of its link: a base latency, a random jitter on top, a chance of
+ * being lost and a chance of being held back so that later messages on the link overtake it.
+ * Links are otherwise FIFO, and a process's link to itself is perfect. Sending to a host that is
+ * not listening fails right away, the way a refused connection does, while a lost message is
+ * simply never delivered, since nothing waits for a reply. The randomness of every link comes from
+ * its own generator seeded by the network's seed and the link's ends.
+ *
+ * <p>The thread running the network delivers messages in order of virtual time and hands each
+ * one to its handler on that thread. Since every process of the DHT handles a message to the end
+ * before returning, including the messages it sends in response, nothing else runs meanwhile,
+ * and a run with the same seed repeats exactly.
+ */
+public final class SimulatedNetwork {
+  private final long seed;
+  private final Map<String, Link> links;
+  private final Map<String, LinkState> linkStates;
+  private final Map<String, SimulatedTransport> endpoints;
+  private final PriorityQueue<Event> events;
+  private Link defaultLink;
+  private long now;
+  private long nextSequence;
+  private long delivered;
+  private long dropped;
+  private long reordered;
+  private long failed;
+
+  /**
+   * The profile of a directed link between two processes.
+   *
+   * @param latencyNanos the base one-way latency, in virtual nanoseconds
+   * @param jitterNanos the most random latency added to the base, in virtual nanoseconds
+   * @param loss the probability of a message being lost
+   * @param reorder the probability of a message being held back by up to three times the highest
+   *                latency of the link, letting later messages overtake it
+   */
+  public record Link(long latencyNanos, long jitterNanos, double loss, double reorder) {}
+
+  /**
+   * Constructs a new SimulatedNetwork object whose clock starts at zero.
+   *
+   * @param seed the seed of the randomness of every link
+   * @param defaultLink the profile of every link without one of its own
+   */
+  public SimulatedNetwork(long seed, Link defaultLink) {
+    this.seed = seed;
+    this.links = new HashMap<>();
+    this.linkStates = new HashMap<>();
+    this.endpoints = new HashMap<>();
+    this.events = new PriorityQueue<>();
+    this.defaultLink = defaultLink;
+    this.now = 0;
+    this.nextSequence = 0;
+    this.delivered = 0;
+    this.dropped = 0;
+    this.reordered = 0;
+    this.failed = 0;
+  }
+
+  /**
+   * Creates the transport of a process on the network.
+   *
+   * @param hostname the hostname of the process
+   * @return the transport
+   * @throws IllegalArgumentException if the host already has a transport on the network
+   */
+  public SimulatedTransport connect(String hostname) throws IllegalArgumentException {
+    SimulatedTransport transport = new SimulatedTransport(hostname, this);
+    if (this.endpoints.putIfAbsent(hostname, transport) != null) {
+      throw new IllegalArgumentException("SimulatedNetwork error: Host " + hostname +
+              " is already connected");
+    }
+    return transport;
+  }
+
+  /**
+   * Sets the profile of every link without one of its own, e.g. to heal a partition.
+   *
+   * @param link the profile
+   */
+  public void setDefaultLink(Link link) {
+    this.defaultLink = link;
+  }
+
+  /**
+   * Sets the profile of the directed link from one process to another, e.g. a loss of 1 to cut
+   * it off.
+   *
+   * @param from the hostname of the sending process
+   * @param to the hostname of the receiving process
+   * @param link the profile
+   */
+  public void setLink(String from, String to, Link link) {
+    this.links.put(linkKey(from, to), link);
+  }
+
+  /**
+   * Schedules an action of the processes at a virtual time, e.g. starting a process. Actions at
+   * the same time run in the order they were scheduled.
+   *
+   * @param timeNanos the virtual time, in nanoseconds
+   * @param action the action
+   */
+  public void schedule(long timeNanos, Runnable action) {
+    this.events.add(new Event(Math.max(timeNanos, this.now), this.nextSequence++, action));
+  }
+
+  /**
+   * Gets the current virtual time.
+   *
+   * @return the virtual time, in nanoseconds since the network was created
+   */
+  public long now() {
+    return this.now;
+  }
+
+  /**
+   * Gets the number of messages delivered so far.
+   *
+   * @return the number of messages delivered
+   */
+  public long getDelivered() {
+    return this.delivered;
+  }
+
+  /**
+   * Gets the number of messages lost so far.
+   *
+   * @return the number of messages lost
+   */
+  public long getDropped() {
+    return this.dropped;
+  }
+
+  /**
+   * Gets the number of messages held back so far.
+   *
+   * @return the number of messages held back
+   */
+  public long getReordered() {
+    return this.reordered;
+  }
+
+  /**
+   * Gets the number of messages whose handler failed so far.
+   *
+   * @return the number of messages whose handler failed
+   */
+  public long getFailed() {
+    return this.failed;
+  }
+
+  /**
+   * Runs the network on the calling thread until its clock reaches the given virtual time, or
+   * until nothing is left to happen.
+   *
+   * @param endNanos the virtual time to stop at
+   * @return true if the clock reached the given time, or false if the processes fell silent
+   */
+  public boolean runUntil(long endNanos) {
+    while (true) {
+      Event event = this.events.peek();
+      if (event == null) {
+        return false;
+      }
+      if (event.time() > endNanos) {
+        this.now = endNanos;
+        return true;
+      }
+
+      this.events.poll();
+      this.now = event.time();
+      event.action().run();
+    }
+  }
+
+  /**
+   * Sends a message from one process to another.
+   *
+   * @param from the hostname of the sending process
+   * @param to the hostname of the receiving process
+   * @param msg the message
+   * @throws IOException if the receiving process is not listening
+   */
+  void send(String from, String to, String msg) throws IOException {
+    SimulatedTransport target = this.endpoints.get(to);
+    if (target == null || target.getHandler() == null) {
+      throw new IOException("SimulatedNetwork error: Connection to " + to + " refused");
+    }
+
+    long arrival = transit(from, to);
+    if (arrival < 0) {
+      this.dropped++;
+      return;
+    }
+    schedule(arrival, () -> deliver(target.getHandler(), to, msg));
+  }
+
+  /**
+   * Hands a message to the handler of its receiver. A handler that fails only loses the message,
+   * the way a thread serving one connection of a {@link SocketTransport} dies with it.
+   *
+   * @param handler the handler of the receiving process
+   * @param to the hostname of the receiving process
+   * @param msg the message
+   */
+  private void deliver(Consumer<String> handler, String to, String msg) {
+    this.delivered++;
+    try {
+      handler.accept(msg);
+    } catch (RuntimeException e) {
+      this.failed++;
+      System.err.println("SimulatedNetwork error: " + to + " failed to handle " + msg + ": " +
+              e.getMessage());
+    }
+  }
+
+  /**
+   * Draws the fate of the next message on a link.
+   *
+   * @param from the hostname of the sending process
+   * @param to the hostname of the receiving process
+   * @return the virtual time the message arrives at, or -1 if it is lost
+   */
+  private long transit(String from, String to) {
+    // a process reaches itself over localhost, which neither delays nor loses anything
+    if (from.equals(to)) {
+      return this.now;
+    }
+
+    String key = linkKey(from, to);
+    Link link = this.links.getOrDefault(key, this.defaultLink);
+    LinkState state = this.linkStates.computeIfAbsent(key,
+            k -> new LinkState(new Random(this.seed * 31 + k.hashCode())));
+
+    // every message draws the same numbers, so one message's fate never shifts the next one's
+    double lossDraw = state.random.nextDouble();
+    double reorderDraw = state.random.nextDouble();
+    long jitter = (long) (state.random.nextDouble() * link.jitterNanos());
+    long holdBack = (long) (state.random.nextDouble() * 3 * (link.latencyNanos()
+            + link.jitterNanos()));
+    if (lossDraw < link.loss()) {
+      return -1;
+    }
+
+    long arrival = this.now + link.latencyNanos() + jitter;
+    if (reorderDraw < link.reorder()) {
+      this.reordered++;
+      return arrival + holdBack;
+    }
+    arrival = Math.max(arrival, state.lastArrival);
+    state.lastArrival = arrival;
+    return arrival;
+  }
+
+  /**
+   * Gets the key of a directed link.
+   *
+   * @param from the hostname of the sending process
+   * @param to the hostname of the receiving process
+   * @return the key
+   */
+  private static String linkKey(String from, String to) {
+    return from + "->" + to;
+  }
+
+  /**
+   * An action scheduled at a virtual time.
+   *
+   * @param time the virtual time
+   * @param sequence the order the action was scheduled in
+   * @param action the action
+   */
+  private record Event(long time, long sequence, Runnable action) implements Comparable<Event> {
+    @Override
+    public int compareTo(Event other) {
+      int order = Long.compare(this.time, other.time);
+      return order != 0 ? order : Long.compare(this.sequence, other.sequence);
+    }
+  }
+
+  /**
+   * The random generator of a link and the latest arrival of a message on it that was not held
+   * back, which keeps the link FIFO.
+   */
+  private static final class LinkState {
+    private final Random random;
+    private long lastArrival;
+
+    /**
+     * Constructs a new LinkState object.
+     *
+     * @param random the random generator of the link
+     */
+    LinkState(Random random) {
+      this.random = random;
+      this.lastArrival = 0;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package main.java;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * The {@link Transport} of a process on a {@link SimulatedNetwork}. Each message is handed to its
+ * handler on the thread running the network, at the virtual time it arrives.
+ */
+public final class SimulatedTransport implements Transport {
+  private final String hostname;
+  private final SimulatedNetwork network;
+  private Consumer<String> handler;
+
+  /**
+   * Constructs a new SimulatedTransport object. Use {@link SimulatedNetwork#connect(String)} to
+   * create one.
+   *
+   * @param hostname the hostname of the process the transport belongs to
+   * @param network the network the transport is on
+   */
+  SimulatedTransport(String hostname, SimulatedNetwork network) {
+    this.hostname = hostname;
+    this.network = network;
+    this.handler = null;
+  }
+
+  @Override
+  public void listen(Consumer<String> handler) {
+    this.handler = handler;
+  }
+
+  @Override
+  public void send(String hostname, String msg) throws IOException {
+    this.network.send(this.hostname, hostname, msg);
+  }
+
+  /**
+   * Gets the handler the process listens with.
+   *
+   * @return the handler, or null if the process is not listening yet
+   */
+  Consumer<String> getHandler() {
+    return this.handler;
+  }
+}
@@ -0,0 +1,280 @@
+package main.java;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Runs a whole DHT in one JVM on a {@link SimulatedNetwork}, so rings of any size can be measured
+ * without a container per process, and a run can be repeated with the same seed. The bootstrap
+ * server starts first and the peers join one after the other, under IDs drawn at random. Then
+ * every client stores an object of its own, and once those requests are done, as many clients
+ * retrieve them. The answers, their latencies and what became of the messages are printed in
+ * virtual time.
+ */
+public final class Simulation {
+  private static final String BOOTSTRAP = "bootstrap";
+  private static final int HIGHEST_ID = 127;
+
+  /**
+   * Runs the simulation.
+   *
+   * @param args the settings of the simulation, see the README
+   * @throws IOException if the object files cannot be created or removed
+   */
+  public static void main(String[] args) throws IOException {
+    int peers = 7;
+    int clients = 10;
+    long seed = 1;
+    double latencyMs = 1;
+    double jitterMs = 0;
+    double loss = 0;
+    double reorder = 0;
+    double joinGapMs = 100;
+    boolean verbose = false;
+    String parentDir = System.getProperty("java.io.tmpdir");
+
+    // read arguments
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "-n" -> peers = Integer.parseInt(argValue(args, ++i, "peer count"));
+        case "-clients" -> clients = Integer.parseInt(argValue(args, ++i, "client count"));
+        case "-seed" -> seed = Long.parseLong(argValue(args, ++i, "seed"));
+        case "-latency" -> latencyMs = Double.parseDouble(argValue(args, ++i, "latency"));
+        case "-jitter" -> jitterMs = Double.parseDouble(argValue(args, ++i, "jitter"));
+        case "-loss" -> loss = Double.parseDouble(argValue(args, ++i, "loss"));
+        case "-reorder" -> reorder = Double.parseDouble(argValue(args, ++i, "reordering"));
+        case "-gap" -> joinGapMs = Double.parseDouble(argValue(args, ++i, "join gap"));
+        case "-d" -> parentDir = argValue(args, ++i, "data directory");
+        case "-v" -> verbose = true;
+        default -> throw new IllegalArgumentException("Simulation error: Invalid argument " +
+                args[i]);
+      }
+    }
+    if (peers < 1 || clients < 1) {
+      throw new IllegalArgumentException("Simulation error: A run needs a peer and a client");
+    }
+
+    Path dataDir = Files.createTempDirectory(Paths.get(parentDir), "simulation");
+    PrintStream console = System.err;
+    try {
+      SimulatedNetwork network = new SimulatedNetwork(seed, new SimulatedNetwork.Link(
+              nanos(latencyMs), nanos(jitterMs), loss, reorder));
+      System.out.printf("seed %d, %d peers, %d clients%n", seed, peers, clients);
+      System.out.printf("latency %.1f ms, jitter %.1f ms, loss %.3f, reorder %.3f%n", latencyMs,
+              jitterMs, loss, reorder);
+
+      // the processes print every ring change and object file, which is only wanted when asked
+      if (!verbose) {
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+      }
+      run(network, dataDir, peers, clients, new Random(seed), nanos(joinGapMs));
+    } finally {
+      System.setErr(console);
+      try (Stream<Path> paths = Files.walk(dataDir)) {
+        for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+          Files.deleteIfExists(path);
+        }
+      }
+    }
+  }
+
+  /**
+   * Builds the ring, runs the clients against it and prints the results.
+   *
+   * @param network the network of the DHT
+   * @param dataDir the directory holding the object files of the peers
+   * @param peers the number of peers
+   * @param clients the number of clients storing objects, and of those retrieving them
+   * @param random the randomness of the peer and object IDs
+   * @param joinGapNanos the virtual time between two peers joining, in nanoseconds
+   * @throws IOException if an object file cannot be created
+   */
+  private static void run(SimulatedNetwork network, Path dataDir, int peers, int clients,
+                          Random random, long joinGapNanos) throws IOException {
+    long start = System.nanoTime();
+    int highestId = Math.max(HIGHEST_ID, peers);
+    new BootstrapServer(network.connect(BOOTSTRAP)).start();
+
+    List<Integer> ids = new ArrayList<>();
+    for (int id = 1; id <= highestId; id++) {
+      ids.add(id);
+    }
+    Collections.shuffle(ids, random);
+    for (int i = 0; i < peers; i++) {
+      String peerId = "n" + ids.get(i);
+      Path objFile = Files.createFile(dataDir.resolve("objects" + ids.get(i) + ".txt"));
+      Peer peer = new Peer(peerId, BOOTSTRAP, objFile.toString(), 0, network.connect(peerId));
+      network.schedule((i + 1) * joinGapNanos, peer::start);
+    }
+    network.runUntil(Long.MAX_VALUE);
+    System.out.printf("ring of %d peers built in %.1f virtual ms%n", peers, network.now() / 1e6);
+
+    // client hostnames carry no digits, since the digits of a client ID name its objects
+    int[] objectIds = new int[clients];
+    List<Request> stores = new ArrayList<>();
+    for (int c = 0; c < clients; c++) {
+      objectIds[c] = random.nextInt(1, highestId + 1);
+      stores.add(startClient(network, "store" + letters(c), c + 1, objectIds[c], "STORE"));
+    }
+    network.runUntil(Long.MAX_VALUE);
+    report("STORE", stores);
+
+    List<Request> retrieves = new ArrayList<>();
+    for (int c = 0; c < clients; c++) {
+      retrieves.add(startClient(network, "fetch" + letters(c), c + 1, objectIds[c], "RETRIEVE"));
+    }
+    network.runUntil(Long.MAX_VALUE);
+    report("RETRIEVE", retrieves);
+
+    System.out.printf("messages %d delivered, %d lost, %d held back, %d failed; ran in %.1f s " +
+            "real time%n", network.getDelivered(), network.getDropped(), network.getReordered(),
+            network.getFailed(), (System.nanoTime() - start) / 1e9);
+  }
+
+  /**
+   * Starts a client at the current virtual time, on a transport that records its answer.
+   *
+   * @param network the network of the DHT
+   * @param hostname the hostname of the client, without digits
+   * @param owner the number naming the objects of the client
+   * @param objectId the ID of the object to store or retrieve
+   * @param action the action of the client (STORE or RETRIEVE)
+   * @return the request of the client
+   */
+  private static Request startClient(SimulatedNetwork network, String hostname, int owner,
+                                     int objectId, String action) {
+    Request request = new Request(network.now());
+    Transport transport = new Transport() {
+      private final SimulatedTransport inner = network.connect(hostname);
+
+      @Override
+      public void listen(Consumer<String> handler) {
+        this.inner.listen(msg -> {
+          if (request.outcome == null) {
+            request.outcome = Utils.unpackMsg(msg).get("operation_type");
+            request.latencyNanos = network.now() - request.startNanos;
+          }
+          handler.accept(msg);
+        });
+      }
+
+      @Override
+      public void send(String to, String msg) throws IOException {
+        this.inner.send(to, msg);
+      }
+    };
+
+    Client client = new Client(hostname + owner, BOOTSTRAP, 0, objectId, action, transport);
+    network.schedule(network.now(), client::start);
+    return request;
+  }
+
+  /**
+   * Prints the answers the requests of one kind got, and the latencies of those answered.
+   *
+   * @param action the action of the requests
+   * @param requests the requests
+   */
+  private static void report(String action, List<Request> requests) {
+    Map<String, Long> outcomes = new TreeMap<>();
+    List<Long> latencies = new ArrayList<>();
+    for (Request request : requests) {
+      if (request.outcome != null) {
+        outcomes.merge(request.outcome, 1L, Long::sum);
+        latencies.add(request.latencyNanos);
+      }
+    }
+    Collections.sort(latencies);
+    System.out.printf("%d of %d %ss answered %s: p50 %.2f ms, max %.2f ms%n", latencies.size(),
+            requests.size(), action, outcomes, percentile(latencies, 50) / 1e6,
+            latencies.isEmpty() ? 0 : latencies.get(latencies.size() - 1) / 1e6);
+  }
+
+  /**
+   * Names a number with lowercase letters only, e.g. 0 as "a" and 26 as "ba".
+   *
+   * @param number the number
+   * @return the letters
+   */
+  private static String letters(int number) {
+    StringBuilder letters = new StringBuilder();
+    do {
+      letters.insert(0, (char) ('a' + number % 26));
+      number /= 26;
+    } while (number > 0);
+    return letters.toString();
+  }
+
+  /**
+   * Gets a percentile of sorted latencies.
+   *
+   * @param sorted the latencies in ascending order
+   * @param percentile the percentile
+   * @return the latency, or 0 if there are none
+   */
+  private static long percentile(List<Long> sorted, int percentile) {
+    return sorted.isEmpty() ? 0 : sorted.get(Math.min(sorted.size() - 1,
+            sorted.size() * percentile / 100));
+  }
+
+  /**
+   * Converts milliseconds to nanoseconds.
+   *
+   * @param ms the milliseconds
+   * @return the nanoseconds
+   */
+  private static long nanos(double ms) {
+    return (long) (ms * TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  /**
+   * Gets the value of an argument, which follows its flag.
+   *
+   * @param args the command line arguments
+   * @param i the index of the value
+   * @param name the name of the argument
+   * @return the value
+   * @throws IllegalArgumentException if the value is missing
+   */
+  private static String argValue(String[] args, int i, String name)
+          throws IllegalArgumentException {
+    if (i >= args.length) {
+      throw new IllegalArgumentException("Simulation error: Missing " + name + " argument");
+    }
+    return args[i];
+  }
+
+  /**
+   * A request of a client, and the answer it got.
+   */
+  private static final class Request {
+    private final long startNanos;
+    private String outcome;
+    private long latencyNanos;
+
+    /**
+     * Constructs a new Request object.
+     *
+     * @param startNanos the virtual time the client started at, in nanoseconds
+     */
+    Request(long startNanos) {
+      this.startNanos = startNanos;
+      this.outcome = null;
+      this.latencyNanos = 0;
+    }
+  }
+}
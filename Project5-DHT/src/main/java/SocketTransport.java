@@ -0,0 +1,68 @@
+package main.java;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Transport} over TCP. Every process listens on the same port of its own host, and every
+ * message is written over a connection of its own, which the receiver reads on a thread of its
+ * own.
+ */
+public final class SocketTransport implements Transport {
+  private final int port;
+
+  /**
+   * Constructs a new SocketTransport object.
+   *
+   * @param port the port every process listens on
+   */
+  public SocketTransport(int port) {
+    this.port = port;
+  }
+
+  @Override
+  public void listen(Consumer<String> handler) throws IOException {
+    ServerSocket serverSocket = new ServerSocket(this.port);
+    new Thread(() -> {
+      try (serverSocket) {
+        while (true) {
+          Socket socket = serverSocket.accept();
+          new Thread(() -> handleConnection(socket, handler)).start();
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("SocketTransport error: " + e.getMessage());
+      }
+    }).start();
+  }
+
+  /**
+   * Handles each connection. It reads the message and leaves it to the handler.
+   *
+   * @param socket the socket
+   * @param handler handles the message
+   */
+  private void handleConnection(Socket socket, Consumer<String> handler) {
+    try (
+            DataInputStream in = new DataInputStream(socket.getInputStream())
+    ) {
+      String msg = in.readUTF();
+      handler.accept(msg);
+    } catch (IOException e) {
+      throw new RuntimeException("SocketTransport error: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public void send(String hostname, String msg) throws IOException {
+    try (
+            Socket socket = new Socket(hostname, this.port);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream())
+    ) {
+      out.writeUTF(msg);
+    }
+  }
+}
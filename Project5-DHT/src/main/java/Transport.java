@@ -0,0 +1,30 @@
+package main.java;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Carries the messages of a process of the DHT. A message is a string sent one way to the process
+ * of a given hostname, which hands it to the handler it listens with. {@link SocketTransport}
+ * sends every message over a connection of its own to the process's port, and
+ * {@link SimulatedTransport} over a {@link SimulatedNetwork} inside one JVM.
+ */
+public interface Transport {
+  /**
+   * Starts handing every message sent to the process to a handler, and returns once messages can
+   * be received.
+   *
+   * @param handler handles a message
+   * @throws IOException if the process cannot receive messages
+   */
+  void listen(Consumer<String> handler) throws IOException;
+
+  /**
+   * Sends a message to a process without waiting for it to be handled.
+   *
+   * @param hostname the hostname of the process
+   * @param msg the message
+   * @throws IOException if the process cannot be reached
+   */
+  void send(String hostname, String msg) throws IOException;
+}